@@ -36,8 +36,10 @@ package ucar.nc2.iosp.hdf5;
 import org.junit.experimental.categories.Category;
 import ucar.ma2.Array;
 import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
+import ucar.unidata.util.test.CompareNetcdf;
 import ucar.unidata.util.test.category.NeedsCdmUnitTest;
 
 import java.io.IOException;
@@ -104,6 +106,27 @@ public class TestH5filter {
     }
   }
 
+  @org.junit.Test
+  public void testDeflateParallel() throws IOException, InvalidRangeException {
+    Array serial;
+    try (NetcdfFile ncfile = TestH5.openH5("msg/MSG1_8bit_HRV.H5")) {
+      Variable v = ncfile.findVariable("image1/image_data");
+      assert v != null;
+      serial = v.read();
+    }
+
+    H5iosp.setChunkParallelism(4, 3);
+    try (NetcdfFile ncfile = TestH5.openH5("msg/MSG1_8bit_HRV.H5")) {
+      Variable v = ncfile.findVariable("image1/image_data");
+      assert v != null;
+      CompareNetcdf.compareData(serial, v.read());
+      CompareNetcdf.compareData(serial.section(new int[]{100, 200}, new int[]{500, 700}),
+              v.read(new int[]{100, 200}, new int[]{500, 700}));
+    } finally {
+      H5iosp.setChunkParallelism(0, 0);
+    }
+  }
+
   @org.junit.Test
   public void testMissing() throws IOException {
     //H5header.setDebugFlags( new ucar.nc2.util.DebugFlagsImpl("H5header/header"));
@@ -0,0 +1,108 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib;
+
+import ucar.nc2.grib.grib1.Grib1RecordScanner;
+import ucar.nc2.grib.grib2.Grib2RecordScanner;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.IOException;
+
+/**
+ * Time scanning GRIB files for their records, as when making a gbx9 index, with GribMessageFinder looking for
+ * the next message in a window first, against always searching for it.
+ * Each file is scanned twice in each mode; the second pass has a warm OS page cache.
+ * <pre>
+ *   TimeGribScan [file.grib...]
+ * </pre>
+ */
+public class TimeGribScan {
+  static private final String[] defaultFiles = {
+          TestDir.cdmUnitTestDir + "tds/ncep/GFS_Global_onedeg_20100913_0000.grib2",
+          TestDir.cdmUnitTestDir + "tds/ncep/DGEX_Alaska_12km_20100524_0000.grib2",
+          TestDir.cdmUnitTestDir + "formats/grib1/ECMWF.hybrid.grib1",
+  };
+
+  static private int scan(RandomAccessFile raf, boolean isGrib1) throws IOException {
+    int count = 0;
+    if (isGrib1) {
+      Grib1RecordScanner scan = new Grib1RecordScanner(raf);
+      while (scan.hasNext()) {
+        if (scan.next() != null) count++;
+      }
+    } else {
+      Grib2RecordScanner scan = new Grib2RecordScanner(raf);
+      while (scan.hasNext()) {
+        if (scan.next() != null) count++;
+      }
+    }
+    return count;
+  }
+
+  static private void time(String filename, boolean useWindow, boolean isGrib1) throws IOException {
+    GribMessageFinder.setUseWindow(useWindow);
+    long start = System.nanoTime();
+    int count;
+    long nbytes;
+    try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+      nbytes = raf.length();
+      count = scan(raf, isGrib1);
+    }
+    double secs = (System.nanoTime() - start) * 1.0e-9;
+    double mb = nbytes * 1.0e-6;
+    System.out.printf(" %s: %6d records %8.1f Mbytes in %6.3f secs = %8.1f MB/sec%n",
+            useWindow ? "window" : "search", count, mb, secs, mb / secs);
+  }
+
+  public static void main(String[] args) throws IOException {
+    String[] files = (args.length > 0) ? args : defaultFiles;
+    for (String filename : files) {
+      boolean isGrib1;
+      try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+        isGrib1 = !Grib2RecordScanner.isValidFile(raf);
+        if (isGrib1 && !Grib1RecordScanner.isValidFile(raf)) {
+          System.out.printf("%n%s is not a GRIB file%n", filename);
+          continue;
+        }
+      }
+
+      System.out.printf("%n%s%n", filename);
+      for (int pass = 0; pass < 2; pass++) {
+        time(filename, false, isGrib1);
+        time(filename, true, isGrib1);
+      }
+    }
+    GribMessageFinder.setUseWindow(true);
+  }
+}
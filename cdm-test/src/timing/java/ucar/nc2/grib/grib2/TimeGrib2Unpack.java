@@ -0,0 +1,140 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.grib2;
+
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Time unpacking GRIB-2 simple (5.0) and complex (5.2, 5.3) packed records with Grib2DataReader2,
+ * against the one-value-at-a-time Grib2DataReader. The file is read into memory first, so only decoding is timed.
+ * <pre>
+ *   TimeGrib2Unpack [file.grib2...]
+ * </pre>
+ */
+public class TimeGrib2Unpack {
+  static private final String[] defaultFiles = {
+          TestDir.cdmUnitTestDir + "tds/ncep/GFS_Global_onedeg_20100913_0000.grib2",
+          TestDir.cdmUnitTestDir + "tds/ncep/DGEX_Alaska_12km_20100524_0000.grib2",
+          TestDir.cdmUnitTestDir + "grid/grib/grib2/test/NAM_CONUS_12km_20060305_1200.grib2",
+          TestDir.cdmUnitTestDir + "formats/grib2/08Aug08.12z.cras45_NA.grib2",
+  };
+
+  static private Map<Integer, List<Grib2Record>> scan(RandomAccessFile raf) throws IOException {
+    Map<Integer, List<Grib2Record>> result = new TreeMap<>();
+    Grib2RecordScanner scan = new Grib2RecordScanner(raf);
+    while (scan.hasNext()) {
+      Grib2Record gr = scan.next();
+      int template = gr.getDataRepresentationSection().getDataTemplate();
+      if (template == 0 || template == 2 || template == 3)
+        result.computeIfAbsent(template, k -> new ArrayList<>()).add(gr);
+    }
+    return result;
+  }
+
+  static private float[] readOld(RandomAccessFile raf, Grib2Record gr) throws IOException {
+    Grib2SectionDataRepresentation drs = gr.getDataRepresentationSection();
+    Grib2SectionData ds = gr.getDataSection();
+    Grib2DataReader reader = new Grib2DataReader(drs.getDataTemplate(), gr.getGDSsection().getNumberPoints(), drs.getDataPoints(),
+            gr.getScanMode(), gr.getGDS().getNxRaw(), ds.getStartingPosition(), ds.getMsgLength());
+    return reader.getData(raf, gr.getBitmapSection().getBitmap(raf), drs.getDrs(raf));
+  }
+
+  static private float[] readNew(RandomAccessFile raf, Grib2Record gr, float[] dst) throws IOException {
+    Grib2SectionDataRepresentation drs = gr.getDataRepresentationSection();
+    Grib2SectionData ds = gr.getDataSection();
+    Grib2DataReader2 reader = new Grib2DataReader2(drs.getDataTemplate(), gr.getGDSsection().getNumberPoints(), drs.getDataPoints(),
+            gr.getScanMode(), gr.getGDS().getNxRaw(), ds.getStartingPosition(), ds.getMsgLength());
+    return reader.getData(raf, gr.getBitmapSection(), drs.getDrs(raf), dst, 0);
+  }
+
+  static private void time(String filename) throws IOException {
+    byte[] bytes;
+    try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+      bytes = new byte[(int) raf.length()];
+      raf.readFully(bytes);
+    }
+
+    System.out.printf("%n%s%n", filename);
+    try (RandomAccessFile raf = new InMemoryRandomAccessFile(filename, bytes)) {
+      for (Map.Entry<Integer, List<Grib2Record>> entry : scan(raf).entrySet()) {
+        List<Grib2Record> records = entry.getValue();
+        long packedBytes = 0;
+        int maxPoints = 0;
+        for (Grib2Record gr : records) {
+          packedBytes += gr.getDataSection().getMsgLength();
+          maxPoints = Math.max(maxPoints, gr.getGDSsection().getNumberPoints());
+        }
+
+        // check they agree, and warm up
+        float[] dst = new float[maxPoints];
+        int ndiff = 0;
+        for (Grib2Record gr : records) {
+          float[] expect = readOld(raf, gr);
+          float[] data = readNew(raf, gr, dst);
+          for (int i = 0; i < expect.length; i++)
+            if (Float.floatToIntBits(expect[i]) != Float.floatToIntBits(data[i])) ndiff++;
+        }
+
+        long bestOld = Long.MAX_VALUE, bestNew = Long.MAX_VALUE;
+        long npoints = 0;
+        for (int trial = 0; trial < 5; trial++) {
+          long start = System.nanoTime();
+          for (Grib2Record gr : records)
+            npoints += readOld(raf, gr).length;
+          bestOld = Math.min(bestOld, System.nanoTime() - start);
+
+          start = System.nanoTime();
+          for (Grib2Record gr : records)
+            readNew(raf, gr, dst);
+          bestNew = Math.min(bestNew, System.nanoTime() - start);
+        }
+        npoints /= 5;
+
+        double mbytes = packedBytes / 1.0e6;
+        System.out.printf(" DRS 5.%d: %4d records %8.1f Mbytes packed %10d points; Grib2DataReader %8.1f Mbytes/sec, Grib2DataReader2 %8.1f Mbytes/sec; %d values differ%n",
+                entry.getKey(), records.size(), mbytes, npoints, mbytes / (bestOld * 1.0e-9), mbytes / (bestNew * 1.0e-9), ndiff);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    String[] files = (args.length > 0) ? args : defaultFiles;
+    for (String filename : files)
+      time(filename);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+
+/**
+ * Time reading all the data in a netCDF-4 / HDF5 file with many compressed chunks,
+ * decompressing on the calling thread vs on a pool of threads.
+ * <pre>
+ *   TimeH5chunkRead file.nc4 [varName] [nthreads...]
+ * </pre>
+ */
+public class TimeH5chunkRead {
+
+  static private long readAll(String filename, String varName) throws IOException {
+    long nbytes = 0;
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (varName != null && !v.getShortName().equals(varName)) continue;
+        Array data = v.read();
+        nbytes += data.getSizeBytes();
+      }
+    }
+    return nbytes;
+  }
+
+  static private void time(String filename, String varName, int nthreads, int ntrials) throws IOException {
+    H5iosp.setChunkParallelism(nthreads, 0);
+    readAll(filename, varName); // warm up
+
+    long best = Long.MAX_VALUE;
+    long nbytes = 0;
+    for (int i = 0; i < ntrials; i++) {
+      long start = System.nanoTime();
+      nbytes = readAll(filename, varName);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    double secs = best * 1.0e-9;
+    System.out.printf("nthreads=%2d read %d Mbytes in %6.3f secs = %8.1f Mbytes/sec%n", nthreads, nbytes / 1000 / 1000, secs,
+            nbytes / 1.0e6 / secs);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.out.printf("usage: TimeH5chunkRead file.nc4 [varName] [nthreads...]%n");
+      return;
+    }
+    String filename = args[0];
+    String varName = (args.length > 1 && !args[1].matches("\\d+")) ? args[1] : null;
+    int first = (varName == null) ? 1 : 2;
+
+    int[] nthreads = (args.length > first) ? new int[args.length - first] : new int[]{1, 2, 4, 8};
+    for (int i = first; i < args.length; i++)
+      nthreads[i - first] = Integer.parseInt(args[i]);
+
+    for (int n : nthreads)
+      time(filename, varName, n, 5);
+    H5iosp.setChunkParallelism(0, 0);
+  }
+}
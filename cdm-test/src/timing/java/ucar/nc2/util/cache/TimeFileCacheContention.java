@@ -0,0 +1,225 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.CancelTask;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Contention benchmark for the FileCacheIF implementations, in the style of a JMH throughput benchmark:
+ * for each cache, run warmup iterations then measurement iterations of a fixed duration, with many threads
+ * doing acquire / close on a skewed set of more files than the cache holds.
+ * Reports throughput (mean and stddev over iterations) and the 50th, 99th and 99.9th percentile latency of one acquire/close.
+ * <pre>
+ *   TimeFileCacheContention [nthreads] [nfiles] [cacheSize]
+ * </pre>
+ */
+public class TimeFileCacheContention {
+  static int warmupIterations = 3;
+  static int measureIterations = 5;
+  static int iterationSecs = 2;
+  static long openNanos = 50 * 1000; // simulated cost of opening a file
+
+  static class BenchFile implements FileCacheable {
+    final String location;
+    FileCacheIF cache;
+
+    BenchFile(String location) {
+      this.location = location;
+    }
+
+    public String getLocation() {
+      return location;
+    }
+
+    public void close() throws IOException {
+      FileCacheIF c = cache;
+      if (c != null) c.release(this);
+    }
+
+    public long getLastModified() {
+      return 0;
+    }
+
+    public void setFileCache(FileCacheIF fileCache) {
+      this.cache = fileCache;
+    }
+
+    public void release() throws IOException {
+    }
+
+    public void reacquire() throws IOException {
+    }
+  }
+
+  static class BenchFactory implements FileFactory {
+    public FileCacheable open(DatasetUrl location, int buffer_size, CancelTask cancelTask, Object iospMessage) throws IOException {
+      long end = System.nanoTime() + openNanos;
+      while (System.nanoTime() < end) ; // spin
+      return new BenchFile(location.trueurl);
+    }
+  }
+
+  // a skewed choice of files: a few are hot, most are cold
+  static String[] makeWorkload(int nfiles, int n, long seed) {
+    String[] names = new String[nfiles];
+    for (int i = 0; i < nfiles; i++) names[i] = "/data/file" + i + ".nc";
+    Random r = new Random(seed);
+    String[] result = new String[n];
+    for (int i = 0; i < n; i++) {
+      double u = r.nextDouble();
+      result[i] = names[(int) (nfiles * u * u * u)];
+    }
+    return result;
+  }
+
+  static private class Result {
+    long ops;
+    long[] latencies; // nanos, one sample per 16 ops
+    int nlat;
+  }
+
+  static Result runIteration(FileCacheIF cache, int nthreads, int nfiles) throws InterruptedException {
+    BenchFactory factory = new BenchFactory();
+    AtomicBoolean stop = new AtomicBoolean(false);
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(nthreads);
+    Result[] results = new Result[nthreads];
+
+    for (int t = 0; t < nthreads; t++) {
+      final int tno = t;
+      Thread thread = new Thread(() -> {
+        Result res = new Result();
+        res.latencies = new long[1 << 16];
+        String[] workload = makeWorkload(nfiles, 1 << 16, tno);
+        DatasetUrl[] durls = new DatasetUrl[workload.length];
+        for (int i = 0; i < workload.length; i++) durls[i] = new DatasetUrl(null, workload[i]);
+        try {
+          start.await();
+          int i = 0;
+          while (!stop.get()) {
+            DatasetUrl durl = durls[i & (durls.length - 1)];
+            boolean sample = (i & 15) == 0;
+            long begin = sample ? System.nanoTime() : 0;
+            FileCacheable f = cache.acquire(factory, durl);
+            f.close();
+            if (sample && res.nlat < res.latencies.length)
+              res.latencies[res.nlat++] = System.nanoTime() - begin;
+            i++;
+          }
+          res.ops = i;
+        } catch (Exception e) {
+          e.printStackTrace();
+        } finally {
+          results[tno] = res;
+          done.countDown();
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    start.countDown();
+    TimeUnit.SECONDS.sleep(iterationSecs);
+    stop.set(true);
+    done.await();
+
+    Result total = new Result();
+    int nlat = 0;
+    for (Result res : results) nlat += res.nlat;
+    total.latencies = new long[nlat];
+    for (Result res : results) {
+      total.ops += res.ops;
+      System.arraycopy(res.latencies, 0, total.latencies, total.nlat, res.nlat);
+      total.nlat += res.nlat;
+    }
+    return total;
+  }
+
+  static void bench(String name, Supplier<FileCacheIF> makeCache, int nthreads, int nfiles) throws InterruptedException {
+    FileCacheIF cache = makeCache.get();
+    for (int i = 0; i < warmupIterations; i++)
+      runIteration(cache, nthreads, nfiles);
+
+    double[] opsPerSec = new double[measureIterations];
+    long[] allLatencies = new long[0];
+    for (int i = 0; i < measureIterations; i++) {
+      Result res = runIteration(cache, nthreads, nfiles);
+      opsPerSec[i] = res.ops / (double) iterationSecs;
+      int n = allLatencies.length;
+      allLatencies = Arrays.copyOf(allLatencies, n + res.nlat);
+      System.arraycopy(res.latencies, 0, allLatencies, n, res.nlat);
+    }
+    Arrays.sort(allLatencies);
+
+    double mean = Arrays.stream(opsPerSec).average().orElse(0);
+    double var = Arrays.stream(opsPerSec).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, measureIterations - 1);
+    System.out.printf("%-18s %12.0f ops/s +- %10.0f   p50= %8.1f us  p99= %8.1f us  p99.9= %9.1f us%n", name, mean, Math.sqrt(var),
+            percentile(allLatencies, .50), percentile(allLatencies, .99), percentile(allLatencies, .999));
+
+    Formatter f = new Formatter();
+    cache.showStats(f);
+    System.out.printf("%s", f);
+    cache.clearCache(true);
+  }
+
+  static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    return sorted[(int) Math.min(sorted.length - 1, p * sorted.length)] / 1000.0;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int nthreads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int nfiles = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+    int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    int min = cacheSize * 4 / 5;
+    System.out.printf("TimeFileCacheContention nthreads=%d nfiles=%d cacheSize=%d; %d x %d sec iterations%n",
+            nthreads, nfiles, cacheSize, measureIterations, iterationSecs);
+
+    bench("FileCache", () -> new FileCache("FileCache", min, cacheSize, -1, 1), nthreads, nfiles);
+    bench("FileCacheARC", () -> new FileCacheARC("FileCacheARC", min, cacheSize, -1, 1), nthreads, nfiles);
+    bench("FileCacheGuava", () -> new FileCacheGuava("FileCacheGuava", cacheSize), nthreads, nfiles);
+    bench("FileCacheSharded", () -> new FileCacheSharded("FileCacheSharded", min, cacheSize, -1, 1), nthreads, nfiles);
+
+    FileCache.shutdown();
+  }
+}
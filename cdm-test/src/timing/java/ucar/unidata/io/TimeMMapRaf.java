@@ -0,0 +1,117 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package ucar.unidata.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compare buffered RandomAccessFile against MMapRandomAccessFile, for sequential and random chunk reads.
+ * Usage: TimeMMapRaf [file] ; if no file is given, a 3 Gbyte scratch file is made in java.io.tmpdir.
+ */
+public class TimeMMapRaf {
+  static final int chunkSize = 64 * 1000;
+  static final int nrandom = 20 * 1000;
+
+  interface RafMaker {
+    RandomAccessFile open(String filename) throws IOException;
+  }
+
+  static void timeSequential(String what, RafMaker maker, String filename) throws IOException {
+    byte[] chunk = new byte[chunkSize];
+    long start = System.nanoTime();
+    long total = 0;
+    try (RandomAccessFile raf = maker.open(filename)) {
+      long len = raf.length();
+      while (total < len) {
+        int n = (int) Math.min(chunkSize, len - total);
+        raf.readFully(chunk, 0, n);
+        total += n;
+      }
+    }
+    report(what + " sequential", total, start);
+  }
+
+  static void timeRandom(String what, RafMaker maker, String filename) throws IOException {
+    byte[] chunk = new byte[chunkSize];
+    Random r = new Random(1234);
+    long start = System.nanoTime();
+    long total = 0;
+    try (RandomAccessFile raf = maker.open(filename)) {
+      long maxPos = raf.length() - chunkSize;
+      for (int i = 0; i < nrandom; i++) {
+        long pos = (long) (r.nextDouble() * maxPos);
+        raf.seek(pos);
+        raf.readFully(chunk);
+        total += chunkSize;
+      }
+    }
+    report(what + " random    ", total, start);
+  }
+
+  static void report(String what, long nbytes, long startNanos) {
+    double secs = (System.nanoTime() - startNanos) * 1.0e-9;
+    double mb = nbytes * 1.0e-6;
+    System.out.printf("%s: %8.1f Mbytes in %6.3f secs = %8.1f MB/sec%n", what, mb, secs, mb / secs);
+  }
+
+  static File makeScratchFile(long size) throws IOException {
+    File f = File.createTempFile("TimeMMapRaf", ".dat");
+    f.deleteOnExit();
+    byte[] chunk = new byte[1000 * 1000];
+    new Random(1).nextBytes(chunk);
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      for (long done = 0; done < size; done += chunk.length)
+        out.write(chunk);
+    }
+    return f;
+  }
+
+  public static void main(String[] args) throws IOException {
+    String filename = (args.length > 0) ? args[0] : makeScratchFile(3000L * 1000 * 1000).getPath();
+    System.out.printf("TimeMMapRaf %s length = %d%n", filename, new File(filename).length());
+
+    RafMaker buffered = f -> new RandomAccessFile(f, "r");
+    RafMaker mapped = f -> new MMapRandomAccessFile(f, "r");
+
+    for (int i = 0; i < 2; i++) {  // second pass has a warm OS page cache
+      timeSequential("buffered", buffered, filename);
+      timeSequential("mmap    ", mapped, filename);
+      timeRandom("buffered", buffered, filename);
+      timeRandom("mmap    ", mapped, filename);
+    }
+  }
+}
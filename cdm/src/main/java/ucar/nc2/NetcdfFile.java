@@ -51,7 +51,9 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Formatter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.StringTokenizer;
 import java.util.zip.GZIPInputStream;
@@ -69,6 +71,7 @@ import ucar.nc2.constants.CDM;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.iosp.IospHelper;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.iosp.netcdf3.N3header;
 import ucar.nc2.iosp.netcdf3.N3iosp;
 import ucar.nc2.iosp.netcdf3.SPFactory;
@@ -139,6 +142,19 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
 
   static private boolean userLoads = false;
 
+  // IOSP dispatch: read the start of the file once, and only call isValidFile() on IOSPs whose magic numbers match
+  static private final int MAGIC_PREFIX_SIZE = 4096;
+  static private boolean useMagicIndex = true;
+
+  // remember which IOSP opened each file, so reopening (eg from the FileCache) doesnt have to probe again
+  static private final int MAX_IOSP_MATCHES = 1000;
+  static private final Map<String, IospMatch> iospMatches = Collections.synchronizedMap(
+          new LinkedHashMap<String, IospMatch>(100, .75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, IospMatch> eldest) {
+              return size() > MAX_IOSP_MATCHES;
+            }
+          });
+
   // IOSPs are loaded by reflection
   static {
     // Make sure RC gets loaded
@@ -348,6 +364,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
     if (userLoads && !last)
       registeredProviders.add(0, spi);  // put user stuff first
     else registeredProviders.add(spi);
+    iospMatches.clear(); // the new IOSP may take precedence over the one that opened a file before
   }
 
   /**
@@ -374,6 +391,14 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
     N3header.disallowFileTruncation = debugFlag.isSet("NetcdfFile/disallowFileTruncation");
     N3header.debugHeaderSize = debugFlag.isSet("NetcdfFile/debugHeaderSize");
     showRequest = debugFlag.isSet("NetcdfFile/showRequest");
+    useMagicIndex = !debugFlag.isSet("NetcdfFile/noMagicIndex");
+  }
+
+  /**
+   * Forget which IOSP opened each file, so that the next open() of any file probes all IOSPs again.
+   */
+  static public void clearIospMatches() {
+    iospMatches.clear();
   }
 
   /**
@@ -492,14 +517,82 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
           return true;
         }
       }
-      for (IOServiceProvider registeredSpi : registeredProviders) {
-        if (registeredSpi.isValidFile(raf))
-          return true;
-      }
+      if (findRegisteredProvider(raf) != null)
+        return true;
     }
     return false;
   }
 
+  /**
+   * Find the first registered IOSP that can open the file.
+   * IOSPs that declare magic numbers are only asked if the start of the file matches one of them.
+   * If none of the candidates can open it, the skipped IOSPs are asked anyway, in case a declaration is wrong.
+   *
+   * @param raf the file
+   * @return the registered IOSP, or null if none can open the file
+   * @throws IOException on read error
+   */
+  private static IOServiceProvider findRegisteredProvider(ucar.unidata.io.RandomAccessFile raf) throws IOException {
+    long fileLength = raf.length();
+    byte[] prefix = null;
+    if (useMagicIndex) {
+      prefix = new byte[(int) Math.min(fileLength, MAGIC_PREFIX_SIZE)];
+      raf.seek(0);
+      raf.readFully(prefix);
+    }
+
+    List<IOServiceProvider> skipped = null;
+    for (IOServiceProvider registeredSpi : registeredProviders) {
+      if (prefix != null && !MagicNumber.matchesAny(registeredSpi.getMagicNumbers(), prefix, fileLength)) {
+        if (skipped == null) skipped = new ArrayList<>();
+        skipped.add(registeredSpi);
+        continue;
+      }
+      if (debugSPI) log.info(" try iosp = {}", registeredSpi.getClass().getName());
+      if (registeredSpi.isValidFile(raf))
+        return registeredSpi;
+    }
+
+    // fall back to the ones we skipped
+    if (skipped != null) {
+      for (IOServiceProvider registeredSpi : skipped) {
+        if (debugSPI) log.info(" try skipped iosp = {}", registeredSpi.getClass().getName());
+        if (registeredSpi.isValidFile(raf)) {
+          log.warn("IOSP {} opens {} but its magic numbers dont match", registeredSpi.getClass().getName(), raf.getLocation());
+          return registeredSpi;
+        }
+      }
+    }
+    return null;
+  }
+
+  // need a new instance for thread safety
+  private static IOServiceProvider makeServiceProvider(Class c) throws IOException {
+    try {
+      return (IOServiceProvider) c.newInstance();
+    } catch (InstantiationException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
+    } catch (IllegalAccessException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
+    }
+  }
+
+  // the IOSP that last opened a file, valid as long as the file has not changed
+  private static class IospMatch {
+    final Class iospClass;
+    final long lastModified, length;
+
+    IospMatch(Class iospClass, long lastModified, long length) {
+      this.iospClass = iospClass;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    boolean isValid(long lastModified, long length) {
+      return this.lastModified == lastModified && this.length == length;
+    }
+  }
+
   /**
    * Open an existing file (read only), specifying which IOSP is to be used.
    *
@@ -813,8 +906,26 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
     IOServiceProvider spi = null;
     if (debugSPI) log.info("NetcdfFile try to open = {}", location);
 
+    // if we have opened this file before, and it hasnt changed, use the same IOSP without probing
+    String matchKey = (location != null) ? location : raf.getLocation();
+    long lastModified = raf.getLastModified();
+    long length = raf.length();
+    IospMatch match = (matchKey == null) ? null : iospMatches.get(matchKey);
+    if (match != null) {
+      if (match.isValid(lastModified, length)) {
+        if (debugSPI) log.info(" reuse iosp = {}", match.iospClass.getName());
+        spi = makeServiceProvider(match.iospClass);
+        raf.seek(0);
+      } else {
+        iospMatches.remove(matchKey);
+      }
+    }
+
     // avoid opening file more than once, so pass around the raf.
-    if (N3header.isValidFile(raf)) {
+    if (spi != null) {
+      // found it above
+
+    } else if (N3header.isValidFile(raf)) {
       spi = SPFactory.getServiceProvider();
 
       //} else if (H5header.isValidFile(raf)) {
@@ -825,35 +936,15 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
       // look for dynamically loaded IOSPs
       for (IOServiceProvider currentSpi : ServiceLoader.load(IOServiceProvider.class)) {
         if (currentSpi.isValidFile(raf)) {
-          Class c = currentSpi.getClass();
-          try {
-            spi = (IOServiceProvider) c.newInstance();
-          } catch (InstantiationException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
-          } catch (IllegalAccessException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
-          }
+          spi = makeServiceProvider(currentSpi.getClass());
           break;
         }
       }
 
       // look for registered providers
-      for (IOServiceProvider registeredSpi : registeredProviders) {
-        if (debugSPI) log.info(" try iosp = {}", registeredSpi.getClass().getName());
-
-        if (registeredSpi.isValidFile(raf)) {
-          // need a new instance for thread safety
-          Class c = registeredSpi.getClass();
-          try {
-            spi = (IOServiceProvider) c.newInstance();
-          } catch (InstantiationException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
-          } catch (IllegalAccessException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
-          }
-          break;
-        }
-      }
+      IOServiceProvider registeredSpi = findRegisteredProvider(raf);
+      if (registeredSpi != null)
+        spi = makeServiceProvider(registeredSpi.getClass());
     }
 
     if (spi == null) {
@@ -868,7 +959,17 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
     if (log.isDebugEnabled())
       log.debug("Using IOSP {}", spi.getClass().getName());
 
-    NetcdfFile result = new NetcdfFile(spi, raf, location, cancelTask);
+    NetcdfFile result;
+    try {
+      result = new NetcdfFile(spi, raf, location, cancelTask);
+    } catch (IOException | RuntimeException e) {
+      if (match != null) iospMatches.remove(matchKey);
+      throw e;
+    }
+
+    // lastModified == 0 means we cant tell if the file has changed
+    if (matchKey != null && lastModified != 0)
+      iospMatches.put(matchKey, new IospMatch(spi.getClass(), lastModified, length));
 
     // send iospMessage after iosp is opened
     if (iospMessage != null)
@@ -0,0 +1,165 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.dataset;
+
+import ucar.ma2.ArrayDouble;
+
+import java.util.Arrays;
+
+/**
+ * A 2D kd-tree over the cell centers of a curvilinear lat/lon grid, used to find the cell nearest to a point
+ * without searching the whole grid. The centers are the mean of the four cell corners, in the same
+ * lat/lon space as the edges, so the caller can check the candidate cell with its own containment test.
+ * The tree is stored implicitly: each node is the median of a subrange of an index array,
+ * split alternately on latitude and longitude.
+ * Immutable once built.
+ */
+public class LatLonCellIndex {
+  private final int ncols;
+  private final double[] lat, lon; // cell centers, by row * ncols + col
+  private final int[] tree;        // cell indices in tree order
+
+  /**
+   * Constructor.
+   *
+   * @param latEdge lat of the cell corners, shape (nrows+1, ncols+1)
+   * @param lonEdge lon of the cell corners, shape (nrows+1, ncols+1)
+   */
+  public LatLonCellIndex(ArrayDouble.D2 latEdge, ArrayDouble.D2 lonEdge) {
+    int[] shape = latEdge.getShape();
+    int nrows = shape[0] - 1;
+    ncols = shape[1] - 1;
+    int n = nrows * ncols;
+    lat = new double[n];
+    lon = new double[n];
+
+    int count = 0;
+    int[] indices = new int[n];
+    for (int row = 0; row < nrows; row++) {
+      for (int col = 0; col < ncols; col++) {
+        int idx = row * ncols + col;
+        lat[idx] = (latEdge.get(row, col) + latEdge.get(row, col + 1) + latEdge.get(row + 1, col) + latEdge.get(row + 1, col + 1)) / 4;
+        lon[idx] = (lonEdge.get(row, col) + lonEdge.get(row, col + 1) + lonEdge.get(row + 1, col) + lonEdge.get(row + 1, col + 1)) / 4;
+        if (!Double.isNaN(lat[idx]) && !Double.isNaN(lon[idx]))  // missing corners never match
+          indices[count++] = idx;
+      }
+    }
+    tree = Arrays.copyOf(indices, count);
+    build(0, count, true);
+  }
+
+  private void build(int lo, int hi, boolean splitLat) {
+    if (hi - lo < 2) return;
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, splitLat ? lat : lon);
+    build(lo, mid, !splitLat);
+    build(mid + 1, hi, !splitLat);
+  }
+
+  // partially sort tree[lo..hi] so that tree[k] has the k-th smallest key, smaller ones before it, larger ones after
+  private void select(int lo, int hi, int k, double[] key) {
+    while (lo < hi) {
+      double pivot = key[tree[(lo + hi) >>> 1]];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (key[tree[i]] < pivot) i++;
+        while (key[tree[j]] > pivot) j--;
+        if (i <= j) {
+          int tmp = tree[i];
+          tree[i] = tree[j];
+          tree[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) hi = j;
+      else if (k >= i) lo = i;
+      else return;
+    }
+  }
+
+  /**
+   * Find the cell whose center is closest to the given point, using the planar metric (lat-lat0)**2 + (lon-lon0)**2.
+   * Longitudes are also compared at lon0 +/- 360, so cells on the other side of a seam are found.
+   *
+   * @param wantLat   lat of point
+   * @param wantLon   lon of point, in the same space as the edges
+   * @param rectIndex return (row,col) index here. may not be null
+   * @return false if there are no cells with a location
+   */
+  public boolean findClosestCell(double wantLat, double wantLon, int[] rectIndex) {
+    if (tree.length == 0) return false;
+    Nearest nearest = new Nearest(wantLat);
+    nearest.search(0, tree.length, true, wantLon);
+    nearest.search(0, tree.length, true, wantLon - 360.0);
+    nearest.search(0, tree.length, true, wantLon + 360.0);
+    rectIndex[0] = nearest.best / ncols;
+    rectIndex[1] = nearest.best % ncols;
+    return true;
+  }
+
+  private class Nearest {
+    final double lat0;
+    int best = -1;
+    double bestDist = Double.MAX_VALUE;
+
+    Nearest(double lat0) {
+      this.lat0 = lat0;
+    }
+
+    void search(int lo, int hi, boolean splitLat, double lon0) {
+      if (lo >= hi) return;
+      int mid = (lo + hi) >>> 1;
+      int idx = tree[mid];
+
+      double dy = lat0 - lat[idx];
+      double dx = lon0 - lon[idx];
+      double dist = dy * dy + dx * dx;
+      if (dist < bestDist || (dist == bestDist && idx < best)) { // ties go to the first cell, as a linear scan would
+        bestDist = dist;
+        best = idx;
+      }
+
+      double diff = splitLat ? dy : dx;
+      // search the side the point is on first
+      boolean lowFirst = diff < 0;
+      if (lowFirst) search(lo, mid, !splitLat, lon0);
+      else search(mid + 1, hi, !splitLat, lon0);
+
+      if (diff * diff <= bestDist) {
+        if (lowFirst) search(mid + 1, hi, !splitLat, lon0);
+        else search(lo, mid, !splitLat, lon0);
+      }
+    }
+  }
+}
@@ -35,6 +35,7 @@ package ucar.nc2.dt.grid;
 
 import ucar.nc2.dataset.CoordinateAxis2D;
 import ucar.nc2.dataset.CoordinateAxis;
+import ucar.nc2.dataset.LatLonCellIndex;
 import ucar.nc2.dt.GridCoordSystem;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.MAMath;
@@ -61,6 +62,7 @@ public class GridCoordinate2D {
   private final int nrows, ncols;
   private ArrayDouble.D2 latEdge, lonEdge;
   private MAMath.MinMax latMinMax, lonMinMax;
+  private volatile LatLonCellIndex index; // set last in findBounds()
 
   GridCoordinate2D(CoordinateAxis2D latCoord, CoordinateAxis2D lonCoord) {
     this.latCoord = latCoord;
@@ -75,17 +77,23 @@ public class GridCoordinate2D {
   }
 
   private void findBounds() {
-    if (lonMinMax != null) return;
+    if (index != null) return;
 
-    lonEdge = lonCoord.getEdges();
-    latEdge = latCoord.getEdges();
+    synchronized (this) {
+      if (index != null) return;
 
-    // assume missing values have been converted to NaNs
-    latMinMax = MAMath.getMinMax(latEdge);
-    lonMinMax = MAMath.getMinMax(lonEdge);
+      lonEdge = lonCoord.getEdges();
+      latEdge = latCoord.getEdges();
 
-    if (debug)
-      System.out.printf("Bounds (%d %d): lat= (%f,%f) lon = (%f,%f) %n", nrows, ncols, latMinMax.min, latMinMax.max, lonMinMax.min, lonMinMax.max);
+      // assume missing values have been converted to NaNs
+      latMinMax = MAMath.getMinMax(latEdge);
+      lonMinMax = MAMath.getMinMax(lonEdge);
+
+      if (debug)
+        System.out.printf("Bounds (%d %d): lat= (%f,%f) lon = (%f,%f) %n", nrows, ncols, latMinMax.min, latMinMax.max, lonMinMax.min, lonMinMax.max);
+
+      index = new LatLonCellIndex(latEdge, lonEdge);
+    }
   }
 
   // brute force
@@ -134,15 +142,15 @@ public class GridCoordinate2D {
     if (wantLon < lonMinMax.min) return false;
     if (wantLon > lonMinMax.max) return false;
 
-    double gradientLat = (latMinMax.max - latMinMax.min) / nrows;
-    double gradientLon = (lonMinMax.max - lonMinMax.min) / ncols;
-
-    double diffLat = wantLat - latMinMax.min;
-    double diffLon = wantLon - lonMinMax.min;
-
-    // initial guess
-    rectIndex[0] = (int) Math.round(diffLat / gradientLat);  // row
-    rectIndex[1] =(int) Math.round(diffLon / gradientLon);  // col
+    // initial guess is the cell with the closest center, almost always the one we want or a neighbor of it
+    if (!index.findClosestCell(wantLat, wantLon, rectIndex))
+      return false;
+    int guessRow = rectIndex[0];
+    int guessCol = rectIndex[1];
+    if (contains(wantLat, wantLon, rectIndex) || box9(wantLat, wantLon, rectIndex))
+      return true;
+    rectIndex[0] = guessRow;
+    rectIndex[1] = guessCol;
 
     int count = 0;
     while (true) {
@@ -0,0 +1,241 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft;
+
+import ucar.ma2.Array;
+import ucar.ma2.ArrayStructureMA;
+import ucar.ma2.DataType;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureMembers;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateUnit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A block of point observations, stored by column.
+ * The time and location coordinates are primitive arrays, and each data member is an Array whose outer dimension is
+ * the observation index. This avoids making a PointFeature, StructureData and CalendarDate for each observation.
+ * Producers add() the observations, then call finish() before handing the batch out.
+ */
+public class PointFeatureBatch {
+  static public final int DEFAULT_SIZE = 1000;
+
+  private final CalendarDateUnit timeUnit;
+  private final StructureMembers members;
+  private final List<StructureMembers.Member> columnMembers = new ArrayList<>();
+  private double[] obsTime, nomTime, lat, lon, alt;
+  private StructureData[] obsData; // whole observations, kept only when some members arent stored by column
+  private ArrayStructureMA arrayStructure; // lazy
+  private int size;
+
+  /**
+   * Constructor.
+   *
+   * @param timeUnit time unit of obsTime and nomTime
+   * @param proto    the members of each observation's StructureData; copied, not kept
+   * @param capacity maximum number of observations
+   */
+  public PointFeatureBatch(CalendarDateUnit timeUnit, StructureMembers proto, int capacity) {
+    this.timeUnit = timeUnit;
+    this.members = new StructureMembers(proto);
+    this.obsTime = new double[capacity];
+    this.nomTime = new double[capacity];
+    this.lat = new double[capacity];
+    this.lon = new double[capacity];
+    this.alt = new double[capacity];
+
+    for (StructureMembers.Member m : members.getMembers()) {
+      if (m.getDataType() == DataType.STRUCTURE || m.getDataType() == DataType.SEQUENCE || m.isVariableLength())
+        continue; // nested data isnt stored by column
+      m.setDataArray(Array.factory(m.getDataType(), columnShape(m, capacity)));
+      columnMembers.add(m);
+    }
+    if (columnMembers.size() < members.getMembers().size())
+      obsData = new StructureData[capacity];
+  }
+
+  private int[] columnShape(StructureMembers.Member m, int n) {
+    int[] mshape = m.getShape();
+    int[] shape = new int[mshape.length + 1];
+    shape[0] = n;
+    System.arraycopy(mshape, 0, shape, 1, mshape.length);
+    return shape;
+  }
+
+  /**
+   * Add an observation.
+   *
+   * @param obsTimeValue observation time, in timeUnit
+   * @param nomTimeValue nominal time, in timeUnit
+   * @param latValue     latitude
+   * @param lonValue     longitude
+   * @param altValue     altitude, may be NaN
+   * @param sdata        the observation data, must have the same members as proto
+   */
+  public void add(double obsTimeValue, double nomTimeValue, double latValue, double lonValue, double altValue,
+                  StructureData sdata) {
+    if (isFull()) throw new IllegalStateException("batch is full");
+
+    obsTime[size] = obsTimeValue;
+    nomTime[size] = nomTimeValue;
+    lat[size] = latValue;
+    lon[size] = lonValue;
+    alt[size] = altValue;
+
+    for (StructureMembers.Member m : columnMembers) {
+      int n = m.getSize();
+      Array.arraycopy(sdata.getArray(m.getName()), 0, m.getDataArray(), size * n, n);
+    }
+    if (obsData != null)
+      obsData[size] = sdata;
+    size++;
+  }
+
+  public boolean isFull() {
+    return size == obsTime.length;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Trim the columns to the number of observations added. Call this when done adding.
+   */
+  public void finish() {
+    if (size == obsTime.length) return;
+
+    obsTime = Arrays.copyOf(obsTime, size);
+    nomTime = Arrays.copyOf(nomTime, size);
+    lat = Arrays.copyOf(lat, size);
+    lon = Arrays.copyOf(lon, size);
+    alt = Arrays.copyOf(alt, size);
+    if (obsData != null)
+      obsData = Arrays.copyOf(obsData, size);
+
+    for (StructureMembers.Member m : columnMembers) {
+      Array trimmed = Array.factory(m.getDataType(), columnShape(m, size));
+      Array.arraycopy(m.getDataArray(), 0, trimmed, 0, size * m.getSize());
+      m.setDataArray(trimmed);
+    }
+  }
+
+  /////////////////////////////////////////////////////////
+
+  /**
+   * @return number of observations
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public CalendarDateUnit getTimeUnit() {
+    return timeUnit;
+  }
+
+  public double[] getObservationTime() {
+    return obsTime;
+  }
+
+  public double[] getNominalTime() {
+    return nomTime;
+  }
+
+  public double[] getLatitude() {
+    return lat;
+  }
+
+  public double[] getLongitude() {
+    return lon;
+  }
+
+  public double[] getAltitude() {
+    return alt;
+  }
+
+  public CalendarDate getObservationTimeAsCalendarDate(int index) {
+    return timeUnit.makeCalendarDate(obsTime[index]);
+  }
+
+  /**
+   * The members that are stored as columns. Structure, Sequence and variable length members are left out.
+   *
+   * @return members stored as columns
+   */
+  public List<StructureMembers.Member> getColumnMembers() {
+    return columnMembers;
+  }
+
+  /**
+   * Get the data for one member.
+   *
+   * @param memberName name of the member
+   * @return Array of shape [getSize(), member shape...], or null if not found or not stored as a column
+   */
+  public Array getColumn(String memberName) {
+    StructureMembers.Member m = members.findMember(memberName);
+    return (m == null || !columnMembers.contains(m)) ? null : m.getDataArray();
+  }
+
+  /**
+   * Get the data of one observation, with all of its members, including those not stored as columns.
+   *
+   * @param index observation index
+   * @return StructureData of the observation
+   */
+  public StructureData getStructureData(int index) {
+    if (obsData != null)
+      return obsData[index];
+    if (arrayStructure == null)
+      arrayStructure = getArrayStructure();
+    return arrayStructure.getStructureData(index);
+  }
+
+  /**
+   * Get the observations as an ArrayStructure, for code that wants StructureData.
+   * Only the column members are included.
+   *
+   * @return ArrayStructure backed by the columns
+   */
+  public ArrayStructureMA getArrayStructure() {
+    StructureMembers sm = new StructureMembers(members.getName());
+    for (StructureMembers.Member m : columnMembers) {
+      StructureMembers.Member copy = sm.addMember(m.getName(), m.getDescription(), m.getUnitsString(), m.getDataType(), m.getShape());
+      copy.setDataArray(m.getDataArray());
+    }
+    return new ArrayStructureMA(sm, new int[]{size});
+  }
+}
@@ -100,4 +100,15 @@ public interface PointFeatureCollection extends DsgFeatureCollection, Iterable<P
     */
    PointFeatureIterator getPointFeatureIterator() throws java.io.IOException;
 
+  /**
+   * Get an iterator over blocks of PointFeatures, stored by column.
+   * The default implementation copies from getPointFeatureIterator(); subclasses may do something better.
+   * @param batchSize maximum number of observations in each batch
+   * @return iterator over the PointFeatures of this collection, in batches
+   * @throws IOException on read error
+   */
+  default PointFeatureBatchIterator getPointFeatureBatchIterator(int batchSize) throws IOException {
+    return new ucar.nc2.ft.point.PointBatchIteratorAdapter(getPointFeatureIterator(), batchSize);
+  }
+
 }
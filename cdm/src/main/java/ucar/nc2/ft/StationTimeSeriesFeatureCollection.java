@@ -38,6 +38,8 @@ import java.util.List;
 import ucar.nc2.VariableSimpleIF;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.time.CalendarDateRange;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
 
 /**
@@ -73,6 +75,38 @@ public interface StationTimeSeriesFeatureCollection extends PointFeatureCC, Iter
   PointFeatureCollection flatten(LatLonRect llbbox, CalendarDateRange dateRange) throws IOException;
   StationFeature getStationFeature(PointFeature flatPointFeature) throws IOException; // for flattened point only
 
+  /**
+   * Find the station closest to the specified point.
+   * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2
+   * The default implementation looks at every station; StationTimeSeriesCollectionImpl uses a spatial index.
+   *
+   * @param pt find closest station to this point
+   * @return closest station, or null if there are no stations
+   * @throws IOException on read error
+   */
+  default StationFeature findClosestStation(LatLonPoint pt) throws IOException {
+    double lat = pt.getLatitude();
+    double lon = pt.getLongitude();
+    double cos = Math.cos(Math.toRadians(lat));
+    List<StationFeature> stations = getStationFeatures();
+    if (stations.isEmpty()) return null;
+    StationFeature min_station = stations.get(0);
+    double min_dist = Double.MAX_VALUE;
+
+    for (StationFeature s : stations) {
+      double lat1 = s.getLatitude();
+      double lon1 = LatLonPointImpl.lonNormal(s.getLongitude(), lon);
+      double dy = Math.toRadians(lat - lat1);
+      double dx = cos * Math.toRadians(lon - lon1);
+      double dist = dy * dy + dx * dx;
+      if (dist < min_dist) {
+        min_dist = dist;
+        min_station = s;
+      }
+    }
+    return min_station;
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   // deprecated
 
@@ -0,0 +1,105 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.ma2.StructureData;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureBatch;
+import ucar.nc2.ft.PointFeatureBatchIterator;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.unidata.geoloc.EarthLocation;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Make a PointFeatureBatchIterator out of a PointFeatureIterator, by copying each PointFeature into the batch.
+ * Use for collections that dont have a faster way to fill a batch.
+ */
+public class PointBatchIteratorAdapter implements PointFeatureBatchIterator {
+  private final PointFeatureIterator pointIter;
+  private final int batchSize;
+  private PointFeatureBatch batch; // hasNext must cache
+  private boolean finished;
+
+  public PointBatchIteratorAdapter(PointFeatureIterator pointIter, int batchSize) {
+    this.pointIter = pointIter;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (batch != null) return true;
+    if (finished) return false;
+
+    try {
+      while (pointIter.hasNext()) {
+        PointFeature pf = pointIter.next();
+        StructureData sdata = pf.getDataAll();
+        if (batch == null)
+          batch = new PointFeatureBatch(pf.getFeatureCollection().getTimeUnit(), sdata.getStructureMembers(), batchSize);
+
+        EarthLocation loc = pf.getLocation();
+        batch.add(pf.getObservationTime(), pf.getNominalTime(), loc.getLatitude(), loc.getLongitude(), loc.getAltitude(), sdata);
+        if (batch.isFull()) break;
+      }
+
+    } catch (IOException ioe) {
+      close();
+      throw new RuntimeException(ioe);
+    }
+
+    if (batch == null) {
+      close();
+      return false;
+    }
+    batch.finish();
+    return true;
+  }
+
+  @Override
+  public PointFeatureBatch next() {
+    if (!hasNext())
+      throw new NoSuchElementException("There are no more elements.");
+    PointFeatureBatch result = batch;
+    batch = null;
+    return result;
+  }
+
+  @Override
+  public void close() {
+    if (finished) return;
+    finished = true;
+    pointIter.close();
+  }
+}
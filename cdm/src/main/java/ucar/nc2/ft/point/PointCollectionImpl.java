@@ -37,6 +37,7 @@ import java.util.Iterator;
 import javax.annotation.Nonnull;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureBatchIterator;
 import ucar.nc2.ft.PointFeatureCollection;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.time.CalendarDateRange;
@@ -76,6 +77,29 @@ public abstract class PointCollectionImpl extends DsgCollectionImpl implements P
     }
   }
 
+  @Override
+  public PointFeatureBatchIterator getPointFeatureBatchIterator(int batchSize) throws IOException {
+    return getPointFeatureBatchIterator(batchSize, null, null);
+  }
+
+  /**
+   * Get an iterator over batches of the points in the bounding box and date range.
+   * Subclasses that can fill a batch without making PointFeatures should override this.
+   *
+   * @param batchSize   maximum number of observations in each batch
+   * @param filter_bb   only points in this bounding box, may be null
+   * @param filter_date only points in this date range, may be null
+   * @return iterator over batches
+   * @throws IOException on read error
+   */
+  protected PointFeatureBatchIterator getPointFeatureBatchIterator(int batchSize, LatLonRect filter_bb,
+                                                                   CalendarDateRange filter_date) throws IOException {
+    PointFeatureIterator iter = getPointFeatureIterator();
+    if (filter_bb != null || filter_date != null)
+      iter = new PointIteratorFiltered(iter, filter_bb, filter_date);
+    return new PointBatchIteratorAdapter(iter, batchSize);
+  }
+
   // for subsetting, the best we can do in general is to filter the original iterator.
   // subclasses may do something better
   protected static class PointCollectionSubset extends PointCollectionImpl {
@@ -94,6 +118,14 @@ public abstract class PointCollectionImpl extends DsgCollectionImpl implements P
     public PointFeatureIterator getPointFeatureIterator() throws IOException {
       return new PointIteratorFiltered(from.getPointFeatureIterator(), filter_bb, filter_date);
     }
+
+    @Override
+    protected PointFeatureBatchIterator getPointFeatureBatchIterator(int batchSize, LatLonRect bb,
+                                                                     CalendarDateRange dateRange) throws IOException {
+      if (bb != null || dateRange != null) // subset of a subset
+        return super.getPointFeatureBatchIterator(batchSize, bb, dateRange);
+      return from.getPointFeatureBatchIterator(batchSize, filter_bb, filter_date);
+    }
   }
 
   ///////////////////////////////////////////////////////////////////
@@ -1,17 +1,33 @@
 package ucar.nc2.ft.point;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import com.google.common.base.Preconditions;
+import ucar.ma2.ArrayStructureBB;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureMembers;
 import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.DsgFeatureCollection;
 import ucar.nc2.ft.FeatureDatasetFactoryManager;
 import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.NoFactoryFoundException;
 import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.remote.PointStream;
+import ucar.nc2.ft.point.remote.PointStreamProto;
 import ucar.nc2.units.DateUnit;
 
+import javax.annotation.Nonnull;
+
 /**
  *
  * @author cwardgar
@@ -20,27 +36,78 @@ import ucar.nc2.units.DateUnit;
 // This class ought to be a PointFeatureCollection, by extending PointCollectionImpl.
 // However, we do not have the timeUnit and altUnits that the constructor requires. Does it really need
 // that info? Can't it calculate it from one of its features? That interface may need to be re-thought.
+//
+// If maxBytesInMemory is set, the features in memory are written to a temporary file as a sorted run once they
+// reach that many (estimated) bytes, so large requests are not limited by the heap. Each feature in a run is the
+// station name followed by the PointStream protobuf encoding of the feature. The runs and whatever is still in memory
+// are merged when iterating, at most maxMergeRuns at a time: if there are more, consecutive runs are first merged into
+// longer runs, in as many passes as needed. The run files are deleted when the iteration finishes.
 public class SortingStationPointFeatureCache {
     public static final Comparator<StationPointFeature> stationNameComparator = (pointFeat1, pointFeat2) ->
             pointFeat1.getStation().getName().compareTo(pointFeat2.getStation().getName());
 
+    private static final int BUCKET_SIZE = 48;  // approx overhead of a LinkedList node, plus a TreeMap entry per bucket
+    private static final int DEFAULT_MAX_MERGE_RUNS = 64;
+
+    private final Comparator<StationPointFeature> comp;
     private final SortedMap<StationPointFeature, List<StationPointFeature>> inMemCache;
 
     private volatile StationFeatureCopyFactory stationFeatCopyFactory;
 
+    // Spilling to disk; only used if maxBytesInMemory > 0.
+    private final long maxBytesInMemory;
+    private final File tempDir;
+    private final int maxMergeRuns;
+    private long bytesInMemory;
+    private final List<File> runFiles = new ArrayList<>();
+    private final Map<String, StationFeature> runStations = new HashMap<>();
+    private StructureMembers runMembers;
+    private DsgFeatureCollection runDsg;
+
     public SortingStationPointFeatureCache() {
         this(stationNameComparator);
     }
 
     // We're going to init stationFeatCopyFactory using the first feat that's add()ed.
     public SortingStationPointFeatureCache(Comparator<StationPointFeature> comp) {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
+        this(comp, 0, null);
+    }
+
+    /**
+     * Sort using a bounded amount of memory.
+     *
+     * @param comp              sort order.
+     * @param maxBytesInMemory  when the features in memory reach approximately this many bytes, they're written to a
+     *                          sorted run in tempDir. If <= 0, everything is kept in memory.
+     * @param tempDir           directory for the run files. If null, the default temporary-file directory is used.
+     */
+    public SortingStationPointFeatureCache(Comparator<StationPointFeature> comp, long maxBytesInMemory, File tempDir) {
+        this(comp, maxBytesInMemory, tempDir, DEFAULT_MAX_MERGE_RUNS);
+    }
+
+    /**
+     * Sort using a bounded amount of memory, and a bounded number of open run files.
+     *
+     * @param comp              sort order.
+     * @param maxBytesInMemory  when the features in memory reach approximately this many bytes, they're written to a
+     *                          sorted run in tempDir. If <= 0, everything is kept in memory.
+     * @param tempDir           directory for the run files. If null, the default temporary-file directory is used.
+     * @param maxMergeRuns      the most runs merged at once, counting the features in memory as one. Must be >= 2.
+     */
+    public SortingStationPointFeatureCache(
+            Comparator<StationPointFeature> comp, long maxBytesInMemory, File tempDir, int maxMergeRuns) {
+        Preconditions.checkArgument(maxMergeRuns >= 2, "maxMergeRuns < 2");
+        this.comp = Preconditions.checkNotNull(comp, "comp == null");
+        this.inMemCache = new TreeMap<>(comp);
+        this.maxBytesInMemory = maxBytesInMemory;
+        this.tempDir = tempDir;
+        this.maxMergeRuns = maxMergeRuns;
         // stationFeatCopyFactory remains null.
     }
 
     public SortingStationPointFeatureCache(
             Comparator<StationPointFeature> comp, StationPointFeature proto, DateUnit dateUnit) throws IOException {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
+        this(comp);
 
         if (proto != null && dateUnit != null) {
             this.stationFeatCopyFactory = new StationFeatureCopyFactory(proto);
@@ -49,7 +116,8 @@ public class SortingStationPointFeatureCache {
 
     public void add(StationPointFeature feat) throws IOException {
         Preconditions.checkNotNull(feat, "feat == null");
-        StationPointFeature featCopy = getStationFeatureCopyFactory(feat).deepCopy(feat);
+        StationFeatureCopyFactory copyFactory = getStationFeatureCopyFactory(feat);
+        StationPointFeature featCopy = copyFactory.deepCopy(feat);
 
         List<StationPointFeature> bucket = inMemCache.get(featCopy);
         if (bucket == null) {
@@ -58,6 +126,91 @@ public class SortingStationPointFeatureCache {
         }
 
         bucket.add(featCopy);
+
+        if (maxBytesInMemory > 0) {
+            bytesInMemory += copyFactory.getSizeInBytes() + BUCKET_SIZE;
+            if (bytesInMemory >= maxBytesInMemory) {
+                writeRun();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of sorted runs that have been written to disk.
+     *
+     * @return the number of sorted runs that have been written to disk.
+     */
+    public int getNumRuns() {
+        return runFiles.size();
+    }
+
+    // Write the features in memory to a new run file, in sorted order, and clear them from memory.
+    private void writeRun() throws IOException {
+        if (inMemCache.isEmpty()) {
+            return;
+        }
+
+        File runFile = createRunFile();
+        runFiles.add(runFile);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)))) {
+            for (List<StationPointFeature> bucket : inMemCache.values()) {
+                for (StationPointFeature feat : bucket) {
+                    if (runDsg == null) {
+                        runDsg = feat.getFeatureCollection();
+                        runMembers = new StructureMembers(feat.getFeatureData().getStructureMembers());
+                        ArrayStructureBB.setOffsets(runMembers);
+                    }
+
+                    StationFeature station = feat.getStation();
+                    runStations.put(station.getName(), station);
+
+                    byte[] b = PointStream.encodePointFeature(feat).toByteArray();
+                    out.writeUTF(station.getName());
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            }
+        }
+
+        inMemCache.clear();
+        bytesInMemory = 0;
+    }
+
+    private File createRunFile() throws IOException {
+        File runFile = File.createTempFile("stationSort", ".run", tempDir);
+        runFile.deleteOnExit();
+        return runFile;
+    }
+
+    // Merge consecutive runs into longer ones, until the runs and the features in memory can be merged at once.
+    // Keeping the merged runs in their original order keeps the sort stable.
+    private void reduceRuns() throws IOException {
+        while (runFiles.size() + 1 > maxMergeRuns) {
+            List<File> merged = new ArrayList<>();
+            for (int start = 0; start < runFiles.size(); start += maxMergeRuns) {
+                List<File> group = runFiles.subList(start, Math.min(start + maxMergeRuns, runFiles.size()));
+                merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+            }
+            runFiles.clear();
+            runFiles.addAll(merged);
+        }
+    }
+
+    // Merge the runs into a new run file. The old run files are deleted as they are used up.
+    private File mergeRuns(List<File> group) throws IOException {
+        File runFile = createRunFile();
+        MergeIter merge = new MergeIter(group, null);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)))) {
+            merge.writeTo(out);
+        } catch (IOException e) {
+            merge.closeAll();
+            if (!runFile.delete()) {
+                runFile.deleteOnExit();
+            }
+            throw e;
+        }
+        return runFile;
     }
 
     public void addAll(File datasetFile) throws NoFactoryFoundException, IOException {
@@ -98,7 +251,12 @@ public class SortingStationPointFeatureCache {
 
     // TODO: Once this method is called, prohibit any further additions to cache.
     public PointFeatureIterator getPointFeatureIterator() throws IOException {
-        return new PointIteratorAdapter(new Iter());
+        if (runFiles.isEmpty()) {
+            return new PointIteratorAdapter(new Iter());
+        } else {
+            reduceRuns();
+            return new PointIteratorAdapter(new MergeIter(runFiles, new Iter()));
+        }
     }
 
     private class Iter implements Iterator<StationPointFeature> {
@@ -137,4 +295,176 @@ public class SortingStationPointFeatureCache {
             throw new UnsupportedOperationException("Operation not supported by this iterator.");
         }
     }
+
+    // Merges run files, and the features still in memory if memIter != null, which come after all the runs.
+    // Ties go to the earliest run, so the sort is stable, as it is for the in-memory buckets.
+    private class MergeIter implements Iterator<StationPointFeature> {
+        private final PriorityQueue<RunReader> queue;
+
+        public MergeIter(List<File> runs, Iterator<StationPointFeature> memIter) throws IOException {
+            this.queue = new PriorityQueue<>(runs.size() + 1, (r1, r2) -> {
+                int result = comp.compare(r1.current, r2.current);
+                return (result != 0) ? result : Integer.compare(r1.order, r2.order);
+            });
+
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    add(new RunReader(i, runs.get(i)));
+                }
+                if (memIter != null) {
+                    add(new RunReader(runs.size(), memIter));
+                }
+            } catch (IOException e) {
+                closeAll();
+                throw e;
+            }
+        }
+
+        private void add(RunReader reader) throws IOException {
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+        }
+
+        private void closeAll() {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            queue.clear();
+        }
+
+        // Write all the features, as they were read from the run files.
+        void writeTo(DataOutputStream out) throws IOException {
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                out.writeUTF(reader.stationName);
+                out.writeInt(reader.encoded.length);
+                out.write(reader.encoded);
+                add(reader);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {  // Method is idempotent.
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public StationPointFeature next() {
+            if (!hasNext()) {  // Don't rely on user to call this.
+                throw new NoSuchElementException("There are no more elements.");
+            }
+
+            RunReader reader = queue.poll();
+            StationPointFeature result = reader.current;
+            try {
+                add(reader);
+            } catch (IOException e) {
+                closeAll();
+                throw new RuntimeException(e);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Operation not supported by this iterator.");
+        }
+    }
+
+    // Reads features in order from a run file, or from the in-memory cache.
+    private class RunReader {
+        private final int order;
+        private final File runFile;
+        private DataInputStream in;
+        private Iterator<StationPointFeature> memIter;
+        private StationPointFeature current;
+        private String stationName;  // current, as read from the run file
+        private byte[] encoded;
+
+        RunReader(int order, File runFile) throws IOException {
+            this.order = order;
+            this.runFile = runFile;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+        }
+
+        RunReader(int order, Iterator<StationPointFeature> memIter) {
+            this.order = order;
+            this.runFile = null;
+            this.memIter = memIter;
+        }
+
+        // Read the next feature into current, return false when there are no more.
+        boolean advance() throws IOException {
+            if (memIter != null) {
+                current = memIter.hasNext() ? memIter.next() : null;
+                return current != null;
+            }
+
+            try {
+                stationName = in.readUTF();
+            } catch (EOFException e) {
+                close();
+                return false;
+            }
+
+            encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            PointStreamProto.PointFeature pfp = PointStreamProto.PointFeature.parseFrom(encoded);
+            current = new RunStationPointFeature(runStations.get(stationName), pfp);
+            return true;
+        }
+
+        void close() {
+            current = null;
+            stationName = null;
+            encoded = null;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+                in = null;
+            }
+            if (runFile != null && !runFile.delete()) {
+                runFile.deleteOnExit();
+            }
+        }
+    }
+
+    // A StationPointFeature read back from a run file.
+    private class RunStationPointFeature extends PointFeatureImpl implements StationPointFeature {
+        private final StationFeature station;
+        private final StructureData data;
+
+        RunStationPointFeature(StationFeature station, PointStreamProto.PointFeature pfp) {
+            super(runDsg, station, pfp.getLoc().getTime(), pfp.getLoc().getNomTime(), runDsg.getTimeUnit());
+            this.station = station;
+
+            ByteBuffer bb = ByteBuffer.wrap(pfp.getData().toByteArray());
+            ArrayStructureBB asbb = new ArrayStructureBB(runMembers, new int[]{1}, bb, 0);
+            for (String s : pfp.getSdataList()) {
+                asbb.addObjectToHeap(s);
+            }
+            this.data = asbb.getStructureData(0);
+        }
+
+        @Nonnull
+        @Override
+        public StructureData getDataAll() throws IOException {
+            return data;
+        }
+
+        @Nonnull
+        @Override
+        public StructureData getFeatureData() throws IOException {
+            return data;
+        }
+
+        @Override
+        public StationFeature getStation() {
+            return station;
+        }
+    }
 }
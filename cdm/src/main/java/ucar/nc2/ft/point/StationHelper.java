@@ -32,6 +32,7 @@
  */
 package ucar.nc2.ft.point;
 
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
 import ucar.unidata.geoloc.Station;
@@ -45,12 +46,14 @@ import java.util.Map;
 /**
  * Helper class for Station Collections.
  * This assumes that calling getData( Station s) is cheap, ie that theres no cheaper filtering to do.
+ * Bounding box and closest station queries use a spatial index, built the first time its needed.
  * @author caron
  * @since Feb 5, 2008
  */
 public class StationHelper {
   private List<StationFeature> stations;
   private Map<String, StationFeature> stationHash;
+  private volatile StationIndex index;
   private static final boolean debug = false;
 
   public StationHelper() {
@@ -61,6 +64,7 @@ public class StationHelper {
   public void addStation( StationFeature s) {
     stations.add(s);
     stationHash.put(s.getName(), s);
+    index = null;
   }
 
   public void setStations( List<StationFeature> nstations) {
@@ -110,30 +114,36 @@ public class StationHelper {
     return rect;
   }
 
-  public List<Station> getStations(LatLonRect boundingBox) throws IOException {
-    if (boundingBox == null) return getStations();
-    
-    LatLonPointImpl latlonPt = new LatLonPointImpl();
-    List<Station> result = new ArrayList<>();
-    for (StationFeature s : stations) {
-      latlonPt.set(s.getLatitude(), s.getLongitude());
-      if (boundingBox.contains(latlonPt))
-        result.add(s);
+  private StationIndex getIndex() {
+    StationIndex result = index;
+    if (result == null) {
+      result = new StationIndex(stations);
+      index = result;
     }
     return result;
   }
 
+  public List<Station> getStations(LatLonRect boundingBox) throws IOException {
+    if (boundingBox == null) return getStations();
+    return new ArrayList<Station>(getIndex().getStations(boundingBox));
+  }
+
   public List<StationFeature> getStationFeatures(LatLonRect boundingBox) throws IOException {
     if (boundingBox == null) return stations;
+    return getIndex().getStations(boundingBox);
+  }
 
-    LatLonPointImpl latlonPt = new LatLonPointImpl();
-    List<StationFeature> result = new ArrayList<>();
-    for (StationFeature s : stations) {
-      latlonPt.set(s.getLatitude(), s.getLongitude());
-      if (boundingBox.contains(latlonPt))
-        result.add(s);
-    }
-    return result;
+  /**
+   * Find the station closest to the specified point.
+   * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2
+   *
+   * @param pt find closest station to this point
+   * @return closest station, or null if there are no stations
+   */
+  public StationFeature findClosestStation(LatLonPoint pt) {
+    if (stations.isEmpty()) return null;
+    StationFeature result = getIndex().findClosest(pt.getLatitude(), pt.getLongitude());
+    return (result != null) ? result : stations.get(0); // no station has a location
   }
 
   public StationFeature getStation(String name) {
@@ -0,0 +1,210 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A 2D kd-tree over station latitude and longitude, so that bounding box and closest station queries dont have to
+ * look at every station. The tree is stored implicitly: each node is the median of a subrange of an index array,
+ * split alternately on latitude and longitude.
+ * Immutable once built.
+ */
+class StationIndex {
+  private final List<StationFeature> stations;
+  private final double[] lat, lon; // by station index, normalized as LatLonPointImpl does
+  private final int[] tree;        // station indices in tree order
+
+  StationIndex(List<StationFeature> stations) {
+    this.stations = stations;
+    int n = stations.size();
+    lat = new double[n];
+    lon = new double[n];
+
+    int count = 0;
+    int[] indices = new int[n];
+    for (int i = 0; i < n; i++) {
+      StationFeature s = stations.get(i);
+      lat[i] = LatLonPointImpl.latNormal(s.getLatitude());
+      lon[i] = LatLonPointImpl.lonNormal(s.getLongitude());
+      if (!Double.isNaN(lat[i]) && !Double.isNaN(lon[i]))  // missing locations never match
+        indices[count++] = i;
+    }
+    tree = Arrays.copyOf(indices, count);
+    build(0, count, true);
+  }
+
+  private void build(int lo, int hi, boolean splitLat) {
+    if (hi - lo < 2) return;
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, splitLat ? lat : lon);
+    build(lo, mid, !splitLat);
+    build(mid + 1, hi, !splitLat);
+  }
+
+  // partially sort tree[lo..hi] so that tree[k] has the k-th smallest key, smaller ones before it, larger ones after
+  private void select(int lo, int hi, int k, double[] key) {
+    while (lo < hi) {
+      double pivot = key[tree[(lo + hi) >>> 1]];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (key[tree[i]] < pivot) i++;
+        while (key[tree[j]] > pivot) j--;
+        if (i <= j) {
+          int tmp = tree[i];
+          tree[i] = tree[j];
+          tree[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) hi = j;
+      else if (k >= i) lo = i;
+      else return;
+    }
+  }
+
+  /**
+   * Find the stations inside the bounding box.
+   *
+   * @param bb bounding box
+   * @return stations inside, in their original order
+   */
+  List<StationFeature> getStations(LatLonRect bb) {
+    double eps = 1.0e-9; // same as LatLonRect.contains
+    double latMin = bb.getLowerLeftPoint().getLatitude() - eps;
+    double latMax = bb.getUpperRightPoint().getLatitude() + eps;
+    double lonMin = bb.getLowerLeftPoint().getLongitude();
+    double lonMax = bb.getUpperRightPoint().getLongitude();
+
+    int[] found = new int[tree.length];
+    int count;
+    if (bb.getWidth() >= 360.0) {
+      count = search(0, tree.length, true, latMin, latMax, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, found, 0);
+    } else if (bb.crossDateline()) {
+      count = search(0, tree.length, true, latMin, latMax, lonMin, Double.POSITIVE_INFINITY, found, 0);
+      count = search(0, tree.length, true, latMin, latMax, Double.NEGATIVE_INFINITY, lonMax, found, count);
+    } else {
+      count = search(0, tree.length, true, latMin, latMax, lonMin, lonMax, found, 0);
+    }
+
+    Arrays.sort(found, 0, count); // original order, also makes any duplicates adjacent
+    List<StationFeature> result = new ArrayList<>(count);
+    int last = -1;
+    for (int i = 0; i < count; i++) {
+      int idx = found[i];
+      if (idx != last && bb.contains(lat[idx], lon[idx]))
+        result.add(stations.get(idx));
+      last = idx;
+    }
+    return result;
+  }
+
+  private int search(int lo, int hi, boolean splitLat, double latMin, double latMax, double lonMin, double lonMax,
+                     int[] found, int count) {
+    if (lo >= hi) return count;
+    int mid = (lo + hi) >>> 1;
+    int idx = tree[mid];
+
+    if (lat[idx] >= latMin && lat[idx] <= latMax && lon[idx] >= lonMin && lon[idx] <= lonMax)
+      found[count++] = idx;
+
+    double key = splitLat ? lat[idx] : lon[idx];
+    double min = splitLat ? latMin : lonMin;
+    double max = splitLat ? latMax : lonMax;
+    if (min <= key)
+      count = search(lo, mid, !splitLat, latMin, latMax, lonMin, lonMax, found, count);
+    if (max >= key)
+      count = search(mid + 1, hi, !splitLat, latMin, latMax, lonMin, lonMax, found, count);
+    return count;
+  }
+
+  /**
+   * Find the station closest to the given point.
+   * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2, with longitudes compared across the dateline.
+   *
+   * @param lat0 latitude of the point
+   * @param lon0 longitude of the point
+   * @return closest station, or null if there are no stations with a location
+   */
+  StationFeature findClosest(double lat0, double lon0) {
+    if (tree.length == 0) return null;
+    Nearest nearest = new Nearest(lat0, Math.cos(Math.toRadians(lat0)));
+    double lonNorm = LatLonPointImpl.lonNormal(lon0);
+    nearest.search(0, tree.length, true, lonNorm);
+    nearest.search(0, tree.length, true, lonNorm - 360.0);  // stations across the dateline
+    nearest.search(0, tree.length, true, lonNorm + 360.0);
+    return stations.get(nearest.best);
+  }
+
+  private class Nearest {
+    final double lat0, cos;
+    int best = -1;
+    double bestDist = Double.MAX_VALUE;
+
+    Nearest(double lat0, double cos) {
+      this.lat0 = lat0;
+      this.cos = cos;
+    }
+
+    void search(int lo, int hi, boolean splitLat, double lon0) {
+      if (lo >= hi) return;
+      int mid = (lo + hi) >>> 1;
+      int idx = tree[mid];
+
+      double dy = Math.toRadians(lat0 - lat[idx]);
+      double dx = cos * Math.toRadians(lon0 - lon[idx]);
+      double dist = dy * dy + dx * dx;
+      if (dist < bestDist || (dist == bestDist && idx < best)) { // ties go to the first station, as a linear scan would
+        bestDist = dist;
+        best = idx;
+      }
+
+      double diff = splitLat ? Math.toRadians(lat0 - lat[idx]) : cos * Math.toRadians(lon0 - lon[idx]);
+      // search the side the point is on first
+      boolean lowFirst = diff < 0;
+      if (lowFirst) search(lo, mid, !splitLat, lon0);
+      else search(mid + 1, hi, !splitLat, lon0);
+
+      if (diff * diff <= bestDist) {
+        if (lowFirst) search(mid + 1, hi, !splitLat, lon0);
+        else search(lo, mid, !splitLat, lon0);
+      }
+    }
+  }
+}
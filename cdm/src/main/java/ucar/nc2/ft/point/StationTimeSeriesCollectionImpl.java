@@ -47,6 +47,7 @@ import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
 import ucar.nc2.util.IOIterator;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonRect;
 
 /**
@@ -111,6 +112,11 @@ public abstract class StationTimeSeriesCollectionImpl extends PointFeatureCCImpl
     return getStationHelper().getStation(name);
   }
 
+  @Override
+  public StationFeature findClosestStation(LatLonPoint pt) {
+    return getStationHelper().findClosestStation(pt);
+  }
+
   @Override
   public StationTimeSeriesFeature getStationTimeSeriesFeature(StationFeature s) {
     return (StationTimeSeriesFeature) s; // LOOK
@@ -581,9 +581,7 @@ public class NestedTable {
     return lonVE.getCoordValue(cursor.tableData);
   }
 
-  public EarthLocation getEarthLocation(Cursor cursor) {
-    double lat = latVE.getCoordValue(cursor.tableData);
-    double lon = lonVE.getCoordValue(cursor.tableData);
+  public double getAltitude(Cursor cursor) {
     double alt = (altVE == null) ? Double.NaN : altVE.getCoordValue(cursor.tableData);
     if (stnAltVE != null) {
       double stnElev = stnAltVE.getCoordValue(cursor.tableData);
@@ -592,7 +590,13 @@ public class NestedTable {
       else
         alt += stnElev;
     }
-    return new EarthLocationImpl(lat, lon, alt);
+    return alt;
+  }
+
+  public EarthLocation getEarthLocation(Cursor cursor) {
+    double lat = latVE.getCoordValue(cursor.tableData);
+    double lon = lonVE.getCoordValue(cursor.tableData);
+    return new EarthLocationImpl(lat, lon, getAltitude(cursor));
   }
 
   public String getFeatureName(Cursor cursor) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point.standard;
+
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.ft.PointFeatureBatch;
+import ucar.nc2.ft.PointFeatureBatchIterator;
+import ucar.nc2.time.CalendarDateRange;
+import ucar.nc2.time.CalendarDateUnit;
+import ucar.unidata.geoloc.LatLonRect;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * A PointFeatureBatchIterator which uses a NestedTable to fill the batches.
+ * Same logic as StandardPointFeatureIterator, but the coordinates go straight into the batch columns, without making
+ * a PointFeature, copying the Cursor, or making an EarthLocation and CalendarDate for each observation.
+ * Unlike the PointFeatureIterator, this does not calculate the collection's bounding box and date range.
+ */
+class StandardPointBatchIterator implements PointFeatureBatchIterator {
+  private final NestedTable ft;
+  private final CalendarDateUnit timeUnit;
+  private final StructureDataIterator structIter;
+  private final Cursor cursor;
+  private final int batchSize;
+
+  private final LatLonRect filter_bb;
+  private final CalendarDateRange filter_date;
+  private double filterStart, filterEnd, filterMargin; // date range in timeUnit, if not a calendar field
+
+  private PointFeatureBatch batch; // hasNext must cache
+  private boolean finished;
+
+  StandardPointBatchIterator(NestedTable ft, CalendarDateUnit timeUnit, StructureDataIterator structIter, Cursor cursor,
+                             int batchSize, LatLonRect filter_bb, CalendarDateRange filter_date) {
+    this.ft = ft;
+    this.timeUnit = timeUnit;
+    this.structIter = structIter;
+    this.cursor = cursor;
+    this.batchSize = batchSize;
+    this.filter_bb = filter_bb;
+    this.filter_date = filter_date;
+
+    if (filter_date != null && !timeUnit.isCalendarField()) {
+      filterStart = timeUnit.makeOffsetFromRefDate(filter_date.getStart());
+      filterEnd = timeUnit.makeOffsetFromRefDate(filter_date.getEnd());
+      filterMargin = 2.0 / timeUnit.getCalendarPeriod().getValueInMillisecs(); // CalendarDate has msec resolution
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (batch != null) return true;
+    if (finished) return false;
+
+    try {
+      while (structIter.hasNext()) {
+        StructureData sdata = structIter.next();
+        cursor.recnum[0] = structIter.getCurrentRecno();
+        cursor.tableData[0] = sdata; // always in the first position
+        cursor.currentIndex = 0;
+        ft.addParentJoin(cursor); // there may be parent joins
+
+        if (ft.isTimeMissing(cursor) || ft.isMissing(cursor)) continue; // missing data
+        double obsTime = ft.getObsTime(cursor);
+
+        cursor.currentIndex = 1; // as in StandardPointFeature
+        double nomTime = ft.getNomTime(cursor);
+        if (Double.isNaN(nomTime)) nomTime = obsTime;
+        double lat = ft.getLatitude(cursor);
+        double lon = ft.getLongitude(cursor);
+        if (Double.isNaN(lat) || Double.isNaN(lon)) continue; // missing location, as in the PointFeatureIterator
+        if (!filter(obsTime, lat, lon)) continue;
+
+        StructureData obsData = ft.makeObsStructureData(cursor);
+        if (batch == null)
+          batch = new PointFeatureBatch(timeUnit, obsData.getStructureMembers(), batchSize);
+        batch.add(obsTime, nomTime, lat, lon, ft.getAltitude(cursor), obsData);
+        if (batch.isFull()) break;
+      }
+
+    } catch (IOException ioe) {
+      close();
+      throw new RuntimeException(ioe);
+    }
+
+    if (batch == null) {
+      close();
+      return false;
+    }
+    batch.finish();
+    return true;
+  }
+
+  private boolean filter(double obsTime, double lat, double lon) {
+    if ((filter_bb != null) && !filter_bb.contains(lat, lon))
+      return false;
+
+    if (filter_date != null) {
+      if (timeUnit.isCalendarField() || Math.abs(obsTime - filterStart) < filterMargin || Math.abs(obsTime - filterEnd) < filterMargin)
+        return filter_date.includes(timeUnit.makeCalendarDate(obsTime)); // close to the edge, do it exactly
+      return filterStart <= obsTime && obsTime <= filterEnd;
+    }
+
+    return true;
+  }
+
+  @Override
+  public PointFeatureBatch next() {
+    if (!hasNext())
+      throw new NoSuchElementException("There are no more elements.");
+    PointFeatureBatch result = batch;
+    batch = null;
+    return result;
+  }
+
+  @Override
+  public void close() {
+    if (finished) return;
+    finished = true;
+    structIter.close();
+  }
+}
@@ -35,9 +35,12 @@ package ucar.nc2.ft.point.standard;
 
 import java.io.IOException;
 
+import ucar.nc2.ft.PointFeatureBatchIterator;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.ft.point.PointCollectionImpl;
+import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
+import ucar.unidata.geoloc.LatLonRect;
 
 /**
  * Implementation of PointFeatureCollection using a NestedTable
@@ -61,4 +64,12 @@ public class StandardPointCollectionImpl extends PointCollectionImpl {
     return new StandardPointFeatureIterator(this, ft, timeUnit, ft.getObsDataIterator(tableData), tableData);
   }
 
+  @Override
+  protected PointFeatureBatchIterator getPointFeatureBatchIterator(int batchSize, LatLonRect filter_bb,
+                                                                   CalendarDateRange filter_date) throws IOException {
+    Cursor tableData = new Cursor(ft.getNumberOfLevels());
+    return new StandardPointBatchIterator(ft, timeUnit, ft.getObsDataIterator(tableData), tableData, batchSize,
+            filter_bb, filter_date);
+  }
+
 }
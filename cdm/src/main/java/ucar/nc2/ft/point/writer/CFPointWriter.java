@@ -151,14 +151,16 @@ public abstract class CFPointWriter implements Closeable {
       pointWriter.setExtraVariables( pfc.getExtraVariables());
 
       int count = 0;
-      for (PointFeature pf : pfc) {
-        if (count == 0)
-          pointWriter.writeHeader(pf);
-
-        pointWriter.writeRecord(pf, pf.getFeatureData());
-        count++;
-        if (debug && count % 100 == 0) System.out.printf("%d ", count);
-        if (debug && count % 1000 == 0) System.out.printf("%n ");
+      try (PointFeatureBatchIterator iter = pfc.getPointFeatureBatchIterator(PointFeatureBatch.DEFAULT_SIZE)) {
+        while (iter.hasNext()) {
+          PointFeatureBatch batch = iter.next();
+          if (count == 0)
+            pointWriter.writeHeader(batch);
+
+          pointWriter.writeRecords(batch);
+          count += batch.getSize();
+          if (debug) System.out.printf("%d ", count);
+        }
       }
 
       pointWriter.finish();
@@ -783,7 +785,7 @@ public abstract class CFPointWriter implements Closeable {
 
   // keep track of the bounding box
   protected void trackBB(LatLonPoint loc, CalendarDate obsDate) {
-    if (loc != null) {
+    if (loc != null && !Double.isNaN(loc.getLatitude()) && !Double.isNaN(loc.getLongitude())) { // skip missing location
       if (llbb == null) {
         llbb = new LatLonRect(loc, .001, .001);
         return;
@@ -792,6 +794,7 @@ public abstract class CFPointWriter implements Closeable {
     }
 
     // date is handled specially
+    if (obsDate == null) return;
     if ((minDate == null) || minDate.isAfter(obsDate)) minDate = obsDate;
     if ((maxDate == null) || maxDate.isBefore(obsDate)) maxDate = obsDate;
   }
@@ -41,6 +41,7 @@ import ucar.nc2.time.CalendarDateUnit;
 import ucar.nc2.*;
 import ucar.nc2.ft.*;
 import ucar.unidata.geoloc.EarthLocation;
+import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.ma2.*;
 
 import java.util.*;
@@ -54,6 +55,7 @@ import java.io.IOException;
  *   iterate { writeRecord() }
  *   finish()
  * </pre>
+ * or the same with a PointFeatureBatch, using writeRecords() to write a batch at a time.
  *
  * @see "http://cf-pcmdi.llnl.gov/documents/cf-conventions/1.6/cf-conventions.html#idp8294224"
  * @author caron
@@ -70,6 +72,14 @@ public class WriterCFPointCollection extends CFPointWriter {
   }
 
   public void writeHeader(PointFeature pf) throws IOException {
+    writeHeader(pf.getDataAll());
+  }
+
+  public void writeHeader(PointFeatureBatch batch) throws IOException {
+    writeHeader(batch.getStructureData(0));
+  }
+
+  private void writeHeader(StructureData obsData) throws IOException {
     List<VariableSimpleIF> coords = new ArrayList<>();
     coords.add(VariableSimpleImpl.makeScalar(timeName, "time of measurement", timeUnit.getUdUnit(), DataType.DOUBLE)
             .add(new Attribute(CF.CALENDAR, timeUnit.getCalendar().toString())));
@@ -83,7 +93,7 @@ public class WriterCFPointCollection extends CFPointWriter {
       coordNames.format(" %s", altName);
     }
 
-    super.writeHeader(coords, null, pf.getDataAll(), coordNames.toString());
+    super.writeHeader(coords, null, obsData, coordNames.toString());
   }
 
   protected void makeFeatureVariables(StructureData featureData, boolean isExtended) throws IOException {
@@ -100,12 +110,15 @@ public class WriterCFPointCollection extends CFPointWriter {
   private int obsRecno = 0;
   public void writeRecord(double timeCoordValue, CalendarDate obsDate, EarthLocation loc, StructureData sdata) throws IOException {
     trackBB(loc.getLatLon(), obsDate);
+    writeRecord(timeCoordValue, loc.getLatitude(), loc.getLongitude(), loc.getAltitude(), sdata);
+  }
 
+  private void writeRecord(double timeCoordValue, double lat, double lon, double alt, StructureData sdata) throws IOException {
     StructureDataScalar coords = new StructureDataScalar("Coords");
     coords.addMember(timeName, null, null, DataType.DOUBLE, timeCoordValue);
-    coords.addMember(latName,  null, null, DataType.DOUBLE, loc.getLatitude());
-    coords.addMember(lonName,  null, null, DataType.DOUBLE, loc.getLongitude());
-    if (altUnits != null) coords.addMember(altName, null, null, DataType.DOUBLE, loc.getAltitude());
+    coords.addMember(latName,  null, null, DataType.DOUBLE, lat);
+    coords.addMember(lonName,  null, null, DataType.DOUBLE, lon);
+    if (altUnits != null) coords.addMember(altName, null, null, DataType.DOUBLE, alt);
 
     StructureDataComposite sdall = new StructureDataComposite();
     sdall.add(coords); // coords first so it takes precedence
@@ -114,4 +127,72 @@ public class WriterCFPointCollection extends CFPointWriter {
     obsRecno = super.writeStructureData(obsRecno, record, sdall, dataMap);
   }
 
+  /**
+   * Write all the observations in a batch.
+   * For the classic model, each variable is written once for the whole batch instead of once per observation.
+   *
+   * @param batch the observations
+   * @throws IOException on write error
+   */
+  public void writeRecords(PointFeatureBatch batch) throws IOException {
+    int n = batch.getSize();
+    if (n == 0) return;
+    double[] time = batch.getObservationTime();
+    double[] lat = batch.getLatitude();
+    double[] lon = batch.getLongitude();
+    double[] alt = batch.getAltitude();
+
+    // track the bounding box, only need to make CalendarDates for the batch min and max
+    LatLonPointImpl llpt = new LatLonPointImpl();
+    double minTime = time[0], maxTime = time[0];
+    for (int i = 0; i < n; i++) {
+      llpt.set(lat[i], lon[i]);
+      trackBB(llpt, null);
+      minTime = Math.min(minTime, time[i]);
+      maxTime = Math.max(maxTime, time[i]);
+    }
+    trackBB(null, batch.getTimeUnit().makeCalendarDate(minTime));
+    trackBB(null, batch.getTimeUnit().makeCalendarDate(maxTime));
+
+    // LOOK could write an ArrayStructure of the batch if the record dimension isnt unlimited
+    if (isExtendedModel || batch.getColumnMembers().size() < batch.getStructureData(0).getMembers().size()) {
+      for (int i = 0; i < n; i++)  // one at a time, if extended model or some members arent stored as columns
+        writeRecord(time[i], lat[i], lon[i], alt[i], batch.getStructureData(i));
+      return;
+    }
+
+    try {
+      writeColumn(timeName, Array.factory(DataType.DOUBLE, new int[]{n}, time));
+      writeColumn(latName, Array.factory(DataType.DOUBLE, new int[]{n}, lat));
+      writeColumn(lonName, Array.factory(DataType.DOUBLE, new int[]{n}, lon));
+      if (altUnits != null) writeColumn(altName, Array.factory(DataType.DOUBLE, new int[]{n}, alt));
+
+      for (StructureMembers.Member m : batch.getColumnMembers()) {
+        String name = m.getName();
+        if (name.equals(timeName) || name.equals(latName) || name.equals(lonName) || (altUnits != null && name.equals(altName)))
+          continue; // coords take precedence
+        Array data = batch.getColumn(name);
+        if (m.getDataType() == DataType.STRING)  // convert to ArrayChar
+          data = ArrayChar.makeFromStringArray((ArrayObject) data);
+        writeColumn(name, data);
+      }
+
+    } catch (InvalidRangeException e) {
+      e.printStackTrace();
+      throw new IllegalStateException(e);
+    }
+
+    obsRecno += n;
+  }
+
+  // write the values for a batch, starting at obsRecno
+  private void writeColumn(String name, Array data) throws IOException, InvalidRangeException {
+    Variable v = dataMap.get(name);
+    if (v == null)
+      return;     // LOOK OK??
+    int[] origin = new int[data.getRank()];
+    origin[0] = obsRecno;
+    writer.write(v, origin, data);
+  }
+
 }
\ No newline at end of file
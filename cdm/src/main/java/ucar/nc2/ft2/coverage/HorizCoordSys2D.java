@@ -34,6 +34,7 @@
 package ucar.nc2.ft2.coverage;
 
 import ucar.ma2.*;
+import ucar.nc2.dataset.LatLonCellIndex;
 import ucar.nc2.util.Optional;
 import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
@@ -170,6 +171,7 @@ public class HorizCoordSys2D extends HorizCoordSys {
   private class Edges {
     private ArrayDouble.D2 latEdge, lonEdge;
     private MAMath.MinMax latMinMax, lonMinMax;
+    private LatLonCellIndex index;
 
     Edges() {
       latEdge = (ArrayDouble.D2) lataxis2D.getCoordBoundsAsArray();
@@ -185,6 +187,7 @@ public class HorizCoordSys2D extends HorizCoordSys {
         double nonVal = lonEdge.getDouble(i);
         lonEdge.setDouble(i, LatLonPointImpl.lonNormalFrom(nonVal, lonMinMax.min));
       }
+      index = new LatLonCellIndex(latEdge, lonEdge);
 
       if (debug)
         System.out.printf("Bounds (%d %d): lat= (%f,%f) lon = (%f,%f) %n", nrows, ncols, latMinMax.min, latMinMax.max, lonMinMax.min, lonMinMax.max);
@@ -209,15 +212,15 @@ public class HorizCoordSys2D extends HorizCoordSys {
       if (wantLon < lonMinMax.min) return false;
       if (wantLon > lonMinMax.max) return false;
 
-      double gradientLat = (latMinMax.max - latMinMax.min) / nrows;
-      double gradientLon = (lonMinMax.max - lonMinMax.min) / ncols;
-
-      double diffLat = wantLat - latMinMax.min;
-      double diffLon = wantLon - lonMinMax.min;
-
-      // initial guess
-      rectIndex[0] = (int) Math.round(diffLat / gradientLat);  // row
-      rectIndex[1] = (int) Math.round(diffLon / gradientLon);  // col
+      // initial guess is the cell with the closest center, almost always the one we want or a neighbor of it
+      if (!index.findClosestCell(wantLat, wantLon, rectIndex))
+        return false;
+      int guessRow = rectIndex[0];
+      int guessCol = rectIndex[1];
+      if (contains(wantLat, wantLon, rectIndex) || box9(wantLat, wantLon, rectIndex))
+        return true;
+      rectIndex[0] = guessRow;
+      rectIndex[1] = guessCol;
 
       int count = 0;
       while (true) {
@@ -33,6 +33,7 @@
  */
 package ucar.nc2.ft2.coverage.writer;
 
+import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
@@ -45,16 +46,27 @@ import ucar.nc2.util.Optional;
 import ucar.unidata.geoloc.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Write CF Compliant Grid file from a Coverage.
  * First, single coverage only.
  * - The idea is to subset the coordsys, use that for the file's metadata.
  * - Then subset the grid, and write out the data. chack that the grid's metadata matches.
+ * - Grids larger than the stream threshold are read and written one horizontal slice at a time, reading the next
+ *   slice while the current one is written, so memory use is bounded by two slices, not the whole grid.
  *
  * @author caron
  * @since 5/8/2015
@@ -67,6 +79,31 @@ public class CFGridCoverageWriter2 {
   static private final String BOUNDS = "_bounds";
   static private final String BOUNDS_DIM = "bounds_dim"; // dimension of length 2, can be used by any bounds coordinate
 
+  static private long streamThreshold = 50 * 1000 * 1000; // grids larger than this are written one slice at a time
+
+  /**
+   * Grids larger than this are read and written one horizontal slice at a time, when their coordinates allow it.
+   * @param bytes size in bytes, default 50 Mb; use 0 to always write slices, Long.MAX_VALUE to never.
+   */
+  static public void setStreamThreshold(long bytes) {
+    streamThreshold = bytes;
+  }
+
+  // the slice readahead threads, shared by all writers
+  static private ExecutorService readAheadExecutor;
+
+  static private synchronized ExecutorService getReadAheadExecutor() {
+    if (readAheadExecutor == null) {
+      AtomicInteger count = new AtomicInteger();
+      readAheadExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "CFGridCoverageWriter2-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return readAheadExecutor;
+  }
+
   /**
    * Write a netcdf/CF file from a CoverageDataset
 
@@ -201,13 +238,20 @@ public class CFGridCoverageWriter2 {
     for (Coverage grid : subsetDataset.getCoverages()) {
       // we need to call readData on the original
       Coverage gridOrg = gdsOrg.findCoverage(grid.getName());
+      Variable v = writer.findVariable(grid.getName());
+      if (show) System.out.printf("CFGridCoverageWriter2 write grid %s%n", v.getNameAndDimensions());
+
+      Slicer slicer = (grid.getSizeInBytes() > streamThreshold) ? makeSlicer(gridOrg, grid, subsetParams) : null;
+      if (slicer != null) {
+        writeSlices(gridOrg, slicer, v, writer, gdsOrg.getName());
+        continue;
+      }
+
       GeoReferencedArray array = gridOrg.readData(subsetParams);
 
       // test conform to whatever axis.getCoordsAsArray() returns
       checkConformance(gridOrg, grid, array, gdsOrg.getName());
 
-      Variable v = writer.findVariable(grid.getName());
-      if (show) System.out.printf("CFGridCoverageWriter2 write grid %s%n", v.getNameAndDimensions());
       writer.write(v, array.getData());
     }
 
@@ -216,6 +260,209 @@ public class CFGridCoverageWriter2 {
     return Optional.of(total_size);
   }
 
+  // read the slices in order in the background, one ahead of the slice being written
+  private void writeSlices(Coverage gridOrg, Slicer slicer, Variable v, NetcdfFileWriter writer, String where) throws IOException, InvalidRangeException {
+    if (show) System.out.printf("CFGridCoverageWriter2 write %d slices of %s%n", slicer.nslices, v.getShortName());
+    ReadAhead next = new ReadAhead(gridOrg, slicer.getParams(0));
+    try {
+      for (int i = 0; i < slicer.nslices; i++) {
+        Array data = next.get().getData();
+        next = (i + 1 < slicer.nslices) ? new ReadAhead(gridOrg, slicer.getParams(i + 1)) : null;
+
+        if (data.getSize() != slicer.sliceSize)
+          throw new IllegalStateException("CFGridCoverageWriter2 slice " + i + " of " + v.getShortName() + " has " + data.getSize() +
+                  " values, expected " + slicer.sliceSize + " in " + where);
+        writer.write(v, slicer.getOrigin(i), data.reshapeNoCopy(slicer.sliceShape));
+      }
+    } finally {
+      if (next != null) next.cancel(); // on failure, dont leave a read of gridOrg running after we return
+    }
+  }
+
+  // read one slice on the shared executor
+  private static class ReadAhead {
+    private final AtomicBoolean claimed = new AtomicBoolean(); // by the read when it starts, or by cancel() before that
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final Future<GeoReferencedArray> future;
+
+    ReadAhead(Coverage gridOrg, SubsetParams params) {
+      future = getReadAheadExecutor().submit(() -> {
+        if (!claimed.compareAndSet(false, true)) return null; // cancelled
+        try {
+          return gridOrg.readData(params);
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+
+    GeoReferencedArray get() throws IOException, InvalidRangeException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("CFGridCoverageWriter2 interrupted", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof InvalidRangeException) throw (InvalidRangeException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    // dont interrupt a read in progress, the reader may not survive it; wait for it to finish instead
+    void cancel() {
+      future.cancel(false);
+      if (claimed.compareAndSet(false, true)) return; // never started
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /*
+   * Slice the grid on its independent time, vertical and ensemble axes, keeping the horizontal ones whole.
+   * Each slice is requested with the coordinate value of that slice, so make sure that value selects exactly
+   * the same coordinate in the original axis. Otherwise (eg 2D time, or duplicate coordinates) return null,
+   * and the grid is read in one piece.
+   */
+  private Slicer makeSlicer(Coverage gridOrg, Coverage grid, SubsetParams subsetParams) {
+    CoverageCoordSys csys = grid.getCoordSys();
+    CoverageCoordSys csysOrg = gridOrg.getCoordSys();
+
+    List<CoverageCoordAxis> leading = new ArrayList<>();
+    for (CoverageCoordAxis axis : csys.getAxes()) {
+      if (axis.getAxisType().isHoriz()) continue;
+      if (axis.getDependenceType() != CoverageCoordAxis.DependenceType.independent) continue;
+      if (!(axis instanceof CoverageCoordAxis1D)) return null;
+      switch (axis.getAxisType()) {
+        case Time:
+        case GeoZ:
+        case Pressure:
+        case Height:
+        case Ensemble:
+          leading.add(axis);
+          break;
+        default:
+          return null;
+      }
+    }
+
+    int[] shape = csys.getShape();
+    if (shape.length != leading.size() + 2) return null;
+
+    Slicer slicer = new Slicer(shape, subsetParams);
+    for (int dim = 0; dim < leading.size(); dim++) {
+      CoverageCoordAxis1D axis = (CoverageCoordAxis1D) leading.get(dim);
+      if (axis.getNcoords() != shape[dim]) return null;
+      if (axis.getNcoords() == 1) continue; // already selected by subsetParams
+
+      CoverageCoordAxis axisOrg = csysOrg.getAxis(axis.getName());
+      if (axisOrg == null) return null;
+
+      Object[] values = new Object[axis.getNcoords()];
+      for (int i = 0; i < axis.getNcoords(); i++) {
+        double midpoint = axis.getCoordMidpoint(i);
+        values[i] = (axis.getAxisType() == AxisType.Time) ? axis.makeDate(midpoint) : midpoint;
+
+        SubsetParams params = copyParams(subsetParams);
+        setSliceParam(params, axis.getAxisType(), values[i]);
+        Optional<CoverageCoordAxis> opt = axisOrg.subset(params);
+        if (!opt.isPresent() || !sameCoordinate(axis, i, opt.get()))
+          return null;
+      }
+      slicer.addAxis(dim, axis.getAxisType(), values);
+    }
+
+    return slicer.nslices > 1 ? slicer : null;
+  }
+
+  static private SubsetParams copyParams(SubsetParams params) {
+    SubsetParams result = new SubsetParams();
+    for (Map.Entry<String, Object> entry : params.getEntries())
+      result.set(entry.getKey(), entry.getValue());
+    return result;
+  }
+
+  static private void setSliceParam(SubsetParams params, AxisType type, Object value) {
+    switch (type) {
+      case Time:
+        params.set(SubsetParams.timePresent, false); // takes precedence over time
+        params.setTime((CalendarDate) value);
+        break;
+      case Ensemble:
+        params.setEnsCoord((Double) value);
+        break;
+      default:
+        params.setVertCoord((Double) value);
+        break;
+    }
+  }
+
+  static private boolean sameCoordinate(CoverageCoordAxis1D want, int index, CoverageCoordAxis got) {
+    if (got.getNcoords() != 1 || !(got instanceof CoverageCoordAxis1D)) return false;
+    CoverageCoordAxis1D got1D = (CoverageCoordAxis1D) got;
+    if (want.isInterval())
+      return got1D.isInterval() &&
+              Misc.closeEnough(want.getCoordEdge1(index), got1D.getCoordEdge1(0)) &&
+              Misc.closeEnough(want.getCoordEdge2(index), got1D.getCoordEdge2(0));
+    return Misc.closeEnough(want.getCoordMidpoint(index), got1D.getCoordMidpoint(0));
+  }
+
+  // the slices of one grid, in index order, with the subset parameters that select each
+  static private class Slicer {
+    final int[] sliceShape;   // 1 for the leading dimensions, then ny, nx
+    final long sliceSize;
+    final int[] counts;       // number of slices in each leading dimension
+    final AxisType[] types;
+    final Object[][] values;  // coordinate value of each slice in each leading dimension, null if not sliced
+    final SubsetParams base;  // the parameters of the whole subset
+    int nslices = 1;
+
+    Slicer(int[] shape, SubsetParams base) {
+      this.base = base;
+      int nleading = shape.length - 2;
+      sliceShape = new int[shape.length];
+      Arrays.fill(sliceShape, 1);
+      sliceShape[nleading] = shape[nleading];
+      sliceShape[nleading + 1] = shape[nleading + 1];
+      sliceSize = (long) shape[nleading] * shape[nleading + 1];
+      counts = new int[nleading];
+      Arrays.fill(counts, 1);
+      types = new AxisType[nleading];
+      values = new Object[nleading][];
+    }
+
+    void addAxis(int dim, AxisType type, Object[] coords) {
+      types[dim] = type;
+      values[dim] = coords;
+      counts[dim] = coords.length;
+      nslices *= coords.length;
+    }
+
+    int[] getOrigin(int slice) {
+      int[] origin = new int[sliceShape.length];
+      for (int dim = counts.length - 1; dim >= 0; dim--) {
+        origin[dim] = slice % counts[dim];
+        slice /= counts[dim];
+      }
+      return origin;
+    }
+
+    SubsetParams getParams(int slice) {
+      int[] origin = getOrigin(slice);
+      SubsetParams result = copyParams(base);
+      for (int dim = 0; dim < counts.length; dim++) {
+        if (values[dim] != null)
+          setSliceParam(result, types[dim], values[dim][origin[dim]]);
+      }
+      return result;
+    }
+  }
+
   private boolean isLargeFile(long total_size) {
     boolean isLargeFile = false;
     long maxSize = Integer.MAX_VALUE;
@@ -0,0 +1,165 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp;
+
+import java.io.EOFException;
+
+/**
+ * Fast reading of bit packed unsigned integers from a byte array, msb first.
+ * Same results as BitReader for values up to 31 bits, but keeps up to 64 bits in a long, so most values are extracted with a shift and a mask,
+ * and bytes are read once each. Byte aligned 8 and 16 bit values are read directly.
+ * Not thread safe.
+ */
+public class BitUnpacker {
+  private final byte[] data;
+  private final int end;  // index after the last byte
+  private int pos;        // index of the next byte to load into acc
+
+  private long acc;       // the low accBits bits are unread
+  private int accBits;
+
+  /**
+   * Constructor
+   * @param data read from this array
+   * @param start starting at this byte
+   * @param length this many bytes
+   */
+  public BitUnpacker(byte[] data, int start, int length) {
+    if (start < 0 || length < 0 || start + length > data.length)
+      throw new IllegalArgumentException("start/length outside of data");
+    this.data = data;
+    this.pos = start;
+    this.end = start + length;
+  }
+
+  public BitUnpacker(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  /**
+   * Skip to the start of the next byte, unless already there. Same as BitReader.incrByte().
+   */
+  public void incrByte() {
+    int drop = accBits % 8;
+    accBits -= drop;
+  }
+
+  /**
+   * Read the next nb bits as an unsigned integer.
+   *
+   * @param nb number of bits, 0 <= nb <= 64.
+   * @return value
+   * @throws EOFException if there are not enough bits left
+   */
+  public long bits2UInt(int nb) throws EOFException {
+    if (nb > 56) {
+      long high = bits2UInt(nb - 32);
+      return (high << 32) | bits2UInt(32);
+    }
+    if (nb == 0) return 0;
+    if (accBits < nb) fill(nb);
+    accBits -= nb;
+    return (acc >>> accBits) & ((1L << nb) - 1);
+  }
+
+  /**
+   * Read n values of nb bits each. Same as calling bits2UInt(nb) n times.
+   *
+   * @param nb  number of bits in each value, 0 <= nb <= 32. 32 bit values are cast to int.
+   * @param n   number of values
+   * @param dst put them here
+   * @param off starting at this index
+   * @throws EOFException if there are not enough bits left
+   */
+  public void unpack(int nb, int n, int[] dst, int off) throws EOFException {
+    if (nb < 0 || nb > 32) throw new IllegalArgumentException("nb must be 0..32");
+    if (nb == 0) {
+      java.util.Arrays.fill(dst, off, off + n, 0);
+      return;
+    }
+    checkAvailable((long) nb * n);
+
+    if (accBits == 0 && (nb == 8 || nb == 16)) {  // byte aligned, common in GRIB
+      int p = pos;
+      if (nb == 8) {
+        for (int i = 0; i < n; i++)
+          dst[off + i] = data[p++] & 0xff;
+      } else {
+        for (int i = 0; i < n; i++, p += 2)
+          dst[off + i] = ((data[p] & 0xff) << 8) | (data[p + 1] & 0xff);
+      }
+      pos = p;
+      return;
+    }
+
+    long mask = (1L << nb) - 1;
+    long a = acc;
+    int bits = accBits;
+    int p = pos;
+    for (int i = 0; i < n; i++) {
+      if (bits < nb) {
+        // load as many whole bytes as fit, at most 7 at a time since 7 * 8 + 7 < 64
+        while (bits <= 56 && p < end) {
+          a = (a << 8) | (data[p++] & 0xff);
+          bits += 8;
+        }
+      }
+      bits -= nb;
+      dst[off + i] = (int) ((a >>> bits) & mask);
+    }
+    acc = a;
+    accBits = bits;
+    pos = p;
+  }
+
+  /**
+   * Number of bits not yet read.
+   * @return number of bits not yet read
+   */
+  public long bitsRemaining() {
+    return accBits + 8L * (end - pos);
+  }
+
+  private void fill(int nb) throws EOFException {
+    while (accBits <= 56 && pos < end) {
+      acc = (acc << 8) | (data[pos++] & 0xff);
+      accBits += 8;
+    }
+    if (accBits < nb) throw new EOFException("BitUnpacker: asked for " + nb + " bits, only " + accBits + " left");
+  }
+
+  private void checkAvailable(long nbits) throws EOFException {
+    if (nbits > bitsRemaining())
+      throw new EOFException("BitUnpacker: asked for " + nbits + " bits, only " + bitsRemaining() + " left");
+  }
+}
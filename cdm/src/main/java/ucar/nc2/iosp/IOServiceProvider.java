@@ -70,6 +70,17 @@ public interface IOServiceProvider {
     */
   boolean isValidFile( ucar.unidata.io.RandomAccessFile raf) throws IOException;
 
+  /**
+   * Fixed offset signatures, used by NetcdfFile.open() to avoid calling isValidFile() on files that cant match.
+   * If not null, isValidFile() must return false on any file that matches none of them.
+   * Only declare these when the check in isValidFile() is certain, otherwise leave null.
+   *
+   * @return magic numbers, or null if this IOSP must always be asked with isValidFile().
+   */
+  default MagicNumber[] getMagicNumbers() {
+    return null;
+  }
+
   /**
    * Open existing file, and populate ncfile with it. This method is only called by the
    * NetcdfFile constructor on itself. The provided NetcdfFile object will be empty
@@ -89,12 +89,14 @@ public class IospHelper {
   /**
    * Read data subset from RandomAccessFile, place in given primitive array.
    * Reading is controlled by the Layout object.
+   * Uses positional reads, so does not change the file pointer, and may be called by multiple threads
+   * at the same time on a file opened read only.
    *
    * @param raf         read from here.
    * @param layout      handles skipping around in the file.
    * @param dataType    dataType of the variable
    * @param arr         primitive array to read data into
-   * @param byteOrder   if equal to RandomAccessFile.ORDER_XXXX, set the byte order just before reading
+   * @param byteOrder   RandomAccessFile.BIG_ENDIAN or LITTLE_ENDIAN, otherwise use the current byte order of raf
    * @param convertChar true if bytes should be converted to char for dataType CHAR
    * @return primitive array with data read in
    * @throws java.io.IOException on read error
@@ -102,13 +104,17 @@ public class IospHelper {
   static public Object readData(RandomAccessFile raf, Layout layout, DataType dataType, Object arr, int byteOrder, boolean convertChar) throws java.io.IOException {
     if (showLayoutTypes) System.out.println("***RAF LayoutType=" + layout.getClass().getName());
 
+    ByteOrder bo;
+    if (byteOrder == RandomAccessFile.BIG_ENDIAN) bo = ByteOrder.BIG_ENDIAN;
+    else if (byteOrder == RandomAccessFile.LITTLE_ENDIAN) bo = ByteOrder.LITTLE_ENDIAN;
+    else bo = raf.getByteOrder();
+    ByteBuffer bb = null;
+
     if (dataType.getPrimitiveClassType() == byte.class || dataType == DataType.CHAR) {
       byte[] pa = (byte[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readFully(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        raf.readFully(chunk.getSrcPos(), pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       if (convertChar && dataType == DataType.CHAR) return convertByteToChar(pa);
       else return pa; // javac ternary compile error
@@ -117,9 +123,8 @@ public class IospHelper {
       short[] pa = (short[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readShort(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        bb = readChunk(raf, chunk, 2, bb, bo);
+        bb.asShortBuffer().get(pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       return pa;
 
@@ -127,9 +132,8 @@ public class IospHelper {
       int[] pa = (int[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readInt(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        bb = readChunk(raf, chunk, 4, bb, bo);
+        bb.asIntBuffer().get(pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       return pa;
 
@@ -137,9 +141,8 @@ public class IospHelper {
       float[] pa = (float[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readFloat(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        bb = readChunk(raf, chunk, 4, bb, bo);
+        bb.asFloatBuffer().get(pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       return pa;
 
@@ -147,9 +150,8 @@ public class IospHelper {
       double[] pa = (double[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readDouble(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        bb = readChunk(raf, chunk, 8, bb, bo);
+        bb.asDoubleBuffer().get(pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       return pa;
 
@@ -157,9 +159,8 @@ public class IospHelper {
       long[] pa = (long[]) arr;
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readLong(pa, (int) chunk.getDestElem(), chunk.getNelems());
+        bb = readChunk(raf, chunk, 8, bb, bo);
+        bb.asLongBuffer().get(pa, (int) chunk.getDestElem(), chunk.getNelems());
       }
       return pa;
 
@@ -168,9 +169,7 @@ public class IospHelper {
       int recsize = layout.getElemSize();
       while (layout.hasNext()) {
         Layout.Chunk chunk = layout.next();
-        raf.order(byteOrder);
-        raf.seek(chunk.getSrcPos());
-        raf.readFully(pa, (int) chunk.getDestElem() * recsize, chunk.getNelems() * recsize);
+        raf.readFully(chunk.getSrcPos(), pa, (int) chunk.getDestElem() * recsize, chunk.getNelems() * recsize);
       }
       return pa;
     }
@@ -178,6 +177,21 @@ public class IospHelper {
     throw new IllegalStateException("unknown type= " + dataType);
   }
 
+  // positional read of one chunk, reusing bb if its big enough
+  static private ByteBuffer readChunk(RandomAccessFile raf, Layout.Chunk chunk, int elemSize, ByteBuffer bb, ByteOrder bo) throws java.io.IOException {
+    int nbytes = chunk.getNelems() * elemSize;
+    if (bb == null || bb.capacity() < nbytes)
+      bb = ByteBuffer.allocate(nbytes);
+    bb.clear();
+    bb.limit(nbytes);
+    int n = raf.read(chunk.getSrcPos(), bb);
+    if (n < nbytes)
+      throw new java.io.EOFException("Reading " + raf.getLocation() + " at " + chunk.getSrcPos() + " file length = " + raf.length());
+    bb.flip();
+    bb.order(bo);
+    return bb;
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
@@ -0,0 +1,109 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp;
+
+import ucar.nc2.constants.CDM;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * A fixed sequence of bytes at a fixed offset that every file of some format must have.
+ * An IOServiceProvider may declare these in getMagicNumbers(), so that NetcdfFile.open() can skip calling its
+ * isValidFile() on files that cannot match.
+ */
+@Immutable
+public class MagicNumber {
+
+  /**
+   * See if any of the magic numbers matches the start of a file.
+   * If the prefix is too short to decide, but the file is long enough, that counts as a match.
+   *
+   * @param magic      magic numbers, if null or empty, always matches
+   * @param prefix     first bytes of the file
+   * @param fileLength length of the file
+   * @return false only if the file cannot match any of the magic numbers
+   */
+  static public boolean matchesAny(MagicNumber[] magic, byte[] prefix, long fileLength) {
+    if (magic == null || magic.length == 0) return true;
+    for (MagicNumber m : magic) {
+      if (m.matches(prefix, fileLength)) return true;
+    }
+    return false;
+  }
+
+  ////////////////////////////////////////////////////
+  private final int offset;
+  private final byte[] bytes;
+
+  public MagicNumber(int offset, byte[] bytes) {
+    if (offset < 0) throw new IllegalArgumentException("offset must be >= 0");
+    if (bytes == null || bytes.length == 0) throw new IllegalArgumentException("must have at least one byte");
+    this.offset = offset;
+    this.bytes = bytes.clone();
+  }
+
+  public MagicNumber(int offset, String s) {
+    this(offset, s.getBytes(CDM.utf8Charset));
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return bytes.length;
+  }
+
+  /**
+   * Compare to the start of a file.
+   *
+   * @param prefix     first bytes of the file
+   * @param fileLength length of the file
+   * @return false if the file is too short or the bytes differ. true if they match, or the prefix is too short to tell.
+   */
+  public boolean matches(byte[] prefix, long fileLength) {
+    int end = offset + bytes.length;
+    if (end > fileLength) return false;
+    if (end > prefix.length) return true;
+    for (int i = 0; i < bytes.length; i++) {
+      if (prefix[offset + i] != bytes[i]) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "MagicNumber{offset=" + offset + ", bytes=" + Arrays.toString(bytes) + '}';
+  }
+}
@@ -36,6 +36,7 @@ package ucar.nc2.iosp.dmsp;
 import ucar.nc2.*;
 import ucar.nc2.constants.CDM;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.constants.AxisType;
 import ucar.nc2.constants._Coordinate;
 import ucar.nc2.util.CancelTask;
@@ -88,6 +89,15 @@ public class DMSPiosp extends AbstractIOServiceProvider {
     return (localHeader.isValidFile(raf));
   }
 
+  // header must start with the file ID, otherwise isValidFile() fails by throwing an exception
+  static private final MagicNumber[] magic = new MagicNumber[] {
+          new MagicNumber(0, DMSPHeader.HeaderInfoTitle.FILE_ID.toString())};
+
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
   public String getFileTypeId() {
     return "DMSP";
   }
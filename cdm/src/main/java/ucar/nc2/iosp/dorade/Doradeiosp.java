@@ -35,6 +35,7 @@ package ucar.nc2.iosp.dorade;
 import ucar.ma2.*;
 import ucar.nc2.*;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.atd.dorade.*;
 
 
@@ -55,6 +56,14 @@ public class Doradeiosp extends AbstractIOServiceProvider {
     return Doradeheader.isValidFile(raf);
   }
 
+  // a sweep file starts with its SSWB block
+  static private final MagicNumber[] magic = new MagicNumber[] {new MagicNumber(0, "SSWB")};
+
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
   public String getFileTypeId() {
     return "DORADE";
   }
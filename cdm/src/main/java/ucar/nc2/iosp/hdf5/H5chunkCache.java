@@ -0,0 +1,192 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An LRU cache of decompressed HDF5 chunks, with a memory budget in bytes.
+ * Chunks are keyed by file location, file modification time, variable and chunk offset, so that
+ * neighboring requests on a compressed netCDF-4 file (eg WMS tiles) dont inflate the same chunk again.
+ * Concurrent requests for the same missing chunk wait for a single decompression.
+ * <p/>
+ * Use H5iosp.setChunkCache() to enable. Entries for a file are dropped when the FileCache sees that it has changed.
+ */
+@ThreadSafe
+public class H5chunkCache {
+  static private final int entryOverhead = 100; // approx bytes used by the key and cache entry
+
+  private final String name;
+  private final long maxBytes;
+  private final Cache<Key, byte[]> cache;
+
+  /**
+   * Constructor.
+   *
+   * @param name     name of the cache, for reporting
+   * @param maxBytes memory budget in bytes for the decompressed chunks
+   */
+  public H5chunkCache(String name, long maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("H5chunkCache maxBytes must be > 0");
+    this.name = name;
+    this.maxBytes = maxBytes;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Key key, byte[] data) -> data.length + entryOverhead)
+            .recordStats()
+            .build();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Get the decompressed chunk from the cache, or compute it with the reader and add it to the cache.
+   * The returned array is shared, and must not be modified.
+   *
+   * @param location     file location
+   * @param lastModified file modification time
+   * @param varName      full name of the variable
+   * @param offset       chunk offset, in elements
+   * @param reader       reads and decompresses the chunk on a miss
+   * @return decompressed chunk
+   * @throws IOException on read error
+   */
+  byte[] get(String location, long lastModified, String varName, int[] offset, Callable<byte[]> reader) throws IOException {
+    try {
+      return cache.get(new Key(location, lastModified, varName, offset), reader);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Remove all chunks belonging to the given location, eg when the file has been rewritten.
+   *
+   * @param location file location
+   */
+  public void invalidate(String location) {
+    cache.asMap().keySet().removeIf(key -> key.location.equals(location));
+  }
+
+  /**
+   * Remove all chunks from the cache.
+   */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long getSizeBytes() {
+    long total = 0;
+    for (byte[] data : cache.asMap().values())
+      total += data.length + entryOverhead;
+    return total;
+  }
+
+  /**
+   * Add stat report (hits, misses, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public void showStats(Formatter format) {
+    CacheStats stats = cache.stats();
+    format.format("H5chunkCache %s: maxBytes= %d nchunks= %d bytes= %d%n", name, maxBytes, cache.size(), getSizeBytes());
+    format.format("  hits= %d miss= %d evictions= %d hit ratio=%f%n", stats.hitCount(), stats.missCount(), stats.evictionCount(),
+            stats.hitRate());
+  }
+
+  @Override
+  public String toString() {
+    return "H5chunkCache{" + name + ", maxBytes=" + maxBytes + '}';
+  }
+
+  //////////////////////////////////////////////////////////////////
+
+  static private class Key {
+    final String location;
+    final long lastModified;
+    final String varName;
+    final int[] offset;
+    final int hash;
+
+    Key(String location, long lastModified, String varName, int[] offset) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.varName = varName;
+      this.offset = offset;
+      int h = location.hashCode();
+      h = 31 * h + (int) (lastModified ^ (lastModified >>> 32));
+      h = 31 * h + varName.hashCode();
+      this.hash = 31 * h + Arrays.hashCode(offset);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return hash == that.hash && lastModified == that.lastModified && location.equals(that.location)
+              && varName.equals(that.varName) && Arrays.equals(offset, that.offset);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
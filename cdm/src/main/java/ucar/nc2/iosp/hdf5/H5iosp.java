@@ -87,6 +87,42 @@ public class H5iosp extends AbstractIOServiceProvider {
     H4header.setDebugFlags(debugFlag);
   }
 
+  /**
+   * Decompress filtered (eg deflated) chunks on a shared pool of threads, reading ahead of the consumer.
+   * Default is to decompress on the reading thread.
+   *
+   * @param nthreads      size of the pool; <= 1 turns parallel decompression off
+   * @param prefetchDepth max number of chunks read ahead for any one read; if <= 0, use 2 * nthreads
+   */
+  static public void setChunkParallelism(int nthreads, int prefetchDepth) {
+    H5tiledLayoutBB.setParallelism(nthreads, prefetchDepth);
+  }
+
+  static private volatile H5chunkCache chunkCache = null;
+  static private boolean chunkCacheListening = false;
+
+  /**
+   * Set a process-wide cache of decompressed chunks, used for all filtered (eg deflated) variables.
+   * Default is no cache.
+   *
+   * @param cache use this H5chunkCache, or null to turn off chunk caching
+   */
+  static public synchronized void setChunkCache(H5chunkCache cache) {
+    if (chunkCache != null) chunkCache.clear();
+    chunkCache = cache;
+    if (cache != null && !chunkCacheListening) {
+      ucar.nc2.util.cache.FileCache.addChangeListener(location -> {
+        H5chunkCache cc = chunkCache;
+        if (cc != null) cc.invalidate(location);
+      });
+      chunkCacheListening = true;
+    }
+  }
+
+  static public H5chunkCache getChunkCache() {
+    return chunkCache;
+  }
+
   public boolean isValidFile(ucar.unidata.io.RandomAccessFile raf) throws IOException {
     return H5header.isValidFile(raf);
   }
@@ -163,7 +199,7 @@ public class H5iosp extends AbstractIOServiceProvider {
       if (debugFilter) System.out.println("read variable filtered " + v2.getFullName() + " vinfo = " + vinfo);
       assert vinfo.isChunked;
       ByteOrder bo = (vinfo.typeInfo.endian == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
-      layout = new H5tiledLayoutBB(v2, wantSection, raf, vinfo.mfp.getFilters(), bo);
+      layout = new H5tiledLayoutBB(v2, wantSection, raf, vinfo.mfp.getFilters(), bo, chunkCache);
       if (vinfo.typeInfo.isVString) {
         data = readFilteredStringData((LayoutBB) layout);
       } else{
@@ -334,8 +370,7 @@ public class H5iosp extends AbstractIOServiceProvider {
         if (debugStructure)
           System.out.println(" readStructure " + v.getFullName() + " chunk= " + chunk + " index.getElemSize= " + layout.getElemSize());
         // copy bytes directly into the underlying byte[] LOOK : assumes contiguous layout ??
-        raf.seek(chunk.getSrcPos());
-        raf.readFully(byteArray, (int) chunk.getDestElem() * recsize, chunk.getNelems() * recsize);
+        raf.readFully(chunk.getSrcPos(), byteArray, (int) chunk.getDestElem() * recsize, chunk.getNelems() * recsize);
       }
 
       // place data into an ArrayStructureBB
@@ -550,8 +585,7 @@ public class H5iosp extends AbstractIOServiceProvider {
         int recsize = layout.getElemSize();
         for (int i = 0; i < chunk.getNelems(); i++) {
           byte[] pa = new byte[recsize];
-          raf.seek(chunk.getSrcPos() + i * recsize);
-          raf.readFully(pa, 0, recsize);
+          raf.readFully(chunk.getSrcPos() + i * recsize, pa, 0, recsize);
           opArray.setObject(count++, ByteBuffer.wrap(pa));
         }
       }
@@ -46,23 +46,71 @@ import ucar.unidata.io.RandomAccessFile;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Iterator to read/write subsets of an array.
  * This calculates byte offsets for HD5 chunked datasets.
  * Assumes that the data is stored in chunks, indexed by a Btree.
  * for filtered data
+ * <p>
+ * If a chunk executor has been set with setParallelism(), the bytes of upcoming chunks are read ahead and the
+ * filter pipeline (inflate, shuffle, fletcher32) is run on the shared pool. Chunks are still handed to LayoutBBTiled
+ * in btree order, and at most prefetchDepth chunks per read are outstanding.
+ * If an H5chunkCache is passed in, decompressed chunks are looked up there before being read.
  *
  * @author caron
  */
 class H5tiledLayoutBB implements LayoutBB {
+  static private final Object lock = new Object();
+  static private ExecutorService chunkExecutor; // null means decompress on the calling thread
+  static private int prefetchDepth;
+
+  /**
+   * Decompress filtered chunks on a shared pool of worker threads.
+   *
+   * @param nthreads      size of the pool; <= 1 turns parallel decompression off
+   * @param prefetchDepth max number of chunks read ahead for any one read; if <= 0, use 2 * nthreads
+   */
+  static void setParallelism(int nthreads, int prefetchDepth) {
+    synchronized (lock) {
+      if (chunkExecutor != null) {
+        chunkExecutor.shutdown();
+        chunkExecutor = null;
+      }
+      if (nthreads <= 1) return;
+
+      H5tiledLayoutBB.prefetchDepth = (prefetchDepth > 0) ? prefetchDepth : 2 * nthreads;
+      chunkExecutor = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "H5chunk-" + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+  }
+
   private LayoutBBTiled delegate;
+  private PrefetchDataChunkIterator prefetcher; // null if not reading ahead
 
   private RandomAccessFile raf;
   private H5header.Filter[] filters;
   private ByteOrder byteOrder;
+  private H5chunkCache chunkCache; // may be null
+  private String location, varName;
+  private long lastModified;
                                                                                                      
   private Section want;
   private int[] chunkSize; // from the StorageLayout message (exclude the elemSize)
@@ -79,10 +127,13 @@ class H5tiledLayoutBB implements LayoutBB {
    * @param wantSection the wanted section of data, contains a List of Range objects. must be complete
    * @param raf the RandomAccessFile
    * @param filters set of filters that have been applied to the data
+   * @param byteOrder byte order of the data
+   * @param chunkCache cache of decompressed chunks, may be null
    * @throws InvalidRangeException if section invalid for this variable
    * @throws java.io.IOException   on io error
    */
-  H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, H5header.Filter[] filters, ByteOrder byteOrder) throws InvalidRangeException, IOException {
+  H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, H5header.Filter[] filters, ByteOrder byteOrder,
+                  H5chunkCache chunkCache) throws InvalidRangeException, IOException {
     wantSection = Section.fill(wantSection, v2.getShape());
 
     H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
@@ -92,6 +143,12 @@ class H5tiledLayoutBB implements LayoutBB {
     this.raf = raf;
     this.filters = filters;
     this.byteOrder = byteOrder;
+    this.chunkCache = chunkCache;
+    if (chunkCache != null) {
+      this.location = raf.getLocation();
+      this.lastModified = raf.getLastModified();
+      this.varName = v2.getFullName();
+    }
 
     // we have to translate the want section into the same rank as the storageSize, in order to be able to call
     // Section.intersect(). It appears that storageSize (actually msl.chunkSize) may have an extra dimension, reletive
@@ -110,7 +167,15 @@ class H5tiledLayoutBB implements LayoutBB {
 
     // create the data chunk iterator
     DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIteratorFilter(this.want);
-    DataChunkIterator dcIter = new DataChunkIterator(iter);
+    LayoutBBTiled.DataChunkIterator dcIter;
+    synchronized (lock) {
+      if (chunkExecutor == null) {
+        dcIter = new DataChunkIterator(iter);
+      } else {
+        prefetcher = new PrefetchDataChunkIterator(iter, chunkExecutor, prefetchDepth);
+        dcIter = prefetcher;
+      }
+    }
     delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
     
     if (debug) System.out.println(" H5tiledLayout: " + this);
@@ -125,7 +190,15 @@ class H5tiledLayoutBB implements LayoutBB {
   }
 
   public boolean hasNext() {
-    return delegate.hasNext();
+    boolean more = false;
+    try {
+      more = delegate.hasNext();
+      return more;
+    } finally {
+      // done, or failed: dont leave any chunks being read in the background
+      if (!more && prefetcher != null)
+        prefetcher.drain();
+    }
   }
 
   public Chunk next() throws IOException {
@@ -161,11 +234,54 @@ class H5tiledLayoutBB implements LayoutBB {
     }
   }
 
+  // reads ahead up to depth chunks; the intersecting ones are decompressed on the executor.
+  // the btree is only walked on the calling thread, the workers use positional reads on the raf.
+  private class PrefetchDataChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    DataBTree.DataChunkIterator delegate;
+    ExecutorService executor;
+    int depth;
+    ArrayDeque<DataChunk> pending = new ArrayDeque<>();
+    DataChunk current; // the last one returned by next()
+
+    PrefetchDataChunkIterator(DataBTree.DataChunkIterator delegate, ExecutorService executor, int depth) {
+      this.delegate = delegate;
+      this.executor = executor;
+      this.depth = depth;
+    }
+
+    public boolean hasNext() {
+      return !pending.isEmpty() || delegate.hasNext();
+    }
+
+    public LayoutBBTiled.DataChunk next() throws IOException {
+      while (pending.size() < depth && delegate.hasNext()) {
+        DataChunk dc = new DataChunk(delegate.next());
+        if (dc.intersectsWant())
+          dc.prefetch(executor);
+        pending.add(dc);
+      }
+      current = pending.poll();
+      return current;
+    }
+
+    // cancel the chunks not yet started, and wait for the ones being decoded
+    void drain() {
+      if (current != null) current.abandon();
+      current = null;
+      for (DataChunk dc : pending)
+        dc.abandon();
+      pending.clear();
+    }
+  }
+
   private class DataChunk implements ucar.nc2.iosp.LayoutBBTiled.DataChunk {
     // Copied from ArrayList.
     private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
 
     DataBTree.DataChunk delegate;
+    private Future<ByteBuffer> future; // not null if being read on the chunk executor
+    private final AtomicInteger state = new AtomicInteger(); // 0 = not started, 1 = decoding on the executor, 2 = abandoned
+    private final CountDownLatch decoded = new CountDownLatch(1);
 
     DataChunk(DataBTree.DataChunk delegate) {
       this.delegate = delegate;
@@ -200,12 +316,78 @@ class H5tiledLayoutBB implements LayoutBB {
       return offset;
     }
 
+    boolean intersectsWant() {
+      try {
+        return new Section(getOffset(), chunkSize).intersects(want);
+      } catch (InvalidRangeException e) {
+        return false; // let LayoutBBTiled deal with it
+      }
+    }
+
+    void prefetch(ExecutorService executor) {
+      future = executor.submit(() -> {
+        if (!state.compareAndSet(0, 1)) return null; // abandoned before it started
+        try {
+          return decode();
+        } finally {
+          decoded.countDown();
+        }
+      });
+    }
+
+    // the result is no longer wanted. cancel without interrupting, since the worker may be reading the shared raf,
+    // and if the decode has started, wait for it to finish so nothing is still reading when the caller returns
+    void abandon() {
+      if (future == null) return;
+      if (state.compareAndSet(0, 2)) {
+        future.cancel(false);
+        return;
+      }
+      if (state.get() == 2) return; // already abandoned
+
+      boolean interrupted = false;
+      while (true) {
+        try {
+          decoded.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+
     public ByteBuffer getByteBuffer() throws IOException {
+      if (future == null)
+        return decode();
+
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt(); // the prefetched chunks are drained by hasNext()
+        throw new InterruptedIOException("interrupted reading HDF5 chunk at " + delegate.filePos);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    private ByteBuffer decode() throws IOException {
+      byte[] data = (chunkCache == null) ? readAndFilter() :
+              chunkCache.get(location, lastModified, varName, delegate.offset, this::readAndFilter);
+      ByteBuffer result = ByteBuffer.wrap(data);
+      result.order(byteOrder);
+      return result;
+    }
+
+    private byte[] readAndFilter() throws IOException {
       try {
         // read the data
         byte[] data = new byte[delegate.size];
-        raf.seek(delegate.filePos);
-        raf.readFully(data);
+        raf.readFully(delegate.filePos, data);
 
       // apply filters backwards
       for (int i = filters.length - 1; i >= 0; i--) {
@@ -226,9 +408,7 @@ class H5tiledLayoutBB implements LayoutBB {
           throw new RuntimeException("Unknown filter type="+f.id);
       }
 
-        ByteBuffer result = ByteBuffer.wrap(data);
-        result.order(byteOrder);
-        return result;
+        return data;
       } catch (OutOfMemoryError e) {
         Error oom =  new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the " +
                 "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
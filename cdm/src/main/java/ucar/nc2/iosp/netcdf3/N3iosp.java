@@ -41,6 +41,7 @@ import ucar.unidata.io.RandomAccessFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.util.Formatter;
 import java.util.regex.Matcher;
@@ -527,12 +528,12 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
     int count = 0;
     for (int recnum : recordRange) {
       if (debugRecord) System.out.println(" read record " + recnum);
-      raf.seek(header.recStart + recnum * header.recsize); // where the record starts
+      long pos = header.recStart + recnum * header.recsize; // where the record starts
 
       if (recnum != header.numrecs - 1)
-        raf.readFully(result, (int) (count * header.recsize), (int) header.recsize);
+        raf.readFully(pos, result, (int) (count * header.recsize), (int) header.recsize);
       else
-        raf.read(result, (int) (count * header.recsize), (int) header.recsize); // "wart" allows file to be one byte short. since its always padding, we allow
+        raf.read(pos, ByteBuffer.wrap(result, (int) (count * header.recsize), (int) header.recsize)); // "wart" allows file to be one byte short. since its always padding, we allow
       count++;
     }
 
@@ -583,11 +584,11 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
       if (debugRecord) System.out.println(" readRecordDataSubset recno= " + recnum);
 
       // read one record
-      raf.seek(recStart + recnum * recsize); // where the record starts
+      long pos = recStart + recnum * recsize; // where the record starts
       if (recnum != numrecs - 1)
-        raf.readFully(record, 0, recsize);
+        raf.readFully(pos, record, 0, recsize);
       else
-        raf.read(record, 0, recsize); // "wart" allows file to be one byte short. since its always padding, we allow
+        raf.read(pos, ByteBuffer.wrap(record, 0, recsize)); // "wart" allows file to be one byte short. since its always padding, we allow
 
       // transfer desired variable(s) to result array(s)
       for (StructureMembers.Member m : members.getMembers()) {
@@ -652,7 +653,6 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
 
     for (int recnum : recordRange) {
         if (debugRecord) System.out.println(" read record " + recnum);
-        raf.seek(header.recStart + recnum * header.recsize); // where the record starts
         count += raf.readToByteChannel(out, header.recStart + recnum * header.recsize, header.recsize);
       }
     // }
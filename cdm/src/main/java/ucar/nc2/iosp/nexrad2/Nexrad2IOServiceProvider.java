@@ -37,6 +37,7 @@ import ucar.ma2.*;
 import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import static ucar.nc2.iosp.nexrad2.Level2Record.*;
 import ucar.nc2.units.DateFormatter;
 import ucar.nc2.util.CancelTask;
@@ -57,6 +58,10 @@ public class Nexrad2IOServiceProvider extends AbstractIOServiceProvider {
   static private final int MISSING_INT = -9999;
   static private final float MISSING_FLOAT = Float.NaN;
 
+  // all of the versions recognized in isValidFile()
+  static private final MagicNumber[] magic = new MagicNumber[] {
+          new MagicNumber(0, Level2VolumeScan.ARCHIVE2), new MagicNumber(0, "AR2V000")};
+
 
   public boolean isValidFile( RandomAccessFile raf) throws IOException {
     try {
@@ -71,6 +76,11 @@ public class Nexrad2IOServiceProvider extends AbstractIOServiceProvider {
     }
   }
 
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
  // private Dimension radialDim;
   private double radarRadius;
   private Variable v0, v1;
@@ -60,6 +60,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Superclass for NcML Aggregation.
@@ -134,10 +138,40 @@ public abstract class Aggregation {
 
   // experimental multithreading
   static protected Executor executor;
+  static protected int maxThreadsPerRead = Runtime.getRuntime().availableProcessors();
+  static private ExecutorService readPool; // made by setParallelism
+
   static public void setExecutor(Executor exec) {
     executor = exec;
   }
 
+  /**
+   * Read the nested datasets of an outer dimension aggregation on a shared pool of threads.
+   * Each nested dataset is written to its own part of the result. Default is to read them on the calling thread.
+   *
+   * @param nthreads          size of the pool; <= 1 turns parallel reading off
+   * @param maxThreadsPerRead max number of threads used by any one read, including the calling thread; if <= 0, use nthreads
+   */
+  static public synchronized void setParallelism(int nthreads, int maxThreadsPerRead) {
+    if (readPool != null) {
+      if (executor == readPool) executor = null;
+      readPool.shutdown();
+      readPool = null;
+    }
+    if (nthreads <= 1) return;
+
+    Aggregation.maxThreadsPerRead = (maxThreadsPerRead > 0) ? maxThreadsPerRead : nthreads;
+    readPool = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "AggRead-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    executor = readPool;
+  }
+
   static public void setTypicalDatasetMode(String mode) {
     if (mode.equalsIgnoreCase("random"))
       typicalDatasetMode = TypicalDataset.RANDOM;
@@ -33,19 +33,24 @@
 
 package ucar.nc2.ncml;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import org.jdom2.Element;
 import thredds.client.catalog.Catalog;
 import thredds.inventory.MFile;
@@ -68,6 +73,7 @@ import ucar.nc2.dataset.VariableDS;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.units.DateUnit;
 import ucar.nc2.util.CancelTask;
+import ucar.unidata.io.RandomAccessFile;
 
 /**
  * JoinExisting Aggregation.
@@ -260,8 +266,28 @@ public class AggregationExisting extends AggregationOuterDimension {
     timeAxis.setCachedData(timeCoordVals, false);
   }
 
+  /////////////////////////////////////////////////////////////////////////////////////////
+  // Persistence of ncoords and cached values (eg coordValues), since they can be expensive to recreate.
+  // The persist file in diskCache2 has a header, then one record for each nested dataset, appended as datasets are
+  // added or changed; a later record for a dataset replaces any earlier one:
+  //   header: int PERSIST_MAGIC, int PERSIST_VERSION, UTF type, UTF dimName
+  //   record: UTF id, long lastModified, int ncoords, int nbytes, then nbytes of cached values:
+  //           short nvars, {UTF varName, UTF DataType, int nelems, values} for each var
+  // The cached values are only read when first needed, see loadPersistedData().
+  // Older versions wrote an XML file with the same name, which is read once and then replaced.
+
+  static private final int PERSIST_MAGIC = 0x41474758; // "AGGX"
+  static private final int PERSIST_VERSION = 4; // the XML files were version 3
+
+  private final Map<String, Long> persisted = new HashMap<>(); // dataset id -> lastModified of its latest record
+  private int persistRecords;       // number of records in the persist file, including replaced ones
+  private long persistLength = -1;  // length of the persist file after its last good record
+  private final Map<String, Long> persistPending = new HashMap<>(); // dataset id -> position of values not yet loaded
+
   /**
    * Persist info (ncoords, coordValues) from joinExisting, since that can be expensive to recreate.
+   * Only datasets that are new, have changed, or have newly cached values since the last write are appended;
+   * the file is rewritten when more than half of it is out of date.
    *
    * @throws IOException
    */
@@ -269,17 +295,44 @@ public class AggregationExisting extends AggregationOuterDimension {
     if (diskCache2 == null)
       return;
 
-    String cacheName = getCacheName();
-    if (cacheName == null) return;
-    if (cacheName.startsWith("file:"))      // LOOK
-      cacheName = cacheName.substring(5);
-    File cacheFile = diskCache2.getCacheFile(cacheName);
-    if (cacheFile == null) throw new IllegalStateException();
+    File cacheFile = getPersistFile();
+    if (cacheFile == null) return;
 
     // only write out if something changed after the cache file was last written, or if the file has been deleted
-    if (!cacheDirty && cacheFile.exists())
+    if (!cacheDirty && cacheAdded.isEmpty() && cacheFile.exists())
       return;
 
+    List<DatasetOuterDimension> changed = new ArrayList<>();
+    Set<String> ids = new HashSet<>();
+    int current = 0;
+    for (Dataset dataset : getDatasets()) {
+      DatasetOuterDimension dod = (DatasetOuterDimension) dataset;
+      if (dod.getId() == null) logger.warn("id is null");
+      ids.add(dod.getId());
+      Long lastModified = persisted.get(dod.getId());
+      if (lastModified != null && lastModified == getLastModified(dod) && !cacheAdded.contains(dod.getId()))
+        current++;
+      else
+        changed.add(dod);
+    }
+
+    boolean append = cacheFile.exists() && (cacheFile.length() == persistLength) && (persistRecords - current <= current);
+    if (append && changed.isEmpty()) {
+      cacheDirty = false;
+      cacheAdded.retainAll(ids); // forget datasets that have gone away
+      return;
+    }
+
+    List<DatasetOuterDimension> toWrite;
+    if (append) {
+      toWrite = changed;
+    } else {
+      loadPersistedData(); // keep the values that havent been read in yet
+      toWrite = new ArrayList<>();
+      for (Dataset dataset : getDatasets())
+        toWrite.add((DatasetOuterDimension) dataset);
+    }
+
     FileChannel channel = null;
     try {
       File dir = cacheFile.getParentFile();
@@ -289,7 +342,7 @@ public class AggregationExisting extends AggregationOuterDimension {
       }
 
       // Get a file channel for the file
-      FileOutputStream fos = new FileOutputStream(cacheFile);
+      FileOutputStream fos = new FileOutputStream(cacheFile, append);
       channel = fos.getChannel();
 
       // Try acquiring the lock without blocking. This method returns
@@ -303,50 +356,41 @@ public class AggregationExisting extends AggregationOuterDimension {
       }
       if (lock == null) return;
 
-      PrintWriter out = new PrintWriter(new OutputStreamWriter(fos, CDM.utf8Charset));
-      out.print("<?xml version='1.0' encoding='UTF-8'?>\n");
-      out.print("<aggregation xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' version='3' ");
-      out.print("type='" + type + "' ");
-      if (dimName != null)
-        out.print("dimName='" + dimName + "' ");
-      if (datasetManager.getRecheck() != null)
-        out.print("recheckEvery='" + datasetManager.getRecheck() + "' ");
-      out.print(">\n");
-
-      List<Dataset> nestedDatasets = getDatasets();
-      for (Dataset dataset : nestedDatasets) {
-        DatasetOuterDimension dod = (DatasetOuterDimension) dataset;
-        if (dod.getId() == null) logger.warn("id is null");
-
-        out.print("  <netcdf id='" + dod.getId() + "' ");
-        out.print("ncoords='" + dod.getNcoords(null) + "' >\n");
-
-        for (CacheVar pv : cacheList) {
-          Array data = pv.getData(dod.getId());
-          if (data != null) {
-            out.print("    <cache varName='" + pv.varName + "' >");
-            while (data.hasNext())
-              out.printf("%s ", data.next());
-            out.print("</cache>\n");
-            if (logger.isDebugEnabled())
-              logger.debug(" wrote array = " + pv.varName + " nelems= " + data.getSize() + " for " + dataset.getLocation());
-          }
-        }
-        out.print("  </netcdf>\n");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      if (!append) {
+        out.writeInt(PERSIST_MAGIC);
+        out.writeInt(PERSIST_VERSION);
+        out.writeUTF(type.toString());
+        out.writeUTF(dimName == null ? "" : dimName);
+        persisted.clear();
+        persistRecords = 0;
       }
 
-      out.print("</aggregation>\n");
+      ByteArrayOutputStream values = new ByteArrayOutputStream(1000);
+      for (DatasetOuterDimension dod : toWrite) {
+        cacheAdded.remove(dod.getId()); // before the values are written, so any added meanwhile are kept
+        values.reset();
+        int nvars = writeValues(new DataOutputStream(values), dod);
+
+        long lastModified = getLastModified(dod);
+        out.writeUTF(dod.getId());
+        out.writeLong(lastModified);
+        out.writeInt(dod.getNcoords(null));
+        out.writeInt(values.size());
+        values.writeTo(out);
+
+        persisted.put(dod.getId(), lastModified);
+        persistRecords++;
+        if (logger.isDebugEnabled())
+          logger.debug(" wrote nvars = " + nvars + " for " + dod.getLocation());
+      }
       out.close(); // this also closes the  channel and releases the lock
 
-      long time = datasetManager.getLastScanned();
-      if (time == 0) time = System.currentTimeMillis(); // no scans (eg all static) will have a 0
-
-      if (!cacheFile.setLastModified(time))
-        logger.warn("FAIL to set lastModified on {}", cacheFile.getPath());
+      persistLength = cacheFile.length();
       cacheDirty = false;
 
       if (logger.isDebugEnabled())
-        logger.debug("Aggregation persisted = " + cacheFile.getPath() + " lastModified= " + new Date(datasetManager.getLastScanned()));
+        logger.debug("Aggregation persisted = " + cacheFile.getPath() + (append ? " appended " : " wrote ") + toWrite.size() + " datasets");
 
     } finally {
       if (channel != null)
@@ -354,40 +398,254 @@ public class AggregationExisting extends AggregationOuterDimension {
     }
   }
 
-  // read info from the persistent XML file, if it exists
+  // write the cached values for one dataset, return number of vars written
+  private int writeValues(DataOutputStream out, DatasetOuterDimension dod) throws IOException {
+    List<Array> datas = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (CacheVar pv : cacheList) {
+      Array data = pv.getData(dod.getId());
+      if (data != null) {
+        datas.add(data);
+        names.add(pv.varName);
+      }
+    }
+
+    out.writeShort(datas.size());
+    for (int i = 0; i < datas.size(); i++) {
+      Array data = datas.get(i);
+      DataType dtype = data.getDataType();
+      out.writeUTF(names.get(i));
+      out.writeUTF(dtype.name());
+      out.writeInt((int) data.getSize());
+
+      IndexIterator ii = data.getIndexIterator();
+      switch (dtype) {
+        case DOUBLE:
+          while (ii.hasNext()) out.writeDouble(ii.getDoubleNext());
+          break;
+        case FLOAT:
+          while (ii.hasNext()) out.writeFloat(ii.getFloatNext());
+          break;
+        case LONG:
+          while (ii.hasNext()) out.writeLong(ii.getLongNext());
+          break;
+        case INT:
+          while (ii.hasNext()) out.writeInt(ii.getIntNext());
+          break;
+        case SHORT:
+          while (ii.hasNext()) out.writeShort(ii.getShortNext());
+          break;
+        case BYTE:
+          while (ii.hasNext()) out.writeByte(ii.getByteNext());
+          break;
+        default: // as strings, like the XML files did
+          while (ii.hasNext()) out.writeUTF(ii.getObjectNext().toString());
+          break;
+      }
+    }
+    out.flush();
+    return datas.size();
+  }
+
+  // read the cached values for one dataset
+  private void readValues(RandomAccessFile raf, String id) throws IOException {
+    int nvars = raf.readShort();
+    for (int i = 0; i < nvars; i++) {
+      String varName = raf.readUTF();
+      DataType dtype = DataType.getType(raf.readUTF());
+      int nelems = raf.readInt();
+      if (dtype == null) throw new IOException("bad DataType in persist file for " + varName);
+
+      Array data;
+      switch (dtype) {
+        case DOUBLE: {
+          double[] vals = new double[nelems];
+          raf.readDouble(vals, 0, nelems);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        case FLOAT: {
+          float[] vals = new float[nelems];
+          raf.readFloat(vals, 0, nelems);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        case LONG: {
+          long[] vals = new long[nelems];
+          raf.readLong(vals, 0, nelems);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        case INT: {
+          int[] vals = new int[nelems];
+          raf.readInt(vals, 0, nelems);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        case SHORT: {
+          short[] vals = new short[nelems];
+          raf.readShort(vals, 0, nelems);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        case BYTE: {
+          byte[] vals = new byte[nelems];
+          raf.readFully(vals);
+          data = Array.factory(dtype, new int[]{nelems}, vals);
+          break;
+        }
+        default: {
+          String[] vals = new String[nelems];
+          for (int j = 0; j < nelems; j++)
+            vals[j] = raf.readUTF();
+          data = Array.makeArray(dtype, vals);
+          break;
+        }
+      }
+
+      CacheVar pv = findCacheVariable(varName);
+      if (pv != null) {
+        pv.putPersistedData(id, data);
+        countCacheUse++;
+      } else {
+        logger.warn("not a cache var=" + varName);
+      }
+    }
+  }
+
+  // read info from the persist file, if it exists. The cached values are read later, when needed.
   protected void persistRead() {
     if (diskCache2 == null) return;
 
-    String cacheName = getCacheName();
-    if (cacheName == null) return;
-    if (cacheName.startsWith("file:"))      // LOOK
-      cacheName = cacheName.substring(5);
-
-    File cacheFile = diskCache2.getCacheFile(cacheName);
-    if (cacheFile == null) throw new IllegalStateException();
-    if (!cacheFile.exists())
+    File cacheFile = getPersistFile();
+    if (cacheFile == null || !cacheFile.exists())
       return;
-    long lastWritten = cacheFile.lastModified();
+
+    // may be called again after more cache variables have been added, or the datasets have changed
+    persisted.clear();
+    persistPending.clear();
+    persistRecords = 0;
+    persistLength = -1;
 
     if (logger.isDebugEnabled()) logger.debug(" Try to Read cache {} " + cacheFile.getPath());
 
+    // use a map to find datasets to avoid O(n**2) searching
+    Map<String, Dataset> map = new HashMap<>();
+    for (Dataset ds : getDatasets()) {
+      map.put(ds.getId(), ds);
+    }
+
+    try {
+      if (!isBinaryPersistFile(cacheFile)) {
+        persistReadXml(cacheFile, map); // older version
+        return;
+      }
+    } catch (IOException e) {
+      logger.warn("Error reading persist file " + cacheFile.getPath(), e);
+      return;
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile.getPath(), "r")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN); // written with a DataOutputStream
+      raf.seek(4); // magic was checked
+      if (raf.readInt() != PERSIST_VERSION) return; // dont read other versions, recreate
+      raf.readUTF(); // type
+      raf.readUTF(); // dimName
+      persistLength = raf.getFilePointer();
+
+      while (raf.getFilePointer() < raf.length()) {
+        String id = raf.readUTF();
+        long lastModified = raf.readLong();
+        int ncoords = raf.readInt();
+        int nbytes = raf.readInt();
+        long valuesPos = raf.getFilePointer();
+        if (valuesPos + nbytes > raf.length()) break; // incomplete last record
+        raf.seek(valuesPos + nbytes);
+        persistLength = raf.getFilePointer();
+        persistRecords++;
+        persisted.put(id, lastModified);
+
+        DatasetOuterDimension dod = (DatasetOuterDimension) map.get(id);
+        if (null == dod) {
+          // this should mean that the dataset has been deleted. so not a problem
+          if (logger.isDebugEnabled()) logger.debug(" have cache but no dataset= {}", id);
+          continue;
+        }
+        if (lastModified != getLastModified(dod)) {  // skip datasets that have changed
+          if (logger.isDebugEnabled()) logger.debug(" dataset was changed= {}", id);
+          persistPending.remove(id);
+          continue;
+        }
+        if (logger.isDebugEnabled()) logger.debug(" use cache for dataset= {}", id);
+
+        if (dod.ncoord == 0)
+          dod.ncoord = ncoords;
+        persistPending.put(id, valuesPos);
+      }
+
+    } catch (EOFException e) {
+      // incomplete last record from an interrupted write; it will be rewritten
+    } catch (IOException e) {
+      logger.warn("Error reading persist file " + cacheFile.getPath(), e);
+    }
+  }
+
+  // true if the persist file has the binary format, else its the older XML format
+  private boolean isBinaryPersistFile(File cacheFile) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile.getPath(), "r")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      return raf.length() >= 8 && raf.readInt() == PERSIST_MAGIC;
+    }
+  }
+
+  /**
+   * Read in the persisted values that havent been loaded yet.
+   *
+   * @return true if any were loaded
+   */
+  @Override
+  protected synchronized boolean loadPersistedData() {
+    if (persistPending.isEmpty()) return false;
+
+    // read in file order
+    Map<Long, String> byPos = new TreeMap<>();
+    for (Map.Entry<String, Long> entry : persistPending.entrySet())
+      byPos.put(entry.getValue(), entry.getKey());
+    persistPending.clear();
+
+    File cacheFile = getPersistFile();
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile.getPath(), "r")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      for (Map.Entry<Long, String> entry : byPos.entrySet()) {
+        raf.seek(entry.getKey());
+        readValues(raf, entry.getValue());
+      }
+    } catch (Exception e) {
+      logger.warn("Error reading cached data from " + cacheFile.getPath(), e);
+    }
+    return true;
+  }
+
+  private long getLastModified(DatasetOuterDimension dod) {
+    MFile mfile = dod.getMFile();
+    return (mfile == null) ? 0 : mfile.getLastModified();
+  }
+
+  // read info from the version 3 XML persist file
+  private void persistReadXml(File cacheFile, Map<String, Dataset> map) {
+    long lastWritten = cacheFile.lastModified();
+
     Element aggElem;
     try {
       aggElem = ucar.nc2.util.xml.Parse.readRootElement("file:" + cacheFile.getPath());
     } catch (IOException e) {
-      if (debugCache) System.out.println(" No cache for " + cacheName + " - " + e.getMessage());
+      if (debugCache) System.out.println(" No cache for " + cacheFile.getPath() + " - " + e.getMessage());
       return;
     }
 
     String version = aggElem.getAttributeValue("version");
     if ((version == null) || !version.equals("3")) return; // dont read old cache files, recreate
 
-    // use a map to find datasets to avoid O(n**2) searching
-    Map<String, Dataset> map = new HashMap<String, Dataset>();
-    for (Dataset ds : getDatasets()) {
-      map.put(ds.getId(), ds);
-    }
-
     List<Element> ncList = aggElem.getChildren("netcdf", Catalog.ncmlNS);
     for (Element netcdfElemNested : ncList) {
       String id = netcdfElemNested.getAttributeValue("id");
@@ -437,7 +695,7 @@ public class AggregationExisting extends AggregationOuterDimension {
             Array data = Array.makeArray(pv.dtype, vals);
             //took = .001 * .001 * .001 * (System.nanoTime() - start);
             //if (debugPersist) System.out.println("  makeArray took = " + took + " sec nelems= "+data.getSize());
-            pv.putData(id, data);
+            pv.putPersistedData(id, data);
             countCacheUse++;
 
           } catch (Exception e) {
@@ -452,8 +710,7 @@ public class AggregationExisting extends AggregationOuterDimension {
 
   }
 
-// name to use in the DiskCache2 for the persistent XML info.
-// Document root is aggregation
+// name to use in the DiskCache2 for the persistent info.
 
   // has the name getCacheName()
   private String getCacheName() {
@@ -462,6 +719,16 @@ public class AggregationExisting extends AggregationOuterDimension {
     return cacheName;
   }
 
+  private File getPersistFile() {
+    String cacheName = getCacheName();
+    if (cacheName == null) return null;
+    if (cacheName.startsWith("file:"))      // LOOK
+      cacheName = cacheName.substring(5);
+    File cacheFile = diskCache2.getCacheFile(cacheName);
+    if (cacheFile == null) throw new IllegalStateException();
+    return cacheFile;
+  }
+
   //////////////////////////////////////////////////
   // back door for testing
   static public int countCacheUse = 0;
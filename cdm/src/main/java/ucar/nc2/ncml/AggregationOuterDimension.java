@@ -33,18 +33,21 @@
 package ucar.nc2.ncml;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.Formatter;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import thredds.inventory.MFile;
 import ucar.ma2.Array;
@@ -82,6 +85,7 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
   private int totalCoords = 0;  // the aggregation dimension size
 
   protected List<CacheVar> cacheList = new ArrayList<CacheVar>(); // promote global attribute to variable
+  protected Set<String> cacheAdded = ConcurrentHashMap.newKeySet(); // ids of datasets with newly cached values, not yet persisted
   protected boolean timeUnitsChange = false;
 
   /**
@@ -299,8 +303,32 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
 
     if (debug) System.out.println("   agg wants range=" + mainv.getFullName() + "(" + joinRange + ")");
 
-    // LOOK: could multithread here
     List<Dataset> nestedDatasets = getDatasets();
+    if (useParallel()) {
+      int innerSize = (int) (size / joinRange.length());
+      List<NestedRead> reads = new ArrayList<>();
+      int pos = 0;
+      for (Dataset nested : nestedDatasets) {
+        DatasetOuterDimension dod = (DatasetOuterDimension) nested;
+        Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
+        if (nestedJoinRange == null)
+          continue;
+
+        List<Range> want;
+        if (type == Type.joinNew) {
+          want = innerSection;
+        } else {
+          want = new ArrayList<>(ranges);
+          want.set(0, nestedJoinRange);
+        }
+        reads.add(new NestedRead(dod, want, pos));
+        pos += nestedJoinRange.length() * innerSize;
+      }
+
+      if (reads.size() > 1)
+        return readParallel(mainv, reads, sectionData, dtype, cancelTask) ? sectionData : null;
+    }
+
     for (Dataset nested : nestedDatasets) {
       DatasetOuterDimension dod = (DatasetOuterDimension) nested;
       Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
@@ -369,27 +397,23 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     int destPos = 0;
 
     List<Dataset> nestedDatasets = getDatasets();
-    if (executor != null) {
-      CompletionService<Result> completionService = new ExecutorCompletionService<>(executor);
-
-      int count = 0;
-      for (Dataset vnested : nestedDatasets)
-        completionService.submit(new ReaderTask(vnested, mainv, cancelTask, count++));
+    if (useParallel() && nestedDatasets.size() > 1) {
+      int[] shape = mainv.getShape();
+      int innerSize = (shape[0] == 0) ? 0 : (int) (mainv.getSize() / shape[0]);
+      List<NestedRead> reads = new ArrayList<>(nestedDatasets.size());
+      int pos = 0;
+      for (Dataset vnested : nestedDatasets) {
+        DatasetOuterDimension dod = (DatasetOuterDimension) vnested;
+        reads.add(new NestedRead(dod, null, pos)); // nested sizes may differ, so place each one by its ncoords
+        pos += dod.getNcoords(cancelTask) * innerSize;
+      }
 
       try {
-        int n = nestedDatasets.size();
-        for (int i = 0; i < n; ++i) {
-          Result r = completionService.take().get();
-          if (r != null) {
-            r.data = MAMath.convert(r.data, dtype); // just in case it needs to be converted
-            int size = (int) r.data.getSize();
-            Array.arraycopy(r.data, 0, allData, size * r.index, size);
-          }
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      } catch (ExecutionException e) {
-        throw new IOException(e.getMessage());
+        if (!readParallel(mainv, reads, allData, dtype, cancelTask))
+          return null;
+      } catch (InvalidRangeException e) {
+        logger.error("readAgg " + getLocation(), e);
+        throw new IllegalArgumentException("readAgg " + getLocation(), e);
       }
 
     } else {
@@ -408,32 +432,109 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     return allData;
   }
 
-  private static class ReaderTask implements Callable<Result> {
-    Dataset ds;
-    Variable mainv;
-    CancelTask cancelTask;
-    int index;
-
-    ReaderTask(Dataset ds, Variable mainv, CancelTask cancelTask, int index) {
-      this.ds = ds;
-      this.mainv = mainv;
-      this.cancelTask = cancelTask;
-      this.index = index;
+  /**
+   * Load the cached variable values that were persisted but not yet read in; overridden in AggregationExisting.
+   *
+   * @return true if any were loaded
+   */
+  protected boolean loadPersistedData() {
+    return false;
+  }
+
+  // fmrc may have ragged time, so the nested data cant be placed in advance
+  private boolean useParallel() {
+    return (executor != null) && (maxThreadsPerRead > 1) && (type != Type.forecastModelRunCollection);
+  }
+
+  // one nested dataset to read, and where its data goes in the result
+  private static class NestedRead {
+    final DatasetOuterDimension dod;
+    final List<Range> section; // reletive to the nested Variable; null means all of it
+    final int destPos;
+
+    NestedRead(DatasetOuterDimension dod, List<Range> section, int destPos) {
+      this.dod = dod;
+      this.section = section;
+      this.destPos = destPos;
+    }
+  }
+
+  /**
+   * Read the nested datasets on the executor, the calling thread helping, each one copied straight into its part of result.
+   * Each nested file is acquired and released by the thread that reads it, so the files stay open in the NetcdfDataset
+   * FileCache (if enabled) for the next read.
+   *
+   * @return false if cancelled
+   */
+  private boolean readParallel(Variable mainv, List<NestedRead> reads, Array result, DataType dtype, CancelTask cancelTask)
+          throws IOException, InvalidRangeException {
+
+    Queue<NestedRead> work = new ConcurrentLinkedQueue<>(reads);
+    int ntasks = Math.min(maxThreadsPerRead, reads.size());
+    List<FutureTask<Void>> futures = new ArrayList<>(ntasks);
+    try {
+      for (int i = 1; i < ntasks; i++) {
+        FutureTask<Void> future = new FutureTask<>(() -> readNested(mainv, work, result, dtype, cancelTask));
+        executor.execute(future);
+        futures.add(future);
+      }
+    } catch (RejectedExecutionException e) {
+      // executor was shut down by setParallelism(); the calling thread does the rest
     }
 
-    public Result call() throws Exception {
-      Array data = ds.read(mainv, cancelTask);
-      return new Result(data, index);
+    try {
+      readNested(mainv, work, result, dtype, cancelTask);
+      for (FutureTask<Void> f : futures)
+        f.get();
+
+    } catch (InterruptedException e) {
+      cancel(work, futures);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted reading aggregation " + getLocation());
+
+    } catch (ExecutionException e) {
+      cancel(work, futures);
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof InvalidRangeException) throw (InvalidRangeException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+
+    } catch (IOException | InvalidRangeException | RuntimeException | Error e) {
+      cancel(work, futures);
+      throw e;
     }
+
+    return (cancelTask == null) || !cancelTask.isCancel();
   }
 
-  private static class Result {
-    Array data;
-    int index;
+  // runs on the executor threads as well as the calling thread
+  private Void readNested(Variable mainv, Queue<NestedRead> work, Array result, DataType dtype, CancelTask cancelTask)
+          throws IOException, InvalidRangeException {
+    NestedRead nr;
+    while ((nr = work.poll()) != null) {
+      Array varData = (nr.section == null) ? nr.dod.read(mainv, cancelTask) : nr.dod.read(mainv, cancelTask, nr.section);
+      if ((cancelTask != null) && cancelTask.isCancel())
+        return null;
+      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+      Array.arraycopy(varData, 0, result, nr.destPos, (int) varData.getSize());
+    }
+    return null;
+  }
 
-    Result(Array data, int index) {
-      this.data = data;
-      this.index = index;
+  // stop handing out work, and wait for the tasks that are running, so none write into the result after we return
+  private void cancel(Queue<NestedRead> work, List<FutureTask<Void>> futures) {
+    work.clear();
+    for (FutureTask<Void> f : futures) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        // already failed
+      }
     }
   }
 
@@ -812,7 +913,7 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
   class CacheVar {
     String varName;
     DataType dtype;
-    private Map<String, Array> dataMap = new HashMap<String, Array>();
+    private volatile Map<String, Array> dataMap = new ConcurrentHashMap<>(); // nested datasets may be read in parallel
 
     CacheVar(String varName, DataType dtype) {
       this.varName = varName;
@@ -828,7 +929,7 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
 
     // clear out old stuff from the Hash, so it doesnt grow forever
     void reset() {
-      Map<String, Array> newMap = new HashMap<>();
+      Map<String, Array> newMap = new ConcurrentHashMap<>();
       for (Dataset ds : datasets) {
         String id = ds.getId();
         Array data = dataMap.get(id);
@@ -901,11 +1002,22 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     }
 
     protected void putData(String id, Array data) {
+      if (data != null) {
+        dataMap.put(id, data);
+        cacheAdded.add(id);
+      }
+    }
+
+    // values read back from the persist file
+    protected void putPersistedData(String id, Array data) {
       dataMap.put(id, data);
     }
 
     protected Array getData(String id) {
-      return dataMap.get(id);
+      Array data = dataMap.get(id);
+      if (data == null && loadPersistedData()) // persisted values are loaded on first use
+        data = dataMap.get(id);
+      return data;
     }
 
     // get the Array of data for this var in this dataset, use cache else acquire file and read
@@ -54,6 +54,7 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.IO;
 import ucar.unidata.io.RandomAccessFile;
@@ -64,6 +65,7 @@ import ucar.unidata.io.RandomAccessFile;
  */
 public class NcStreamIosp extends AbstractIOServiceProvider {
   private static final boolean debug = false;
+  private static final MagicNumber[] magic = new MagicNumber[] {new MagicNumber(0, NcStream.MAGIC_START)};
 
   public boolean isValidFile(RandomAccessFile raf) throws IOException {
     raf.seek(0);
@@ -73,6 +75,11 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
     return test(b, NcStream.MAGIC_HEADER) || test(b, NcStream.MAGIC_DATA); // immed followed by one of these
   }
 
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
   public String getFileTypeId() {
     return "ncstream";
   }
@@ -43,6 +43,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -57,7 +58,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <li>The hashKey must uniquely define the FileCacheable object.
  * <li>The location must be usable in a FileFactory.open().
  * <li>If the FileCacheable is acquired from the cache (ie already open), getLastModified() is used to see if it has changed,
- *     and is discarded if so.
+ *     and is discarded if so. Listeners added with addChangeListener() are told the location of the changed file.
  * <li>Make sure you call shutdown() when exiting the program, in order to shut down the cleanup thread.
  * </ol>
  * <p/>
@@ -106,7 +107,7 @@ public class FileCache implements FileCacheIF {
     timer = null;
   }
 
-  private static synchronized void scheduleAtFixedRate(TimerTask task, long delay, long period) {
+  static synchronized void scheduleAtFixedRate(TimerTask task, long delay, long period) {
     if (timer == null) {
       timer = new Timer("FileCache");
     }
@@ -120,6 +121,33 @@ public class FileCache implements FileCacheIF {
     timer.schedule(task, delay);
   }
 
+  static private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Listen for cached files that are found to have changed on disk, eg to drop derived data kept in other caches.
+   */
+  public interface ChangeListener {
+    void fileChanged(String location);
+  }
+
+  public static void addChangeListener(ChangeListener listener) {
+    changeListeners.add(listener);
+  }
+
+  public static void removeChangeListener(ChangeListener listener) {
+    changeListeners.remove(listener);
+  }
+
+  static void fireFileChanged(String location) {
+    for (ChangeListener listener : changeListeners) {
+      try {
+        listener.fileChanged(location);
+      } catch (Throwable t) {
+        log.error("FileCache ChangeListener failed on " + location, t);
+      }
+    }
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////
 
   protected String name;
@@ -367,7 +395,9 @@ public class FileCache implements FileCacheIF {
       if (cacheLog.isDebugEnabled() && changed)
         cacheLog.debug("FileCache " + name + ": acquire from cache " + hashKey + " " + want.ncfile.getLocation() + " was changed; discard");
       if (changed) {
+        String location = want.ncfile.getLocation();
         remove(want);
+        fireFileChanged(location);
       }
     }
 
@@ -691,7 +721,11 @@ public class FileCache implements FileCacheIF {
       for (CacheElement.CacheFile file : files.values()) {
         if (!file.isLocked.get()) allFiles.add(file);
       }
-      Collections.sort(allFiles); // sort so oldest are on top
+      // lastAccessed changes when files are released during the sort, which breaks TimSort and kills the timer thread.
+      // so sort on a snapshot of it, oldest on top
+      Map<CacheElement.CacheFile, Long> accessed = new HashMap<>(2 * allFiles.size());
+      for (CacheElement.CacheFile file : allFiles) accessed.put(file, file.lastAccessed);
+      allFiles.sort(Comparator.comparing(accessed::get));
 
       // take oldest ones and put on delete list
       int need2delete = size - minElements;
@@ -227,7 +227,9 @@ public class FileCacheARC implements FileCacheIF {
         if (cacheLog.isDebugEnabled())
           cacheLog.debug("FileCacheARC " + name + ": acquire from cache " + hashKey + " " + want.ncfile.getLocation() + " was changed; discard");
 
+        String location = want.ncfile.getLocation();
         expireFromCache(wantCacheElem);
+        FileCache.fireFileChanged(location);
         return null;
       }
     }
@@ -54,7 +54,17 @@ import java.util.concurrent.ExecutionException;
 public class FileCacheGuava implements FileCacheIF {
 
   private final String name;
-  private LoadingCache<String, FileCacheable> cache;
+  private LoadingCache<String, CacheElement> cache;
+
+  private static class CacheElement {
+    final FileCacheable ncfile;
+    final long lastModified;
+
+    CacheElement(FileCacheable ncfile) {
+      this.ncfile = ncfile;
+      this.lastModified = ncfile.getLastModified();
+    }
+  }
 
   public FileCacheGuava(String name, int maxSize) {
     this.name = name;
@@ -63,8 +73,8 @@ public class FileCacheGuava implements FileCacheIF {
                    .recordStats()
            // .removalListener(MY_LISTENER)
            .build(
-                   new CacheLoader<String, FileCacheable>() {
-                     public FileCacheable load(String key) throws IOException {
+                   new CacheLoader<String, CacheElement>() {
+                     public CacheElement load(String key) throws IOException {
                        throw new IllegalStateException();
                      }
                    });
@@ -94,7 +104,15 @@ public class FileCacheGuava implements FileCacheIF {
 
     try {
       // If the key wasn't in the "easy to compute" group, we need to use the factory.
-      return cache.get((String)hashKey, () -> factory.open(durl, buffer_size, cancelTask, spiObject));
+      CacheElement elem = cache.get((String)hashKey, () -> new CacheElement(factory.open(durl, buffer_size, cancelTask, spiObject)));
+
+      // check if modified, reopen if so
+      if (elem.ncfile.getLastModified() != elem.lastModified) {
+        cache.invalidate(hashKey);
+        FileCache.fireFileChanged(elem.ncfile.getLocation());
+        elem = cache.get((String)hashKey, () -> new CacheElement(factory.open(durl, buffer_size, cancelTask, spiObject)));
+      }
+      return elem.ncfile;
     } catch (ExecutionException e) {
       throw new RuntimeException(e.getCause());
     }
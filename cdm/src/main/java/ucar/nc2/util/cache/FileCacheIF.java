@@ -42,6 +42,9 @@ import java.util.List;
 
 /**
  * An interface to a FileCache
+ * <p/>
+ * An implementation that hands out files it already has open must check FileCacheable.getLastModified() when it does,
+ * discard the file if it has changed, and tell the listeners added with FileCache.addChangeListener().
  *
  * @author caron
  * @since 10/28/2014
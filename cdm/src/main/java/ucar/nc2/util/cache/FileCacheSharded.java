@@ -0,0 +1,601 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.time.CalendarDateFormatter;
+import ucar.nc2.util.CancelTask;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FileCache without global locks, for many cached files and many request threads.
+ * Has the same semantics as FileCache: acquired files are locked until released (closed), there may be several open
+ * copies of the same file, and files that have changed on disk are discarded when acquired.
+ * <ol>
+ * <li>Entries are spread over shards by hashKey. Each shard keeps its unlocked files in a list ordered by a global
+ *     logical clock of releases, under its own short lock. The least recently used unlocked file is the oldest shard head.
+ * <li>There is no stop-the-world cleanup. Whenever a file is added or released and the cache is over softLimit, the calling
+ *     thread closes a few of the least recently used unlocked files. If over hardLimit, it closes enough to get under.
+ *     Files unused for period seconds are closed the same way, and by a periodic background task, down to minElements.
+ * <li>Only one open of a given hashKey is in progress at a time. Concurrent misses wait for it, and then use a released
+ *     copy if there is one, rather than all opening the same file at once.
+ * </ol>
+ */
+@ThreadSafe
+public class FileCacheSharded implements FileCacheIF {
+  static protected final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(FileCacheSharded.class);
+  static protected final org.slf4j.Logger cacheLog = org.slf4j.LoggerFactory.getLogger("cacheLogger");
+  static private final int maxEvictPerCall = 4; // amortized eviction: most evictions done by any one acquire or release
+
+  protected final String name;
+  protected final int minElements, softLimit, hardLimit;
+  protected final long period; // msecs
+
+  private final AtomicBoolean disabled = new AtomicBoolean(false);
+  private final Shard[] shards;
+  private final ConcurrentHashMap<FileCacheable, CacheFile> files; // all files in the cache, needed for release
+  private final AtomicInteger nfiles = new AtomicInteger();
+  private final ConcurrentHashMap<Object, CompletableFuture<Void>> opening = new ConcurrentHashMap<>(); // opens in progress
+  private final AtomicLong clock = new AtomicLong(); // logical time of release, for exact LRU order
+  private volatile long nextExpireCheck; // msecs; dont look for expired files on every call
+
+  // stats
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger miss = new AtomicInteger();
+  private final AtomicInteger coalesced = new AtomicInteger();
+  private final AtomicInteger evictions = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param name                of file cache
+   * @param minElementsInMemory keep this number in the cache
+   * @param softLimit           evict least recently used files when over this number.
+   * @param hardLimit           if > 0, never allow more than this many elements. This causes eviction in the calling thread.
+   * @param period              if > 0, close files not used for this number of seconds, down to minElementsInMemory.
+   */
+  public FileCacheSharded(String name, int minElementsInMemory, int softLimit, int hardLimit, int period) {
+    this(name, minElementsInMemory, softLimit, hardLimit, period, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name                of file cache
+   * @param minElementsInMemory keep this number in the cache
+   * @param softLimit           evict least recently used files when over this number.
+   * @param hardLimit           if > 0, never allow more than this many elements. This causes eviction in the calling thread.
+   * @param period              if > 0, close files not used for this number of seconds, down to minElementsInMemory.
+   * @param nshards             number of shards, rounded up to a power of 2.
+   */
+  public FileCacheSharded(String name, int minElementsInMemory, int softLimit, int hardLimit, int period, int nshards) {
+    this.name = name;
+    this.minElements = minElementsInMemory;
+    this.softLimit = softLimit;
+    this.hardLimit = hardLimit;
+    this.period = (long) 1000 * period;
+
+    int n = 1;
+    while (n < nshards) n <<= 1;
+    this.shards = new Shard[n];
+    for (int i = 0; i < n; i++)
+      shards[i] = new Shard(Math.max(16, 2 * softLimit / n));
+    this.files = new ConcurrentHashMap<>(Math.max(16, 4 * softLimit), 0.75f, n);
+
+    if (period > 0) {
+      FileCache.scheduleAtFixedRate(new ExpireTask(), this.period, this.period);
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheSharded " + name + " expire every " + period + " secs");
+    }
+  }
+
+  @Override
+  public void disable() {
+    this.disabled.set(true);
+    clearCache(true);
+  }
+
+  @Override
+  public void enable() {
+    this.disabled.set(false);
+  }
+
+  @Override
+  public FileCacheable acquire(FileFactory factory, DatasetUrl durl) throws IOException {
+    return acquire(factory, durl.trueurl, durl, -1, null, null);
+  }
+
+  /**
+   * Acquire a FileCacheable from the cache, and lock it so no one else can use it.
+   * If not already in cache, open it the FileFactory, and put in cache.
+   * App should call FileCacheable.close when done, and the file is then released instead of closed.
+   *
+   * @param factory     use this factory to open the file if not in the cache; may not be null
+   * @param hashKey     unique key for this file. If null, the location will be used
+   * @param location    file location, may also used as the cache name, will be passed to the NetcdfFileFactory
+   * @param buffer_size RandomAccessFile buffer size, if <= 0, use default size
+   * @param cancelTask  user can cancel, ok to be null.
+   * @param spiObject   passed to the factory if object needs to be recreated
+   * @return FileCacheable corresponding to location.
+   * @throws IOException on error
+   */
+  @Override
+  public FileCacheable acquire(FileFactory factory, Object hashKey, DatasetUrl location,
+                               int buffer_size, CancelTask cancelTask, Object spiObject) throws IOException {
+    if (null == hashKey) hashKey = location.trueurl;
+    if (null == hashKey) throw new IllegalArgumentException();
+
+    while (true) {
+      FileCacheable ncfile = acquireCacheOnly(hashKey);
+      if (ncfile != null) {
+        hits.incrementAndGet();
+        return ncfile;
+      }
+
+      if (disabled.get())
+        return factory.open(location, buffer_size, cancelTask, spiObject);
+
+      CompletableFuture<Void> myOpen = new CompletableFuture<>();
+      CompletableFuture<Void> otherOpen = opening.putIfAbsent(hashKey, myOpen);
+      if (otherOpen == null) {
+        try {
+          return open(factory, hashKey, location, buffer_size, cancelTask, spiObject);
+        } finally {
+          opening.remove(hashKey, myOpen);
+          myOpen.complete(null);
+        }
+      }
+
+      // someone else is opening this file; wait for them, then look again
+      coalesced.incrementAndGet();
+      try {
+        otherOpen.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("FileCacheSharded " + name + " interrupted waiting for " + hashKey);
+      } catch (ExecutionException e) {
+        // never completed exceptionally
+      }
+    }
+  }
+
+  private FileCacheable open(FileFactory factory, Object hashKey, DatasetUrl location,
+                             int buffer_size, CancelTask cancelTask, Object spiObject) throws IOException {
+    miss.incrementAndGet();
+    FileCacheable ncfile = factory.open(location, buffer_size, cancelTask, spiObject);
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("FileCacheSharded " + name + " acquire " + hashKey + " " + ncfile.getLocation());
+
+    // user may have canceled
+    if ((cancelTask != null) && (cancelTask.isCancel())) {
+      ncfile.close();
+      return null;
+    }
+    if (disabled.get()) return ncfile;
+
+    CacheFile file = new CacheFile(ncfile, hashKey, shardFor(hashKey));
+    file.shard.elems.compute(hashKey, (k, elem) -> {
+      if (elem == null) elem = new CopyOnWriteArrayList<>();
+      elem.add(file);
+      return elem;
+    });
+    files.put(ncfile, file);
+    nfiles.incrementAndGet();
+
+    evict(System.currentTimeMillis());
+    return ncfile;
+  }
+
+  private FileCacheable acquireCacheOnly(Object hashKey) {
+    if (disabled.get()) return null;
+
+    Shard shard = shardFor(hashKey);
+    List<CacheFile> elem = shard.elems.get(hashKey);
+    if (elem == null) return null;
+
+    CacheFile want = null;
+    for (CacheFile file : elem) {
+      if (file.isLocked.compareAndSet(false, true)) {
+        shard.removeIdle(file);
+        want = file;
+        break;
+      }
+    }
+    if (want == null) return null; // no unlocked file in cache
+
+    FileCacheable ncfile = want.ncfile;
+    if (ncfile == null) return null; // closed out from under us by eject() or clearCache()
+
+    // check if modified, remove if so
+    if (ncfile.getLastModified() != want.lastModified) {
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheSharded " + name + ": acquire from cache " + hashKey + " " + ncfile.getLocation() + " was changed; discard");
+      String location = ncfile.getLocation();
+      remove(want);
+      FileCache.fireFileChanged(location);
+      return null;
+    }
+
+    try {
+      ncfile.reacquire(); // rehydrate
+    } catch (IOException ioe) {
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheSharded " + name + " acquire from cache " + hashKey + " " + ncfile.getLocation() + " failed: " + ioe.getMessage());
+      remove(want);
+      return null;
+    }
+    return ncfile;
+  }
+
+  /**
+   * Release the file. This unlocks it, and makes it the most recently used.
+   * Normally applications need not call this, just close the file as usual.
+   *
+   * @param ncfile release this file.
+   * @return true if file was in cache, false if it was not
+   */
+  @Override
+  public boolean release(FileCacheable ncfile) throws IOException {
+    if (ncfile == null) return false;
+
+    if (disabled.get()) {
+      ncfile.setFileCache(null); // prevent infinite loops
+      ncfile.close();
+      return false;
+    }
+
+    CacheFile file = files.get(ncfile); // using hashCode of the FileCacheable
+    if (file == null) return false;
+
+    if (!file.isLocked.get())
+      cacheLog.warn("FileCacheSharded " + name + " release " + ncfile.getLocation() + " not locked; hash= " + ncfile.hashCode());
+    file.lastAccessed = System.currentTimeMillis();
+    file.countAccessed++;
+    ncfile.release();
+
+    file.shard.addIdle(file, clock.incrementAndGet()); // this unlocks it
+
+    evict(file.lastAccessed);
+    return true;
+  }
+
+  /**
+   * Remove all instances of object from the cache, closing them even if locked.
+   *
+   * @param hashKey the object
+   */
+  @Override
+  public void eject(Object hashKey) {
+    if (disabled.get()) return;
+
+    List<CacheFile> elem = shardFor(hashKey).elems.remove(hashKey);
+    if (elem == null) return;
+    for (CacheFile file : elem)
+      close(file);
+  }
+
+  /**
+   * Remove all cache entries.
+   *
+   * @param force if true, remove them even if they are currently locked.
+   */
+  @Override
+  public void clearCache(boolean force) {
+    int count = 0;
+    for (CacheFile file : files.values()) {
+      if (force || file.isLocked.compareAndSet(false, true)) {
+        if (force && file.isLocked.get())
+          cacheLog.warn("FileCacheSharded " + name + " force close locked file= " + file);
+        remove(file);
+        count++;
+      }
+    }
+    if (force) {
+      for (Shard shard : shards) shard.clearIdle();
+    }
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("FileCacheSharded " + name + " clearCache force= " + force + " deleted= " + count + " left=" + nfiles.get());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+  // eviction
+
+  /**
+   * Close least recently used unlocked files, if over the limits. Does a bounded amount of work unless over hardLimit.
+   *
+   * @param now current time in msecs, for expiring idle files
+   */
+  private void evict(long now) {
+    int count = 0;
+    boolean checkExpired = (period > 0) && (now >= nextExpireCheck);
+    while (true) {
+      int size = nfiles.get();
+      boolean overHard = (hardLimit > 0) && (size > hardLimit);
+      boolean overSoft = size > softLimit;
+      boolean expired = checkExpired && (size > minElements) && oldestIdleTime() < now - period;
+      if (!overHard && !(count < maxEvictPerCall && (overSoft || expired))) break;
+      if (!evictOne()) break;  // everything is locked
+      count++;
+    }
+    if (checkExpired && count < maxEvictPerCall)
+      nextExpireCheck = now + Math.min(1000, period / 10); // caught up, so look again a little later
+  }
+
+  // close unused files in the background, in case there are no acquires or releases to do it
+  void expire() {
+    long now = System.currentTimeMillis();
+    while (nfiles.get() > minElements && oldestIdleTime() < now - period) {
+      if (!evictOne()) return;
+    }
+  }
+
+  private long oldestIdleTime() {
+    long oldest = Long.MAX_VALUE;
+    for (Shard shard : shards)
+      oldest = Math.min(oldest, shard.oldestIdleTime());
+    return oldest;
+  }
+
+  // close the least recently used unlocked file; return false if there are none
+  private boolean evictOne() {
+    boolean[] empty = new boolean[shards.length];
+    while (true) {
+      // the shard whose oldest idle file was released first
+      int want = -1;
+      long wantSeq = Long.MAX_VALUE;
+      for (int i = 0; i < shards.length; i++) {
+        long seq = shards[i].headSeq;
+        if (!empty[i] && seq < wantSeq) {
+          wantSeq = seq;
+          want = i;
+        }
+      }
+      if (want < 0) return false;
+
+      CacheFile file = shards[want].pollIdle();
+      if (file == null) { // all its idle files are being acquired
+        empty[want] = true;
+        continue;
+      }
+
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheSharded " + name + " evict " + file.hashKey);
+      remove(file);
+      evictions.incrementAndGet();
+      return true;
+    }
+  }
+
+  // remove a locked file from the cache and close it
+  private void remove(CacheFile file) {
+    file.shard.elems.computeIfPresent(file.hashKey, (k, elem) -> {
+      elem.remove(file);
+      return elem.isEmpty() ? null : elem;
+    });
+    close(file);
+  }
+
+  private void close(CacheFile file) {
+    if (!file.closed.compareAndSet(false, true)) return;
+    FileCacheable ncfile = file.ncfile;
+    if (files.remove(ncfile) != null)
+      nfiles.decrementAndGet();
+    file.shard.removeIdle(file);
+    try {
+      ncfile.setFileCache(null); // unhook the caching
+      ncfile.close();
+    } catch (IOException e) {
+      log.error("FileCacheSharded " + name + " close failed on " + ncfile.getLocation(), e);
+    }
+    file.ncfile = null; // help the gc
+  }
+
+  private Shard shardFor(Object hashKey) {
+    int h = hashKey.hashCode();
+    h ^= (h >>> 16);
+    return shards[h & (shards.length - 1)];
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+  // debugging
+
+  @Override
+  public void resetTracking() {
+    hits.set(0);
+    miss.set(0);
+    coalesced.set(0);
+    evictions.set(0);
+  }
+
+  @Override
+  public void showTracking(Formatter format) {
+    showStats(format);
+  }
+
+  @Override
+  public void showCache(Formatter format) {
+    format.format("%nFileCacheSharded %s (min=%d softLimit=%d hardLimit=%d scour=%d secs nshards=%d):%n", name, minElements,
+            softLimit, hardLimit, period / 1000, shards.length);
+    format.format(" isLocked  accesses lastAccess                   location %n");
+    for (CacheFile file : sortedFiles()) {
+      FileCacheable ncfile = file.ncfile;
+      String loc = ncfile != null ? ncfile.getLocation() : "null";
+      format.format("%8s %9d %s == %s %n", file.isLocked, file.countAccessed, CalendarDateFormatter.toDateTimeStringISO(file.lastAccessed), loc);
+    }
+    showStats(format);
+  }
+
+  @Override
+  public List<String> showCache() {
+    List<String> result = new ArrayList<>();
+    for (CacheFile file : sortedFiles())
+      result.add(file.toString());
+    return result;
+  }
+
+  private List<CacheFile> sortedFiles() {
+    List<CacheFile> allFiles = new ArrayList<>(files.values());
+    allFiles.sort(Comparator.comparingLong(f -> f.lastAccessed)); // oldest on top
+    return allFiles;
+  }
+
+  @Override
+  public void showStats(Formatter format) {
+    int h = hits.get();
+    int m = miss.get();
+    float r = (h + m == 0) ? 0 : ((float) h) / (h + m);
+    format.format("  hits= %d miss= %d coalesced= %d evictions= %d nfiles= %d hit ratio=%f%n", h, m, coalesced.get(),
+            evictions.get(), nfiles.get(), r);
+  }
+
+  public int getNumberOfFiles() {
+    return nfiles.get();
+  }
+
+  @Override
+  public String toString() {
+    return "FileCacheSharded{" + name + ", min=" + minElements + ", softLimit=" + softLimit + ", hardLimit=" + hardLimit +
+            ", nshards=" + shards.length + '}';
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+
+  // a shard has its own map of elements, and its own list of unlocked files in LRU order.
+  // the list is intrusive (prev/next are in CacheFile) so it is O(1) with no allocation, under a per-shard lock.
+  private static class Shard {
+    final ConcurrentHashMap<Object, List<CacheFile>> elems; // hashKey -> open copies of that file
+    @GuardedBy("this")
+    private CacheFile head, tail;                           // unlocked files, oldest release first
+    volatile long headSeq = Long.MAX_VALUE;                 // accessSeq of head, to choose a shard without locking
+
+    Shard(int initialCapacity) {
+      this.elems = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    // release: make the file the most recently used, and unlock it
+    synchronized void addIdle(CacheFile file, long seq) {
+      if (file.linked) unlink(file);
+      file.accessSeq = seq;
+      file.prev = tail;
+      file.next = null;
+      if (tail == null) head = file;
+      else tail.next = file;
+      tail = file;
+      file.linked = true;
+      headSeq = head.accessSeq;
+      file.isLocked.set(false);
+    }
+
+    // the file has been locked, take it off the idle list
+    synchronized void removeIdle(CacheFile file) {
+      if (file.linked) unlink(file);
+    }
+
+    // lock the least recently used unlocked file and take it off the list; return null if none
+    synchronized CacheFile pollIdle() {
+      for (CacheFile file = head; file != null; file = file.next) {
+        if (file.isLocked.compareAndSet(false, true)) {
+          unlink(file);
+          return file;
+        }
+      }
+      return null;
+    }
+
+    synchronized long oldestIdleTime() {
+      return (head == null) ? Long.MAX_VALUE : head.lastAccessed;
+    }
+
+    synchronized void clearIdle() {
+      while (head != null) unlink(head);
+    }
+
+    private void unlink(CacheFile file) {
+      if (file.prev == null) head = file.next;
+      else file.prev.next = file.next;
+      if (file.next == null) tail = file.prev;
+      else file.next.prev = file.prev;
+      file.prev = file.next = null;
+      file.linked = false;
+      headSeq = (head == null) ? Long.MAX_VALUE : head.accessSeq;
+    }
+  }
+
+  private class CacheFile {
+    volatile FileCacheable ncfile; // actually final, but we null it out for gc
+    final Object hashKey;
+    final Shard shard;
+    final AtomicBoolean isLocked = new AtomicBoolean(true);
+    final AtomicBoolean closed = new AtomicBoolean(false);
+    final long lastModified;
+    volatile long lastAccessed;
+    long accessSeq;                 // guarded by shard
+    CacheFile prev, next;           // guarded by shard
+    boolean linked;                 // on the shard idle list; guarded by shard
+    volatile int countAccessed;
+
+    CacheFile(FileCacheable ncfile, Object hashKey, Shard shard) {
+      this.ncfile = ncfile;
+      this.hashKey = hashKey;
+      this.shard = shard;
+      this.lastModified = ncfile.getLastModified();
+      this.lastAccessed = System.currentTimeMillis();
+      ncfile.setFileCache(FileCacheSharded.this);
+    }
+
+    public String toString() {
+      FileCacheable nc = ncfile;
+      String loc = nc == null ? "ncfile is null" : nc.getLocation();
+      return isLocked + " " + countAccessed + " " + CalendarDateFormatter.toDateTimeStringISO(lastAccessed) + "   " + loc;
+    }
+  }
+
+  private class ExpireTask extends TimerTask {
+    public void run() {
+      if (disabled.get()) return;
+      expire();
+    }
+  }
+}
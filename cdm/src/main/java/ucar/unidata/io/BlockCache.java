@@ -0,0 +1,433 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package ucar.unidata.io;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A process-wide cache of fixed size, aligned file blocks, shared by all RandomAccessFile instances.
+ * Blocks are keyed by file location, file modification time and block number, so that many open handles
+ * on the same file share one copy of each block. Eviction uses the CLOCK (second chance) algorithm.
+ * The block storage may be on the java heap, or in direct (off heap) memory.
+ * <p/>
+ * Only complete blocks are cached, so a file that is being appended to never has a stale partial last block.
+ * Use RandomAccessFile.setGlobalBlockCache() to enable.
+ */
+@ThreadSafe
+public class BlockCache {
+  static public final int defaultBlockSize = 32 * 1024;
+
+  private final String name;
+  private final int blockSize;
+  private final int nblocks;
+  private final boolean offHeap;
+
+  // block storage: heap uses one byte[] per block, off heap uses direct buffers of blocksPerSegment blocks
+  private final byte[][] heapBlocks;
+  private final ByteBuffer[] directSegments;
+  private final int blocksPerSegment;
+
+  private final ConcurrentHashMap<BlockKey, Integer> index;  // key -> slot
+  private final BlockKey[] slotKeys;                          // slot -> key, null if empty
+  private final boolean[] referenced;                         // CLOCK reference bits
+  private int hand = 0;                                       // CLOCK hand, guarded by lock
+  private final StampedLock lock = new StampedLock();         // optimistic reads, exclusive slot replacement
+
+  // stats
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong miss = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param name      name of the cache, for reporting
+   * @param blockSize size of each block in bytes; file positions are aligned on multiples of this
+   * @param maxBytes  memory budget in bytes; the number of blocks is maxBytes / blockSize
+   * @param offHeap   if true, allocate block storage with ByteBuffer.allocateDirect()
+   */
+  public BlockCache(String name, int blockSize, long maxBytes, boolean offHeap) {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("BlockCache blockSize must be > 0");
+    long n = maxBytes / blockSize;
+    if (n < 1)
+      throw new IllegalArgumentException("BlockCache maxBytes must be >= blockSize");
+    if (n > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("BlockCache too many blocks = " + n);
+
+    this.name = name;
+    this.blockSize = blockSize;
+    this.nblocks = (int) n;
+    this.offHeap = offHeap;
+
+    if (offHeap) {
+      this.heapBlocks = null;
+      this.blocksPerSegment = Math.max(1, Integer.MAX_VALUE / blockSize);
+      int nsegs = (nblocks + blocksPerSegment - 1) / blocksPerSegment;
+      this.directSegments = new ByteBuffer[nsegs];
+      for (int i = 0; i < nsegs; i++) {
+        int segBlocks = Math.min(blocksPerSegment, nblocks - i * blocksPerSegment);
+        directSegments[i] = ByteBuffer.allocateDirect(segBlocks * blockSize);
+      }
+    } else {
+      this.heapBlocks = new byte[nblocks][];   // allocate lazily
+      this.directSegments = null;
+      this.blocksPerSegment = 0;
+    }
+
+    this.index = new ConcurrentHashMap<>(2 * nblocks, 0.75f, 16);
+    this.slotKeys = new BlockKey[nblocks];
+    this.referenced = new boolean[nblocks];
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public long getMaxBytes() {
+    return (long) nblocks * blockSize;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Read through the cache. Blocks not in the cache are read from the file and added.
+   *
+   * @param raf        read from this file on a miss
+   * @param fileKey    identifies the file contents, eg location and last modified
+   * @param pos        start here in the file
+   * @param b          put data into this buffer
+   * @param offset     buffer offset
+   * @param len        this number of bytes
+   * @param positional read misses with a thread safe positional read, else with raf.read_()
+   * @return actual number of bytes read, or -1 if pos is at or past the end of the file
+   * @throws IOException on io error
+   */
+  int read(RandomAccessFile raf, String fileKey, long pos, byte[] b, int offset, int len, boolean positional) throws IOException {
+    int total = 0;
+    byte[] tmp = null;
+
+    while (total < len) {
+      long blockNo = pos / blockSize;
+      int blockOffset = (int) (pos - blockNo * blockSize);
+      int want = Math.min(len - total, blockSize - blockOffset);
+      BlockKey key = new BlockKey(fileKey, blockNo);
+
+      if (copyFromCache(key, blockOffset, b, offset + total, want)) {
+        hits.incrementAndGet();
+      } else {
+        miss.incrementAndGet();
+        if (tmp == null) tmp = new byte[blockSize];
+        int n = raf.readBlock(blockNo * blockSize, tmp, 0, blockSize, positional);
+        if (n == blockSize)
+          put(key, tmp, 0);  // only cache complete blocks
+
+        int avail = n - blockOffset;
+        if (avail <= 0)
+          break;  // EOF
+        if (avail < want) {
+          System.arraycopy(tmp, blockOffset, b, offset + total, avail);
+          total += avail;
+          break;  // EOF
+        }
+        System.arraycopy(tmp, blockOffset, b, offset + total, want);
+      }
+
+      total += want;
+      pos += want;
+    }
+
+    return (total == 0) ? -1 : total;
+  }
+
+  /**
+   * Copy part of one block from the cache, for readers that fetch missing blocks themselves, eg HTTPRandomAccessFile.
+   *
+   * @param fileKey     identifies the file contents, from makeFileKey()
+   * @param blockNo     block number = file position / blockSize
+   * @param blockOffset start here in the block
+   * @param dest        copy into this
+   * @param destOffset  starting here
+   * @param len         this number of bytes, must be within the block
+   * @return true if the block was in the cache and was copied
+   */
+  public boolean readBlock(String fileKey, long blockNo, int blockOffset, byte[] dest, int destOffset, int len) {
+    boolean hit = copyFromCache(new BlockKey(fileKey, blockNo), blockOffset, dest, destOffset, len);
+    if (hit) hits.incrementAndGet();
+    else miss.incrementAndGet();
+    return hit;
+  }
+
+  /**
+   * Check if a block is in the cache, without counting a hit or miss.
+   */
+  public boolean containsBlock(String fileKey, long blockNo) {
+    return index.containsKey(new BlockKey(fileKey, blockNo));
+  }
+
+  /**
+   * Add a block to the cache, for readers that fetch missing blocks themselves.
+   *
+   * @param fileKey identifies the file contents, from makeFileKey()
+   * @param blockNo block number = file position / blockSize
+   * @param data    blockSize bytes of the block
+   * @param offset  starting here
+   */
+  public void putBlock(String fileKey, long blockNo, byte[] data, int offset) {
+    if (offset + blockSize > data.length)
+      throw new IllegalArgumentException("BlockCache putBlock needs " + blockSize + " bytes");
+    put(new BlockKey(fileKey, blockNo), data, offset);
+  }
+
+  private boolean copyFromCache(BlockKey key, int blockOffset, byte[] dest, int destOffset, int len) {
+    // optimistic read: no lock taken unless a block was replaced while we were copying
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      if (copyFromSlot(key, blockOffset, dest, destOffset, len) && lock.validate(stamp))
+        return true;
+    }
+
+    stamp = lock.readLock();
+    try {
+      return copyFromSlot(key, blockOffset, dest, destOffset, len);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private boolean copyFromSlot(BlockKey key, int blockOffset, byte[] dest, int destOffset, int len) {
+    Integer slot = index.get(key);
+    if (slot == null) return false;
+    if (!key.equals(slotKeys[slot])) return false;  // being replaced
+
+    if (offHeap) {
+      ByteBuffer seg = directSegments[slot / blocksPerSegment].duplicate();
+      seg.position((slot % blocksPerSegment) * blockSize + blockOffset);
+      seg.get(dest, destOffset, len);
+    } else {
+      byte[] block = heapBlocks[slot];
+      if (block == null) return false;
+      System.arraycopy(block, blockOffset, dest, destOffset, len);
+    }
+    referenced[slot] = true;
+    return true;
+  }
+
+  private void put(BlockKey key, byte[] data, int offset) {
+    if (index.containsKey(key)) return; // someone else got it first
+
+    long stamp = lock.writeLock();
+    try {
+      if (index.containsKey(key)) return;
+      int slot = findVictim();
+      BlockKey old = slotKeys[slot];
+      if (old != null) {
+        index.remove(old);
+        evictions.incrementAndGet();
+      }
+
+      if (offHeap) {
+        ByteBuffer seg = directSegments[slot / blocksPerSegment].duplicate();
+        seg.position((slot % blocksPerSegment) * blockSize);
+        seg.put(data, offset, blockSize);
+      } else {
+        byte[] block = heapBlocks[slot];
+        if (block == null) {
+          block = new byte[blockSize];
+          heapBlocks[slot] = block;
+        }
+        System.arraycopy(data, offset, block, 0, blockSize);
+      }
+
+      slotKeys[slot] = key;
+      referenced[slot] = false;
+      index.put(key, slot);
+
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  // CLOCK: advance the hand, clearing reference bits, until an unreferenced (or empty) slot is found
+  // must hold the write lock
+  private int findVictim() {
+    while (true) {
+      int slot = hand;
+      hand = (hand + 1) % nblocks;
+      if (slotKeys[slot] == null || !referenced[slot])
+        return slot;
+      referenced[slot] = false;
+    }
+  }
+
+  /**
+   * Remove all blocks belonging to the given location, eg when the file has been rewritten.
+   *
+   * @param location file location, as in RandomAccessFile.getLocation()
+   */
+  public void invalidate(String location) {
+    long stamp = lock.writeLock();
+    try {
+      Iterator<Map.Entry<BlockKey, Integer>> iter = index.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<BlockKey, Integer> entry = iter.next();
+        if (entry.getKey().matchesLocation(location)) {
+          int slot = entry.getValue();
+          slotKeys[slot] = null;
+          referenced[slot] = false;
+          iter.remove();
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Remove all blocks from the cache.
+   */
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      index.clear();
+      for (int i = 0; i < nblocks; i++) {
+        slotKeys[i] = null;
+        referenced[i] = false;
+      }
+      hand = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Reset the hit, miss and eviction counters.
+   */
+  public void resetStats() {
+    hits.set(0);
+    miss.set(0);
+    evictions.set(0);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return miss.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Add stat report (hits, misses, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public void showStats(Formatter format) {
+    long h = hits.get();
+    long m = miss.get();
+    float r = (h + m == 0) ? 0 : ((float) h) / (h + m);
+    format.format("BlockCache %s: blockSize= %d nblocks= %d used= %d offHeap= %s%n", name, blockSize, nblocks, index.size(), offHeap);
+    format.format("  hits= %d miss= %d evictions= %d hit ratio=%f%n", h, m, evictions.get(), r);
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCache{" + name + ", blockSize=" + blockSize + ", nblocks=" + nblocks + ", offHeap=" + offHeap + '}';
+  }
+
+  //////////////////////////////////////////////////////////////////
+
+  /**
+   * Make the key that identifies the contents of a file.
+   * Includes the modification time, so rewritten files dont see stale blocks.
+   */
+  static String makeFileKey(String location, long lastModified) {
+    return location + "#" + lastModified;
+  }
+
+  /**
+   * Make the key that identifies the contents of a file, from a version string such as an HTTP ETag.
+   */
+  static public String makeFileKey(String location, String version) {
+    return location + "#" + version.replace("#", "%23");
+  }
+
+  static private class BlockKey {
+    final String fileKey;
+    final long blockNo;
+    final int hash;
+
+    BlockKey(String fileKey, long blockNo) {
+      this.fileKey = fileKey;
+      this.blockNo = blockNo;
+      this.hash = 31 * fileKey.hashCode() + (int) (blockNo ^ (blockNo >>> 32));
+    }
+
+    boolean matchesLocation(String location) {
+      return fileKey.length() > location.length() && fileKey.startsWith(location) && fileKey.charAt(location.length()) == '#'
+              && fileKey.indexOf('#', location.length() + 1) < 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof BlockKey)) return false;
+      BlockKey that = (BlockKey) o;
+      return blockNo == that.blockNo && fileKey.equals(that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
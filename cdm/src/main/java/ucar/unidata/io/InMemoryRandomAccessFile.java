@@ -41,6 +41,7 @@ import java.io.IOException;
  * @author john
  */
 public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
+  private long startPos = 0; // position of buffer[0]
 
   /**
    * A RandomAccessFile stored entirely in memory as a byte array.
@@ -66,6 +67,22 @@ public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
       openFiles.add(location);
   }
 
+  /**
+   * A RandomAccessFile holding a section of a larger file in memory.
+   * File positions are the same as in the original file, so the valid positions are [startPos, startPos + data.length).
+   *
+   * @param name     used as the location
+   * @param data     a section of the data file
+   * @param startPos position of data[0] in the original file
+   */
+  public InMemoryRandomAccessFile(String name, byte[] data, long startPos) {
+    this(name, data);
+    this.startPos = startPos;
+    bufferStart = startPos;
+    dataEnd = startPos + buffer.length;
+    filePosition = startPos;
+  }
+
   @Override
   public long length() {
     return dataEnd;
@@ -78,15 +95,17 @@ public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
 
   @Override
   protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
-    len = Math.min(len, (int) (buffer.length - pos));
+    long start = pos - startPos;
+    if (start < 0 || start >= buffer.length) return -1;
+    len = Math.min(len, (int) (buffer.length - start));
     // copy out of buffer
-    System.arraycopy(buffer, (int) pos, b, offset, len);
+    System.arraycopy(buffer, (int) start, b, offset, len);
     return len;
   }
 
   @Override
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
-    return dest.write(ByteBuffer.wrap(buffer, (int) offset, (int) nbytes));
+    return dest.write(ByteBuffer.wrap(buffer, (int) (offset - startPos), (int) nbytes));
   }
 
 }
\ No newline at end of file
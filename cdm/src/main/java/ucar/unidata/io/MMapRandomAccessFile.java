@@ -33,93 +33,244 @@
 package ucar.unidata.io;
 
 import java.io.*;
-import java.nio.channels.FileChannel;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Use NIO MappedByteBuffer to implement a RandomAccessFile.
- * Limited to 2G size. Not currently used - NOT UP TO DATE DO NOT USE
+ * Use NIO MappedByteBuffer to implement a read-only RandomAccessFile.
+ * The file is mapped in windows of segmentSize bytes, so there is no 2 Gbyte limit on the file size.
+ * Segments are mapped lazily, on first access. Reads copy directly out of the mapped memory,
+ * bypassing the RandomAccessFile buffer and the read system call.
+ * A file that grows while open, eg a realtime GRIB file kept in the FileCache, is remapped at its new end
+ * when length() is called or a read goes past the old end.
+ * <p/>
+ * Usually obtained through RandomAccessFile.acquire(), see RandomAccessFile.setMMapPolicy().
+ *
  * @author john
  */
 public class MMapRandomAccessFile extends RandomAccessFile {
+  static public final int defaultSegmentSize = 1 << 30; // 1 Gbyte
+
+  static private int segmentSize = defaultSegmentSize;
+
+  /**
+   * Set the size of the mapped windows, for files opened after this call. Must be a power of 2.
+   *
+   * @param size segment size in bytes
+   */
+  static public void setSegmentSize(int size) {
+    if (size <= 0 || Integer.bitCount(size) != 1)
+      throw new IllegalArgumentException("segmentSize must be a power of 2: " + size);
+    segmentSize = size;
+  }
+
+  static public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  ////////////////////////////////////////////
 
-  private MappedByteBuffer source;
+  private final FileChannel channel;
+  private final int segShift;
+  private final long segMask;
+  private final Object segmentLock = new Object();
+  private volatile long fileSize;                                    // changes only with segmentLock
+  private volatile AtomicReferenceArray<MappedByteBuffer> segments;  // changes only with segmentLock
 
   /**
-    * Constructor for in-memory "files"
-    * @param location used as a name
-    * @param mode the open mode
-    * @throws java.io.IOException on error
-    */
+   * Constructor.
+   *
+   * @param location location of the file
+   * @param mode     must be "r", only read access is supported
+   * @throws java.io.IOException on error
+   */
   public MMapRandomAccessFile(String location, String mode) throws IOException {
     super(location, mode, 1);
-    FileChannel channel = file.getChannel();
-    source = channel.map( readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, (long) 0, channel.size());
-    //channel.close();
+    if (!readonly) {
+      file.close();
+      throw new IOException("MMapRandomAccessFile is read only; mode = " + mode);
+    }
+
+    channel = file.getChannel();
+    fileSize = channel.size();
+
+    int size = segmentSize;
+    segShift = Integer.numberOfTrailingZeros(size);
+    segMask = size - 1;
+    long nsegs = (fileSize + segMask) >> segShift;
+    segments = new AtomicReferenceArray<>((int) nsegs);
 
     bufferStart = 0;
-	  dataSize = (int) channel.size();
-	  dataEnd = channel.size();
+    dataSize = 0;
+    dataEnd = 0;
     filePosition = 0;
-    buffer = null;
-    endOfFile = false;
+    endOfFile = (fileSize == 0);
+  }
+
+  // map on demand
+  private MappedByteBuffer getSegment(int segno) throws IOException {
+    MappedByteBuffer seg = segments.get(segno);
+    if (seg == null) {
+      synchronized (segmentLock) {
+        AtomicReferenceArray<MappedByteBuffer> segs = segments;
+        seg = segs.get(segno);
+        if (seg == null) {
+          long start = ((long) segno) << segShift;
+          long size = Math.min(segMask + 1, fileSize - start);
+          seg = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+          segs.set(segno, seg);
+        }
+      }
+    }
+    return seg;
   }
 
+  // check if the file has grown, and if so, map the new end on demand
+  private long checkSize() throws IOException {
+    long size = channel.size();
+    if (size <= fileSize) return fileSize;
 
-  public void flush() throws IOException {
-    if (bufferModified) {
-      source.force();
-      bufferModified = false;
+    synchronized (segmentLock) {
+      if (size > fileSize) {
+        AtomicReferenceArray<MappedByteBuffer> old = segments;
+        AtomicReferenceArray<MappedByteBuffer> grown = new AtomicReferenceArray<>((int) ((size + segMask) >> segShift));
+        int nfull = (int) (fileSize >> segShift); // the last segment may be partial, so it gets remapped
+        for (int i = 0; i < nfull; i++)
+          grown.set(i, old.get(i));
+        segments = grown;
+        fileSize = size;
+      }
+      return fileSize;
     }
   }
 
-  public long length( ) {
-    return dataEnd;
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    if (file != null) return; // released to the FileCache, still open
+
+    // cant explicitly unmap; let the gc do it
+    for (int i = 0; i < segments.length(); i++)
+      segments.set(i, null);
+  }
+
+  @Override
+  public long length() throws IOException {
+    return checkSize();
   }
 
-  public void seek( long pos ) {
+  @Override
+  public void setBufferSize(int bufferSize) {
+    // no buffer is used
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // read only
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos < 0)
+      throw new java.io.IOException("Negative seek offset");
     filePosition = pos;
-    if( filePosition < dataEnd )
-      source.position((int) filePosition);
-    else
-      endOfFile = true;
+    endOfFile = (pos >= fileSize);
   }
 
-   public void unread( ) {
-     seek( filePosition-1);
-   }
+  @Override
+  public void unread() {
+    filePosition--;
+    endOfFile = (filePosition >= fileSize);
+  }
 
+  @Override
   public int read() throws IOException {
-    // If the file position is within the data, return the byte...
-    if( filePosition < dataEnd ) {
-      filePosition++;
-      return source.get() & 0xff;
+    if (filePosition >= fileSize && filePosition >= checkSize()) {
+      endOfFile = true;
+      return -1;
+    }
+    int b = getSegment((int) (filePosition >> segShift)).get((int) (filePosition & segMask)) & 0xff;
+    filePosition++;
+    return b;
+  }
 
-    } else {
-       return -1;
+  @Override
+  protected int readBytes(byte dst[], int offset, int length) throws IOException {
+    int n = read_(filePosition, dst, offset, length);
+    if (n > 0)
+      filePosition += n;
+    endOfFile = (filePosition >= fileSize);
+    return n;
+  }
+
+  /**
+   * Read directly from the mapped segments.
+   */
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    long size = fileSize;
+    if (pos + len > size) size = checkSize();
+    if (pos >= size) return -1;
+    len = (int) Math.min(len, size - pos);
+
+    int done = 0;
+    while (done < len) {
+      int segno = (int) (pos >> segShift);
+      int segPos = (int) (pos & segMask);
+      int n = Math.min(len - done, (int) (segMask + 1 - segPos));
+      MappedByteBuffer seg = getSegment(segno);
+      // use a duplicate so that we dont disturb the position of the shared segment
+      java.nio.ByteBuffer dup = seg.duplicate();
+      dup.position(segPos);
+      dup.get(b, offset + done, n);
+      done += n;
+      pos += n;
     }
+    return done;
+  }
+
+  /**
+   * Positional read directly from the mapped segments. Thread safe.
+   */
+  @Override
+  public int read(long pos, java.nio.ByteBuffer dst) throws IOException {
+    return readPositionalFromRead_(pos, dst);
   }
 
-   protected int readBytes( byte dst[], int offset, int length ) throws IOException {
-     if( endOfFile ) return -1;
+  @Override
+  public boolean searchForward(KMPMatch match, int maxBytes) throws IOException {
+    long start = getFilePointer();
+    long size = checkSize();
+    long last = (maxBytes < 0) ? size : Math.min(size, start + maxBytes);
+    int matchLen = match.getMatchLength();
 
-     length = (int) Math.min( length, dataEnd - filePosition);
-     if (length > 0) {
-       source.get(dst, offset, length);
-       filePosition += length;
-     }
-     return length;
-   }
+    byte[] buff = new byte[64 * 1024];
+    long pos = start;
+    while (last - pos >= matchLen) {
+      int n = read_(pos, buff, 0, (int) Math.min(buff.length, last - pos));
+      if (n < matchLen) break;
+      int idx = match.indexOf(buff, 0, n);
+      if (idx >= 0) {
+        seek(pos + idx);
+        return true;
+      }
+      if (pos + n >= last) break;
+      pos += n - matchLen + 1;  // overlap in case the match crosses the boundary
+    }
+
+    seek(last);
+    return false;
+  }
 
-  public void write( int b ) throws IOException {
-     source.put( (byte)b);
-     filePosition++;
-     bufferModified = true;
+  @Override
+  public void write(int b) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only");
   }
 
-  public void writeBytes( byte dst[], int offset, int length ) throws IOException {
-    source.put(dst, offset, length);
-    filePosition += length;
+  @Override
+  public void writeBytes(byte dst[], int offset, int length) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only");
   }
 
-}
\ No newline at end of file
+}
@@ -191,7 +191,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   static private final ucar.nc2.util.cache.FileFactory factory = new FileFactory() {
     public FileCacheable open(DatasetUrl durl, int buffer_size, CancelTask cancelTask, Object iospMessage) throws IOException {
       String location = StringUtil2.replace(durl.trueurl, "\\", "/"); // canonicalize the name
-      RandomAccessFile result = new RandomAccessFile(location, "r", buffer_size);
+      RandomAccessFile result = openForRead(location, buffer_size);
       result.cacheState = 1;  // in use
       return result;
     }
@@ -215,24 +215,89 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
 
   static public RandomAccessFile acquire(String location) throws IOException {
     if (cache == null)
-      return new RandomAccessFile(location, "r");
+      return openForRead(location, defaultBufferSize);
     else
       return (RandomAccessFile) cache.acquire(factory, new DatasetUrl(null, location));
   }
 
   static public RandomAccessFile acquire(String location, int buffer_size) throws IOException {
     if (cache == null)
-      return new RandomAccessFile(location, "r", buffer_size);
+      return openForRead(location, buffer_size);
     else
       return (RandomAccessFile) cache.acquire(factory, location, new DatasetUrl(null, location), buffer_size, null, null);
   }
 
   static public void eject(String location) {
     if (cache != null) cache.eject(location);
+    BlockCache bc = blockCache;
+    if (bc != null) bc.invalidate(location);
   }
 
   static public void shutdown() {
     if (cache != null) cache.clearCache(true);
+    BlockCache bc = blockCache;
+    if (bc != null) bc.clear();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////
+  // optional memory mapping of files opened through acquire(). default is off.
+
+  static private volatile long mmapThreshold = -1;
+  static private volatile List<String> mmapLocations = Collections.emptyList();
+
+  /**
+   * Choose which files opened by acquire() use a read-only MMapRandomAccessFile instead of a buffered one.
+   * A file is memory mapped if its length is at least threshold, or its location starts with one of the prefixes.
+   *
+   * @param threshold        memory map files at least this long; use -1 for no size threshold
+   * @param locationPrefixes memory map files whose location starts with one of these, eg a dataset root directory; may be null
+   */
+  static public void setMMapPolicy(long threshold, List<String> locationPrefixes) {
+    List<String> prefixes = new ArrayList<>();
+    if (locationPrefixes != null) {
+      for (String prefix : locationPrefixes)
+        prefixes.add(StringUtil2.replace(prefix, "\\", "/"));
+    }
+    mmapLocations = Collections.unmodifiableList(prefixes);
+    mmapThreshold = threshold;
+  }
+
+  static private boolean useMMap(String location) {
+    long threshold = mmapThreshold;
+    List<String> prefixes = mmapLocations;
+    if (threshold < 0 && prefixes.isEmpty()) return false;
+
+    for (String prefix : prefixes) {
+      if (location.startsWith(prefix)) return true;
+    }
+    return (threshold >= 0) && (new File(location).length() >= threshold);
+  }
+
+  // open read only, memory mapped if the policy says so
+  static private RandomAccessFile openForRead(String location, int buffer_size) throws IOException {
+    if (useMMap(location))
+      return new MMapRandomAccessFile(location, "r");
+    return new RandomAccessFile(location, "r", buffer_size);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////
+  // optional global block cache, shared by all read-only RandomAccessFiles. default is off.
+
+  static private volatile BlockCache blockCache = null;
+
+  /**
+   * Set the global block cache, shared by all RandomAccessFile opened read only.
+   * Files already open continue to use the block cache that was in effect when they were opened.
+   *
+   * @param _blockCache use this BlockCache, or null to turn off block caching
+   */
+  static public synchronized void setGlobalBlockCache(BlockCache _blockCache) {
+    if (blockCache != null) blockCache.clear();
+    blockCache = _blockCache;
+  }
+
+  static public BlockCache getGlobalBlockCache() {
+    return blockCache;
   }
 
   /////////////////////////////////////////////////////////////////////////////////////////////
@@ -309,6 +374,19 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   private boolean extendMode = false;
 
+  /**
+   * Shared block cache used by readBuffer(), or null if not used.
+   */
+  private BlockCache myBlockCache;
+  private String blockCacheKey;
+
+  /**
+   * Channel used by the positional reads of a read only file, opened on first use.
+   * This is not file.getChannel(): a thread interrupted during a FileChannel read closes the channel, and closing
+   * the channel of the java.io.RandomAccessFile would close the file for everyone sharing it through the FileCache.
+   */
+  private volatile java.nio.channels.FileChannel positionalChannel;
+
   /**
    * Constructor, for subclasses
    *
@@ -366,6 +444,12 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     this.readonly = mode.equals("r");
     init(bufferSize);
 
+    BlockCache bc = blockCache;
+    if (bc != null && readonly) {
+      this.myBlockCache = bc;
+      this.blockCacheKey = BlockCache.makeFileKey(location, new File(location).lastModified());
+    }
+
     if (debugLeaks) {
       openFiles.add(location);
       int max = Math.max(openFiles.size(), maxOpenFiles.get());
@@ -458,6 +542,16 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     // Close the underlying file object.
     file.close();
     file = null;  // help the gc
+
+    java.nio.channels.FileChannel pc = positionalChannel;
+    if (pc != null) {
+      positionalChannel = null;
+      pc.close();
+    }
+
+    // anything cached for this file may now be stale
+    if (!readonly && blockCache != null)
+      blockCache.invalidate(location);
   }
 
   @Override
@@ -520,7 +614,10 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     bufferStart = pos;
     filePosition = pos;
 
-    dataSize = read_(pos, buffer, 0, buffer.length);
+    if (myBlockCache != null && !extendMode)
+      dataSize = myBlockCache.read(this, blockCacheKey, pos, buffer, 0, buffer.length, false);
+    else
+      dataSize = read_(pos, buffer, 0, buffer.length);
 
     if (dataSize <= 0) {
       dataSize = 0;
@@ -776,6 +873,171 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     return n;
   }
 
+  /////////////////////////////////////////////////
+  // positional reads
+
+  /**
+   * Read up to <code>dst.remaining()</code> bytes, starting at the given file position.
+   * This does not use or change the file pointer or the buffer, so multiple threads may call it at the same
+   * time on a file opened read only. It reads through the global block cache if there is one, otherwise it uses
+   * positional reads on a FileChannel of its own. Interrupting a thread that is blocked in this method
+   * fails only that read.
+   *
+   * @param pos start here in the file
+   * @param dst put data into this ByteBuffer, starting at its position
+   * @return the actual number of bytes read, or -1 if pos is at or past the end of the file
+   * @throws IOException on io error
+   */
+  public int read(long pos, java.nio.ByteBuffer dst) throws IOException {
+    if (file == null || !readonly) {
+      // subclasses without an underlying file, and writers, which are thread confined
+      synchronized (this) {
+        if (bufferModified) flush(); // make sure the file has what is in the buffer
+        return readPositionalFromRead_(pos, dst);
+      }
+    }
+
+    int want = dst.remaining();
+    if (want == 0) return 0;
+    int total = 0;
+    if (myBlockCache != null && !extendMode) {
+      if (dst.hasArray()) {
+        total = myBlockCache.read(this, blockCacheKey, pos, dst.array(), dst.arrayOffset() + dst.position(), want, true);
+        if (total > 0) dst.position(dst.position() + total);
+      } else {
+        byte[] tmp = new byte[want];
+        total = myBlockCache.read(this, blockCacheKey, pos, tmp, 0, want, true);
+        if (total > 0) dst.put(tmp, 0, total);
+      }
+      return total;
+    }
+
+    while (total < want) {
+      int n = readChannel(pos + total, dst);
+      if (n < 0) break;
+      total += n;
+    }
+
+    if (debugAccess) {
+      if (showRead)
+        System.out.println(" **read(pos) " + location + " = " + want + " bytes at " + pos);
+      debug_nseeks.incrementAndGet();
+      debug_nbytes.addAndGet(want);
+    }
+
+    if (extendMode && (total < want)) {
+      while (dst.hasRemaining()) dst.put((byte) 0);
+      total = want;
+    }
+
+    return (total == 0 && want > 0) ? -1 : total;
+  }
+
+  /**
+   * Read exactly <code>len</code> bytes into an array, starting at the given file position.
+   * This does not use or change the file pointer or the buffer, see read(long, ByteBuffer).
+   *
+   * @param pos start here in the file
+   * @param b   the byte array to receive the bytes.
+   * @param off the offset in the array where copying will start.
+   * @param len the number of bytes to read.
+   * @throws EOFException if the end of file is reached before reading all the bytes.
+   * @throws IOException  if an I/O error occurs.
+   */
+  public final void readFully(long pos, byte b[], int off, int len) throws IOException {
+    int n = read(pos, java.nio.ByteBuffer.wrap(b, off, len));
+    if (n < len)
+      throw new EOFException("Reading " + location + " at " + pos + " file length = " + length());
+  }
+
+  /**
+   * Read exactly <code>b.length</code> bytes, starting at the given file position.
+   * This does not use or change the file pointer or the buffer, see read(long, ByteBuffer).
+   *
+   * @param pos start here in the file
+   * @param b   the byte array to receive the bytes.
+   * @throws EOFException if the end of file is reached before reading all the bytes.
+   * @throws IOException  if an I/O error occurs.
+   */
+  public final void readFully(long pos, byte b[]) throws IOException {
+    readFully(pos, b, 0, b.length);
+  }
+
+  // implement positional read with read_(), caller must synchronize if read_ is not thread safe
+  protected int readPositionalFromRead_(long pos, java.nio.ByteBuffer dst) throws IOException {
+    int want = dst.remaining();
+    if (want == 0) return 0;
+    if (pos >= length()) return -1;
+    want = (int) Math.min(want, length() - pos);
+
+    int total;
+    if (dst.hasArray()) {
+      total = read_(pos, dst.array(), dst.arrayOffset() + dst.position(), want);
+      if (total > 0) dst.position(dst.position() + total);
+    } else {
+      byte[] tmp = new byte[want];
+      total = read_(pos, tmp, 0, want);
+      if (total > 0) dst.put(tmp, 0, total);
+    }
+    return (total <= 0) ? -1 : total;
+  }
+
+  // one positional read on positionalChannel, which is reopened if an interrupt in another thread has closed it
+  private int readChannel(long pos, java.nio.ByteBuffer dst) throws IOException {
+    while (true) {
+      java.nio.channels.FileChannel channel = getPositionalChannel();
+      try {
+        return channel.read(dst, pos);
+      } catch (java.nio.channels.ClosedChannelException e) {
+        // this thread was interrupted, or the file was closed: give up. otherwise try again on a new channel
+        if (e instanceof java.nio.channels.ClosedByInterruptException || Thread.currentThread().isInterrupted() || file == null)
+          throw e;
+      }
+    }
+  }
+
+  private java.nio.channels.FileChannel getPositionalChannel() throws IOException {
+    java.nio.channels.FileChannel channel = positionalChannel;
+    if (channel == null || !channel.isOpen()) {
+      synchronized (this) {
+        if (file == null)
+          throw new IOException("RandomAccessFile " + location + " is closed");
+        channel = positionalChannel;
+        if (channel == null || !channel.isOpen()) {
+          channel = java.nio.channels.FileChannel.open(new File(location).toPath(), java.nio.file.StandardOpenOption.READ);
+          positionalChannel = channel;
+        }
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * Positional read of one block for the BlockCache: thread safe if positional is true, else uses read_().
+   */
+  int readBlock(long pos, byte[] b, int offset, int len, boolean positional) throws IOException {
+    if (!positional)
+      return read_(pos, b, offset, len);
+
+    java.nio.ByteBuffer dst = java.nio.ByteBuffer.wrap(b, offset, len);
+    int total = 0;
+    while (total < len) {
+      int n = readChannel(pos + total, dst);
+      if (n < 0) break;
+      total += n;
+    }
+    return (total == 0) ? -1 : total;
+  }
+
+  /**
+   * Get the current byte order, used by readShort, readInt, etc.
+   *
+   * @return ByteOrder.BIG_ENDIAN or ByteOrder.LITTLE_ENDIAN
+   */
+  public ByteOrder getByteOrder() {
+    return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+  }
+
   /**
    * Read up to <code>len</code> bytes into an array, at a specified
    * offset. This will block until at least one byte has been read.
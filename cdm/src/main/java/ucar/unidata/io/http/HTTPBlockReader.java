@@ -0,0 +1,332 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.unidata.io.http;
+
+import ucar.unidata.io.BlockCache;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a remote file in aligned blocks, for HTTPRandomAccessFile.
+ * Blocks come from a BlockCache if possible. Missing blocks that are adjacent are fetched with one range request;
+ * large reads are split into several range requests, which are made in parallel.
+ * When reads are sequential, the blocks following them are fetched too, doubling the readahead up to a maximum;
+ * in the background, if the read itself was served from the cache.
+ * <p/>
+ * The cache may be shared by all remote files (see setSharedCache()), in which case the blocks are keyed by URL and
+ * ETag or Last-Modified, so a changed file is never served stale blocks. Otherwise, or if the server sends neither,
+ * each file has its own small cache.
+ */
+@ThreadSafe
+public class HTTPBlockReader {
+  static public final int defaultBlockSize = 64 * 1024;
+  static public final int defaultPrivateCacheSize = 4 * 1000 * 1000;
+  static private final int maxRequestBlocks = 16;    // largest single range request, in blocks
+  static private final int maxReadAheadBlocks = 32;
+  static private final int nthreads = 4;
+
+  static private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HTTPBlockReader.class);
+
+  /**
+   * Makes one range request.
+   */
+  public interface RangeSource {
+    /**
+     * Read len bytes starting at pos, with one request.
+     * @return number of bytes read, may be less than len only at the end of the file
+     */
+    int readRange(long pos, byte[] dest, int offset, int len) throws IOException;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+  // optional cache shared by all remote files, and the threads for parallel requests
+
+  static private volatile BlockCache sharedCache;
+  static private ExecutorService executor;
+
+  /**
+   * Set the cache shared by all remote files that send an ETag or Last-Modified header.
+   * Files already open keep using the cache they were opened with.
+   *
+   * @param cache use this BlockCache, or null for a private cache in each file
+   */
+  static public void setSharedCache(BlockCache cache) {
+    sharedCache = cache;
+  }
+
+  static public BlockCache getSharedCache() {
+    return sharedCache;
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      AtomicInteger count = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(nthreads, r -> {
+        Thread t = new Thread(r, "HTTPBlockReader-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  private final RangeSource source;
+  private final long length;
+  private final BlockCache cache;
+  private final String fileKey;
+  private final int blockSize;
+  private final long nblocks;
+
+  // readahead, guarded by this
+  private long nextSequentialPos = -1;
+  private int readAheadBlocks = 0;
+  private Future<?> prefetch;           // the one readahead in the background, if any
+  private long prefetchFirst, prefetchLast;
+
+  /**
+   * Constructor.
+   *
+   * @param source   makes the range requests
+   * @param location URL of the file
+   * @param version  ETag or Last-Modified of the file, or null if unknown
+   * @param length   length of the file
+   */
+  public HTTPBlockReader(RangeSource source, String location, String version, long length) {
+    this.source = source;
+    this.length = length;
+
+    BlockCache shared = sharedCache;
+    if (shared != null && version != null) {
+      this.cache = shared;
+      this.fileKey = BlockCache.makeFileKey(location, version);
+    } else {
+      int bs = (shared != null) ? shared.getBlockSize() : defaultBlockSize;
+      this.cache = new BlockCache(location, bs, Math.max(defaultPrivateCacheSize, bs), false);
+      this.fileKey = location;
+    }
+    this.blockSize = cache.getBlockSize();
+    this.nblocks = (length + blockSize - 1) / blockSize;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Read bytes of the file.
+   *
+   * @param pos    start here in the file
+   * @param dest   put data into this buffer
+   * @param offset buffer offset
+   * @param len    this number of bytes
+   * @return actual number of bytes read, less than len only at the end of the file; -1 if pos is at or past the end
+   * @throws IOException on io error
+   */
+  public int read(long pos, byte[] dest, int offset, int len) throws IOException {
+    if (pos >= length) return -1;
+    final int nbytes = (int) Math.min(len, length - pos);
+    if (nbytes <= 0) return 0;
+
+    long firstBlock = pos / blockSize;
+    long lastBlock = (pos + nbytes - 1) / blockSize;
+    int readAhead = nextReadAhead(pos, nbytes);
+    waitForPrefetch(firstBlock, lastBlock);
+
+    // copy what is in the cache, collect what is not
+    List<Long> missing = new ArrayList<>();
+    for (long blockNo = firstBlock; blockNo <= lastBlock; blockNo++) {
+      long start = Math.max(pos, blockNo * blockSize);
+      long end = Math.min(pos + nbytes, (blockNo + 1) * blockSize);
+      if (!cache.readBlock(fileKey, blockNo, (int) (start - blockNo * blockSize), dest, offset + (int) (start - pos), (int) (end - start)))
+        missing.add(blockNo);
+    }
+
+    // read ahead when half of the blocks following this read are not in the cache
+    List<Long> ahead = new ArrayList<>();
+    if (readAhead > 0 && !isPrefetching()) {
+      long aheadLast = Math.min(lastBlock + readAhead, nblocks - 1);
+      long firstMissing = lastBlock + 1;
+      while (firstMissing <= aheadLast && cache.containsBlock(fileKey, firstMissing))
+        firstMissing++;
+      if (firstMissing <= aheadLast && firstMissing - lastBlock <= (readAhead + 1) / 2) {
+        for (long blockNo = firstMissing; blockNo <= aheadLast; blockNo++)
+          if (!cache.containsBlock(fileKey, blockNo)) ahead.add(blockNo);
+      }
+    }
+
+    if (missing.isEmpty()) {  // all we need is in the cache, so read ahead in the background
+      if (!ahead.isEmpty())
+        prefetch(makeRequests(ahead));
+      return nbytes;
+    }
+    missing.addAll(ahead);
+    List<long[]> requests = makeRequests(missing);
+
+    if (requests.size() == 1) {
+      fetch(requests.get(0)[0], requests.get(0)[1], pos, dest, offset, nbytes);
+      return nbytes;
+    }
+
+    // in parallel, the first one in this thread
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 1; i < requests.size(); i++) {
+      long[] req = requests.get(i);
+      Callable<Void> task = () -> {
+        fetch(req[0], req[1], pos, dest, offset, nbytes);
+        return null;
+      };
+      FutureTask<Void> future = new FutureTask<>(task);
+      try {
+        getExecutor().execute(future);
+      } catch (RejectedExecutionException e) {
+        future.run();
+      }
+      futures.add(future);
+    }
+    IOException failure = null;
+    try {
+      fetch(requests.get(0)[0], requests.get(0)[1], pos, dest, offset, nbytes);
+    } catch (IOException e) {
+      failure = e;
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("HTTPBlockReader interrupted");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (failure == null)
+          failure = (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+      }
+    }
+    if (failure != null) throw failure;
+    return nbytes;
+  }
+
+  // adjacent blocks are fetched together, up to maxRequestBlocks at a time. blocks must be sorted
+  private List<long[]> makeRequests(List<Long> blocks) {
+    List<long[]> requests = new ArrayList<>();  // first, last block
+    long first = blocks.get(0), last = first;
+    for (int i = 1; i < blocks.size(); i++) {
+      long blockNo = blocks.get(i);
+      if (blockNo == last + 1 && blockNo - first < maxRequestBlocks) {
+        last = blockNo;
+      } else {
+        requests.add(new long[]{first, last});
+        first = last = blockNo;
+      }
+    }
+    requests.add(new long[]{first, last});
+    return requests;
+  }
+
+  // only one readahead in the background at a time, so a fast reader doesnt fetch the same blocks twice
+  private synchronized void prefetch(List<long[]> requests) {
+    if (isPrefetching()) return;
+    FutureTask<Void> task = new FutureTask<>(() -> {
+      for (long[] req : requests)
+        fetch(req[0], req[1], 0, null, 0, 0);
+      return null;
+    });
+    try {
+      getExecutor().execute(task);
+    } catch (RejectedExecutionException e) {
+      return;
+    }
+    prefetch = task;
+    prefetchFirst = requests.get(0)[0];
+    prefetchLast = requests.get(requests.size() - 1)[1];
+  }
+
+  private synchronized boolean isPrefetching() {
+    return prefetch != null && !prefetch.isDone();
+  }
+
+  // if the readahead in the background is fetching any of these blocks, wait for it, rather than fetching them again
+  private void waitForPrefetch(long first, long last) throws IOException {
+    Future<?> wait;
+    synchronized (this) {
+      if (!isPrefetching() || last < prefetchFirst || first > prefetchLast) return;
+      wait = prefetch;
+    }
+    try {
+      wait.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("HTTPBlockReader interrupted");
+    } catch (ExecutionException e) {
+      logger.debug("HTTPBlockReader readahead failed {}", e.getCause().getMessage()); // missing blocks are fetched again
+    }
+  }
+
+  // number of blocks to read ahead: doubles while reads are sequential, else none
+  private synchronized int nextReadAhead(long pos, int len) {
+    if (pos == nextSequentialPos)
+      readAheadBlocks = Math.min(Math.max(1, 2 * readAheadBlocks), maxReadAheadBlocks);
+    else
+      readAheadBlocks = 0;
+    nextSequentialPos = pos + len;
+    return readAheadBlocks;
+  }
+
+  // fetch blocks first..last with one request, cache them, and copy the part of [pos, pos+len) they cover into dest, if any
+  private void fetch(long first, long last, long pos, byte[] dest, int offset, int len) throws IOException {
+    long start = first * blockSize;
+    int want = (int) (Math.min((last + 1) * blockSize, length) - start);
+    byte[] buff = new byte[(int) (last - first + 1) * blockSize];  // last block of the file is padded
+    int n = source.readRange(start, buff, 0, want);
+    if (n < want)
+      throw new IOException("HTTPBlockReader wanted " + want + " bytes at " + start + ", got " + n);
+    if (logger.isDebugEnabled())
+      logger.debug("HTTPBlockReader {} blocks {}-{} bytes={}", fileKey, first, last, n);
+
+    for (long blockNo = first; blockNo <= last; blockNo++)
+      cache.putBlock(fileKey, blockNo, buff, (int) ((blockNo - first) * blockSize));
+
+    if (dest == null) return;
+    long copyStart = Math.max(pos, start);
+    long copyEnd = Math.min(pos + len, start + n);
+    if (copyEnd > copyStart)
+      System.arraycopy(buff, (int) (copyStart - start), dest, offset + (int) (copyStart - pos), (int) (copyEnd - copyStart));
+  }
+}
@@ -50,6 +50,7 @@ import java.nio.channels.WritableByteChannel;
  * This version uses a single instance of HttpClient, following performance guidelines at
  * http://jakarta.apache.org/commons/httpclient/performance.html
  * Plus other improvements.
+ * Reads go through an HTTPBlockReader, which caches blocks, combines and parallelizes range requests, and reads ahead.
  *
  * @author John Caron, based on work by Donald Denbo
  */
@@ -62,8 +63,10 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
   ///////////////////////////////////////////////////////////////////////////////////
 
   private String url;
-  private HTTPSession session = null;
+  private volatile HTTPSession session = null;  // range requests may be made by the block reader's threads
   private long total_length = 0;
+  private String version = null;   // ETag or Last-Modified, identifies the file contents
+  private HTTPBlockReader blockReader;
 
   public HTTPRandomAccessFile(String url) throws IOException {
     this(url, defaultHTTPBufferSize);
@@ -104,6 +107,8 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
         throw new IOException("Server does not support Content-Length");
       }
 
+      version = getVersion(method);
+
       try {
         total_length = Long.parseLong(head.getValue());
         /* Some HTTP server report 0 bytes length. 
@@ -118,9 +123,12 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     if (needtest && !rangeOk(url))
       throw new IOException("Server does not support byte Ranges");
 
+    blockReader = new HTTPBlockReader(this::readRange, url, version, total_length);
+
     if (total_length > 0) {
-      // this means that we will read the file in one gulp then deal with it in memory
-      int useBuffer = (int) Math.min(total_length, maxHTTPBufferSize); // entire file size if possible
+      // small files are read in one gulp then dealt with in memory
+      // larger ones a block at a time, relying on the block reader to read ahead
+      int useBuffer = (total_length <= maxHTTPBufferSize) ? (int) total_length : blockReader.getBlockSize();
       useBuffer = Math.max(useBuffer, defaultHTTPBufferSize); // minimum buffer
       setBufferSize(useBuffer);
     }
@@ -150,6 +158,7 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
           throw new IOException("Server does not support Range requests, code= " + code);
         Header head = method.getResponseHeader("Content-Range");
         total_length = Long.parseLong(head.getValue().substring(head.getValue().lastIndexOf("/") + 1));
+        if (version == null) version = getVersion(method);
         // clear stream
         method.close();
         return true;
@@ -177,6 +186,15 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     }
   }
 
+  // strong ETag if there is one, else Last-Modified, else null
+  private String getVersion(HTTPMethod method) {
+    Header head = method.getResponseHeader("ETag");
+    if (head != null && head.getValue() != null && !head.getValue().startsWith("W/"))
+      return head.getValue();
+    head = method.getResponseHeader("Last-Modified");
+    return (head == null) ? null : head.getValue();
+  }
+
   private void printHeaders(String title, Header[] heads) {
     System.out.println(title);
     for (Header head : heads) {
@@ -198,13 +216,24 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
    */
   @Override
   protected int read_(long pos, byte[] buff, int offset, int len) throws IOException {
+    return blockReader.read(pos, buff, offset, len);
+  }
+
+  /**
+   * Read with one range request, for the HTTPBlockReader.
+   */
+  private int readRange(long pos, byte[] buff, int offset, int len) throws IOException {
     long end = pos + len - 1;
     if (end >= total_length)
       end = total_length - 1;
 
     if (debug) System.out.println(" HTTPRandomAccessFile bytes=" + pos + "-" + end + ": ");
 
-    try (HTTPMethod method = HTTPFactory.Get(session,url)) {
+    HTTPSession useSession = session;
+    if (useSession == null)
+      throw new IOException("HTTPRandomAccessFile is closed " + url);
+
+    try (HTTPMethod method = HTTPFactory.Get(useSession,url)) {
       method.setFollowRedirects(true);
       method.setRange(pos,end);
       doConnect(method);
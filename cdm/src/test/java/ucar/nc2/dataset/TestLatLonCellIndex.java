@@ -0,0 +1,126 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.dataset;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.ArrayDouble;
+
+import java.util.Random;
+
+/**
+ * Test LatLonCellIndex against a linear scan of the cell centers.
+ */
+public class TestLatLonCellIndex {
+
+  // a rotated, slightly curved grid, like a regional ocean model
+  private ArrayDouble.D2[] makeEdges(int nrows, int ncols, double lon0) {
+    ArrayDouble.D2 latEdge = new ArrayDouble.D2(nrows + 1, ncols + 1);
+    ArrayDouble.D2 lonEdge = new ArrayDouble.D2(nrows + 1, ncols + 1);
+    double cos = Math.cos(Math.toRadians(30));
+    double sin = Math.sin(Math.toRadians(30));
+    for (int row = 0; row <= nrows; row++) {
+      for (int col = 0; col <= ncols; col++) {
+        double y = row * 0.25;
+        double x = col * 0.25 + 0.001 * row * row;
+        latEdge.set(row, col, 10.0 + x * sin + y * cos);
+        lonEdge.set(row, col, lon0 + x * cos - y * sin);
+      }
+    }
+    return new ArrayDouble.D2[]{latEdge, lonEdge};
+  }
+
+  private int[] findClosestLinear(ArrayDouble.D2 latEdge, ArrayDouble.D2 lonEdge, double wantLat, double wantLon) {
+    int[] shape = latEdge.getShape();
+    int[] result = new int[2];
+    double best = Double.MAX_VALUE;
+    for (int row = 0; row < shape[0] - 1; row++) {
+      for (int col = 0; col < shape[1] - 1; col++) {
+        double lat = (latEdge.get(row, col) + latEdge.get(row, col + 1) + latEdge.get(row + 1, col) + latEdge.get(row + 1, col + 1)) / 4;
+        double lon = (lonEdge.get(row, col) + lonEdge.get(row, col + 1) + lonEdge.get(row + 1, col) + lonEdge.get(row + 1, col + 1)) / 4;
+        if (Double.isNaN(lat) || Double.isNaN(lon)) continue;
+        for (double wrap = -360; wrap <= 360; wrap += 360) {
+          double dist = (wantLat - lat) * (wantLat - lat) + (wantLon + wrap - lon) * (wantLon + wrap - lon);
+          if (dist < best) {
+            best = dist;
+            result[0] = row;
+            result[1] = col;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testClosestCell() {
+    ArrayDouble.D2[] edges = makeEdges(60, 80, -120.0);
+    LatLonCellIndex index = new LatLonCellIndex(edges[0], edges[1]);
+
+    Random random = new Random(17);
+    int[] got = new int[2];
+    for (int i = 0; i < 1000; i++) {
+      double lat = 5.0 + 30.0 * random.nextDouble();
+      double lon = -135.0 + 35.0 * random.nextDouble();
+      Assert.assertTrue(index.findClosestCell(lat, lon, got));
+      Assert.assertArrayEquals(lat + " " + lon, findClosestLinear(edges[0], edges[1], lat, lon), got);
+    }
+  }
+
+  @Test
+  public void testSeamAndMissing() {
+    // grid runs from 170 to about 195, query just past the seam at -175
+    ArrayDouble.D2[] edges = makeEdges(20, 100, 170.0);
+    edges[0].set(0, 0, Double.NaN);
+    LatLonCellIndex index = new LatLonCellIndex(edges[0], edges[1]);
+
+    int[] got = new int[2];
+    Assert.assertTrue(index.findClosestCell(20.0, -175.0, got));
+    Assert.assertArrayEquals(findClosestLinear(edges[0], edges[1], 20.0, -175.0), got);
+
+    // cell (0,0) has a missing corner, so it is never returned
+    Assert.assertTrue(index.findClosestCell(edges[0].get(1, 1), edges[1].get(0, 0), got));
+    Assert.assertFalse(got[0] == 0 && got[1] == 0);
+  }
+
+  @Test
+  public void testAllMissing() {
+    ArrayDouble.D2 latEdge = new ArrayDouble.D2(3, 3);
+    ArrayDouble.D2 lonEdge = new ArrayDouble.D2(3, 3);
+    for (int row = 0; row < 3; row++)
+      for (int col = 0; col < 3; col++)
+        latEdge.set(row, col, Double.NaN);
+    LatLonCellIndex index = new LatLonCellIndex(latEdge, lonEdge);
+    Assert.assertFalse(index.findClosestCell(0.0, 0.0, new int[2]));
+  }
+}
@@ -0,0 +1,144 @@
+package ucar.nc2.ft.point;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.constants.ACDD;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.NoFactoryFoundException;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureBatch;
+import ucar.nc2.ft.PointFeatureBatchIterator;
+import ucar.nc2.ft.PointFeatureCollection;
+import ucar.nc2.ft.point.writer.CFPointWriter;
+import ucar.nc2.ft.point.writer.CFPointWriterConfig;
+import ucar.nc2.ft.point.writer.WriterCFPointCollection;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
+import ucar.unidata.geoloc.EarthLocationImpl;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+/**
+ * Compare PointFeatureBatchIterator with PointFeatureIterator.
+ */
+public class PointFeatureBatchTest {
+    @Test
+    public void testAll() throws IOException, NoFactoryFoundException, URISyntaxException {
+        try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsToFilter.ncml")) {
+            PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+            compare(pfc, 4);  // one full batch and one partial batch
+            compare(pfc, 6);
+            compare(pfc, 1000);
+        }
+    }
+
+    @Test
+    public void testSubset() throws IOException, NoFactoryFoundException, URISyntaxException {
+        LatLonRect bb = new LatLonRect(new LatLonPointImpl(30, -10), new LatLonPointImpl(65, 90));
+        CalendarDateRange dateRange = CalendarDateRange.of(
+                CalendarDate.parseISOformat(null, "1970-01-05T00:00:00Z"),
+                CalendarDate.parseISOformat(null, "1970-05-01T00:00:00Z"));
+
+        try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsToFilter.ncml")) {
+            PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+            PointFeatureCollection subset = pfc.subset(bb, dateRange);
+            Assert.assertEquals(4, compare(subset, 3));  // the last one is on the end of the date range
+        }
+    }
+
+    @Test
+    public void testMissingLocation() throws IOException, NoFactoryFoundException, URISyntaxException {
+        try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsMissingLocation.ncml")) {
+            PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+            Assert.assertEquals(5, compare(pfc, 4));  // a missing location is always dropped
+
+            LatLonRect bb = new LatLonRect(new LatLonPointImpl(-80, -170), new LatLonPointImpl(80, 170));
+            Assert.assertEquals(5, compare(pfc.subset(bb, null), 4));
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteMissingLocation() throws IOException, NoFactoryFoundException, URISyntaxException {
+        try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsMissingLocation.ncml")) {
+            PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+
+            // batches
+            File batchFile = tempFolder.newFile("batch.nc");
+            Assert.assertEquals(5, CFPointWriter.writeFeatureCollection(fdPoint, batchFile.getPath(), NetcdfFileWriter.Version.netcdf3));
+
+            // one feature at a time, with an extra record whose location is missing
+            File featureFile = tempFolder.newFile("feature.nc");
+            try (WriterCFPointCollection writer = new WriterCFPointCollection(featureFile.getPath(), fdPoint.getGlobalAttributes(),
+                    fdPoint.getDataVariables(), pfc.getTimeUnit(), pfc.getAltUnits(), new CFPointWriterConfig(NetcdfFileWriter.Version.netcdf3))) {
+                int count = 0;
+                for (PointFeature pf : pfc) {
+                    if (count++ == 0)
+                        writer.writeHeader(pf);
+                    writer.writeRecord(pf.getObservationTime(), pf.getObservationTimeAsCalendarDate(),
+                            new EarthLocationImpl(Double.NaN, Double.NaN, Double.NaN), pf.getFeatureData());
+                    writer.writeRecord(pf, pf.getFeatureData());
+                }
+                writer.finish();
+            }
+
+            try (NetcdfFile batchNc = NetcdfFile.open(batchFile.getPath());
+                 NetcdfFile featureNc = NetcdfFile.open(featureFile.getPath())) {
+                for (String name : new String[] {ACDD.LAT_MIN, ACDD.LAT_MAX, ACDD.LON_MIN, ACDD.LON_MAX}) {
+                    double val = batchNc.findGlobalAttribute(name).getNumericValue().doubleValue();
+                    Assert.assertFalse(name, Double.isNaN(val));
+                    Assert.assertEquals(name, val, featureNc.findGlobalAttribute(name).getNumericValue().doubleValue(), 0.0);
+                }
+                Assert.assertEquals(20.0, batchNc.findGlobalAttribute(ACDD.LAT_MIN).getNumericValue().doubleValue(), .01);
+                Assert.assertEquals(60.0, batchNc.findGlobalAttribute(ACDD.LAT_MAX).getNumericValue().doubleValue(), .01);
+            }
+        }
+    }
+
+    // returns number of points
+    private int compare(PointFeatureCollection pfc, int batchSize) throws IOException {
+        List<PointFeature> expected = new ArrayList<>();
+        for (PointFeature pf : pfc) {
+            expected.add(pf);
+        }
+
+        int count = 0;
+        try (PointFeatureBatchIterator iter = pfc.getPointFeatureBatchIterator(batchSize)) {
+            while (iter.hasNext()) {
+                PointFeatureBatch batch = iter.next();
+                Assert.assertTrue(batch.getSize() > 0 && batch.getSize() <= batchSize);
+
+                Array ids = batch.getColumn("id");
+                Assert.assertNotNull(ids);
+                Assert.assertEquals(batch.getSize(), ids.getShape()[0]);
+
+                for (int i = 0; i < batch.getSize(); i++) {
+                    PointFeature pf = expected.get(count++);
+                    Assert.assertEquals(pf.getObservationTime(), batch.getObservationTime()[i], 0.0);
+                    Assert.assertEquals(pf.getNominalTime(), batch.getNominalTime()[i], 0.0);
+                    Assert.assertEquals(pf.getLocation().getLatitude(), batch.getLatitude()[i], 0.0);  // NaN equals NaN
+                    Assert.assertEquals(pf.getLocation().getLongitude(), batch.getLongitude()[i], 0.0);
+                    Assert.assertEquals(pf.getLocation().getAltitude(), batch.getAltitude()[i], 0.0);
+                    Assert.assertEquals(pf.getObservationTimeAsCalendarDate(), batch.getObservationTimeAsCalendarDate(i));
+                    Assert.assertEquals(pf.getDataAll().getScalarString("id"), ids.getObject(i));
+                    Assert.assertEquals(pf.getDataAll().getScalarString("id"), batch.getStructureData(i).getScalarString("id"));
+                }
+            }
+        }
+
+        Assert.assertEquals(expected.size(), count);
+        return count;
+    }
+}
@@ -11,7 +11,9 @@ import java.util.LinkedList;
 import java.util.List;
 import com.google.common.collect.Ordering;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import ucar.ma2.DataType;
 import ucar.ma2.StructureDataScalar;
 import ucar.nc2.constants.FeatureType;
@@ -22,6 +24,9 @@ import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.time.CalendarDateUnit;
 
 public class SortingStationPointFeatureCacheTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void test1() throws Exception {
         StructureDataScalar stationData = new StructureDataScalar("StationFeature");  // leave it empty.
@@ -114,4 +119,61 @@ public class SortingStationPointFeatureCacheTest {
             Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
         }
     }
+
+    @Test
+    public void testSpillToDisk() throws URISyntaxException, NoFactoryFoundException, IOException {
+        // Same as test3, but with a budget so small that nearly every feature goes to its own run.
+        Comparator<StationPointFeature> longestStationNameFirst = new Comparator<StationPointFeature>() {
+            @Override
+            public int compare(StationPointFeature o1, StationPointFeature o2) {
+                return -Integer.compare(o1.getStation().getName().length(), o2.getStation().getName().length());
+            }
+        };
+        File tempDir = tempFolder.newFolder();
+        SortingStationPointFeatureCache cache = new SortingStationPointFeatureCache(longestStationNameFirst, 1, tempDir);
+
+        try (FeatureDatasetPoint fdInput = PointTestUtil.openPointDataset("cacheTestInput1.ncml");
+                FeatureDatasetPoint fdExpected = PointTestUtil.openPointDataset("cacheTestExpected1.ncml")) {
+            cache.addAll(fdInput);
+            Assert.assertTrue(cache.getNumRuns() > 1);
+
+            PointFeatureIterator pointIterExpected =
+                    new FlattenedDatasetPointCollection(fdExpected).getPointFeatureIterator();
+            PointFeatureIterator pointIterActual = cache.getPointFeatureIterator();
+            Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
+        }
+
+        // The run files are deleted once the iteration is done.
+        Assert.assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void testMultiPassMerge() throws URISyntaxException, NoFactoryFoundException, IOException {
+        // Same as testSpillToDisk, but with more runs than can be merged at once, so they're merged in several passes.
+        Comparator<StationPointFeature> longestStationNameFirst = new Comparator<StationPointFeature>() {
+            @Override
+            public int compare(StationPointFeature o1, StationPointFeature o2) {
+                return -Integer.compare(o1.getStation().getName().length(), o2.getStation().getName().length());
+            }
+        };
+        File tempDir = tempFolder.newFolder();
+        int maxMergeRuns = 2;
+        SortingStationPointFeatureCache cache =
+                new SortingStationPointFeatureCache(longestStationNameFirst, 1, tempDir, maxMergeRuns);
+
+        try (FeatureDatasetPoint fdInput = PointTestUtil.openPointDataset("cacheTestInput1.ncml");
+                FeatureDatasetPoint fdExpected = PointTestUtil.openPointDataset("cacheTestExpected1.ncml")) {
+            cache.addAll(fdInput);
+            Assert.assertTrue(cache.getNumRuns() > 2 * maxMergeRuns);  // at least two passes
+
+            PointFeatureIterator pointIterExpected =
+                    new FlattenedDatasetPointCollection(fdExpected).getPointFeatureIterator();
+            PointFeatureIterator pointIterActual = cache.getPointFeatureIterator();
+            Assert.assertTrue(cache.getNumRuns() < maxMergeRuns);
+            Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
+        }
+
+        // The intermediate and final run files are deleted once the iteration is done.
+        Assert.assertEquals(0, tempDir.list().length);
+    }
 }
@@ -0,0 +1,94 @@
+package ucar.nc2.ft.point;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+/**
+ * Compare the StationHelper spatial index with a linear scan.
+ */
+public class StationHelperTest {
+    private final Random random = new Random(17);
+
+    @Test
+    public void testBoundingBox() throws IOException {
+        List<StationFeature> stations = makeStations(2000);
+        StationHelper helper = new StationHelper();
+        helper.setStations(stations);
+
+        for (int i = 0; i < 200; i++) {
+            double lat = random.nextDouble() * 160 - 80;
+            double lon = random.nextDouble() * 360 - 180;
+            double width = random.nextDouble() * (i % 10 == 0 ? 370 : 40);  // some cross the dateline or are global
+            LatLonRect bb = new LatLonRect(new LatLonPointImpl(lat, lon), random.nextDouble() * 20, width);
+
+            List<StationFeature> expected = new ArrayList<>();
+            for (StationFeature s : stations) {
+                if (bb.contains(new LatLonPointImpl(s.getLatitude(), s.getLongitude()))) {
+                    expected.add(s);
+                }
+            }
+            Assert.assertEquals(bb.toString2(), expected, helper.getStationFeatures(bb));
+        }
+    }
+
+    @Test
+    public void testClosest() throws IOException {
+        List<StationFeature> stations = makeStations(2000);
+        StationHelper helper = new StationHelper();
+        helper.setStations(stations);
+
+        for (int i = 0; i < 500; i++) {
+            LatLonPointImpl pt = new LatLonPointImpl(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            Assert.assertSame(pt.toString(), closest(stations, pt), helper.findClosestStation(pt));
+        }
+
+        // exactly on a station
+        StationFeature s = stations.get(1234);
+        Assert.assertSame(s, helper.findClosestStation(new LatLonPointImpl(s.getLatitude(), s.getLongitude())));
+    }
+
+    // the linear scan that used to be in the NCSS station writer
+    private StationFeature closest(List<StationFeature> stations, LatLonPointImpl pt) {
+        double lat = pt.getLatitude();
+        double lon = pt.getLongitude();
+        double cos = Math.cos(Math.toRadians(lat));
+        StationFeature min_station = stations.get(0);
+        double min_dist = Double.MAX_VALUE;
+
+        for (StationFeature s : stations) {
+            double lat1 = s.getLatitude();
+            double lon1 = LatLonPointImpl.lonNormal(s.getLongitude(), lon);
+            double dy = Math.toRadians(lat - lat1);
+            double dx = cos * Math.toRadians(lon - lon1);
+            double dist = dy * dy + dx * dx;
+            if (dist < min_dist) {
+                min_dist = dist;
+                min_station = s;
+            }
+        }
+        return min_station;
+    }
+
+    // half of them clustered, like a national network
+    private List<StationFeature> makeStations(int n) {
+        List<StationFeature> stations = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double lat, lon;
+            if (i % 2 == 0) {
+                lat = random.nextDouble() * 180 - 90;
+                lon = random.nextDouble() * 360 - 180;
+            } else {
+                lat = 25 + random.nextDouble() * 25;
+                lon = -125 + random.nextDouble() * 60;
+            }
+            stations.add(new StationFeatureImpl("stn" + i, null, null, lat, lon, 0.0, 0, null));
+        }
+        return stations;
+    }
+}
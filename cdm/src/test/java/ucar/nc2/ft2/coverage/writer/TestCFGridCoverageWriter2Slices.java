@@ -0,0 +1,248 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft2.coverage.writer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.AttributeContainerHelper;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft2.coverage.*;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writing a grid one slice at a time must give the same file as writing it in one piece, and fail the same way.
+ */
+public class TestCFGridCoverageWriter2Slices {
+  static private final String endpoint = TestDir.cdmLocalTestDataDir + "ncml/fmrc/GFS_Puerto_Rico_191km_20090730_0000.nc";
+  static private final String gridName = "Temperature_isobaric";
+  static private final long WHOLE = Long.MAX_VALUE, SLICES = 0;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void resetThreshold() {
+    CFGridCoverageWriter2.setStreamThreshold(50 * 1000 * 1000);
+  }
+
+  @Test
+  public void testSameAsWholeArray() throws IOException, InvalidRangeException {
+    TestReader wholeReader = new TestReader();
+    File whole = write(WHOLE, wholeReader);
+    Assert.assertEquals(1, wholeReader.calls.get());
+
+    TestReader slicesReader = new TestReader();
+    File slices = write(SLICES, slicesReader);
+    Assert.assertEquals(21 * 6, slicesReader.calls.get()); // time x isobaric
+
+    // the files differ only in the time of day in the History attribute
+    Assert.assertEquals(whole.length(), slices.length());
+    try (NetcdfFile wholeFile = NetcdfFile.open(whole.getPath()); NetcdfFile slicesFile = NetcdfFile.open(slices.getPath())) {
+      Formatter f = new Formatter();
+      CompareNetcdf2 compare = new CompareNetcdf2(f, false, false, true);
+      boolean ok = compare.compare(wholeFile, slicesFile, new CompareNetcdf2.ObjFilter() {
+        public boolean attCheckOk(Variable v, Attribute att) {
+          return !att.getShortName().equals("History");
+        }
+
+        public boolean varDataTypeCheckOk(Variable v) {
+          return true;
+        }
+      }, false, false, true);
+      Assert.assertTrue(f.toString(), ok);
+    }
+  }
+
+  @Test
+  public void testReadFailure() throws IOException, InvalidRangeException {
+    TestReader wholeReader = new TestReader();
+    wholeReader.failAt = 0;
+    IOException wholeFailure = writeExpectingFailure(WHOLE, wholeReader, IOException.class);
+
+    TestReader slicesReader = new TestReader();
+    slicesReader.failAt = 3;
+    IOException slicesFailure = writeExpectingFailure(SLICES, slicesReader, IOException.class);
+
+    Assert.assertEquals(wholeFailure.getMessage(), slicesFailure.getMessage());
+    Assert.assertEquals(4, slicesReader.calls.get()); // stops at the failed slice
+    Assert.assertEquals(0, slicesReader.running.get());
+  }
+
+  @Test
+  public void testFailureWaitsForReadAhead() throws IOException, InvalidRangeException {
+    TestReader reader = new TestReader();
+    reader.shortAt = 2;
+    reader.slowAt = 3; // the readahead, in progress when slice 2 fails
+    writeExpectingFailure(SLICES, reader, IllegalStateException.class);
+
+    Assert.assertEquals(4, reader.calls.get());
+    Assert.assertEquals(0, reader.running.get()); // the readahead finished before the writer returned
+    Assert.assertFalse(reader.interrupted);
+  }
+
+  private File write(long threshold, TestReader reader) throws IOException, InvalidRangeException {
+    CFGridCoverageWriter2.setStreamThreshold(threshold);
+    File file = tempFolder.newFile();
+    try (FeatureDatasetCoverage fdc = CoverageDatasetFactory.open(endpoint)) {
+      CoverageCollection gcs = reader.wrap(fdc.findCoverageDataset(FeatureType.GRID));
+      NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.getPath(), null);
+      List<String> gridNames = new ArrayList<>();
+      gridNames.add(gridName);
+      Assert.assertTrue(CFGridCoverageWriter2.writeOrTestSize(gcs, gridNames, new SubsetParams(), false, false, writer).isPresent());
+    }
+    return file;
+  }
+
+  private <T extends Exception> T writeExpectingFailure(long threshold, TestReader reader, Class<T> expected)
+          throws IOException, InvalidRangeException {
+    try {
+      write(threshold, reader);
+    } catch (Exception e) {
+      Assert.assertTrue(e.toString(), expected.isInstance(e));
+      return expected.cast(e);
+    }
+    Assert.fail("expected " + expected.getSimpleName());
+    return null;
+  }
+
+  // wraps the dataset's reader to count the reads and make them fail
+  private static class TestReader implements CoverageReader {
+    private CoverageReader proxy;
+    int failAt = -1;  // throw IOException on this read
+    int shortAt = -1; // return half the data on this read
+    int slowAt = -1;  // sleep before this read
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger running = new AtomicInteger();
+    volatile boolean interrupted;
+    final CountDownLatch slowStarted = new CountDownLatch(1);
+
+    CoverageCollection wrap(CoverageCollection org) {
+      this.proxy = org.getReader();
+      List<Coverage> coverages = new ArrayList<>();
+      for (Coverage cov : org.getCoverages())
+        coverages.add(new Coverage(cov.getName(), cov.getDataType(), cov.getAttributes(), cov.getCoordSysName(),
+                cov.getUnitsString(), cov.getDescription(), this, cov.getUserObject()));
+      List<CoverageCoordSys> coordSys = new ArrayList<>();
+      for (CoverageCoordSys cs : org.getCoordSys())
+        coordSys.add(new CoverageCoordSys(cs));
+      List<CoverageCoordAxis> axes = new ArrayList<>();
+      for (CoverageCoordAxis axis : org.getCoordAxes())
+        axes.add(axis.copy());
+
+      return new CoverageCollection(org.getName(), org.getCoverageType(),
+              new AttributeContainerHelper(org.getName(), org.getGlobalAttributes()), null, null,
+              org.getCalendarDateRange(), coordSys, org.getCoordTransforms(), axes, coverages, this);
+    }
+
+    @Override
+    public String getLocation() {
+      return proxy.getLocation();
+    }
+
+    @Override
+    public GeoReferencedArray readData(Coverage coverage, SubsetParams subset, boolean canonicalOrder)
+            throws IOException, InvalidRangeException {
+      int call = calls.getAndIncrement();
+      running.incrementAndGet();
+      try {
+        if (call == failAt)
+          throw new IOException("read failed");
+        if (call == slowAt) {
+          slowStarted.countDown();
+          try {
+            Thread.sleep(500);
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+
+        GeoReferencedArray result = proxy.readData(coverage, subset, canonicalOrder);
+        if (call != shortAt)
+          return result;
+        Array data = result.getData();
+        HalfArray half = new HalfArray((int) data.getSize() / 2);
+        for (int i = 0; i < half.getShape()[0]; i++)
+          half.setFloat(i, data.getFloat(i));
+        half.readAhead = slowStarted;
+        return new GeoReferencedArray(result.getCoverageName(), result.getDataType(), half, result.getCoordSysForData());
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      proxy.close();
+    }
+  }
+
+  // the writer checks the size of a slice after starting the readahead; make it wait until that read is in progress
+  private static class HalfArray extends ArrayFloat.D1 {
+    CountDownLatch readAhead;
+
+    HalfArray(int len) {
+      super(len);
+    }
+
+    @Override
+    public long getSize() {
+      try {
+        if (readAhead != null)
+          readAhead.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.getSize();
+    }
+  }
+}
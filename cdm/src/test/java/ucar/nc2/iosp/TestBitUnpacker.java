@@ -0,0 +1,112 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compare BitUnpacker to BitReader
+ */
+public class TestBitUnpacker {
+
+  @Test
+  public void testSameAsBitReader() throws IOException {
+    Random r = new Random(1234);
+    byte[] data = new byte[10000];
+    r.nextBytes(data);
+
+    for (int nb = 1; nb <= 32; nb++) {
+      int n = (data.length * 8 - 7) / nb;
+      BitReader reader = new BitReader(data);
+      BitUnpacker unpacker = new BitUnpacker(data);
+
+      // skip a few bits so that the values are not byte aligned
+      Assert.assertEquals(reader.bits2UInt(7), unpacker.bits2UInt(7));
+      int[] values = new int[n];
+      unpacker.unpack(nb, n, values, 0);
+      for (int i = 0; i < n; i++)
+        Assert.assertEquals("nb=" + nb + " i=" + i, (int) reader.bits2UInt(nb), values[i]);
+    }
+  }
+
+  @Test
+  public void testIncrByte() throws IOException {
+    Random r = new Random(4321);
+    byte[] data = new byte[1000];
+    r.nextBytes(data);
+
+    BitReader reader = new BitReader(data);
+    BitUnpacker unpacker = new BitUnpacker(data);
+    int[] values = new int[1];
+    for (int nb : new int[]{3, 8, 13, 16, 1, 21, 31, 8, 16, 5, 24}) {
+      reader.incrByte();
+      unpacker.incrByte();
+      Assert.assertEquals(reader.bits2UInt(nb), unpacker.bits2UInt(nb));
+      unpacker.unpack(nb, 1, values, 0);
+      Assert.assertEquals((int) reader.bits2UInt(nb), values[0]);
+    }
+  }
+
+  @Test
+  public void testLong() throws IOException {
+    byte[] data = new byte[]{(byte) 0x81, 2, 3, 4, 5, 6, 7, (byte) 0x88, (byte) 0xff};
+    BitUnpacker unpacker = new BitUnpacker(data);
+    Assert.assertEquals(8, unpacker.bits2UInt(4));
+    Assert.assertEquals(0x102030405060788fL, unpacker.bits2UInt(64));
+    Assert.assertEquals(15, unpacker.bits2UInt(4));
+
+    unpacker = new BitUnpacker(data);
+    Assert.assertEquals(0x81020304L, unpacker.bits2UInt(32));
+    Assert.assertEquals(0x0506078L, unpacker.bits2UInt(28));
+  }
+
+  @Test
+  public void testEof() throws IOException {
+    BitUnpacker unpacker = new BitUnpacker(new byte[]{1, 2, 3}, 1, 2);
+    Assert.assertEquals(16, unpacker.bitsRemaining());
+    Assert.assertEquals(2, unpacker.bits2UInt(8));
+    int[] values = new int[2];
+    try {
+      unpacker.unpack(5, 2, values, 0);
+      Assert.fail();
+    } catch (EOFException e) {
+      // expected
+    }
+    Assert.assertEquals(3, unpacker.bits2UInt(8));
+  }
+}
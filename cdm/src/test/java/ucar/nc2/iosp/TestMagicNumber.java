@@ -0,0 +1,134 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.iosp.hdf5.H5iosp;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Test MagicNumber matching, used for IOSP dispatch in NetcdfFile.open()
+ */
+public class TestMagicNumber {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final byte[] prefix = "GEMPAK DATA MANAGEMENT FILE and more".getBytes(CDM.utf8Charset);
+
+  @Test
+  public void testMatches() {
+    Assert.assertTrue(new MagicNumber(0, "GEMPAK").matches(prefix, 1000));
+    Assert.assertTrue(new MagicNumber(7, "DATA").matches(prefix, 1000));
+    Assert.assertFalse(new MagicNumber(0, "SSWB").matches(prefix, 1000));
+    Assert.assertFalse(new MagicNumber(1, "GEMPAK").matches(prefix, 1000));
+  }
+
+  @Test
+  public void testFileTooShort() {
+    Assert.assertFalse(new MagicNumber(0, "GEMPAK").matches(prefix, 4));
+    Assert.assertFalse(new MagicNumber(0, prefix).matches(prefix, prefix.length - 1));
+  }
+
+  @Test
+  public void testPrefixTooShortToTell() {
+    // bytes are past what was read, but the file is long enough: must be probed
+    Assert.assertTrue(new MagicNumber(prefix.length, "SSWB").matches(prefix, 10000));
+    Assert.assertTrue(new MagicNumber(prefix.length - 2, "SSWB").matches(prefix, 10000));
+  }
+
+  @Test
+  public void testMatchesAny() {
+    Assert.assertTrue(MagicNumber.matchesAny(null, prefix, 1000));
+    Assert.assertTrue(MagicNumber.matchesAny(new MagicNumber[0], prefix, 1000));
+    MagicNumber[] magic = new MagicNumber[] {new MagicNumber(0, "SSWB"), new MagicNumber(0, "GEMPAK")};
+    Assert.assertTrue(MagicNumber.matchesAny(magic, prefix, 1000));
+    Assert.assertFalse(MagicNumber.matchesAny(new MagicNumber[] {new MagicNumber(0, "SSWB")}, prefix, 1000));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmpty() {
+    new MagicNumber(0, new byte[0]);
+  }
+
+  @Test
+  public void testReopenSameIosp() throws IOException {
+    String location = TestDir.cdmLocalTestDataDir + "chunked.h5";
+    NetcdfFile.clearIospMatches();
+    String fileType;
+    try (NetcdfFile ncfile = NetcdfFile.open(location)) {
+      fileType = ncfile.getFileTypeId();
+    }
+    // second open uses the IOSP that opened it the first time
+    try (NetcdfFile ncfile = NetcdfFile.open(location)) {
+      Assert.assertEquals(fileType, ncfile.getFileTypeId());
+    }
+  }
+
+  // claims only files with this name, so it doesnt change how other tests open files
+  public static class UserIosp extends H5iosp {
+    public boolean isValidFile(RandomAccessFile raf) throws IOException {
+      return raf.getLocation().endsWith("userIosp.h5") && super.isValidFile(raf);
+    }
+
+    public String getFileTypeId() {
+      return "userIosp";
+    }
+  }
+
+  @Test
+  public void testRegisteredLaterTakesPrecedence() throws Exception {
+    File copy = tempFolder.newFile("userIosp.h5");
+    Files.copy(Paths.get(TestDir.cdmLocalTestDataDir + "chunked.h5"), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    try (NetcdfFile ncfile = NetcdfFile.open(copy.getPath())) {
+      Assert.assertEquals("HDF5", ncfile.getFileTypeId());
+    }
+
+    NetcdfFile.registerIOProvider(UserIosp.class);
+    try (NetcdfFile ncfile = NetcdfFile.open(copy.getPath())) {
+      Assert.assertEquals("userIosp", ncfile.getFileTypeId());
+    }
+  }
+}
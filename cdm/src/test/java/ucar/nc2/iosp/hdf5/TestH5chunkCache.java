@@ -0,0 +1,99 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test H5chunkCache
+ */
+public class TestH5chunkCache {
+
+  @Test
+  public void testHitsAndKeys() throws IOException {
+    H5chunkCache cache = new H5chunkCache("test", 1000 * 1000);
+    AtomicInteger nreads = new AtomicInteger();
+
+    byte[] data1 = cache.get("file1", 10, "var", new int[]{0, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    byte[] data2 = cache.get("file1", 10, "var", new int[]{0, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    Assert.assertSame(data1, data2);
+    Assert.assertEquals(1, nreads.get());
+
+    // different offset, variable, file or modification time is a different chunk
+    cache.get("file1", 10, "var", new int[]{10, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    cache.get("file1", 10, "var2", new int[]{0, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    cache.get("file2", 10, "var", new int[]{0, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    cache.get("file1", 11, "var", new int[]{0, 10}, () -> { nreads.incrementAndGet(); return new byte[100]; });
+    Assert.assertEquals(5, nreads.get());
+
+    Assert.assertEquals(1, cache.getStats().hitCount());
+    Assert.assertEquals(5, cache.getStats().missCount());
+
+    Formatter f = new Formatter();
+    cache.showStats(f);
+    Assert.assertTrue(f.toString().contains("hit ratio"));
+  }
+
+  @Test
+  public void testBudget() throws IOException {
+    H5chunkCache cache = new H5chunkCache("test", 10 * 1000);
+    for (int i = 0; i < 100; i++)
+      cache.get("file", 1, "var", new int[]{i}, () -> new byte[1000]);
+    Assert.assertTrue(cache.getSizeBytes() <= 10 * 1000);
+    Assert.assertTrue(cache.getStats().evictionCount() > 0);
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    H5chunkCache cache = new H5chunkCache("test", 1000 * 1000);
+    cache.get("file1", 1, "var", new int[]{0}, () -> new byte[10]);
+    cache.get("file2", 1, "var", new int[]{0}, () -> new byte[10]);
+
+    cache.invalidate("file1");
+    AtomicInteger nreads = new AtomicInteger();
+    cache.get("file1", 1, "var", new int[]{0}, () -> { nreads.incrementAndGet(); return new byte[10]; });
+    cache.get("file2", 1, "var", new int[]{0}, () -> { nreads.incrementAndGet(); return new byte[10]; });
+    Assert.assertEquals(1, nreads.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadFails() throws IOException {
+    H5chunkCache cache = new H5chunkCache("test", 1000 * 1000);
+    cache.get("file", 1, "var", new int[]{0}, () -> { throw new IOException("bad chunk"); });
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ncml;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.util.DiskCache2;
+import ucar.unidata.util.test.CompareNetcdf;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write and read back the joinExisting persist file.
+ */
+public class TestAggExistingPersist {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void turnOff() {
+    Aggregation.setPersistenceCache(null);
+  }
+
+  @Test
+  public void testPersist() throws IOException {
+    File root = tempFolder.newFolder();
+    DiskCache2 dc = new DiskCache2(root.getPath(), false, 60, -1);
+    dc.setPolicy(DiskCache2.CachePathPolicy.OneDirectory);
+    Aggregation.setPersistenceCache(dc);
+
+    String filename = "file:./" + TestNcML.topDir + "aggExisting.xml";
+    Array time1 = readTime(filename);
+
+    File persistFile = dc.getCacheFile(filename.substring(5));
+    Assert.assertTrue(persistFile.exists());
+    long length = persistFile.length();
+    try (DataInputStream in = new DataInputStream(new FileInputStream(persistFile))) {
+      Assert.assertEquals(0x41474758, in.readInt());
+    }
+
+    // values come from the persist file, and nothing has changed so its not rewritten
+    int countCacheUse = AggregationExisting.countCacheUse;
+    Array time2 = readTime(filename);
+    CompareNetcdf.compareData(time1, time2);
+    Assert.assertTrue(AggregationExisting.countCacheUse > countCacheUse);
+    Assert.assertEquals(length, persistFile.length());
+  }
+
+  // values cached after the persist file was written must be kept, even though the datasets havent changed
+  @Test
+  public void testPersistNewCacheValues() throws IOException {
+    File root = tempFolder.newFolder();
+    DiskCache2 dc = new DiskCache2(root.getPath(), false, 60, -1);
+    dc.setPolicy(DiskCache2.CachePathPolicy.OneDirectory);
+    Aggregation.setPersistenceCache(dc);
+
+    String filename = "file:./" + TestNcML.topDir + "aggExisting.xml";
+    readTime(filename);
+    File persistFile = dc.getCacheFile(filename.substring(5));
+    long length = persistFile.length();
+
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(filename, true, null)) {
+      AggregationExisting agg = (AggregationExisting) ncd.getAggregation();
+      agg.addCacheVariable("lat", null);
+      AggregationOuterDimension.CacheVar cv = agg.findCacheVariable("lat");
+      for (Aggregation.Dataset ds : agg.getDatasets())
+        Assert.assertNotNull(cv.read((AggregationOuterDimension.DatasetOuterDimension) ds));
+    } // persistWrite on close
+    Assert.assertTrue(persistFile.length() > length);
+
+    Map<String, Set<String>> vars = readPersistedVars(persistFile);
+    Assert.assertEquals(2, vars.size());
+    for (Set<String> names : vars.values()) {
+      Assert.assertTrue(names.contains("time"));
+      Assert.assertTrue(names.contains("lat"));
+    }
+  }
+
+  // dataset id -> names of the cached vars in its latest record
+  private Map<String, Set<String>> readPersistedVars(File persistFile) throws IOException {
+    Map<String, Set<String>> result = new HashMap<>();
+    try (DataInputStream in = new DataInputStream(new FileInputStream(persistFile))) {
+      Assert.assertEquals(0x41474758, in.readInt());
+      in.readInt(); // version
+      in.readUTF(); // type
+      in.readUTF(); // dimName
+      while (in.available() > 0) {
+        String id = in.readUTF();
+        in.readLong(); // lastModified
+        in.readInt();  // ncoords
+        in.readInt();  // nbytes
+        Set<String> names = new HashSet<>();
+        int nvars = in.readShort();
+        for (int i = 0; i < nvars; i++) {
+          names.add(in.readUTF());
+          DataType dtype = DataType.valueOf(in.readUTF());
+          int nelems = in.readInt();
+          for (int j = 0; j < nelems; j++) {
+            if (dtype == DataType.STRING) in.readUTF();
+            else in.skipBytes(dtype.getSize());
+          }
+        }
+        result.put(id, names);
+      }
+    }
+    return result;
+  }
+
+  private Array readTime(String filename) throws IOException {
+    try (NetcdfFile ncfile = NetcdfDataset.openDataset(filename, true, null)) {
+      Variable time = ncfile.findVariable("time");
+      Assert.assertNotNull(time);
+      return time.read();
+    }
+  }
+}
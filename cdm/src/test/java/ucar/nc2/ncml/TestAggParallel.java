@@ -0,0 +1,102 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ncml;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.unidata.util.test.CompareNetcdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare parallel and serial reads of outer dimension aggregations.
+ */
+public class TestAggParallel {
+
+  @After
+  public void turnOff() {
+    Aggregation.setParallelism(0, 0);
+  }
+
+  @Test
+  public void testJoinExisting() throws IOException, InvalidRangeException {
+    compare("file:./" + TestNcML.topDir + "aggExisting.xml", "time");
+  }
+
+  @Test
+  public void testJoinNew() throws IOException, InvalidRangeException {
+    compare("file:./" + TestNcML.topDir + "aggSynthetic.xml", "time");
+  }
+
+  private void compare(String filename, String dimName) throws IOException, InvalidRangeException {
+    Aggregation.setParallelism(0, 0);
+    List<Array> serial = readAll(filename, dimName);
+
+    Aggregation.setParallelism(4, 3);
+    List<Array> parallel = readAll(filename, dimName);
+
+    Assert.assertEquals(serial.size(), parallel.size());
+    Assert.assertTrue(serial.size() > 0);
+    for (int i = 0; i < serial.size(); i++)
+      CompareNetcdf.compareData(serial.get(i), parallel.get(i));
+  }
+
+  // read each variable using the aggregation dimension, whole and in sections that span nested datasets
+  private List<Array> readAll(String filename, String dimName) throws IOException, InvalidRangeException {
+    List<Array> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfDataset.openDataset(filename, true, null)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (v.getRank() == 0 || !dimName.equals(v.getDimension(0).getShortName())) continue;
+        v.setCaching(false);
+        result.add(v.read());
+
+        int n = v.getShape(0);
+        result.add(v.read(new Section(v.getShape()).replaceRange(0, new Range(1, n - 1)).getRanges()));
+        result.add(v.read(new Section(v.getShape()).replaceRange(0, new Range(0, n - 1, 2)).getRanges()));
+        if (v.getRank() > 1)
+          result.add(v.read(new Section(v.getShape()).replaceRange(1, new Range(0, 0)).getRanges()));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.nc2.dataset.DatasetUrl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test that every FileCacheIF tells the change listeners when a cached file has changed on disk
+ */
+public class TestFileCacheChangeListener {
+  private final List<String> changed = Collections.synchronizedList(new ArrayList<>());
+  private final FileCache.ChangeListener listener = changed::add;
+
+  @Before
+  public void addListener() {
+    FileCache.addChangeListener(listener);
+  }
+
+  @After
+  public void removeListener() {
+    FileCache.removeChangeListener(listener);
+  }
+
+  private void checkChanged(FileCacheIF cache) throws IOException {
+    TestFileCacheSharded.MyFactory factory = new TestFileCacheSharded.MyFactory();
+    DatasetUrl durl = new DatasetUrl(null, "a");
+
+    TestFileCacheSharded.MyFile f1 = (TestFileCacheSharded.MyFile) cache.acquire(factory, durl);
+    f1.close();
+    Assert.assertSame(f1, cache.acquire(factory, durl));
+    Assert.assertEquals(0, changed.size());
+    f1.close();
+
+    f1.lastModified = 2;
+    FileCacheable f2 = cache.acquire(factory, durl);
+    Assert.assertNotSame(f1, f2);
+    Assert.assertEquals(1, changed.size());
+    Assert.assertEquals("a", changed.get(0));
+    f2.close();
+  }
+
+  @Test
+  public void testFileCache() throws IOException {
+    checkChanged(new FileCache("test", 5, 10, -1, -1));
+  }
+
+  @Test
+  public void testFileCacheARC() throws IOException {
+    checkChanged(new FileCacheARC("test", 5, 10, -1, -1));
+  }
+
+  @Test
+  public void testFileCacheGuava() throws IOException {
+    checkChanged(new FileCacheGuava("test", 10));
+  }
+
+  @Test
+  public void testFileCacheSharded() throws IOException {
+    checkChanged(new FileCacheSharded("test", 5, 10, -1, -1, 4));
+  }
+}
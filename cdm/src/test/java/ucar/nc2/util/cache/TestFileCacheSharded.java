@@ -0,0 +1,235 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.CancelTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test FileCacheSharded
+ */
+public class TestFileCacheSharded {
+
+  static class MyFile implements FileCacheable {
+    final String location;
+    volatile long lastModified = 1;
+    volatile boolean closed;
+    FileCacheIF cache;
+
+    MyFile(String location) {
+      this.location = location;
+    }
+
+    public String getLocation() {
+      return location;
+    }
+
+    public synchronized void close() throws IOException {
+      if (cache != null && cache.release(this)) return;
+      closed = true;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public synchronized void setFileCache(FileCacheIF fileCache) {
+      this.cache = fileCache;
+    }
+
+    public void release() throws IOException {
+    }
+
+    public void reacquire() throws IOException {
+    }
+  }
+
+  static class MyFactory implements FileFactory {
+    final List<MyFile> opened = new ArrayList<>();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    int sleep = 0;
+
+    public FileCacheable open(DatasetUrl location, int buffer_size, CancelTask cancelTask, Object iospMessage) throws IOException {
+      int n = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(n, Math::max);
+      try {
+        if (sleep > 0) Thread.sleep(sleep);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+      MyFile f = new MyFile(location.trueurl);
+      synchronized (opened) {
+        opened.add(f);
+      }
+      return f;
+    }
+  }
+
+  private FileCacheable acquire(FileCacheIF cache, FileFactory factory, String location) throws IOException {
+    return cache.acquire(factory, new DatasetUrl(null, location));
+  }
+
+  @Test
+  public void testHitAndLock() throws IOException {
+    FileCacheSharded cache = new FileCacheSharded("test", 5, 10, -1, -1, 4);
+    MyFactory factory = new MyFactory();
+
+    FileCacheable f1 = acquire(cache, factory, "a");
+    FileCacheable f2 = acquire(cache, factory, "a"); // first is locked, so open another
+    Assert.assertNotSame(f1, f2);
+    Assert.assertEquals(2, factory.opened.size());
+
+    f1.close();
+    Assert.assertFalse(((MyFile) f1).closed);
+    FileCacheable f3 = acquire(cache, factory, "a");
+    Assert.assertSame(f1, f3);
+    Assert.assertEquals(2, factory.opened.size());
+    Assert.assertEquals(2, cache.getNumberOfFiles());
+
+    cache.clearCache(true);
+    Assert.assertEquals(0, cache.getNumberOfFiles());
+    Assert.assertTrue(((MyFile) f1).closed);
+    Assert.assertTrue(((MyFile) f2).closed);
+  }
+
+  @Test
+  public void testLru() throws IOException {
+    FileCacheSharded cache = new FileCacheSharded("test", 2, 5, -1, -1, 4);
+    MyFactory factory = new MyFactory();
+
+    for (int i = 0; i < 5; i++)
+      acquire(cache, factory, "file" + i).close();
+    // touch file0, so file1 is now the oldest
+    acquire(cache, factory, "file0").close();
+    Assert.assertEquals(5, factory.opened.size());
+
+    acquire(cache, factory, "file5").close();
+    acquire(cache, factory, "file6").close();
+    Assert.assertEquals(5, cache.getNumberOfFiles());
+
+    for (MyFile f : factory.opened) {
+      boolean shouldBeClosed = f.location.equals("file1") || f.location.equals("file2");
+      Assert.assertEquals(f.location, shouldBeClosed, f.closed);
+    }
+  }
+
+  @Test
+  public void testLockedNotEvicted() throws IOException {
+    FileCacheSharded cache = new FileCacheSharded("test", 0, 2, 3, -1, 2);
+    MyFactory factory = new MyFactory();
+
+    List<FileCacheable> locked = new ArrayList<>();
+    for (int i = 0; i < 5; i++)
+      locked.add(acquire(cache, factory, "file" + i));
+    for (MyFile f : factory.opened)
+      Assert.assertFalse(f.closed);
+
+    for (FileCacheable f : locked) f.close(); // releases evict down to the limits
+    Assert.assertEquals(2, cache.getNumberOfFiles());
+  }
+
+  @Test
+  public void testChangedFileReopened() throws IOException {
+    FileCacheSharded cache = new FileCacheSharded("test", 5, 10, -1, -1, 4);
+    MyFactory factory = new MyFactory();
+    List<String> changed = new ArrayList<>();
+    FileCache.ChangeListener listener = changed::add;
+    FileCache.addChangeListener(listener);
+
+    try {
+      MyFile f1 = (MyFile) acquire(cache, factory, "a");
+      f1.close();
+      f1.lastModified = 2;
+      FileCacheable f2 = acquire(cache, factory, "a");
+      Assert.assertNotSame(f1, f2);
+      Assert.assertTrue(f1.closed);
+      Assert.assertEquals(1, changed.size());
+      Assert.assertEquals("a", changed.get(0));
+    } finally {
+      FileCache.removeChangeListener(listener);
+    }
+  }
+
+  @Test
+  public void testEject() throws IOException {
+    FileCacheSharded cache = new FileCacheSharded("test", 5, 10, -1, -1, 4);
+    MyFactory factory = new MyFactory();
+    MyFile f1 = (MyFile) acquire(cache, factory, "a");
+    f1.close();
+    cache.eject("a");
+    Assert.assertTrue(f1.closed);
+    Assert.assertEquals(0, cache.getNumberOfFiles());
+  }
+
+  @Test
+  public void testOpenCoalescing() throws Exception {
+    FileCacheSharded cache = new FileCacheSharded("test", 5, 100, -1, -1, 4);
+    MyFactory factory = new MyFactory();
+    factory.sleep = 50;
+
+    int nthreads = 8;
+    ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 4 * nthreads; i++) {
+        results.add(pool.submit((Callable<Boolean>) () -> {
+          FileCacheable f = acquire(cache, factory, "same");
+          boolean ok = !((MyFile) f).closed;
+          f.close();
+          return ok;
+        }));
+      }
+      for (Future<Boolean> result : results)
+        Assert.assertTrue(result.get());
+    } finally {
+      pool.shutdownNow();
+    }
+
+    Assert.assertEquals(1, factory.maxInFlight.get());
+    Assert.assertTrue(factory.opened.size() < 4 * nthreads);
+  }
+}
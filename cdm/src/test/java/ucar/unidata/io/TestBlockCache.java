@@ -0,0 +1,158 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package ucar.unidata.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.Random;
+
+/**
+ * Test RandomAccessFile reading through the global BlockCache
+ */
+public class TestBlockCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void turnOff() {
+    RandomAccessFile.setGlobalBlockCache(null);
+  }
+
+  private File makeFile(int size) throws IOException {
+    File f = tempFolder.newFile();
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(data);
+    }
+    return f;
+  }
+
+  private void checkRandomReads(File f, int nreads) throws IOException {
+    byte[] expect = java.nio.file.Files.readAllBytes(f.toPath());
+    Random r = new Random(17);
+
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r", 1000)) {
+      for (int i = 0; i < nreads; i++) {
+        int pos = r.nextInt(expect.length);
+        int len = Math.min(r.nextInt(3000) + 1, expect.length - pos);
+        byte[] got = new byte[len];
+        raf.seek(pos);
+        raf.readFully(got);
+        for (int j = 0; j < len; j++)
+          Assert.assertEquals("pos " + (pos + j), expect[pos + j], got[j]);
+      }
+
+      // read past EOF
+      raf.seek(expect.length - 2);
+      Assert.assertEquals(expect[expect.length - 2] & 0xff, raf.read());
+      Assert.assertEquals(expect[expect.length - 1] & 0xff, raf.read());
+      Assert.assertEquals(-1, raf.read());
+    }
+  }
+
+  @Test
+  public void testHeapCache() throws IOException {
+    BlockCache bc = new BlockCache("test", 512, 20 * 512, false);
+    RandomAccessFile.setGlobalBlockCache(bc);
+    checkRandomReads(makeFile(100 * 1000 + 17), 1000);
+
+    Assert.assertTrue(bc.getHits() > 0);
+    Assert.assertTrue(bc.getMisses() > 0);
+    Assert.assertTrue(bc.getEvictions() > 0);
+
+    Formatter f = new Formatter();
+    bc.showStats(f);
+    Assert.assertTrue(f.toString().contains("evictions= " + bc.getEvictions()));
+  }
+
+  @Test
+  public void testOffHeapCache() throws IOException {
+    BlockCache bc = new BlockCache("test", 4096, 1000 * 1000, true);
+    RandomAccessFile.setGlobalBlockCache(bc);
+    checkRandomReads(makeFile(50 * 1000), 500);
+    Assert.assertTrue(bc.getHits() > 0);
+  }
+
+  @Test
+  public void testSharedAcrossFiles() throws IOException {
+    BlockCache bc = new BlockCache("test", 1024, 1000 * 1024, false);
+    RandomAccessFile.setGlobalBlockCache(bc);
+    File f = makeFile(10 * 1024);
+
+    byte[] b1 = new byte[5000];
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      raf.readFully(b1);
+    }
+    long misses = bc.getMisses();
+
+    byte[] b2 = new byte[5000];
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      raf.readFully(b2);
+    }
+    Assert.assertEquals("second open should be all hits", misses, bc.getMisses());
+    Assert.assertArrayEquals(b1, b2);
+  }
+
+  @Test
+  public void testRewriteInvalidates() throws IOException {
+    BlockCache bc = new BlockCache("test", 1024, 100 * 1024, false);
+    RandomAccessFile.setGlobalBlockCache(bc);
+    File f = makeFile(10 * 1024);
+
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      raf.seek(0);
+      raf.read();
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "rw")) {
+      raf.seek(0);
+      raf.write(123);
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      raf.seek(0);
+      Assert.assertEquals(123, raf.read());
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package ucar.unidata.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test MMapRandomAccessFile, using small segments so that reads cross segment boundaries.
+ */
+public class TestMMapRandomAccessFile {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    MMapRandomAccessFile.setSegmentSize(MMapRandomAccessFile.defaultSegmentSize);
+    RandomAccessFile.setMMapPolicy(-1, null);
+  }
+
+  private File makeFile(byte[] data) throws IOException {
+    File f = tempFolder.newFile();
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(data);
+    }
+    return f;
+  }
+
+  @Test
+  public void testReadAcrossSegments() throws IOException {
+    MMapRandomAccessFile.setSegmentSize(1024);
+    byte[] expect = new byte[10 * 1024 + 33];
+    new Random(1).nextBytes(expect);
+    File f = makeFile(expect);
+
+    Random r = new Random(2);
+    try (RandomAccessFile raf = new MMapRandomAccessFile(f.getPath(), "r")) {
+      Assert.assertEquals(expect.length, raf.length());
+      for (int i = 0; i < 500; i++) {
+        int pos = r.nextInt(expect.length);
+        int len = Math.min(r.nextInt(3000) + 1, expect.length - pos);
+        byte[] got = new byte[len];
+        raf.seek(pos);
+        raf.readFully(got);
+        for (int j = 0; j < len; j++)
+          Assert.assertEquals("pos " + (pos + j), expect[pos + j], got[j]);
+        Assert.assertEquals(pos + len, raf.getFilePointer());
+      }
+
+      raf.seek(1023);
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      int want = ((expect[1023] & 0xff) << 24) + ((expect[1024] & 0xff) << 16) + ((expect[1025] & 0xff) << 8) + (expect[1026] & 0xff);
+      Assert.assertEquals(want, raf.readInt());
+
+      raf.seek(expect.length - 1);
+      Assert.assertEquals(expect[expect.length - 1] & 0xff, raf.read());
+      Assert.assertEquals(-1, raf.read());
+      Assert.assertTrue(raf.isAtEndOfFile());
+    }
+  }
+
+  @Test
+  public void testSearchForward() throws IOException {
+    MMapRandomAccessFile.setSegmentSize(1024);
+    byte[] data = new byte[5000];
+    byte[] magic = "GRIB".getBytes("UTF-8");
+    System.arraycopy(magic, 0, data, 1022, magic.length);  // straddles the segment boundary
+    File f = makeFile(data);
+
+    try (RandomAccessFile raf = new MMapRandomAccessFile(f.getPath(), "r")) {
+      Assert.assertTrue(raf.searchForward(new KMPMatch(magic), -1));
+      Assert.assertEquals(1022, raf.getFilePointer());
+      raf.skipBytes(1);
+      Assert.assertFalse(raf.searchForward(new KMPMatch(magic), -1));
+      Assert.assertEquals(data.length, raf.getFilePointer());
+    }
+  }
+
+  @Test
+  public void testPolicy() throws IOException {
+    File small = makeFile(new byte[100]);
+    File big = makeFile(new byte[10000]);
+
+    RandomAccessFile.setMMapPolicy(5000, null);
+    try (RandomAccessFile raf = RandomAccessFile.acquire(small.getPath())) {
+      Assert.assertFalse(raf instanceof MMapRandomAccessFile);
+    }
+    try (RandomAccessFile raf = RandomAccessFile.acquire(big.getPath())) {
+      Assert.assertTrue(raf instanceof MMapRandomAccessFile);
+    }
+
+    RandomAccessFile.setMMapPolicy(-1, java.util.Collections.singletonList(small.getParent()));
+    try (RandomAccessFile raf = RandomAccessFile.acquire(small.getPath())) {
+      Assert.assertTrue(raf instanceof MMapRandomAccessFile);
+    }
+  }
+
+  @Test
+  public void testGrowingFile() throws IOException {
+    MMapRandomAccessFile.setSegmentSize(1024);
+    byte[] expect = new byte[3000];
+    new Random(3).nextBytes(expect);
+    File f = makeFile(Arrays.copyOf(expect, 1500));  // ends in the middle of a segment
+
+    try (RandomAccessFile raf = new MMapRandomAccessFile(f.getPath(), "r")) {
+      byte[] got = new byte[100];
+      raf.seek(1400);
+      raf.readFully(got);
+      Assert.assertEquals(-1, raf.read());
+
+      try (FileOutputStream out = new FileOutputStream(f, true)) {
+        out.write(expect, 1500, expect.length - 1500);
+      }
+
+      Assert.assertEquals(expect.length, raf.length());
+      got = new byte[2000];
+      raf.seek(1000);
+      raf.readFully(got);
+      Assert.assertArrayEquals(Arrays.copyOfRange(expect, 1000, 3000), got);
+      Assert.assertEquals(-1, raf.read());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadOnly() throws IOException {
+    File f = makeFile(new byte[100]);
+    new MMapRandomAccessFile(f.getPath(), "rw");
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package ucar.unidata.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Test RandomAccessFile positional reads, which dont use the file pointer
+ */
+public class TestPositionalRead {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private byte[] expect;
+
+  private File makeFile(int size) throws IOException {
+    File f = tempFolder.newFile();
+    expect = new byte[size];
+    new Random(size).nextBytes(expect);
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(expect);
+    }
+    return f;
+  }
+
+  private void checkRead(RandomAccessFile raf, long pos, int len) throws IOException {
+    byte[] got = new byte[len];
+    raf.readFully(pos, got);
+    for (int j = 0; j < len; j++)
+      Assert.assertEquals("pos " + (pos + j), expect[(int) pos + j], got[j]);
+  }
+
+  @Test
+  public void testFilePointerUnchanged() throws IOException {
+    File f = makeFile(50 * 1000);
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      raf.seek(1234);
+      checkRead(raf, 40000, 5000);
+      Assert.assertEquals(1234, raf.getFilePointer());
+      Assert.assertEquals(expect[1234] & 0xff, raf.read());
+
+      ByteBuffer bb = ByteBuffer.allocate(100);
+      Assert.assertEquals(10, raf.read(expect.length - 10, bb));
+      Assert.assertEquals(-1, raf.read(expect.length, bb));
+
+      try {
+        raf.readFully(expect.length - 10, new byte[100]);
+        Assert.fail("expected EOFException");
+      } catch (EOFException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    File f = makeFile(1000 * 1000);
+    ExecutorService exec = Executors.newFixedThreadPool(8);
+    try (final RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final Random r = new Random(t);
+        results.add(exec.submit(() -> {
+          for (int i = 0; i < 500; i++) {
+            int pos = r.nextInt(expect.length - 10000);
+            checkRead(raf, pos, r.nextInt(10000) + 1);
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> result : results)
+        Assert.assertTrue(result.get());
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testInterrupt() throws IOException {
+    File f = makeFile(50 * 1000);
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      checkRead(raf, 100, 1000);
+
+      // an interrupted reader fails
+      Thread.currentThread().interrupt();
+      try {
+        checkRead(raf, 2000, 1000);
+        Assert.fail("expected ClosedByInterruptException");
+      } catch (ClosedByInterruptException e) {
+        // expected
+      } finally {
+        Assert.assertTrue(Thread.interrupted());
+      }
+
+      // but the file is still good for everyone else
+      checkRead(raf, 3000, 1000);
+      raf.seek(4000);
+      Assert.assertEquals(expect[4000] & 0xff, raf.read());
+    }
+  }
+
+  @Test
+  public void testBlockCache() throws IOException {
+    File f = makeFile(50 * 1000);
+    BlockCache bc = new BlockCache("test", 1024, 100 * 1024, false);
+    RandomAccessFile.setGlobalBlockCache(bc);
+    try (RandomAccessFile raf = new RandomAccessFile(f.getPath(), "r")) {
+      checkRead(raf, 1000, 5000);
+      long misses = bc.getMisses();
+      Assert.assertTrue(misses > 0);
+      checkRead(raf, 2000, 3000);
+      Assert.assertEquals(misses, bc.getMisses());
+      Assert.assertTrue(bc.getHits() > 0);
+
+      Assert.assertEquals(-1, raf.read(expect.length, ByteBuffer.allocate(10)));
+    } finally {
+      RandomAccessFile.setGlobalBlockCache(null);
+    }
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    makeFile(10 * 1000);
+    byte[] section = new byte[1000];
+    System.arraycopy(expect, 5000, section, 0, section.length);
+
+    try (RandomAccessFile raf = new InMemoryRandomAccessFile("test", section, 5000)) {
+      Assert.assertEquals(6000, raf.length());
+      checkRead(raf, 5100, 500);
+      raf.seek(5999);
+      Assert.assertEquals(expect[5999] & 0xff, raf.read());
+      Assert.assertEquals(-1, raf.read());
+    }
+  }
+
+  @Test
+  public void testMMap() throws IOException {
+    File f = makeFile(100 * 1000);
+    try (RandomAccessFile raf = new MMapRandomAccessFile(f.getPath(), "r")) {
+      checkRead(raf, 99000, 1000);
+      Assert.assertEquals(0, raf.getFilePointer());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.unidata.io.http;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.unidata.io.BlockCache;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test HTTPBlockReader against an in-memory stand-in for the server, which counts the range requests.
+ */
+public class TestHTTPBlockReader {
+  static private final int blockSize = HTTPBlockReader.defaultBlockSize;
+
+  static private class Server implements HTTPBlockReader.RangeSource {
+    final byte[] data;
+    final AtomicInteger nrequests = new AtomicInteger();
+
+    Server(int size) {
+      data = new byte[size];
+      new Random(size).nextBytes(data);
+    }
+
+    @Override
+    public int readRange(long pos, byte[] dest, int offset, int len) throws IOException {
+      nrequests.incrementAndGet();
+      if (pos + len > data.length)
+        throw new IOException("bad range " + pos + "-" + (pos + len - 1));
+      System.arraycopy(data, (int) pos, dest, offset, len);
+      return len;
+    }
+  }
+
+  @After
+  public void turnOff() {
+    HTTPBlockReader.setSharedCache(null);
+  }
+
+  private void check(Server server, HTTPBlockReader reader, int pos, int len) throws IOException {
+    byte[] b = new byte[len];
+    int n = reader.read(pos, b, 0, len);
+    int expectLen = Math.min(len, server.data.length - pos);
+    Assert.assertEquals(expectLen, n);
+    Assert.assertArrayEquals(Arrays.copyOfRange(server.data, pos, pos + expectLen), Arrays.copyOf(b, n));
+  }
+
+  @Test
+  public void testCoalesce() throws IOException {
+    Server server = new Server(10 * blockSize + 100);
+    HTTPBlockReader reader = new HTTPBlockReader(server, "http://test/file", null, server.data.length);
+
+    check(server, reader, 1000, 3 * blockSize);  // 4 blocks, one request
+    Assert.assertEquals(1, server.nrequests.get());
+    check(server, reader, 2000, blockSize);       // cached
+    Assert.assertEquals(1, server.nrequests.get());
+
+    // the partial last block
+    check(server, reader, 10 * blockSize - 10, 1000);
+    Assert.assertEquals(2, server.nrequests.get());
+    Assert.assertEquals(-1, reader.read(server.data.length, new byte[10], 0, 10));
+  }
+
+  @Test
+  public void testParallel() throws IOException {
+    Server server = new Server(100 * blockSize);
+    HTTPBlockReader reader = new HTTPBlockReader(server, "http://test/file", null, server.data.length);
+
+    check(server, reader, 0, 40 * blockSize);     // more than one request can get
+    Assert.assertEquals(3, server.nrequests.get());
+
+    // gaps between cached blocks
+    check(server, reader, 41 * blockSize, 10);
+    check(server, reader, 43 * blockSize, 10);
+    int before = server.nrequests.get();
+    check(server, reader, 40 * blockSize, 4 * blockSize);
+    Assert.assertEquals(before + 2, server.nrequests.get());
+  }
+
+  @Test
+  public void testReadAhead() throws IOException {
+    Server server = new Server(100 * blockSize);
+    HTTPBlockReader reader = new HTTPBlockReader(server, "http://test/file", null, server.data.length);
+
+    int nreads = 0;
+    for (int pos = 0; pos < 50 * blockSize; pos += blockSize / 2) {
+      check(server, reader, pos, blockSize / 2);
+      nreads++;
+    }
+    Assert.assertTrue(server.nrequests.get() + " requests", server.nrequests.get() < nreads / 4);
+  }
+
+  @Test
+  public void testSharedCache() throws IOException {
+    HTTPBlockReader.setSharedCache(new BlockCache("test", blockSize, 100 * blockSize, false));
+    Server server = new Server(10 * blockSize);
+
+    HTTPBlockReader reader1 = new HTTPBlockReader(server, "http://test/file", "\"etag1\"", server.data.length);
+    check(server, reader1, 0, 2 * blockSize);
+    Assert.assertEquals(1, server.nrequests.get());
+
+    HTTPBlockReader reader2 = new HTTPBlockReader(server, "http://test/file", "\"etag1\"", server.data.length);
+    check(server, reader2, 100, blockSize);
+    Assert.assertEquals(1, server.nrequests.get());
+
+    // file has changed
+    HTTPBlockReader reader3 = new HTTPBlockReader(server, "http://test/file", "\"etag2\"", server.data.length);
+    check(server, reader3, 100, blockSize);
+    Assert.assertEquals(2, server.nrequests.get());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib;
+
+import ucar.unidata.io.KMPMatch;
+import ucar.unidata.io.RandomAccessFile;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+
+/**
+ * Finds the start of the next GRIB message, for the record scanners.
+ * The scanners continue from the end of the last message, given by the length in its indicator section,
+ * so the next "GRIB" is usually right there, or after a short WMO header.
+ * A small window at that position is copied out of the RandomAccessFile buffer, and the "GRIB", the edition and
+ * the WMO header are all taken from it. Only if the window has no "GRIB", eg in a corrupt file, is the rest of the
+ * file searched with KMPMatch.
+ */
+@NotThreadSafe
+public class GribMessageFinder {
+  static private final KMPMatch matcher = new KMPMatch(new byte[]{'G', 'R', 'I', 'B'});
+  static private final int windowSize = 256;
+  static private volatile boolean useWindow = true;
+
+  /**
+   * Look for the next message in a window first (default), or always search for it.
+   * @param use false to always search, eg for timing
+   */
+  static public void setUseWindow(boolean use) {
+    useWindow = use;
+  }
+
+  private final byte[] window = new byte[windowSize];
+  private long windowStart = -1;
+  private int windowLen = 0;
+
+  /**
+   * Find the next "GRIB" at or after pos.
+   *
+   * @param raf        search in this file
+   * @param pos        starting here
+   * @param fileLength length of raf
+   * @return the position of "GRIB", with raf positioned there; or -1 if there is none.
+   */
+  public long findNext(RandomAccessFile raf, long pos, long fileLength) throws IOException {
+    windowLen = 0;
+    if (pos >= fileLength) return -1;
+
+    if (useWindow) {
+      int n = (int) Math.min(windowSize, fileLength - pos);
+      raf.seek(pos);
+      raf.readFully(window, 0, n);
+      windowStart = pos;
+      windowLen = n;
+      for (int i = 0; i + 4 <= n; i++) {
+        if (window[i] == 'G' && window[i + 1] == 'R' && window[i + 2] == 'I' && window[i + 3] == 'B') {
+          raf.seek(pos + i);
+          return pos + i;
+        }
+      }
+      if (n < 4) return -1;
+      pos += n - 3;  // "GRIB" may straddle the end of the window
+    }
+
+    raf.seek(pos);
+    if (!raf.searchForward(matcher, -1)) return -1;  // will scan to end for a 'GRIB' string
+    return raf.getFilePointer();
+  }
+
+  /**
+   * Read a byte, from the window of the last findNext() if possible.
+   * @return the byte, or -1 if at the end of the file
+   */
+  public int readByte(RandomAccessFile raf, long pos) throws IOException {
+    if (pos >= windowStart && pos < windowStart + windowLen)
+      return window[(int) (pos - windowStart)] & 0xff;
+    raf.seek(pos);
+    return raf.read();
+  }
+
+  /**
+   * Read bytes, from the window of the last findNext() if possible.
+   */
+  public byte[] readBytes(RandomAccessFile raf, long pos, int count) throws IOException {
+    byte[] result = new byte[count];
+    if (pos >= windowStart && pos + count <= windowStart + windowLen) {
+      System.arraycopy(window, (int) (pos - windowStart), result, 0, count);
+    } else {
+      raf.seek(pos);
+      raf.readFully(result);
+    }
+    return result;
+  }
+}
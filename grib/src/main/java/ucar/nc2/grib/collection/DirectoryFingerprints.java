@@ -0,0 +1,246 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import ucar.nc2.grib.GribIndex;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Fingerprints of the directories of a directory partition, so an update only needs to look at directories that changed.
+ * A leaf directory's fingerprint is its last modified time, the number of its data files, and their latest last modified time.
+ * A partition directory's fingerprint is its last modified time and number of children.
+ * Taken before the directory is updated, so anything that arrives during the update is seen as a change the next time.
+ * Kept in a small file next to the top ncx4 index, valid only as long as that index is unchanged.
+ */
+@ThreadSafe
+class DirectoryFingerprints {
+  static final String SUFFIX = ".dirs";
+  static private final String MAGIC = "DirectoryFingerprints v1";
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DirectoryFingerprints.class);
+
+  @Immutable
+  static class Fingerprint {
+    private final Path dir;
+    private final boolean isLeaf;
+    private final long lastModified;     // of the directory
+    private final int count;             // data files in a leaf, children of a partition; < 0 if the update failed
+    private final long maxLastModified;  // latest data file, leaf only
+
+    Fingerprint(Path dir, boolean isLeaf, long lastModified, int count, long maxLastModified) {
+      this.dir = dir;
+      this.isLeaf = isLeaf;
+      this.lastModified = lastModified;
+      this.count = count;
+      this.maxLastModified = maxLastModified;
+    }
+
+    Path getDir() {
+      return dir;
+    }
+
+    boolean isLeaf() {
+      return isLeaf;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    // false if the update of this directory failed, so it must be redone
+    boolean isValid() {
+      return count >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Fingerprint that = (Fingerprint) o;
+      return isLeaf == that.isLeaf && lastModified == that.lastModified && count == that.count &&
+              maxLastModified == that.maxLastModified && dir.equals(that.dir);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(dir, isLeaf, lastModified, count, maxLastModified);
+    }
+
+    @Override
+    public String toString() {
+      return (isLeaf ? "L " : "P ") + lastModified + " " + count + " " + maxLastModified + " " + dir;
+    }
+  }
+
+  /**
+   * Fingerprint of a leaf directory: one directory listing, with the attributes of each file. Index files are not counted.
+   */
+  static Fingerprint makeLeaf(Path dir) throws IOException {
+    long lastModified = Files.getLastModifiedTime(dir).toMillis();
+    int count = 0;
+    long maxLastModified = 0;
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for (Path p : ds) {
+        String name = p.getFileName().toString();
+        if (name.endsWith(GribIndex.GBX9_IDX) || name.contains(".ncx")) continue;
+        BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+        if (attr.isDirectory()) continue;
+        count++;
+        maxLastModified = Math.max(maxLastModified, attr.lastModifiedTime().toMillis());
+      }
+    }
+    return new Fingerprint(dir, true, lastModified, count, maxLastModified);
+  }
+
+  static Fingerprint makePartition(Path dir, int nchildren) throws IOException {
+    return new Fingerprint(dir, false, Files.getLastModifiedTime(dir).toMillis(), nchildren, 0);
+  }
+
+  // marks a directory whose update failed
+  static Fingerprint makeFailed(Path dir, boolean isLeaf) {
+    return new Fingerprint(dir, isLeaf, 0, -1, 0);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+
+  private final Map<Path, Fingerprint> map = new HashMap<>();
+
+  synchronized void put(Fingerprint fp) {
+    map.put(fp.getDir(), fp);
+  }
+
+  synchronized Fingerprint get(Path dir) {
+    return map.get(dir);
+  }
+
+  synchronized int size() {
+    return map.size();
+  }
+
+  /**
+   * The fingerprints of the children of a directory, sorted by name.
+   */
+  synchronized List<Fingerprint> getChildren(Path dir) {
+    List<Fingerprint> result = new ArrayList<>();
+    for (Fingerprint fp : map.values()) {
+      if (dir.equals(fp.getDir().getParent()))
+        result.add(fp);
+    }
+    Collections.sort(result, (o1, o2) -> o1.getDir().compareTo(o2.getDir()));
+    return result;
+  }
+
+  /**
+   * Check if a directory still has the same subdirectories as its children here. Only unknown names are looked at,
+   * since the known children are already known to be directories.
+   */
+  boolean hasSameSubdirectories(Path dir) throws IOException {
+    Set<Path> known = new HashSet<>();
+    for (Fingerprint fp : getChildren(dir))
+      known.add(fp.getDir());
+
+    int found = 0;
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for (Path p : ds) {
+        if (known.contains(p)) found++;
+        else if (Files.isDirectory(p)) return false; // added
+      }
+    }
+    return found == known.size();  // else removed
+  }
+
+  /**
+   * Read the fingerprints written by write().
+   *
+   * @param file              fingerprint file
+   * @param indexLastModified current last modified time of the top index
+   * @return fingerprints, or null if the file does not exist, cant be read, or was written for another version of the index
+   */
+  static DirectoryFingerprints read(File file, long indexLastModified) {
+    if (!file.exists()) return null;
+
+    DirectoryFingerprints result = new DirectoryFingerprints();
+    try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      if (!MAGIC.equals(in.readLine())) return null;
+      String header = in.readLine();
+      if (header == null || Long.parseLong(header) != indexLastModified) return null;  // index was rewritten by someone else
+
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] tokens = line.split(" ", 5); // the path may have blanks
+        if (tokens.length != 5) throw new IOException("bad line '" + line + "'");
+        result.put(new Fingerprint(Paths.get(tokens[4]), tokens[0].equals("L"), Long.parseLong(tokens[1]),
+                Integer.parseInt(tokens[2]), Long.parseLong(tokens[3])));
+      }
+      return result;
+
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Failed to read directory fingerprints {}: {}", file.getPath(), e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Write the fingerprints, replacing the file atomically.
+   *
+   * @param file              fingerprint file
+   * @param indexLastModified last modified time of the top index these go with
+   */
+  synchronized void write(File file, long indexLastModified) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      out.write(MAGIC);
+      out.newLine();
+      out.write(Long.toString(indexLastModified));
+      out.newLine();
+      for (Fingerprint fp : map.values()) {
+        out.write(fp.toString());
+        out.newLine();
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -34,11 +34,9 @@
 package ucar.nc2.grib.collection;
 
 import thredds.featurecollection.FeatureCollectionConfig;
-import thredds.inventory.CollectionUpdateType;
 import thredds.inventory.MCollection;
 import thredds.inventory.MFile;
 import ucar.coord.*;
-import ucar.nc2.grib.GribIndex;
 import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.grib1.*;
 import ucar.nc2.grib.grib1.tables.Grib1Customizer;
@@ -92,17 +90,13 @@ public class Grib1CollectionBuilder extends GribCollectionBuilder {
       if (iter == null)
         return new ArrayList<>(); // empty
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+      GbxIndexReader indexReader = new GbxIndexReader(iter); // may read several files in parallel
+      while (indexReader.hasNext()) {
+        MFile mfile = indexReader.next();
         Grib1Index index;
         try {
-          if (Grib.debugGbxIndexOnly) {
-            index = (Grib1Index) GribIndex.open(true, mfile);
-            if (index == null) continue;
-          } else {
-            // here is where gbx9 files get recreated
-            index = (Grib1Index) GribIndex.readOrCreateIndexFromSingleFile(true, mfile, CollectionUpdateType.test, logger);
-          }
+          index = (Grib1Index) indexReader.getIndex(); // here is where gbx9 files get recreated
+          if (index == null && Grib.debugGbxIndexOnly) continue;
           allFiles.add(mfile);  // add on success
 
         } catch (IOException ioe) {
@@ -34,11 +34,9 @@
 package ucar.nc2.grib.collection;
 
 import thredds.featurecollection.FeatureCollectionConfig;
-import thredds.inventory.CollectionUpdateType;
 import thredds.inventory.MCollection;
 import thredds.inventory.MFile;
 import ucar.coord.*;
-import ucar.nc2.grib.GribIndex;
 import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.VertCoord;
 import ucar.nc2.grib.grib2.*;
@@ -93,17 +91,13 @@ class Grib2CollectionBuilder extends GribCollectionBuilder {
       if (iter == null)
         return new ArrayList<>(); // empty
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+      GbxIndexReader indexReader = new GbxIndexReader(iter); // may read several files in parallel
+      while (indexReader.hasNext()) {
+        MFile mfile = indexReader.next();
         Grib2Index index;
 
         try {
-          if (Grib.debugGbxIndexOnly) {
-             index = (Grib2Index) GribIndex.open(false, mfile);
-           } else {
-             // this is where gbx9 files get recreated
-             index = (Grib2Index) GribIndex.readOrCreateIndexFromSingleFile(false, mfile, CollectionUpdateType.test, logger);
-           }
+          index = (Grib2Index) indexReader.getIndex(); // this is where gbx9 files get recreated
           allFiles.add(mfile);  // add on success
 
         } catch (IOException ioe) {
@@ -141,7 +141,7 @@ class Grib2CollectionWriter extends GribCollectionWriter {
         for (Grib2CollectionBuilder.VariableBag vb : g.gribVars) {
           if (first == null) first = vb.first;
           GribCollectionProto.SparseArray vr = writeSparseArray(vb, g.fileSet);
-          byte[] b = vr.toByteArray();
+          byte[] b = GribCdmIndex.isFixedWidthRecords() ? RecordTable.encodeFixedWidth(vr) : vr.toByteArray();
           vb.pos = raf.getFilePointer();
           vb.length = b.length;
           raf.write(b);
@@ -58,14 +58,18 @@ import ucar.unidata.util.StringUtil2;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utilities for creating GRIB CDM index (ncx) files, both collections and partitions
@@ -121,6 +125,136 @@ public class GribCdmIndex implements IndexReader {
     if (gribCollectionCache != null) gribCollectionCache.clearCache(true);
   }
 
+  /////////////////////////////////////////////////////////////////////////////
+
+  static private final Object lock = new Object();
+  static private ExecutorService fileExecutor;      // null means scan the data files on the calling thread
+  static private ExecutorService partitionExecutor; // null means update the child collections on the calling thread
+  static private int indexThreads = 1;
+  static private final ThreadLocal<Boolean> onPartitionThread = new ThreadLocal<>();
+
+  /**
+   * Create indexes on a shared pool of threads. The gbx9 indexes of the data files of a collection are read or
+   * created in parallel, and so are the child collections of a partition. Their results are always used in
+   * the original order, so the ncx4 files are the same as when made on one thread. Default is one thread.
+   *
+   * @param nthreads size of each pool, one for the data files and one for the child collections; <= 1 turns parallel indexing off
+   */
+  static public void setIndexThreads(int nthreads) {
+    synchronized (lock) {
+      if (fileExecutor != null) {
+        fileExecutor.shutdown();
+        partitionExecutor.shutdown();
+        fileExecutor = null;
+        partitionExecutor = null;
+      }
+      indexThreads = Math.max(nthreads, 1);
+      if (nthreads <= 1) return;
+
+      fileExecutor = Executors.newFixedThreadPool(nthreads, makeThreadFactory("GribIndexFile-", false));
+      partitionExecutor = Executors.newFixedThreadPool(nthreads, makeThreadFactory("GribIndexPartition-", true));
+    }
+  }
+
+  static private ThreadFactory makeThreadFactory(final String name, final boolean isPartition) {
+    return new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      public Thread newThread(final Runnable r) {
+        Thread t = new Thread(new Runnable() {
+          public void run() {
+            if (isPartition) onPartitionThread.set(true);
+            r.run();
+          }
+        }, name + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+  static private volatile boolean trackDirectoryChanges;
+
+  /**
+   * When updating a directory partition with CollectionUpdateType.test, only look at the directories that changed
+   * since the last update, using the fingerprints kept next to the top index.
+   * Leaf directories are still listed to see if files were added, removed or modified, but only changed ones are
+   * updated, and only their ancestors' indexes are rewritten. Default is off.
+   *
+   * @param track true to turn change tracking on
+   */
+  static public void setTrackDirectoryChanges(boolean track) {
+    trackDirectoryChanges = track;
+  }
+
+  static private volatile boolean fixedWidthRecords;
+
+  /**
+   * Write the records of each variable in a fixed-width encoding, which readers look up in place in the memory-mapped
+   * index, instead of decoding them onto the heap. Only GribCollection indexes (not partitions) have records.
+   * <p>
+   * The index version is not changed, so an older version of the library does not know to rebuild such an index;
+   * it fails when it reads the records. Only turn this on when every program that reads the indexes (TDS, TDM, and
+   * any client using them) is at least this version. Default is off.
+   *
+   * @param fixedWidth true to write fixed-width records
+   */
+  static public void setFixedWidthRecords(boolean fixedWidth) {
+    fixedWidthRecords = fixedWidth;
+  }
+
+  static boolean isFixedWidthRecords() {
+    return fixedWidthRecords;
+  }
+
+  static int getIndexThreads() {
+    synchronized (lock) {
+      return indexThreads;
+    }
+  }
+
+  // null if the data files are scanned on the calling thread
+  static ExecutorService getFileExecutor() {
+    synchronized (lock) {
+      return fileExecutor;
+    }
+  }
+
+  /**
+   * Start updating a child collection of a partition. The caller gets the results in its own order, so they
+   * dont depend on which child finishes first. Children are updated on the calling thread when there is no pool,
+   * or when the caller is itself a child, so a child never waits for a thread of its own pool.
+   * A child's gbx9 files are made on the file pool, whose tasks never wait on anything.
+   */
+  static private Future<Boolean> startChild(Callable<Boolean> child) {
+    FutureTask<Boolean> task = new FutureTask<>(child);
+    ExecutorService executor;
+    synchronized (lock) {
+      executor = partitionExecutor;
+    }
+    if (executor != null && onPartitionThread.get() == null) {
+      try {
+        executor.execute(task);
+        return task;
+      } catch (RejectedExecutionException e) {
+        // pool was shut down by setIndexThreads(), do it here
+      }
+    }
+    task.run();
+    return task;
+  }
+
+  // wait for a child started by startChild(); its exception is thrown, unwrapped
+  static private boolean waitForChild(Future<Boolean> task) throws Throwable {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted updating GRIB partition");
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////////
 
   static public File getTopIndexFileFromConfig(FeatureCollectionConfig config) {
@@ -342,7 +476,10 @@ public class GribCdmIndex implements IndexReader {
 
         try (DirectoryPartition dpart = new DirectoryPartition(config, rootPath, true, new GribCdmIndex(logger), NCX_SUFFIX, logger)) {
           dpart.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-          changed = updateDirectoryCollectionRecurse(isGrib1, dpart, config, updateType, logger);
+          if (trackDirectoryChanges && updateType == CollectionUpdateType.test)
+            changed = updateDirectoryPartitionTracked(isGrib1, dpart, config, logger);
+          else
+            changed = updateDirectoryCollectionRecurse(isGrib1, dpart, config, updateType, logger, null);
         }
 
       } else { // otherwise its a leaf directory
@@ -397,14 +534,27 @@ public class GribCdmIndex implements IndexReader {
     long start = System.currentTimeMillis();
     Formatter errlog = new Formatter();
 
-    for (MCollection part : tp.makePartitions(updateType)) {
+    // the children may be updated in parallel, each with its own errlog
+    List<MCollection> parts = new ArrayList<>();
+    List<Formatter> partErrlogs = new ArrayList<>();
+    List<Future<Boolean>> tasks = new ArrayList<>();
+    for (final MCollection part : tp.makePartitions(updateType)) {
+      final Formatter partErrlog = new Formatter();
+      parts.add(part);
+      partErrlogs.add(partErrlog);
+      tasks.add(startChild(() -> updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger, partErrlog)));
+    }
+
+    for (int i = 0; i < parts.size(); i++) {
+      MCollection part = parts.get(i);
       try {
-        updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger, errlog);
+        waitForChild(tasks.get(i));
 
       } catch (Throwable t) {
         logger.warn("Error making partition " + part.getRoot(), t);
         tp.removePartition(part); // keep on truckin; can happen if directory is empty
       }
+      errlog.format("%s", partErrlogs.get(i));
     }   // loop over component grib collections
 
 
@@ -453,10 +603,16 @@ public class GribCdmIndex implements IndexReader {
     return true;
   }
 
+  /**
+   * Update a directory partition and its children.
+   *
+   * @param fingerprints if not null, record the fingerprint of each directory here
+   * @return true if the partition index was rewritten
+   */
   static private boolean updateDirectoryCollectionRecurse(boolean isGrib1, DirectoryPartition dpart,
                                                           FeatureCollectionConfig config,
                                                           CollectionUpdateType updateType,
-                                                          Logger logger) throws IOException {
+                                                          Logger logger, DirectoryFingerprints fingerprints) throws IOException {
 
     if (debug) System.out.printf("GribCdmIndex.updateDirectoryCollectionRecurse %s %s%n", dpart.getRoot(), updateType);
     if (!isUpdateNeeded(dpart.getIndexFilename(NCX_SUFFIX), updateType, (isGrib1 ? GribCollectionType.Partition1 : GribCollectionType.Partition2), logger)) return false;
@@ -465,22 +621,41 @@ public class GribCdmIndex implements IndexReader {
 
     // check the children partitions first
     if (updateType != CollectionUpdateType.testIndexOnly) {   // skip children on testIndexOnly
-      for (MCollection part : dpart.makePartitions(updateType)) {
+      // leaf collections may be updated in parallel; child partitions recurse on this thread, and may start more leaves
+      List<MCollection> parts = new ArrayList<>();
+      List<Future<Boolean>> tasks = new ArrayList<>();
+      for (final MCollection part : dpart.makePartitions(updateType)) {
         part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
+        parts.add(part);
+        if (part instanceof DirectoryPartition) {
+          tasks.add(null);
+        } else {
+          final Path partPath = Paths.get(part.getRoot());
+          tasks.add(startChild(() -> {
+            if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makeLeaf(partPath));
+            return updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
+          }));
+        }
+      }
+      if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makePartition(Paths.get(dpart.getRoot()), parts.size()));
+
+      for (int i = 0; i < parts.size(); i++) {
+        MCollection part = parts.get(i);
         try {
           if (part instanceof DirectoryPartition) {   // LOOK if child partition fails, the parent partition doesnt know that - suckage
-            updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
+            updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger, fingerprints);
           } else {
-            Path partPath = Paths.get(part.getRoot());
-            updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
+            waitForChild(tasks.get(i));
           }
         } catch (IllegalStateException t) {
           logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
           dpart.removePartition(part); // keep on truckin; can happen if directory is empty
+          if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makeFailed(Paths.get(part.getRoot()), !(part instanceof DirectoryPartition)));
 
         } catch (Throwable t) {
           logger.error("Error making partition " + part.getRoot(), t);
           dpart.removePartition(part);
+          if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makeFailed(Paths.get(part.getRoot()), !(part instanceof DirectoryPartition)));
         }
       }   // loop over partitions
     }
@@ -497,12 +672,156 @@ public class GribCdmIndex implements IndexReader {
 
     } catch (IllegalStateException t) {
       logger.warn("Error making partition {} '{}'", dpart.getRoot(), t.getMessage());
+      if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makeFailed(Paths.get(dpart.getRoot()), false));
+      return false;
+
+    } catch (Throwable t) {
+      logger.error("Error making partition " + dpart.getRoot(), t);
+      if (fingerprints != null) fingerprints.put(DirectoryFingerprints.makeFailed(Paths.get(dpart.getRoot()), false));
+      return false;
+    }
+  }
+
+  /**
+   * Update the top directory partition of a collection with CollectionUpdateType.test, looking only at the directories
+   * whose fingerprint changed since the last update. The first time, or if the fingerprints are missing or were made
+   * for another version of the top index, all directories are examined, as updateDirectoryCollectionRecurse() does.
+   *
+   * @return true if the top index was rewritten
+   */
+  static private boolean updateDirectoryPartitionTracked(boolean isGrib1, DirectoryPartition dpart,
+                                                         FeatureCollectionConfig config, Logger logger) throws IOException {
+    String indexFilename = dpart.getIndexFilename(NCX_SUFFIX);
+    File fingerprintFile = GribIndexCache.getFileOrCache(indexFilename + DirectoryFingerprints.SUFFIX);
+    File indexFile = GribIndexCache.getExistingFileOrCache(indexFilename);
+    DirectoryFingerprints old = (indexFile == null) ? null : DirectoryFingerprints.read(fingerprintFile, indexFile.lastModified());
+
+    long start = System.currentTimeMillis();
+    DirectoryFingerprints current = new DirectoryFingerprints();
+    boolean changed;
+    if (old == null)
+      changed = updateDirectoryCollectionRecurse(isGrib1, dpart, config, CollectionUpdateType.test, logger, current);
+    else
+      changed = updateDirectoryPartitionChanged(isGrib1, dpart, config, old, current, logger);
+
+    indexFile = GribIndexCache.getExistingFileOrCache(indexFilename);
+    if (indexFile != null) {
+      current.write(fingerprintFile, indexFile.lastModified());
+    } else if (fingerprintFile.exists() && !fingerprintFile.delete()) {
+      logger.warn("failed to delete {}", fingerprintFile.getPath());
+    }
+
+    long took = System.currentTimeMillis() - start;
+    logger.debug("updateDirectoryPartitionTracked {} fingerprints={} directories={} changed={} took {} msecs",
+            dpart.getRoot(), old != null, current.size(), changed, took);
+    return changed;
+  }
+
+  /**
+   * Update a directory partition whose children are known from the last update.
+   * If subdirectories were added or removed, or the partition failed last time, its subtree is updated as usual.
+   * A child is classified again before it is updated, since a partition may have become a leaf.
+   * Otherwise only the leaf directories whose fingerprint changed are updated, and the partition index is rewritten
+   * only if one of its children's indexes was.
+   *
+   * @param old     fingerprints from the last update
+   * @param current record the fingerprint of each directory here
+   * @return true if the partition index was rewritten
+   */
+  static private boolean updateDirectoryPartitionChanged(boolean isGrib1, DirectoryPartition dpart, FeatureCollectionConfig config,
+                                                         DirectoryFingerprints old, DirectoryFingerprints current,
+                                                         Logger logger) throws IOException {
+    Path dir = Paths.get(dpart.getRoot());
+    DirectoryFingerprints.Fingerprint was = old.get(dir);
+    List<DirectoryFingerprints.Fingerprint> children = old.getChildren(dir);
+    DirectoryFingerprints.Fingerprint now = DirectoryFingerprints.makePartition(dir, children.size());
+
+    boolean same = (was != null) && !was.isLeaf() && was.isValid() &&
+            (was.getLastModified() == now.getLastModified() || old.hasSameSubdirectories(dir));
+    if (!same)
+      return updateDirectoryCollectionRecurse(isGrib1, dpart, config, CollectionUpdateType.test, logger, current);
+    current.put(now);
+
+    // leaf directories may be updated in parallel; child partitions recurse on this thread
+    List<Future<Boolean>> tasks = new ArrayList<>();
+    for (final DirectoryFingerprints.Fingerprint child : children) {
+      if (child.isLeaf())
+        tasks.add(startChild(() -> updateLeafChanged(isGrib1, config, child, current, logger)));
+      else
+        tasks.add(null);
+    }
+
+    boolean anyChange = false;
+    for (int i = 0; i < children.size(); i++) {
+      DirectoryFingerprints.Fingerprint child = children.get(i);
+      try {
+        if (child.isLeaf()) {
+          if (waitForChild(tasks.get(i))) anyChange = true;
+        } else {
+          try (MCollection part = DirectoryBuilder.factory(config, child.getDir(), false, new GribCdmIndex(logger), NCX_SUFFIX, logger)) {
+            if (part instanceof DirectoryPartition) {
+              part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
+              if (updateDirectoryPartitionChanged(isGrib1, (DirectoryPartition) part, config, old, current, logger)) anyChange = true;
+
+            } else { // its now a leaf
+              current.put(DirectoryFingerprints.makeLeaf(child.getDir()));
+              if (updateLeafCollection(isGrib1, config, CollectionUpdateType.test, false, logger, child.getDir())) anyChange = true;
+            }
+          }
+        }
+
+      } catch (IllegalStateException t) {
+        logger.warn("Error making partition {} '{}'", child.getDir(), t.getMessage());
+        current.put(DirectoryFingerprints.makeFailed(child.getDir(), child.isLeaf()));
+        anyChange = true;
+
+      } catch (Throwable t) {
+        logger.error("Error making partition " + child.getDir(), t);
+        current.put(DirectoryFingerprints.makeFailed(child.getDir(), child.isLeaf()));
+        anyChange = true;
+      }
+    }
+    if (!anyChange) return false;
+
+    try {
+      Formatter errlog = new Formatter();
+      return updatePartition(isGrib1, dpart, CollectionUpdateType.test, logger, errlog);
+
+    } catch (IllegalStateException t) {
+      logger.warn("Error making partition {} '{}'", dpart.getRoot(), t.getMessage());
+      current.put(DirectoryFingerprints.makeFailed(dir, false));
       return false;
 
     } catch (Throwable t) {
       logger.error("Error making partition " + dpart.getRoot(), t);
+      current.put(DirectoryFingerprints.makeFailed(dir, false));
+      return false;
+    }
+  }
+
+  /**
+   * Update a leaf directory of a tracked partition if its fingerprint changed.
+   * If it now has subdirectories, it is updated as a new directory partition.
+   *
+   * @return true if an index was rewritten
+   */
+  static private boolean updateLeafChanged(boolean isGrib1, FeatureCollectionConfig config, DirectoryFingerprints.Fingerprint was,
+                                           DirectoryFingerprints current, Logger logger) throws IOException {
+    Path dir = was.getDir();
+    DirectoryFingerprints.Fingerprint now = DirectoryFingerprints.makeLeaf(dir);
+    if (now.equals(was)) {
+      current.put(now);
       return false;
     }
+
+    try (MCollection part = DirectoryBuilder.factory(config, dir, false, new GribCdmIndex(logger), NCX_SUFFIX, logger)) {
+      if (part instanceof DirectoryPartition) {
+        part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
+        return updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, CollectionUpdateType.test, logger, current);
+      }
+    }
+    current.put(now);
+    return updateLeafCollection(isGrib1, config, CollectionUpdateType.test, false, logger, dir);
   }
 
   /**
@@ -565,27 +884,38 @@ public class GribCdmIndex implements IndexReader {
 
       final AtomicBoolean anyChange = new AtomicBoolean(false); // just need a mutable boolean we can declare final
 
-      // redo the children here
+      // redo the children here, possibly in parallel, each with its own errlog
       if (updateType != CollectionUpdateType.testIndexOnly) {   // skip children on testIndexOnly
+        final List<MCollection> parts = new ArrayList<>();
+        final List<Formatter> partErrlogs = new ArrayList<>();
+        final List<Future<Boolean>> tasks = new ArrayList<>();
         partition.iterateOverMFileCollection(new DirectoryCollection.Visitor() {
           public void consume(MFile mfile) {
-            MCollection part = new CollectionSingleFile(mfile, logger);
+            final MCollection part = new CollectionSingleFile(mfile, logger);
             part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
+            final Formatter partErrlog = new Formatter();
+            parts.add(part);
+            partErrlogs.add(partErrlog);
+            tasks.add(startChild(() -> updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.file, logger, partErrlog)));
+          }
+        });
 
-            try {
-              boolean changed = updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.file, logger, errlog);
-              if (changed) anyChange.set(true);
+        for (int i = 0; i < parts.size(); i++) {
+          MCollection part = parts.get(i);
+          try {
+            boolean changed = waitForChild(tasks.get(i));
+            if (changed) anyChange.set(true);
 
-            } catch (IllegalStateException t) {
-              logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
-              partition.removePartition(part); // keep on truckin; can happen if directory is empty
+          } catch (IllegalStateException t) {
+            logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
+            partition.removePartition(part); // keep on truckin; can happen if directory is empty
 
-            } catch (Throwable t) {
-              logger.error("Error making partition " + part.getRoot(), t);
-              partition.removePartition(part);
-            }
+          } catch (Throwable t) {
+            logger.error("Error making partition " + part.getRoot(), t);
+            partition.removePartition(part);
           }
-        });
+          errlog.format("%s", partErrlogs.get(i));
+        }
       }
 
       // LOOK what if theres only one file?
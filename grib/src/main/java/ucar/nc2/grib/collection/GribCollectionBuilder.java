@@ -54,7 +54,12 @@ import ucar.unidata.util.StringUtil2;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Superclass to build indexes for collections of Grib files.
@@ -280,6 +285,91 @@ abstract class GribCollectionBuilder {
     Set<Long> getCoordinateRuntimes();
   }
 
+  /**
+   * Reads or creates the gbx9 index of each file in the collection, several files at a time when
+   * GribCdmIndex.setIndexThreads() has been called. A bounded number of files are read ahead of the caller,
+   * and the indexes are returned in the order of the file iterator, so the collection index is the same
+   * as when the files are read one at a time.
+   */
+  protected class GbxIndexReader {
+    private final CloseableIterator<MFile> files;
+    private final ExecutorService executor;
+    private final int maxAhead;
+    private final Deque<MFile> aheadFiles = new ArrayDeque<>();
+    private final Deque<FutureTask<GribIndex>> aheadTasks = new ArrayDeque<>();
+    private FutureTask<GribIndex> current;
+    private boolean filesDone; // some file iterators fail if hasNext() is called again after returning false
+
+    GbxIndexReader(CloseableIterator<MFile> files) {
+      this.files = files;
+      this.executor = GribCdmIndex.getFileExecutor();
+      this.maxAhead = (executor == null) ? 1 : 2 * GribCdmIndex.getIndexThreads();
+    }
+
+    public boolean hasNext() {
+      readAhead();
+      return !aheadTasks.isEmpty();
+    }
+
+    /**
+     * Move to the next file, call getIndex() for its index.
+     * @return the next file
+     */
+    public MFile next() {
+      readAhead();
+      current = aheadTasks.remove();
+      return aheadFiles.remove();
+    }
+
+    /**
+     * Get the index of the file returned by next(), waiting for it if needed.
+     * @return the index, may be null if Grib.debugGbxIndexOnly
+     * @throws IOException if it could not be read or created
+     */
+    public GribIndex getIndex() throws IOException {
+      current.run(); // if no thread has started it yet, do it here
+      try {
+        return current.get();
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted reading gbx9 index");
+
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    private void readAhead() {
+      while (aheadTasks.size() < maxAhead && !filesDone) {
+        if (!files.hasNext()) {
+          filesDone = true;
+          break;
+        }
+        final MFile mfile = files.next();
+        FutureTask<GribIndex> task = new FutureTask<>(() -> {
+          if (Grib.debugGbxIndexOnly)
+            return GribIndex.open(isGrib1, mfile);
+          else
+            return GribIndex.readOrCreateIndexFromSingleFile(isGrib1, mfile, CollectionUpdateType.test, logger); // this is where gbx9 files get recreated
+        });
+        if (executor != null) {
+          try {
+            executor.execute(task);
+          } catch (RejectedExecutionException e) {
+            // pool was shut down by setIndexThreads(), getIndex() will do it
+          }
+        }
+        aheadFiles.add(mfile);
+        aheadTasks.add(task);
+      }
+    }
+  }
+
   @Immutable
   static protected class GroupAndRuntime {
     private final int hashCode;
@@ -62,15 +62,19 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
  * An Immutable GribCollection, corresponds to one index (ncx) file.
- * The index file has already been read; it is opened and the closed when a variable is first accessed to read in the record array (sa).
+ * The index file has already been read; it is opened and the closed when a variable is first accessed to read in the record array (records).
+ * Records in the fixed-width encoding are not read in, but looked up in place in a memory-mapped index.
  * <p>
  * possible we could use the Proto equivalents, and eliminate GribCollectionMutable ?
  *
@@ -123,6 +127,8 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
   protected final String indexFilename;       // full path of index Filename
 
   protected FileCacheIF objCache = null;  // optional object cache - used in the TDS
+  private ByteBuffer indexMap;            // lazily mapped, only if there are fixed-width records
+  static long maxIndexMap = Integer.MAX_VALUE;  // a bigger index is mapped one section at a time; package private for testing
 
   GribCollectionImmutable(GribCollectionMutable gc) {
     countGC++;
@@ -467,7 +473,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
   }
 
-  @Immutable      // except for sa
+  @Immutable      // except for records
   public class VariableIndex {
     final GroupGC group;     // belongs to this group
     final VariableIndex.Info info;
@@ -481,7 +487,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     final int ndups, nrecords, nmissing;
 
     // read in on demand
-    private SparseArray<Record> sa;   // for GC only; lazily read; same array shape as variable, minus x and y
+    private volatile RecordTable records;   // for GC only; lazily read; same array shape as variable, minus x and y
 
     protected VariableIndex(GroupGC g, GribCollectionMutable.VariableIndex gcVar) {
       this.group = g;
@@ -497,17 +503,29 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       this.nmissing = gcVar.nmissing;
     }
 
-    public synchronized void readRecords() throws IOException {
-      if (this.sa != null) return;
+    public void readRecords() throws IOException {
+      if (this.records != null || recordsLen == 0) return;
+      synchronized (this) {
+        if (this.records == null)
+          this.records = readRecordTable();
+      }
+    }
 
-      if (recordsLen == 0)
-        return;
+    private RecordTable readRecordTable() throws IOException {
       byte[] b = new byte[recordsLen];
 
       try (RandomAccessFile indexRaf = RandomAccessFile.acquire(indexFilename)) {
 
         indexRaf.seek(recordsPos);
-        indexRaf.readFully(b);
+        int magicLen = RecordTable.getMagicLength();
+        if (recordsLen >= magicLen) {
+          indexRaf.readFully(b, 0, magicLen);
+          if (RecordTable.isFixedWidth(b))
+            return RecordTable.fromFixedWidth(mapRecordSection(recordsPos, recordsLen));
+          indexRaf.readFully(b, magicLen, recordsLen - magicLen);
+        } else {
+          indexRaf.readFully(b);
+        }
 
         /*
         message SparseArray {
@@ -518,25 +536,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
         }
        */
         GribCollectionProto.SparseArray proto = GribCollectionProto.SparseArray.parseFrom(b);
-
-        int nsizes = proto.getSizeCount();
-        int[] size = new int[nsizes];
-        for (int i = 0; i < nsizes; i++)
-          size[i] = proto.getSize(i);
-
-        int ntrack = proto.getTrackCount();
-        int[] track = new int[ntrack];
-        for (int i = 0; i < ntrack; i++)
-          track[i] = proto.getTrack(i);
-
-        int n = proto.getRecordsCount();
-        List<Record> records = new ArrayList<>(n);
-        for (int i = 0; i < n; i++) {
-          GribCollectionProto.Record pr = proto.getRecords(i);
-          records.add(new Record(pr.getFileno(), pr.getStartPos(), pr.getBmsOffset(), pr.getDrsOffset()));
-        }
-        int ndups = proto.getNdups();
-        this.sa = new SparseArray<>(size, track, records, ndups);
+        return RecordTable.fromProto(proto);
 
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
         logger.error(" file={} recordsLen={} recordPos={}", indexFilename, recordsLen, recordsPos);
@@ -544,17 +544,17 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       }
     }
 
-    public synchronized Record getRecordAt(int sourceIndex) {
-      return sa.getContent(sourceIndex);
+    public Record getRecordAt(int sourceIndex) {
+      return records.getContent(sourceIndex);
     }
 
-    public synchronized Record getRecordAt(int[] sourceIndex) {
-      return sa.getContent(sourceIndex);
+    public Record getRecordAt(int[] sourceIndex) {
+      return records.getContent(sourceIndex);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // coord based record finding. note only one record at a time
-    public synchronized Record getRecordAt(SubsetParams coords) {
+    public Record getRecordAt(SubsetParams coords) {
       int[] want = new int[getRank()];
       int count = 0;
       int runIdx = -1;
@@ -630,7 +630,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
 
         want[count++] = idx;
       }
-      return sa.getContent(want);
+      return records.getContent(want);
     }
 
     public List<Coordinate> getCoordinates() {
@@ -666,12 +666,18 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       return coordIndex;
     }
 
+    /**
+     * Make a SparseArray of the records, eg to show them. A new one each time, so dont use this to find records.
+     * @return the records, or null if not read in yet
+     */
     public SparseArray<Record> getSparseArray() {
-      return sa;
+      RecordTable local = records;
+      return local == null ? null : local.makeSparseArray();
     }
 
     public int getNRecords() {
-      return sa == null ? -1 : sa.countNotMissing();
+      RecordTable local = records;
+      return local == null ? -1 : local.countNotMissing();
     }
 
     public int getTableVersion() {
@@ -879,6 +885,27 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
   }
 
+  /**
+   * Get a section of the index file, memory-mapped read-only. The whole index is mapped once and shared by all variables,
+   * unless its too big for one mapping. The mapping goes away when garbage collected.
+   */
+  private synchronized ByteBuffer mapRecordSection(long pos, int len) throws IOException {
+    if (indexMap == null) {
+      try (FileChannel channel = FileChannel.open(Paths.get(indexFilename), StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size > maxIndexMap && pos + len <= size)
+          return channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        indexMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, maxIndexMap));
+      }
+    }
+    if (pos + len > indexMap.capacity())
+      throw new IOException("record section " + pos + " + " + len + " is past the end of " + indexFilename);
+    ByteBuffer section = indexMap.duplicate();
+    section.position((int) pos);
+    section.limit((int) (pos + len));
+    return section.slice();  // big endian
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////
   // stuff for FileCacheable
 
@@ -51,11 +51,16 @@ import ucar.nc2.grib.grib2.Grib2Record;
 import ucar.nc2.grib.grib2.Grib2RecordScanner;
 import ucar.nc2.grib.grib2.table.Grib2Customizer;
 import ucar.nc2.util.Misc;
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 
 import javax.annotation.concurrent.Immutable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Grib Data Reader.
@@ -77,8 +82,73 @@ public abstract class GribDataReader {
   }
 
   protected abstract float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException;
+
+  /**
+   * Read the record into dst if this reader can decode into a caller's array, otherwise into a new array.
+   * @param dst put the data here, starting at dstOffset, may be null
+   * @return the array holding the data: dst if it was used.
+   */
+  protected float[] readData(RandomAccessFile rafData, DataRecord dr, float[] dst, int dstOffset) throws IOException {
+    return readData(rafData, dr);
+  }
   protected abstract void show(RandomAccessFile rafData, long dataPos) throws IOException;
 
+  static private final Object lock = new Object();
+  static private ExecutorService readExecutor; // null means read the records on the calling thread
+  static private int maxThreadsPerRead;
+
+  /**
+   * Decode the records of a read on a shared pool of threads. Each record is written to its own part of the result,
+   * so the result is the same as reading them one at a time. Default is to read them on the calling thread.
+   *
+   * @param nthreads          size of the pool; <= 1 turns parallel reading off
+   * @param maxThreadsPerRead max number of threads used by any one read, including the calling thread; if <= 0, use nthreads
+   */
+  static public void setParallelism(int nthreads, int maxThreadsPerRead) {
+    synchronized (lock) {
+      if (readExecutor != null) {
+        readExecutor.shutdown();
+        readExecutor = null;
+      }
+      if (nthreads <= 1) return;
+
+      GribDataReader.maxThreadsPerRead = (maxThreadsPerRead > 0) ? maxThreadsPerRead : nthreads;
+      readExecutor = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "GribRead-" + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+  }
+
+  static private volatile GribRecordCache recordCache = null;
+  static private boolean recordCacheListening = false;
+
+  /**
+   * Set a process-wide cache of decoded records, used for all GRIB collections.
+   * Default is no cache.
+   *
+   * @param cache use this GribRecordCache, or null to turn off record caching
+   */
+  static public synchronized void setRecordCache(GribRecordCache cache) {
+    if (recordCache != null) recordCache.clear();
+    recordCache = cache;
+    if (cache != null && !recordCacheListening) {
+      ucar.nc2.util.cache.FileCache.addChangeListener(location -> {
+        GribRecordCache rc = recordCache;
+        if (rc != null) rc.invalidate(location);
+      });
+      recordCacheListening = true;
+    }
+  }
+
+  static public GribRecordCache getRecordCache() {
+    return recordCache;
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   static public GribCollectionImmutable.Record currentDataRecord;
   static public GribDataValidator validator;
@@ -268,9 +338,11 @@ public abstract class GribDataReader {
    */
   private void read(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
+    if (readParallel(dataReceiver, false)) return;
 
     int currFile = -1;
     RandomAccessFile rafData = null;
+    float[] scratch = null;
     try {
       for (DataRecord dr : records) {
         if (Grib.debugIndexOnly || Grib.debugGbxIndexOnly) {
@@ -298,9 +370,8 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
         GdsHorizCoordSys hcs = vindex.group.getGdsHorizCoordSys();
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        scratch = readData(rafData, dr, hcs, dataReceiver, scratch);
       }
 
     } finally {
@@ -315,9 +386,11 @@ public abstract class GribDataReader {
 
   private void readPartitioned(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
+    if (readParallel(dataReceiver, true)) return;
 
     PartitionCollectionImmutable.DataRecord lastRecord = null;
     RandomAccessFile rafData = null;
+    float[] scratch = null;
     try {
 
       for (DataRecord dr : records) {
@@ -344,9 +417,7 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
-        GdsHorizCoordSys hcs = dr.hcs;
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        scratch = readData(rafData, dr, dr.hcs, dataReceiver, scratch);
       }
 
     } finally {
@@ -354,6 +425,205 @@ public abstract class GribDataReader {
     }
   }
 
+  // decode straight into the result when the receiver wants the whole record, else into the scratch array.
+  // return the scratch array to use for the next record
+  private float[] readData(RandomAccessFile rafData, DataRecord dr, GdsHorizCoordSys hcs, DataReceiverIF dataReceiver, float[] scratch) throws IOException {
+    GribRecordCache cache = recordCache;
+    if (cache != null) {
+      readCached(cache, rafData, dr, hcs, dataReceiver);
+      return scratch;
+    }
+
+    float[] result = dataReceiver.getDirectArray(hcs.nx, hcs.ny);
+    if (result != null) {
+      float[] data = readData(rafData, dr, result, dr.resultIndex * hcs.nx * hcs.ny);
+      if (data != result)
+        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+      return scratch;
+    }
+    float[] data = readData(rafData, dr, scratch, 0);
+    dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+    return data;
+  }
+
+  // the cached array is shared, so it is always copied to the result
+  private void readCached(GribRecordCache cache, RandomAccessFile rafData, DataRecord dr, GdsHorizCoordSys hcs, DataReceiverIF dataReceiver) throws IOException {
+    long drsPos = dr.record.pos + dr.record.drsOffset;
+    long bmsPos = (dr.record.bmsOffset > 0) ? dr.record.pos + dr.record.bmsOffset : 0;
+    float[] data = cache.get(rafData.getLocation(), rafData.getLastModified(), drsPos, bmsPos, () -> readData(rafData, dr));
+
+    int horizSize = hcs.nx * hcs.ny;
+    float[] result = dataReceiver.getDirectArray(hcs.nx, hcs.ny);
+    if (result != null && data.length == horizSize)
+      System.arraycopy(data, 0, result, dr.resultIndex * horizSize, horizSize);
+    else
+      dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+  }
+
+  /**
+   * Read the sorted records on the shared executor, if there is one and it is worth it.
+   * The records are split into batches that each come from one file; up to maxThreadsPerRead
+   * tasks (one of them on the calling thread) take batches until there are none left.
+   * @return false if the records should be read on the calling thread instead
+   */
+  private boolean readParallel(DataReceiverIF dataReceiver, boolean partitioned) throws IOException {
+    if (records.size() < 2 || Grib.debugIndexOnly || Grib.debugGbxIndexOnly || GribDataReader.validator != null || show)
+      return false;
+    ExecutorService executor;
+    int maxThreads;
+    synchronized (lock) {
+      executor = readExecutor;
+      maxThreads = maxThreadsPerRead;
+    }
+    if (executor == null || maxThreads <= 1)
+      return false;
+
+    // a few batches per thread, so they finish at about the same time
+    int batchSize = Math.max(1, records.size() / (4 * maxThreads));
+    Queue<List<DataRecord>> batches = new ConcurrentLinkedQueue<>();
+    List<DataRecord> batch = null;
+    DataRecord last = null;
+    for (DataRecord dr : records) {
+      if (dr.record.pos == GribCollectionMutable.MISSING_RECORD) continue;
+      if (batch == null || batch.size() >= batchSize || !sameFile(last, dr, partitioned)) {
+        batch = new ArrayList<>(batchSize);
+        batches.add(batch);
+      }
+      batch.add(dr);
+      last = dr;
+    }
+
+    int ntasks = Math.min(maxThreads, batches.size());
+    List<Future<Void>> futures = new ArrayList<>(ntasks);
+    try {
+      for (int i = 1; i < ntasks; i++)
+        futures.add(executor.submit(() -> readBatches(batches, dataReceiver, partitioned)));
+    } catch (RejectedExecutionException e) {
+      // executor was shut down by setParallelism(); the calling thread does the rest
+    }
+
+    try {
+      readBatches(batches, dataReceiver, partitioned);
+      for (Future<Void> f : futures)
+        f.get();
+
+    } catch (InterruptedException e) {
+      cancel(batches, futures);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted reading GRIB records");
+
+    } catch (ExecutionException e) {
+      cancel(batches, futures);
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+
+    } catch (IOException | RuntimeException | Error e) {
+      cancel(batches, futures);
+      throw e;
+    }
+    return true;
+  }
+
+  private boolean sameFile(DataRecord last, DataRecord dr, boolean partitioned) {
+    if (last == null) return false;
+    if (partitioned)
+      return ((PartitionCollectionImmutable.DataRecord) dr).usesSameFile((PartitionCollectionImmutable.DataRecord) last);
+    return last.record.fileno == dr.record.fileno;
+  }
+
+  // runs on the executor threads as well as the calling thread
+  private Void readBatches(Queue<List<DataRecord>> batches, DataReceiverIF dataReceiver, boolean partitioned) throws IOException {
+    float[] scratch = null;
+    List<DataRecord> batch;
+    while ((batch = batches.poll()) != null) {
+      DataRecord first = batch.get(0);
+      RandomAccessFile rafData = partitioned ?
+              ((PartitionCollectionImmutable.DataRecord) first).usePartition.getRaf(((PartitionCollectionImmutable.DataRecord) first).partno, first.record.fileno) :
+              gribCollection.getDataRaf(first.record.fileno);
+      try {
+        for (DataRecord dr : batch)
+          scratch = readData(rafData, dr, dr.hcs, dataReceiver, scratch);
+      } finally {
+        rafData.close();
+      }
+    }
+    return null;
+  }
+
+  // stop handing out batches, and wait for the tasks that are running, so none write into the result after we return
+  private void cancel(Queue<List<DataRecord>> batches, List<Future<Void>> futures) {
+    batches.clear();
+    waitFor(futures);
+  }
+
+  private void waitFor(List<Future<Void>> futures) {
+    boolean interrupted = false;
+    for (Future<Void> f : futures) {
+      while (true) {
+        try {
+          f.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException | CancellationException e) {
+          break; // only the first error is reported
+        }
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  static private final int headSize = 8 * 1024; // same as the default RandomAccessFile buffer
+
+  /**
+   * Positional read of up to 8K bytes starting at pos. This usually holds all the section lengths needed to find
+   * the extent of a record, so they dont each need a read, and often the whole record.
+   */
+  static protected byte[] readHead(RandomAccessFile rafData, long pos) throws IOException {
+    byte[] head = new byte[(int) Math.max(0, Math.min(headSize, rafData.length() - pos))];
+    rafData.readFully(pos, head);
+    return head;
+  }
+
+  /**
+   * Copy the byte range [start, end) of a data file into memory using positional reads, reusing the bytes already
+   * read into head. Decoding from the copy never moves the file pointer of rafData, so one open data file can be
+   * shared by many threads. The copy keeps the file positions of the original.
+   */
+  static protected RandomAccessFile readToMemory(RandomAccessFile rafData, long start, long end, byte[] head, long headPos) throws IOException {
+    end = Math.min(end, rafData.length());
+    byte[] bytes = new byte[(int) (end - start)];
+    long copyStart = Math.max(start, headPos);
+    long copyEnd = Math.min(end, headPos + head.length);
+    if (copyStart < copyEnd) {
+      System.arraycopy(head, (int) (copyStart - headPos), bytes, (int) (copyStart - start), (int) (copyEnd - copyStart));
+      if (copyStart > start)
+        rafData.readFully(start, bytes, 0, (int) (copyStart - start));
+      if (copyEnd < end)
+        rafData.readFully(copyEnd, bytes, (int) (copyEnd - start), (int) (end - copyEnd));
+    } else {
+      rafData.readFully(start, bytes);
+    }
+    RandomAccessFile result = new InMemoryRandomAccessFile(rafData.getLocation(), bytes, start);
+    result.order(RandomAccessFile.BIG_ENDIAN); // GRIB is always big endian
+    return result;
+  }
+
+  // 4 byte unsigned big endian int, eg a GRIB-2 section length, from head if its there, else with a positional read
+  static protected long readUint4(RandomAccessFile rafData, byte[] head, long headPos, long pos) throws IOException {
+    byte[] b = head;
+    int off = (int) (pos - headPos);
+    if (pos < headPos || pos + 4 > headPos + head.length) {
+      b = new byte[4];
+      rafData.readFully(pos, b);
+      off = 0;
+    }
+    return ((long) (b[off] & 0xff) << 24) + ((b[off + 1] & 0xff) << 16) + ((b[off + 2] & 0xff) << 8) + (b[off + 3] & 0xff);
+  }
+
   static public class DataRecord implements Comparable<DataRecord> {
     int resultIndex; // index into the result array
     GribCollectionImmutable.Record record;
@@ -384,6 +654,15 @@ public abstract class GribDataReader {
     void addData(float[] data, int resultIndex, int nx) throws IOException;
     void setDataToZero(); // only used when debugging with gbx/ncx only, to fake the data
     Array getArray();
+
+    /**
+     * If every (x,y) point of each record goes into the result unchanged, return the result's backing array,
+     * so that the record with resultIndex can be decoded directly into it at resultIndex * nx * ny.
+     * @return backing array, or null to have the data sent through addData()
+     */
+    default float[] getDirectArray(int nx, int ny) {
+      return null;
+    }
   }
 
   public static class DataReceiver implements DataReceiverIF {
@@ -431,6 +710,18 @@ public abstract class GribDataReader {
     public Array getArray() {
       return dataArray;
     }
+
+    @Override
+    public float[] getDirectArray(int nx, int ny) {
+      if (!isFull(yRange, ny) || !isFull(xRange, nx)) return null;
+      return (float[]) dataArray.getStorage();
+    }
+
+    private boolean isFull(RangeIterator range, int n) {
+      if (!(range instanceof Range)) return false;
+      Range r = (Range) range;
+      return r.first() == 0 && r.stride() == 1 && r.length() == n;
+    }
   }
 
     /* public static class ChannelReceiver implements DataReceiverIF {
@@ -485,8 +776,41 @@ public abstract class GribDataReader {
       GdsHorizCoordSys hcs = dr.hcs;
       long dataPos = dr.record.pos + dr.record.drsOffset;
       long bmsPos = (dr.record.bmsOffset > 0) ? dr.record.pos + dr.record.bmsOffset : 0;
-      return Grib2Record.readData(rafData, dataPos, bmsPos, hcs.gdsNumberPoints, hcs.getScanMode(),
-              hcs.nxRaw, hcs.nyRaw, hcs.nptsInLine);
+
+      try (RandomAccessFile raf = readSections(rafData, dataPos, bmsPos)) {
+        return Grib2Record.readData(raf, dataPos, bmsPos, hcs.gdsNumberPoints, hcs.getScanMode(),
+                hcs.nxRaw, hcs.nyRaw, hcs.nptsInLine);
+      }
+    }
+
+    @Override
+    protected float[] readData(RandomAccessFile rafData, GribDataReader.DataRecord dr, float[] dst, int dstOffset) throws IOException {
+      GdsHorizCoordSys hcs = dr.hcs;
+      // quasi regular grids are interpolated to a new array
+      if (hcs.nptsInLine != null || hcs.gdsNumberPoints != hcs.nx * hcs.ny)
+        return readData(rafData, dr);
+      if (dst != null && dstOffset + hcs.gdsNumberPoints > dst.length)
+        dst = null;
+
+      long dataPos = dr.record.pos + dr.record.drsOffset;
+      long bmsPos = (dr.record.bmsOffset > 0) ? dr.record.pos + dr.record.bmsOffset : 0;
+      try (RandomAccessFile raf = readSections(rafData, dataPos, bmsPos)) {
+        return Grib2Record.readData(raf, dataPos, bmsPos, hcs.gdsNumberPoints, hcs.getScanMode(), hcs.nxRaw, dst, dst == null ? 0 : dstOffset);
+      }
+    }
+
+    // find the extent of the drs, bms and data sections (and a reused bitmap section), then read them all at once
+    private RandomAccessFile readSections(RandomAccessFile rafData, long dataPos, long bmsPos) throws IOException {
+      byte[] head = readHead(rafData, dataPos);
+      long bmsStart = dataPos + readUint4(rafData, head, dataPos, dataPos);
+      long dataStart = bmsStart + readUint4(rafData, head, dataPos, bmsStart);
+      long start = dataPos;
+      long end = dataStart + readUint4(rafData, head, dataPos, dataStart);
+      if (bmsPos > 0) {
+        start = Math.min(start, bmsPos);
+        end = Math.max(end, bmsPos + readUint4(rafData, head, dataPos, bmsPos));
+      }
+      return readToMemory(rafData, start, end, head, dataPos);
     }
 
     @Override
@@ -517,7 +841,15 @@ public abstract class GribDataReader {
 
     @Override
     protected float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException {
-      return Grib1Record.readData(rafData, dr.record.pos);
+      // the message length is in bytes 5-7 of the indicator section
+      byte[] head = readHead(rafData, dr.record.pos);
+      if (head.length < 8)
+        throw new EOFException("Reading " + rafData.getLocation() + " at " + dr.record.pos + " file length = " + rafData.length());
+      long messageLength = ((head[4] & 0xff) << 16) + ((head[5] & 0xff) << 8) + (head[6] & 0xff);
+
+      try (RandomAccessFile raf = readToMemory(rafData, dr.record.pos, dr.record.pos + messageLength, head, dr.record.pos)) {
+        return Grib1Record.readData(raf, dr.record.pos);
+      }
     }
 
     @Override
@@ -0,0 +1,204 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An LRU cache of decoded GRIB records, with a memory budget in bytes.
+ * Records are keyed by data file location, file modification time, and the file positions of the data representation
+ * and bitmap sections, so that popular fields (eg the latest surface temperature) are not decoded again for each request.
+ * Concurrent requests for the same missing record wait for a single decode.
+ * <p/>
+ * Use GribDataReader.setRecordCache() to enable. Entries for a file are dropped when the FileCache sees that it has changed,
+ * and entries for a collection's files are dropped when the collection is updated.
+ */
+@ThreadSafe
+public class GribRecordCache {
+  static private final int entryOverhead = 100; // approx bytes used by the key and cache entry
+
+  private final String name;
+  private final long maxBytes;
+  private final Cache<Key, float[]> cache;
+
+  /**
+   * Constructor.
+   *
+   * @param name     name of the cache, for reporting
+   * @param maxBytes memory budget in bytes for the decoded records
+   */
+  public GribRecordCache(String name, long maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("GribRecordCache maxBytes must be > 0");
+    this.name = name;
+    this.maxBytes = maxBytes;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Key key, float[] data) -> 4 * data.length + entryOverhead)
+            .recordStats()
+            .build();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Get the decoded record from the cache, or compute it with the reader and add it to the cache.
+   * The returned array is shared, and must not be modified.
+   *
+   * @param location     data file location
+   * @param lastModified data file modification time
+   * @param drsPos       file position of the data representation section (GRIB-1: start of the message)
+   * @param bmsPos       file position of the bitmap section used, if not in the same message, else 0
+   * @param reader       reads and decodes the record on a miss
+   * @return decoded record
+   * @throws IOException on read error
+   */
+  public float[] get(String location, long lastModified, long drsPos, long bmsPos, Callable<float[]> reader) throws IOException {
+    try {
+      return cache.get(new Key(location, lastModified, drsPos, bmsPos), reader);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Remove all records read from the given data file, eg when the file has been rewritten.
+   *
+   * @param location data file location
+   */
+  public void invalidate(String location) {
+    cache.asMap().keySet().removeIf(key -> key.location.equals(location));
+  }
+
+  /**
+   * Remove all records read from data files in the given directory or its subdirectories, eg when a collection is updated.
+   *
+   * @param dir top directory
+   */
+  public void invalidateDirectory(String dir) {
+    String prefix = dir.replace('\\', '/');
+    if (!prefix.endsWith("/")) prefix += "/";
+    final String want = prefix;
+    cache.asMap().keySet().removeIf(key -> key.location.replace('\\', '/').startsWith(want));
+  }
+
+  /**
+   * Remove all records from the cache.
+   */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long getSizeBytes() {
+    long total = 0;
+    for (float[] data : cache.asMap().values())
+      total += 4 * data.length + entryOverhead;
+    return total;
+  }
+
+  /**
+   * Add stat report (hits, misses, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public void showStats(Formatter format) {
+    CacheStats stats = cache.stats();
+    format.format("GribRecordCache %s: maxBytes= %d nrecords= %d bytes= %d%n", name, maxBytes, cache.size(), getSizeBytes());
+    format.format("  hits= %d miss= %d evictions= %d hit ratio=%f%n", stats.hitCount(), stats.missCount(), stats.evictionCount(),
+            stats.hitRate());
+  }
+
+  @Override
+  public String toString() {
+    return "GribRecordCache{" + name + ", maxBytes=" + maxBytes + '}';
+  }
+
+  //////////////////////////////////////////////////////////////////
+
+  static private class Key {
+    final String location;
+    final long lastModified;
+    final long drsPos;
+    final long bmsPos;
+    final int hash;
+
+    Key(String location, long lastModified, long drsPos, long bmsPos) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.drsPos = drsPos;
+      this.bmsPos = bmsPos;
+      int h = location.hashCode();
+      h = 31 * h + (int) (lastModified ^ (lastModified >>> 32));
+      h = 31 * h + (int) (drsPos ^ (drsPos >>> 32));
+      this.hash = 31 * h + (int) (bmsPos ^ (bmsPos >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return hash == that.hash && drsPos == that.drsPos && bmsPos == that.bmsPos && lastModified == that.lastModified
+              && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import ucar.coord.SparseArray;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The records of one variable of a GribCollection: a sparse array over the variable's coordinates, like SparseArray&lt;Record&gt;,
+ * but without a Record object for each GRIB message. Either decoded from the protobuf SparseArray into primitive arrays,
+ * or looked up directly in the fixed-width encoding of a memory-mapped ncx4, which takes no heap at all.
+ * Immutable, so lookups dont need a lock.
+ *
+ * <pre>
+ * Fixed-width encoding, big endian:
+ *   magic (4 bytes) = 0, 'R', 'T', '1'   // 0 never starts a protobuf message
+ *   rank (int)
+ *   shape (int[rank])
+ *   ndups (int)
+ *   nrecords (int)
+ *   track (int[totalSize])               // 1-based index into records, 0 == missing
+ *   records (nrecords * 20 bytes)        // fileno (int), pos (long), bmsOffset (int), drsOffset (int)
+ * </pre>
+ */
+@Immutable
+abstract class RecordTable {
+  static private final byte[] MAGIC = {0, 'R', 'T', '1'};
+  static private final int RECORD_SIZE = 20;
+
+  /**
+   * Check if the record section of a variable uses the fixed-width encoding.
+   * @param start the first bytes of the section, at least 4
+   */
+  static boolean isFixedWidth(byte[] start) {
+    for (int i = 0; i < MAGIC.length; i++)
+      if (start[i] != MAGIC[i]) return false;
+    return true;
+  }
+
+  static int getMagicLength() {
+    return MAGIC.length;
+  }
+
+  /**
+   * Encode the records of a variable in the fixed-width encoding, instead of writing the protobuf SparseArray.
+   * @return the encoded bytes
+   */
+  static byte[] encodeFixedWidth(GribCollectionProto.SparseArray proto) {
+    int rank = proto.getSizeCount();
+    int ntrack = proto.getTrackCount();
+    int nrecords = proto.getRecordsCount();
+    long size = MAGIC.length + 4 + 4L * rank + 4 + 4 + 4L * ntrack + (long) RECORD_SIZE * nrecords;
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("too many records for fixed-width encoding = " + nrecords);
+
+    ByteBuffer bb = ByteBuffer.allocate((int) size); // big endian
+    bb.put(MAGIC);
+    bb.putInt(rank);
+    for (int i = 0; i < rank; i++)
+      bb.putInt(proto.getSize(i));
+    bb.putInt(proto.getNdups());
+    bb.putInt(nrecords);
+    for (int i = 0; i < ntrack; i++)
+      bb.putInt(proto.getTrack(i));
+    for (int i = 0; i < nrecords; i++) {
+      GribCollectionProto.Record pr = proto.getRecords(i);
+      bb.putInt(pr.getFileno());
+      bb.putLong(pr.getStartPos());
+      bb.putInt(pr.getBmsOffset());
+      bb.putInt(pr.getDrsOffset());
+    }
+    return bb.array();
+  }
+
+  /**
+   * Use the fixed-width encoding of a variable in place. The buffer is not copied, so it may be memory-mapped.
+   * @param bb the variable's record section, from position 0, big endian
+   */
+  static RecordTable fromFixedWidth(ByteBuffer bb) throws IOException {
+    for (int i = 0; i < MAGIC.length; i++)
+      if (bb.get(i) != MAGIC[i]) throw new IOException("not a fixed-width record section");
+    return new Mapped(bb);
+  }
+
+  /**
+   * Decode a protobuf SparseArray into primitive arrays.
+   */
+  static RecordTable fromProto(GribCollectionProto.SparseArray proto) {
+    int nsizes = proto.getSizeCount();
+    int[] shape = new int[nsizes];
+    for (int i = 0; i < nsizes; i++)
+      shape[i] = proto.getSize(i);
+
+    int ntrack = proto.getTrackCount();
+    int[] track = new int[ntrack];
+    for (int i = 0; i < ntrack; i++)
+      track[i] = proto.getTrack(i);
+
+    int n = proto.getRecordsCount();
+    int[] fileno = new int[n];
+    long[] pos = new long[n];
+    int[] bmsOffset = new int[n];
+    int[] drsOffset = new int[n];
+    for (int i = 0; i < n; i++) {
+      GribCollectionProto.Record pr = proto.getRecords(i);
+      fileno[i] = pr.getFileno();
+      pos[i] = pr.getStartPos();
+      bmsOffset[i] = pr.getBmsOffset();
+      drsOffset[i] = pr.getDrsOffset();
+    }
+    return new Decoded(shape, proto.getNdups(), track, fileno, pos, bmsOffset, drsOffset);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  protected final int[] shape;
+  protected final int[] stride;
+  protected final int totalSize;
+  protected final int ndups;
+
+  protected RecordTable(int[] shape, int ndups) {
+    this.shape = shape;
+    this.ndups = ndups;
+    this.stride = new int[shape.length];
+    int product = 1;
+    for (int i = shape.length - 1; i >= 0; i--) {
+      stride[i] = product;
+      product *= shape[i];
+    }
+    this.totalSize = product;
+  }
+
+  /**
+   * @param idx index into the sparse array, 0 .. totalSize-1
+   * @return 1-based index into the records, 0 == missing
+   */
+  abstract int getTrack(int idx);
+
+  abstract int getNrecords();
+
+  /**
+   * @param recno 0-based record number
+   */
+  abstract GribCollectionImmutable.Record getRecord(int recno);
+
+  GribCollectionImmutable.Record getContent(int idx) {
+    if (idx < 0 || idx >= totalSize)
+      throw new IndexOutOfBoundsException("record index " + idx + " not in [0," + totalSize + ")");
+    int recno = getTrack(idx) - 1;
+    return (recno < 0) ? null : getRecord(recno);
+  }
+
+  GribCollectionImmutable.Record getContent(int[] index) {
+    int where = 0;
+    for (int i = 0; i < index.length; i++)
+      where += index[i] * stride[i];
+    return getContent(where);
+  }
+
+  int countNotMissing() {
+    int result = 0;
+    for (int idx = 0; idx < totalSize; idx++)
+      if (getTrack(idx) > 0) result++;
+    return result;
+  }
+
+  /**
+   * Make a SparseArray with a Record object for each record, eg for showing the index. Not cached.
+   */
+  SparseArray<GribCollectionImmutable.Record> makeSparseArray() {
+    int[] track = new int[totalSize];
+    for (int idx = 0; idx < totalSize; idx++)
+      track[idx] = getTrack(idx);
+    int n = getNrecords();
+    List<GribCollectionImmutable.Record> records = new ArrayList<>(n);
+    for (int i = 0; i < n; i++)
+      records.add(getRecord(i));
+    return new SparseArray<>(shape.clone(), track, records, ndups);
+  }
+
+  // decoded from protobuf
+  private static class Decoded extends RecordTable {
+    private final int[] track;
+    private final int[] fileno;
+    private final long[] pos;
+    private final int[] bmsOffset;
+    private final int[] drsOffset;
+
+    Decoded(int[] shape, int ndups, int[] track, int[] fileno, long[] pos, int[] bmsOffset, int[] drsOffset) {
+      super(shape, ndups);
+      if (track.length != totalSize)
+        throw new IllegalStateException("track len " + track.length + " != totalSize " + totalSize);
+      this.track = track;
+      this.fileno = fileno;
+      this.pos = pos;
+      this.bmsOffset = bmsOffset;
+      this.drsOffset = drsOffset;
+    }
+
+    int getTrack(int idx) {
+      return track[idx];
+    }
+
+    int getNrecords() {
+      return fileno.length;
+    }
+
+    GribCollectionImmutable.Record getRecord(int recno) {
+      return new GribCollectionImmutable.Record(fileno[recno], pos[recno], bmsOffset[recno], drsOffset[recno]);
+    }
+  }
+
+  // fixed width, read in place. only absolute gets are used, so concurrent readers can share the buffer
+  private static class Mapped extends RecordTable {
+    private final ByteBuffer bb;
+    private final int trackStart;
+    private final int recordStart;
+    private final int nrecords;
+
+    Mapped(ByteBuffer bb) throws IOException {
+      super(readShape(bb), bb.getInt(MAGIC.length + 4 + 4 * bb.getInt(MAGIC.length)));
+      this.bb = bb;
+      int nrecordsPos = MAGIC.length + 4 + 4 * shape.length + 4;
+      this.nrecords = bb.getInt(nrecordsPos);
+      this.trackStart = nrecordsPos + 4;
+      this.recordStart = trackStart + 4 * totalSize;
+      if (recordStart + (long) RECORD_SIZE * nrecords > bb.limit())
+        throw new IOException("fixed-width record section is truncated");
+    }
+
+    static private int[] readShape(ByteBuffer bb) {
+      int rank = bb.getInt(MAGIC.length);
+      int[] shape = new int[rank];
+      for (int i = 0; i < rank; i++)
+        shape[i] = bb.getInt(MAGIC.length + 4 + 4 * i);
+      return shape;
+    }
+
+    int getTrack(int idx) {
+      return bb.getInt(trackStart + 4 * idx);
+    }
+
+    int getNrecords() {
+      return nrecords;
+    }
+
+    GribCollectionImmutable.Record getRecord(int recno) {
+      int start = recordStart + RECORD_SIZE * recno;
+      return new GribCollectionImmutable.Record(bb.getInt(start), bb.getLong(start + 4), bb.getInt(start + 12), bb.getInt(start + 16));
+    }
+  }
+}
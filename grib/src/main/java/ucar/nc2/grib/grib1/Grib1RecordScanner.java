@@ -33,6 +33,7 @@
 
 package ucar.nc2.grib.grib1;
 
+import ucar.nc2.grib.GribMessageFinder;
 import ucar.nc2.grib.GribNumbers;
 import ucar.unidata.io.KMPMatch;
 import ucar.unidata.io.RandomAccessFile;
@@ -105,6 +106,7 @@ public class Grib1RecordScanner {
 
   private Map<Long, Grib1SectionGridDefinition> gdsMap = new HashMap<>();
   private ucar.unidata.io.RandomAccessFile raf = null;
+  private final GribMessageFinder finder = new GribMessageFinder();
 
   private byte[] header;
   //private long startPos = 0;
@@ -118,31 +120,27 @@ public class Grib1RecordScanner {
   }
 
   public boolean hasNext() throws IOException {
-    if (lastPos >= raf.length()) return false;
+    long fileLength = raf.length();
+    if (lastPos >= fileLength) return false;
     boolean more;
     long foundAt = 0;
 
     while (true) { // scan until we get a GRIB-1 or more is false
-      raf.seek(lastPos);
-      more = raf.searchForward(matcher, -1); // will scan to end for a 'GRIB' string
+      foundAt = finder.findNext(raf, lastPos, fileLength); // will scan to end for a 'GRIB' string
+      more = (foundAt >= 0);
       if (!more) break;
 
-      foundAt = raf.getFilePointer();
       // see if its GRIB-1
-      raf.skipBytes(7);
-      int edition = raf.read();
+      int edition = finder.readByte(raf, foundAt + 7);
       if (edition == 1) break;
-      lastPos = raf.getFilePointer(); // not edition 1 ! could terminate ??
+      lastPos = foundAt + 8; // not edition 1 ! could terminate ??
     }
 
     if (more) {
       // read the header - stuff between the records
       int sizeHeader = (int) (foundAt - lastPos);
       if (sizeHeader > 100) sizeHeader = 100;   // maximum 100 bytes, more likely to be garbage
-      long startPos = foundAt-sizeHeader;
-      header = new byte[sizeHeader];
-      raf.seek(startPos);
-      raf.readFully(header);
+      header = finder.readBytes(raf, foundAt - sizeHeader, sizeHeader);
       raf.seek(foundAt);
       this.lastPos = foundAt; // ok start from here next time
     }
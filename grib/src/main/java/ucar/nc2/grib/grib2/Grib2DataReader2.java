@@ -36,6 +36,7 @@ package ucar.nc2.grib.grib2;
 import ucar.nc2.grib.GribNumbers;
 import ucar.nc2.grib.GribUtils;
 import ucar.nc2.iosp.BitReader;
+import ucar.nc2.iosp.BitUnpacker;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.awt.image.DataBuffer;
@@ -106,6 +107,22 @@ public class Grib2DataReader2 {
    */
 
   public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs) throws IOException {
+    return getData(raf, bitmapSection, gdrs, null, 0);
+  }
+
+  /**
+   * Read the data into the caller's array, so that it can be reused, or be the final result.
+   * Templates 0, 2 and 3 are decoded directly into it, others are decoded and then copied.
+   *
+   * @param raf           read from here
+   * @param bitmapSection the bitmap section
+   * @param gdrs          the data representation
+   * @param dst           put totalNPoints values here, starting at dstOffset; if null, a new array is allocated
+   * @param dstOffset     starting index in dst
+   * @return dst, or the new array; null if the data could not be decoded
+   * @throws IOException on read error
+   */
+  public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs, float[] dst, int dstOffset) throws IOException {
     this.bitmap = bitmapSection.getBitmap(raf);
     this.bitmapIndicator = bitmapSection.getBitMapIndicator();
 
@@ -116,18 +133,26 @@ public class Grib2DataReader2 {
       }
     }
 
+    boolean decodeInPlace = (dataTemplate == 0 || dataTemplate == 2 || dataTemplate == 3);
+    if (dst == null) {
+      if (decodeInPlace) dst = new float[totalNPoints];
+      dstOffset = 0;
+    } else if (dstOffset < 0 || dstOffset + totalNPoints > dst.length) {
+      throw new IllegalArgumentException("dst array too small: need " + totalNPoints + " at offset " + dstOffset);
+    }
+
     raf.seek(startPos+5); // skip past first 5 bytes in data section, now ready to read
 
-    float[] data;
+    float[] data = null;
     switch (dataTemplate) {
       case 0:
-        data = getData0(raf, (Grib2Drs.Type0) gdrs);
+        getData0(raf, (Grib2Drs.Type0) gdrs, dst, dstOffset);
         break;
       case 2:
-        data = getData2(raf, (Grib2Drs.Type2) gdrs);
+        getData2(raf, (Grib2Drs.Type2) gdrs, dst, dstOffset);
         break;
       case 3:
-        data = getData3(raf, (Grib2Drs.Type3) gdrs);
+        getData3(raf, (Grib2Drs.Type3) gdrs, dst, dstOffset);
         break;
       case 40:
         data = getData40(raf, (Grib2Drs.Type40) gdrs);
@@ -142,11 +167,19 @@ public class Grib2DataReader2 {
         throw new UnsupportedOperationException("Unsupported DRS type = " + dataTemplate);
     }
 
+    if (!decodeInPlace) {
+      if (data == null) return null;
+      if (dst == null)
+        dst = data;
+      else
+        System.arraycopy(data, 0, dst, dstOffset, totalNPoints);
+    }
+
     //int scanMode = gds.getGds().getScanMode();
     //int nx = gds.getGds().getNx();  // needs some smarts for different type Grids
-    scanningModeCheck(data, scanMode, nx);
+    scanningModeCheck(dst, dstOffset, totalNPoints, scanMode, nx);
 
-    return data;
+    return dst;
   }
 
   public int[] getRawData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs) throws IOException {
@@ -220,7 +253,7 @@ public class Grib2DataReader2 {
 
 
   // Grid point data - simple packing
-  private float[] getData0(RandomAccessFile raf, Grib2Drs.Type0 gdrs) throws IOException {
+  private void getData0(RandomAccessFile raf, Grib2Drs.Type0 gdrs, float[] data, int off) throws IOException {
     int nb = gdrs.numberOfBits;
     int D = gdrs.decimalScaleFactor;
     float DD = (float) java.lang.Math.pow((double) 10, (double) D);
@@ -231,7 +264,6 @@ public class Grib2DataReader2 {
     // LOOK: can # datapoints differ from bitmap and data ?
     // dataPoints are number of points encoded, it could be less than the
     // totalNPoints in the grid record if bitMap is used, otherwise equal
-    float[] data = new float[totalNPoints];
 
     //  Y * 10**D = R + (X1 + X2) * 2**E
     //   E = binary scale factor
@@ -241,24 +273,75 @@ public class Grib2DataReader2 {
     //   X2 = scaled encoded value
     //   data[ i ] = (R + ( X1 + X2) * EE)/DD ;
 
-    BitReader reader = new BitReader(raf, startPos+5);
+    BitUnpacker reader = new BitUnpacker(readPackedData(raf));
     if (bitmap == null) {
-      for (int i = 0; i < totalNPoints; i++) {
-        //data[ i ] = (R + ( X1 + X2) * EE)/DD ;
-        data[i] = (R + reader.bits2UInt(nb) * EE) / DD;
-      }
+      unpackScaled(reader, nb, 0, totalNPoints, R, EE, DD, data, off);
     } else {
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          data[i] = (R + reader.bits2UInt(nb) * EE) / DD;
-        } else {
-          data[i] = staticMissingValue;
-          //data[i] = R / DD;
-        }
-      }
+      // one packed value for each bit set in the bitmap
+      int npacked = countBitmap();
+      unpackScaled(reader, nb, 0, npacked, R, EE, DD, data, off);
+      expandBitmap(data, off, npacked, staticMissingValue);
     }
+  }
 
-    return data;
+  // values are unpacked in blocks of this size, and scaled while still in the cpu cache
+  static private final int UNPACK_BLOCK = 1024;
+
+  /**
+   * Unpack n values of nb bits, and apply Y = (R + (X1 + X2) * 2^E) / 10^D.
+   * Same float arithmetic as reading one value at a time with BitReader.
+   */
+  static private void unpackScaled(BitUnpacker reader, int nb, int X1, int n, float R, float EE, float DD, float[] dst, int off) throws IOException {
+    if (nb > 31) { // dont fit in an int
+      for (int i = 0; i < n; i++)
+        dst[off + i] = (R + (X1 + reader.bits2UInt(nb)) * EE) / DD;
+      return;
+    }
+    int[] block = new int[Math.min(n, UNPACK_BLOCK)];
+    int done = 0;
+    while (done < n) {
+      int len = Math.min(block.length, n - done);
+      reader.unpack(nb, len, block, 0);
+      int start = off + done;
+      for (int i = 0; i < len; i++)
+        dst[start + i] = (R + (X1 + block[i]) * EE) / DD;
+      done += len;
+    }
+  }
+
+  // read the packed data in section 7, following the 5 byte section header
+  private byte[] readPackedData(RandomAccessFile raf) throws IOException {
+    byte[] packed = new byte[dataLength - 5];
+    raf.seek(startPos + 5);
+    raf.readFully(packed);
+    return packed;
+  }
+
+  // number of points that have a value, ie have their bit set in the bitmap
+  private int countBitmap() {
+    int count = 0;
+    int nbytes = totalNPoints / 8;
+    for (int i = 0; i < nbytes; i++)
+      count += Integer.bitCount(bitmap[i] & 0xff);
+    for (int i = nbytes * 8; i < totalNPoints; i++) {
+      if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) count++;
+    }
+    return count;
+  }
+
+  /**
+   * The first npacked values of data are for the points that are set in the bitmap, in order.
+   * Move them to their points, and set the other points to missing. Done in place, from the end backwards.
+   */
+  private void expandBitmap(float[] data, int off, int npacked, float missing) {
+    int idx = off + npacked - 1;
+    for (int i = totalNPoints - 1; i >= 0; i--) {
+      if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
+        data[off + i] = data[idx--];
+      } else {
+        data[off + i] = missing;
+      }
+    }
   }
 
   /*
@@ -287,7 +370,7 @@ public class Grib2DataReader2 {
  from data representation template.
  (4) For groups with a constant value, associated field width is 0, and no incremental data are physically present.
    */
-  private float[] getData2(RandomAccessFile raf, Grib2Drs.Type2 gdrs) throws IOException {
+  private void getData2(RandomAccessFile raf, Grib2Drs.Type2 gdrs, float[] data, int off) throws IOException {
     int mvm = gdrs.missingValueManagement;
     float mv = getMissingValue(gdrs);
 
@@ -298,17 +381,17 @@ public class Grib2DataReader2 {
 
     int NG = gdrs.numberOfGroups;
     if (NG == 0) {
-      return nGroups0(bitmapIndicator, ref_val, mv);
+      nGroups0(bitmapIndicator, ref_val, mv, data, off);
+      return;
     }
 
-    BitReader reader = new BitReader(raf, startPos+5);
+    BitUnpacker reader = new BitUnpacker(readPackedData(raf));
 
     // 6-xx  Get reference values for groups (X1's)
     int[] X1 = new int[NG];
     int nb = gdrs.numberOfBits;
     if (nb != 0) {
-      for (int i = 0; i < NG; i++)
-        X1[i] = (int) reader.bits2UInt(nb);
+      reader.unpack(nb, NG, X1, 0);
     }
 
     // [xx +1 ]-yy Get number of bits used to encode each group
@@ -316,8 +399,7 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsGroupWidths;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++)
-        NB[i] = (int) reader.bits2UInt(nb);
+      reader.unpack(nb, NG, NB, 0);
     }
 
     // [yy +1 ]-zz Get the scaled group lengths using formula
@@ -330,12 +412,11 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsScaledGroupLength;
 
     reader.incrByte();
+    reader.unpack(nb, NG, L, 0);
     for (int i = 0; i < NG; i++)
-      L[i] = ref + (int) reader.bits2UInt(nb) * len_inc;
+      L[i] = ref + L[i] * len_inc;
     L[NG - 1] = gdrs.lengthLastGroup; // enter Length of Last Group
-
-
-    float[] data = new float[totalNPoints];
+    checkGroupLengths(L);
 
     // [zz +1 ]-nn get X2 values and calculate the results Y using formula
 
@@ -350,43 +431,43 @@ public class Grib2DataReader2 {
     int count = 0;
     reader.incrByte();
     for (int i = 0; i < NG; i++) {
-      for (int j = 0; j < L[i]; j++) {
-        if (NB[i] == 0) {
-          if (mvm == 0) {  // X2 = 0
-            data[count++] = (R + X1[i] * EE) / DD;
-          } else { //if (mvm == 1) || (mvm == 2 )
-            data[count++] = mv;
-          }
-        } else {
+      if (NB[i] == 0) {
+        // X2 = 0
+        float val = (mvm == 0) ? (R + X1[i] * EE) / DD : mv;
+        Arrays.fill(data, off + count, off + count + L[i], val);
+
+      } else if (mvm == 0) {
+        unpackScaled(reader, NB[i], X1[i], L[i], R, EE, DD, data, off + count);
+
+      } else { //if (mvm == 1) || (mvm == 2 )
+        // X2 is also set to missing value if all bits set to 1's
+        int msng = bitsmv1[NB[i]];
+        int start = off + count;
+        for (int j = 0; j < L[i]; j++) {
           int X2 = (int) reader.bits2UInt(NB[i]);
-          if (mvm == 0) {
-            data[count++] = (R + (X1[i] + X2) * EE) / DD;
-          } else { //if (mvm == 1) || (mvm == 2 )
-            // X2 is also set to missing value if all bits set to 1's
-            if (X2 == bitsmv1[NB[i]]) {
-              data[count++] = mv;
-            } else {
-              data[count++] = (R + (X1[i] + X2) * EE) / DD;
-            }
-          }
+          data[start + j] = (X2 == msng) ? mv : (R + (X1[i] + X2) * EE) / DD;
         }
-      }  // end for j
+      }
+      count += L[i];
     }  // end for i
 
+    // points not covered by the groups are zero
+    Arrays.fill(data, off + count, off + totalNPoints, 0.0f);
+
     if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
-        }
-      }
-      data = tmp;
+      expandBitmap(data, off, countBitmap(), mv);
     }
+  }
 
-    return data;
+  // the decoded values must fit into totalNPoints
+  private void checkGroupLengths(int[] L) {
+    long total = 0;
+    for (int len : L) {
+      if (len < 0) throw new IllegalStateException("GRIB2 complex packing: negative group length " + len);
+      total += len;
+    }
+    if (total > totalNPoints)
+      throw new IllegalStateException("GRIB2 complex packing: sum of group lengths " + total + " > number of points " + totalNPoints);
   }
 
 
@@ -422,10 +503,9 @@ public class Grib2DataReader2 {
         fatal_error("unknown bitmap", "");
     }
    */
-  private float[] nGroups0(int bitmap_flag, float ref, float mv1) {
-    float[] data = new float[totalNPoints];
+  private void nGroups0(int bitmap_flag, float ref, float mv1, float[] data, int off) {
     if (bitmap_flag == 255) {
-      for (int i = 0; i < totalNPoints; i++) data[i] = ref;
+      Arrays.fill(data, off, off + totalNPoints, ref);
 
     } else if (bitmap_flag == 0 || bitmap_flag == 254) {
       int mask = 0;
@@ -435,14 +515,13 @@ public class Grib2DataReader2 {
           mask = bitmap[mask_pointer];
           mask_pointer++;
         }
-        data[i] = ((mask & 128) == 0) ?  ref : mv1;
+        data[off + i] = ((mask & 128) == 0) ?  ref : mv1;
         mask <<= 1;
       }
 
     } else {
       throw new IllegalArgumentException("unknown bitmap type ="+bitmap_flag);
     }
-    return data;
   }
 
   /*
@@ -465,7 +544,7 @@ public class Grib2DataReader2 {
   (3) The position of overall minimum after initial data values is a choice that enables less software management.
   (4) Overall minimum will be negative in most cases. First bit should indicate the sign: 0 if positive, 1 if negative.
    */
-  private float[] getData3(RandomAccessFile raf, Grib2Drs.Type3 gdrs) throws IOException {
+  private void getData3(RandomAccessFile raf, Grib2Drs.Type3 gdrs, float[] data, int off) throws IOException {
     int mvm = gdrs.missingValueManagement;
     float mv = getMissingValue(gdrs);
 
@@ -476,10 +555,11 @@ public class Grib2DataReader2 {
 
     int NG = gdrs.numberOfGroups;
     if (NG == 0) {
-      return nGroups0(bitmapIndicator, ref_val, mv);
+      nGroups0(bitmapIndicator, ref_val, mv, data, off);
+      return;
     }
 
-    BitReader reader = new BitReader(raf, startPos+5);
+    BitUnpacker reader = new BitUnpacker(readPackedData(raf));
 
     int ival1 = 0;
     int ival2 = 0;
@@ -511,9 +591,8 @@ public class Grib2DataReader2 {
       }
 
     } else {
-      float[] data = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) data[i] = mv;
-      return data;
+      Arrays.fill(data, off, off + totalNPoints, mv);
+      return;
     }
 
     // [ww +1]-xx  Get reference values for groups (X1's)
@@ -522,9 +601,7 @@ public class Grib2DataReader2 {
     int nb = gdrs.numberOfBits;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        X1[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.unpack(nb, NG, X1, 0);
     }
 
     // [xx +1 ]-yy Get number of bits used to encode each group
@@ -533,9 +610,7 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsGroupWidths;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        NB[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.unpack(nb, NG, NB, 0);
     }
 
     int referenceGroupWidths = gdrs.referenceGroupWidths;
@@ -554,9 +629,7 @@ public class Grib2DataReader2 {
 
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        L[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.unpack(nb, NG, L, 0);
     }
 
     int totalL = 0;
@@ -574,22 +647,17 @@ public class Grib2DataReader2 {
     if (mvm != 0) {
       if (totalL != totalNPoints) {
         log.warn("NPoints != gds.nPts: " + totalL +"!="+ totalNPoints);
-        float[] data = new float[totalNPoints];
-        for (int i = 0; i < totalNPoints; i++)
-          data[i] = mv;
-        return data;
+        Arrays.fill(data, off, off + totalNPoints, mv);
+        return;
       }
     } else {
       if (totalL != dataNPoints) {
         log.warn("NPoints != drs.nPts: " + totalL +"!="+ totalNPoints);
-        float[] data = new float[totalNPoints];
-        for (int i = 0; i < totalNPoints; i++)
-          data[i] = mv;
-        return data;
+        Arrays.fill(data, off, off + totalNPoints, mv);
+        return;
       }
     }
-
-   float[] data = new float[totalNPoints];
+    checkGroupLengths(L);
 
     // [zz +1 ]-nn get X2 values and calculate the results Y using formula
 //      formula used to create values,  Y * 10**D = R + (X1 + X2) * 2**E
@@ -607,15 +675,22 @@ public class Grib2DataReader2 {
     int dataSize = 0;
     boolean[] dataBitMap = null;
     if (mvm == 0) {
+      int[] block = new int[UNPACK_BLOCK];
       for (int i = 0; i < NG; i++) {
         if (NB[i] != 0) {
-          for (int j = 0; j < L[i]; j++)
-            data[count++] = (int) reader.bits2UInt(NB[i]) + X1[i];
+          for (int done = 0; done < L[i]; ) {
+            int len = Math.min(block.length, L[i] - done);
+            reader.unpack(NB[i], len, block, 0);
+            for (int j = 0; j < len; j++)
+              data[off + count++] = block[j] + X1[i];
+            done += len;
+          }
         } else {
-          for (int j = 0; j < L[i]; j++)
-            data[count++] = X1[i];
+          Arrays.fill(data, off + count, off + count + L[i], X1[i]);
+          count += L[i];
         }
       }  // end for i
+      dataSize = count;
 
     } else if (mvm == 1 || mvm == 2) {
       // don't add missing values into data but keep track of them in dataBitMap
@@ -626,12 +701,13 @@ public class Grib2DataReader2 {
           int msng1 = bitsmv1[NB[i]];
           int msng2 = msng1 - 1;
           for (int j = 0; j < L[i]; j++) {
-            data[count] = (int) reader.bits2UInt(NB[i]);
-            if (data[count] == msng1 || mvm == 2 && data[count] == msng2) {
+            // compare the packed ints: as floats, values near all ones are the same when NB > 24
+            int X2 = (int) reader.bits2UInt(NB[i]);
+            if (X2 == msng1 || mvm == 2 && X2 == msng2) {
               dataBitMap[count] = false;
             } else {
               dataBitMap[count] = true;
-              data[dataSize++] = data[count] + X1[i];
+              data[off + dataSize++] = (float) X2 + X1[i];  // rounds like the original code
             }
             count++;
           }
@@ -648,7 +724,7 @@ public class Grib2DataReader2 {
           } else {
             for (int j = 0; j < L[i]; j++) {
               dataBitMap[count] = true;
-              data[dataSize++] = X1[i];
+              data[off + dataSize++] = X1[i];
               count++;
             }
           }
@@ -656,37 +732,11 @@ public class Grib2DataReader2 {
       }  // end for i
     }
 
-    // first order spatial differencing
-    if (os == 1) {   // g1 and gMin
-      // encoded by G(n) = F(n) - F(n -1 )
-      // decoded by F(n) = G(n) + F(n -1 )
-      // data[] at this point contains G0, G1, G2, ....
-      data[0] = ival1;
-      int itemp;
-      if (mvm == 0) {           // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
-      for (int i = 1; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + data[i - 1];
-      }
-    } else if (os == 2) { // 2nd order
-      data[0] = ival1;
-      data[1] = ival2;
-      int itemp;
-      if (mvm == 0) {           // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
-      for (int i = 2; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + (2 * data[i - 1]) - data[i - 2];
-      }
-    }
+    // values not decoded are zero. with no missing values, they are included in the spatial differencing
+    Arrays.fill(data, off + dataSize, off + totalNPoints, 0.0f);
+    int itemp = (mvm == 0) ? totalNPoints : dataSize;
 
+    // undo the spatial differencing and apply the formula in one pass
     // formula used to create values,  Y * 10**D = R + (X1 + X2) * 2**E
 
     //               Y = (R + (X1 + X2) * (2 ** E) ) / (10 ** D)]
@@ -697,39 +747,58 @@ public class Grib2DataReader2 {
 //                    X2 = THE SECOND ORDER MINIMA
 //                     E = THE BINARY SCALE FACTOR
 //                     D = THE DECIMAL SCALE FACTOR
+    boolean scale = (mvm == 0 || mvm == 1 || mvm == 2);
+    if (os == 1) {   // g1 and gMin
+      // encoded by G(n) = F(n) - F(n -1 )
+      // decoded by F(n) = G(n) + F(n -1 )
+      // data[] at this point contains G0, G1, G2, ....
+      float f1 = ival1;
+      data[off] = scale ? (R + (f1 * EE)) / DD : f1;
+      for (int i = 1; i < itemp; i++) {
+        float f = (data[off + i] + minsd) + f1;
+        data[off + i] = scale ? (R + (f * EE)) / DD : f;
+        f1 = f;
+      }
+      if (scale) scaleValues(data, off + Math.max(itemp, 1), off + totalNPoints, R, EE, DD);
 
-    if (mvm == 0) {  // no missing values
-      for (int i = 0; i < data.length; i++) {
-        data[i] = (R + (data[i] * EE)) / DD;
+    } else if (os == 2) { // 2nd order
+      float f2 = ival1;
+      float f1 = ival2;
+      data[off] = scale ? (R + (f2 * EE)) / DD : f2;
+      if (totalNPoints > 1) data[off + 1] = scale ? (R + (f1 * EE)) / DD : f1;
+      for (int i = 2; i < itemp; i++) {
+        float f = ((data[off + i] + minsd) + (2 * f1)) - f2;
+        data[off + i] = scale ? (R + (f * EE)) / DD : f;
+        f2 = f1;
+        f1 = f;
       }
-    } else if (mvm == 1 || mvm == 2) {         // missing value == 1  || missing value == 2
-      int count2 = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < data.length; i++) {
+      if (scale) scaleValues(data, off + Math.max(itemp, 2), off + totalNPoints, R, EE, DD);
+
+    } else if (scale) {
+      scaleValues(data, off, off + totalNPoints, R, EE, DD);
+    }
+
+    if (mvm == 1 || mvm == 2) {         // missing value == 1  || missing value == 2
+      // the dataSize values go to the points set in dataBitMap, the others are missing. in place, from the end backwards
+      int idx = off + dataSize - 1;
+      for (int i = totalNPoints - 1; i >= 0; i--) {
         if (dataBitMap[i]) {
-          tmp[i] = (R + (data[count2++] * EE)) / DD;
+          data[off + i] = data[idx--];
         } else { // mvm = 1 or 2
-          tmp[i] = mv;
+          data[off + i] = mv;
         }
       }
-      data = tmp;
     }
 
     // bit map is used
     if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
-        }
-      }
-      data = tmp;
+      expandBitmap(data, off, countBitmap(), mv);
     }
+  }
 
-    return data;
+  static private void scaleValues(float[] data, int start, int end, float R, float EE, float DD) {
+    for (int i = start; i < end; i++)
+      data[i] = (R + (data[i] * EE)) / DD;
   }
 
   // Grid point data - JPEG 2000 code stream format
@@ -1083,7 +1152,7 @@ public class Grib2DataReader2 {
   // Rearrange the data array using the scanning mode.
   // LOOK: not handling scanMode generally
   // LOOK might be wrong for a quasi regular (thin) grid ??
-  private void scanningModeCheck(float[] data, int scanMode, int Xlength) {
+  private void scanningModeCheck(float[] data, int off, int n, int scanMode, int Xlength) {
     // Mode  0  +x, -y, adjacent x, adjacent rows same dir
     // Mode  64 +x, +y, adjacent x, adjacent rows same dir
     if ((scanMode == 0) || (scanMode == 64))  // dont flip Y - handle it in the HorizCoordSys
@@ -1093,7 +1162,7 @@ public class Grib2DataReader2 {
     if (!GribUtils.scanModeXisPositive(scanMode)) {
       float tmp;
       int mid = Xlength / 2;
-      for (int index = 0; index < data.length; index += Xlength) {
+      for (int index = off; index < off + n; index += Xlength) {
         for (int idx = 0; idx < mid; idx++) {
           tmp = data[index + idx];
           data[index + idx] = data[index + Xlength - idx - 1];
@@ -1106,8 +1175,8 @@ public class Grib2DataReader2 {
     if (!GribUtils.scanModeSameDirection(scanMode)) {
       float tmp;
       int mid = Xlength / 2;
-      for (int index = 0; index < data.length; index += Xlength) {
-        int row = index / Xlength;
+      for (int index = off; index < off + n; index += Xlength) {
+        int row = (index - off) / Xlength;
         if (row % 2 != 0) {  // odd numbered row, calculate reverse index
           for (int idx = 0; idx < mid; idx++) {
             tmp = data[index + idx];
@@ -339,6 +339,30 @@ public class Grib2Record {
    * @throws IOException on read error
    */
   static public float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode, int nx, int ny, int[] nptsInLine) throws IOException {
+    float[] data = readData(raf, drsPos, bmsPos, gdsNumberPoints, scanMode, nx, null, 0);
+
+    if (nptsInLine != null)
+      data = QuasiRegular.convertQuasiGrid(data, nptsInLine, nx, ny, GribData.getInterpolationMethod());
+
+    return data;
+  }
+
+  /**
+   * Read data array into the caller's array, without allocating a new one. Not for quasi-regular (thin) grids.
+   *
+   * @param raf             from this RandomAccessFile
+   * @param drsPos          Grib2SectionDataRepresentation starts here
+   * @param bmsPos          if non-zero, use the bms that starts here
+   * @param gdsNumberPoints gdss.getNumberPoints()
+   * @param scanMode        gds.scanMode
+   * @param nx              gds.nx
+   * @param dst             put the gdsNumberPoints values here; if null, a new array is allocated
+   * @param dstOffset       starting at this index in dst
+   * @return dst, or the new array
+   * @throws IOException on read error
+   */
+  static public float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode, int nx,
+                                 float[] dst, int dstOffset) throws IOException {
     raf.seek(drsPos);
     Grib2SectionDataRepresentation drs = new Grib2SectionDataRepresentation(raf);
     Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
@@ -354,10 +378,7 @@ public class Grib2Record {
 
     //return reader.getData(raf, bitmap, gdrs);
 
-    float[] data = reader.getData(raf, bms, gdrs);
-
-    if (nptsInLine != null)
-      data = QuasiRegular.convertQuasiGrid(data, nptsInLine, nx, ny, GribData.getInterpolationMethod());
+    float[] data = reader.getData(raf, bms, gdrs, dst, dstOffset);
 
     if (getlastRecordRead)
       lastRecordRead = Grib2RecordScanner.findRecordByDrspos(raf, drsPos);
@@ -33,6 +33,7 @@
 
 package ucar.nc2.grib.grib2;
 
+import ucar.nc2.grib.GribMessageFinder;
 import ucar.nc2.grib.GribNumbers;
 import ucar.unidata.io.KMPMatch;
 import ucar.unidata.io.RandomAccessFile;
@@ -102,6 +103,7 @@ public class Grib2RecordScanner {
 
   private Map<Long, Grib2SectionGridDefinition> gdsMap = new HashMap<>();
   private ucar.unidata.io.RandomAccessFile raf = null;
+  private final GribMessageFinder finder = new GribMessageFinder();
 
   private byte[] header;
   private int badEndings = 0;
@@ -129,7 +131,8 @@ public class Grib2RecordScanner {
   }
 
   public boolean hasNext() throws IOException {
-    if (lastPos >= raf.length()) return false;
+    long fileLength = raf.length();
+    if (lastPos >= fileLength) return false;
     if (repeatPos > 0) {
       if (nextRepeating()) // this has created a new repeatRecord
         return true;
@@ -143,16 +146,14 @@ public class Grib2RecordScanner {
     long gribStart = 0;
 
     while (true) { // scan until we get a GRIB-2 or more == false
-      raf.seek(lastPos);
-      more = raf.searchForward(matcher, -1); // will scan to end for a 'GRIB' string
+      gribStart = finder.findNext(raf, lastPos, fileLength); // this is where the next 'GRIB' starts
+      more = (gribStart >= 0);
       if (!more) break;
 
-      gribStart = raf.getFilePointer();           // this is where the next 'GRIB' starts
       // see if its GRIB-2
-      raf.skipBytes(7);
-      int edition = raf.read();
+      int edition = finder.readByte(raf, gribStart + 7);
       if (edition == 2) break;
-      lastPos = raf.getFilePointer();   // not edition 2 ! just skip it !! start scanning from there
+      lastPos = gribStart + 8;   // not edition 2 ! just skip it !! start scanning from there
       log.warn("GRIB message at pos=" + gribStart + " not GRIB2; skip");
     }
 
@@ -160,10 +161,7 @@ public class Grib2RecordScanner {
       int sizeHeader = (int) (gribStart - lastPos);  // wmo headers are embedded between records in some idd streams
       if (debugEnding) System.out.printf("bytes between last and next=%d%n", sizeHeader);
       if (sizeHeader > 100) sizeHeader = 100;   // maximum 100 bytes; more is likely to be garbage
-      long goBack = gribStart-sizeHeader;
-      header = new byte[sizeHeader];
-      raf.seek(goBack);
-      raf.readFully(header);
+      header = finder.readBytes(raf, gribStart - sizeHeader, sizeHeader);
       raf.seek(gribStart);
       this.lastPos = gribStart; // ok start from here next time
     }
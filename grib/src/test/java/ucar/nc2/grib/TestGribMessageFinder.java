@@ -0,0 +1,147 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.grib.grib1.Grib1Record;
+import ucar.nc2.grib.grib1.Grib1RecordScanner;
+import ucar.nc2.grib.grib2.Grib2Record;
+import ucar.nc2.grib.grib2.Grib2RecordScanner;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The record scanners must find the same messages whether GribMessageFinder looks in a window first or always searches.
+ */
+public class TestGribMessageFinder {
+  static private final String dataDir = "../grib/src/test/data/";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribMessageFinder.setUseWindow(true);
+  }
+
+  @Test
+  public void testWindowSameAsSearch() throws IOException {
+    byte[] grib2a = read("cosmo-eu.grib2");
+    byte[] grib1 = read("thinGrid.grib1");
+    byte[] grib2b = read("rap-native.grib2");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    write(bytes, "\u0001\r\r\n123 \r\r\nHLYA10 KWBC 150000\r\r\n"); // WMO header
+    int grib2aPos = bytes.size();
+    bytes.write(grib2a);
+    write(bytes, "\r\r\n\u0003\u0001\r\r\n124 \r\r\nHPPI89 KWBC 150000\r\r\n");
+    int grib1Pos = bytes.size();
+    bytes.write(grib1);                                             // not GRIB2
+    for (int i = 0; i < 1000; i++)                                  // garbage, longer than the window
+      bytes.write('a' + i % 26);
+    int grib2bPos = bytes.size();
+    bytes.write(grib2b);
+    int adjacentPos = bytes.size();                                 // right after the last message
+    bytes.write(grib2a);
+    for (int i = 0; i < 254; i++)                                   // "GRIB" straddles the end of the window
+      bytes.write(' ');
+    int straddlePos = bytes.size();
+    bytes.write(grib2b);
+    write(bytes, "\r\r\n\u0003GRIB\u0000\u0000\u0000\u0009garbage GRI"); // trailing garbage
+
+    File file = tempFolder.newFile("messages.grib");
+    Files.write(file.toPath(), bytes.toByteArray());
+
+    List<String> window = scan2(file, true);
+    List<String> search = scan2(file, false);
+    Assert.assertEquals(4, window.size());
+    Assert.assertTrue(window.get(0), window.get(0).startsWith(grib2aPos + " "));
+    Assert.assertTrue(window.get(1), window.get(1).startsWith(grib2bPos + " "));
+    Assert.assertTrue(window.get(2), window.get(2).startsWith(adjacentPos + " "));
+    Assert.assertTrue(window.get(3), window.get(3).startsWith(straddlePos + " "));
+    Assert.assertEquals(window, search);
+
+    window = scan1(file, true);
+    search = scan1(file, false);
+    Assert.assertEquals(1, window.size());
+    Assert.assertTrue(window.get(0), window.get(0).startsWith(grib1Pos + " "));
+    Assert.assertEquals(window, search);
+  }
+
+  private byte[] read(String filename) throws IOException {
+    return Files.readAllBytes(Paths.get(dataDir + filename));
+  }
+
+  private void write(ByteArrayOutputStream out, String s) throws IOException {
+    out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  // start position and WMO header of each record
+  private List<String> scan2(File file, boolean useWindow) throws IOException {
+    GribMessageFinder.setUseWindow(useWindow);
+    List<String> result = new ArrayList<>();
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      Grib2RecordScanner scanner = new Grib2RecordScanner(raf);
+      while (scanner.hasNext()) {
+        Grib2Record gr = scanner.next();
+        result.add(gr.getIs().getStartPos() + " " + new String(gr.getHeader(), StandardCharsets.ISO_8859_1));
+      }
+    }
+    return result;
+  }
+
+  private List<String> scan1(File file, boolean useWindow) throws IOException {
+    GribMessageFinder.setUseWindow(useWindow);
+    List<String> result = new ArrayList<>();
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      Grib1RecordScanner scanner = new Grib1RecordScanner(raf);
+      while (scanner.hasNext()) {
+        Grib1Record gr = scanner.next();
+        result.add(gr.getIs().getStartPos() + " " + new String(gr.getHeader(), StandardCharsets.ISO_8859_1));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Test DirectoryFingerprints change detection and persistence.
+ */
+public class TestDirectoryFingerprints {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path makeFile(Path dir, String name, long lastModified) throws IOException {
+    Path p = Files.write(dir.resolve(name), new byte[10]);
+    Files.setLastModifiedTime(p, FileTime.fromMillis(lastModified));
+    return p;
+  }
+
+  @Test
+  public void testLeaf() throws IOException {
+    Path dir = tempFolder.newFolder("20161018").toPath();
+    Path grib = makeFile(dir, "gfs.grib2", 1000000);
+    makeFile(dir, "gfs2.grib2", 2000000);
+    DirectoryFingerprints.Fingerprint fp = DirectoryFingerprints.makeLeaf(dir);
+    Assert.assertTrue(fp.isLeaf());
+    Assert.assertTrue(fp.isValid());
+    Assert.assertEquals(fp, DirectoryFingerprints.makeLeaf(dir));
+
+    // index files dont count
+    makeFile(dir, "gfs.grib2.gbx9", 3000000);
+    makeFile(dir, "Collection-20161018.ncx4", 3000000);
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(fp.getLastModified()));
+    Assert.assertEquals(fp, DirectoryFingerprints.makeLeaf(dir));
+
+    // appending to a file is a change, even though the directory is not modified
+    Files.write(grib, new byte[10], StandardOpenOption.APPEND);
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(fp.getLastModified()));
+    Assert.assertNotEquals(fp, DirectoryFingerprints.makeLeaf(dir));
+  }
+
+  @Test
+  public void testSubdirectories() throws IOException {
+    Path top = tempFolder.newFolder("top").toPath();
+    Path day1 = Files.createDirectory(top.resolve("day1"));
+    Path day2 = Files.createDirectory(top.resolve("day2"));
+    makeFile(top, "top.ncx4", 1000000);
+
+    DirectoryFingerprints fps = new DirectoryFingerprints();
+    fps.put(DirectoryFingerprints.makePartition(top, 2));
+    fps.put(DirectoryFingerprints.makeLeaf(day2));
+    fps.put(DirectoryFingerprints.makeLeaf(day1));
+    Assert.assertEquals(2, fps.getChildren(top).size());
+    Assert.assertEquals(day1, fps.getChildren(top).get(0).getDir());
+    Assert.assertTrue(fps.hasSameSubdirectories(top));
+
+    Path day3 = Files.createDirectory(top.resolve("day3"));
+    Assert.assertFalse(fps.hasSameSubdirectories(top));
+    Files.delete(day3);
+    Files.delete(day2);
+    Assert.assertFalse(fps.hasSameSubdirectories(top));
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    Path dir = tempFolder.newFolder("dir with blanks").toPath();
+    makeFile(dir, "a.grib2", 1000000);
+
+    DirectoryFingerprints fps = new DirectoryFingerprints();
+    fps.put(DirectoryFingerprints.makeLeaf(dir));
+    fps.put(DirectoryFingerprints.makeFailed(dir.getParent(), false));
+    File file = new File(tempFolder.getRoot(), "top.ncx4" + DirectoryFingerprints.SUFFIX);
+    fps.write(file, 12345);
+
+    DirectoryFingerprints read = DirectoryFingerprints.read(file, 12345);
+    Assert.assertNotNull(read);
+    Assert.assertEquals(2, read.size());
+    Assert.assertEquals(fps.get(dir), read.get(dir));
+    Assert.assertFalse(read.get(dir.getParent()).isValid());
+
+    // written for another version of the index
+    Assert.assertNull(DirectoryFingerprints.read(file, 54321));
+    Assert.assertNull(DirectoryFingerprints.read(new File(tempFolder.getRoot(), "none"), 12345));
+  }
+}
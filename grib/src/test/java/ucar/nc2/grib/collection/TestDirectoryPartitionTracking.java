@@ -0,0 +1,228 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A test update of a directory partition with GribCdmIndex.setTrackDirectoryChanges(true) must rewrite only the
+ * indexes of the directories that changed and of their ancestors, and leave the same indexes as a full update.
+ * The data and indexes are set back in time before each change, so a rewritten index is one with a new last modified.
+ * The children of a partition are either all leaves or all partitions, since a partition cant mix them.
+ */
+public class TestDirectoryPartitionTracking {
+  static private final String NAME = "TestDirectoryPartitionTracking";
+  static private final long DATA_TIME = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+  static private final long INDEX_TIME = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private byte[] message;
+  private Path top;
+  private FeatureCollectionConfig config;
+
+  @Before
+  public void setup() throws IOException {
+    GribCdmIndex.setTrackDirectoryChanges(true);
+    message = Files.readAllBytes(Paths.get("../grib/src/test/data/cosmo-eu.grib2"));
+
+    // top/a/day1, top/a/day2, top/b/day3, top/b/day4, top/c/day5
+    top = tempFolder.newFolder("top").toPath();
+    for (int day = 1; day <= 5; day++) {
+      Path dir = Files.createDirectories(top.resolve(day <= 2 ? "a" : day <= 4 ? "b" : "c").resolve("day" + day));
+      write(dir, day, 0);
+      write(dir, day, 6);
+    }
+    config = new FeatureCollectionConfig(NAME, "test/" + NAME, FeatureCollectionType.GRIB2,
+            top.toString() + "/**/.*grib2$", null, null, null, "directory", null);
+
+    Assert.assertTrue(update());  // first time, everything
+    Assert.assertFalse(update()); // the new indexes changed the leaf directories, so all are checked, none rewritten
+  }
+
+  @After
+  public void reset() {
+    GribCdmIndex.setTrackDirectoryChanges(false);
+  }
+
+  @Test
+  public void testNothingChanged() throws IOException {
+    setBack();
+    Assert.assertFalse(update());
+    Assert.assertEquals(new HashSet<String>(), rewritten());
+  }
+
+  @Test
+  public void testLeafChanged() throws IOException {
+    setBack();
+    write(top.resolve("a/day1"), 1, 12);
+    Assert.assertTrue(update());
+    Assert.assertEquals(dirs("a/day1", "a"), rewritten());
+    compareWithFullUpdate();
+  }
+
+  @Test
+  public void testDirectoryAdded() throws IOException {
+    setBack();
+    Path dir = Files.createDirectory(top.resolve("b/day6"));
+    write(dir, 6, 0);
+    Assert.assertTrue(update());
+    Assert.assertEquals(dirs("b/day6", "b"), rewritten());
+    compareWithFullUpdate();
+  }
+
+  @Test
+  public void testLeafBecomesPartition() throws IOException {
+    // move each file of c/day5 into its own subdirectory
+    setBack();
+    Path day5 = top.resolve("c/day5");
+    moveRuns(day5, day5);
+    Assert.assertTrue(update());
+    Assert.assertEquals(dirs("c/day5/r00", "c/day5/r06", "c/day5", "c"), rewritten());
+    compareWithFullUpdate();
+
+    // and back again
+    setBack();
+    for (String run : new String[]{"r00", "r06"}) {
+      Path runDir = day5.resolve(run);
+      moveRuns(runDir, day5);
+      for (Path p : TestGribIndexThreads.listFiles(runDir, ".ncx4"))
+        Files.delete(p);
+      Files.delete(runDir);
+    }
+    Assert.assertTrue(update());
+    Assert.assertEquals(dirs("c/day5", "c"), rewritten());
+    compareWithFullUpdate();
+  }
+
+  private boolean update() throws IOException {
+    return GribCdmIndex.updateGribCollection(config, CollectionUpdateType.test, null);
+  }
+
+  // one GRIB2 message, with its reference time changed
+  private void write(Path dir, int day, int hour) throws IOException {
+    message[31] = (byte) day;
+    message[32] = (byte) hour;
+    Files.write(dir.resolve(String.format("cosmo_%02d_%02d.grib2", day, hour)), message);
+  }
+
+  // move the data and gbx9 files in from to a new subdirectory of from for each run, or else to to
+  private void moveRuns(Path from, Path to) throws IOException {
+    for (Path p : TestGribIndexThreads.listFiles(from, ".grib2", ".gbx9")) {
+      if (!p.getParent().equals(from)) continue;
+      Path dest = to;
+      if (from.equals(to)) {
+        String name = p.getFileName().toString();
+        dest = to.resolve("r" + name.substring(name.indexOf('_', 6) + 1, name.indexOf('_', 6) + 3));
+        if (!Files.exists(dest)) Files.createDirectory(dest);
+      }
+      Files.move(p, dest.resolve(p.getFileName()));
+    }
+  }
+
+  // set the data files back in time, and the indexes (except the top one) a little later; then let the leaves settle
+  private void setBack() throws IOException {
+    Path topIndex = top.resolve(NAME + GribCdmIndex.NCX_SUFFIX);
+    for (Path p : TestGribIndexThreads.listFiles(top, ".grib2", ".gbx9"))
+      Files.setLastModifiedTime(p, FileTime.fromMillis(DATA_TIME));
+    for (Path p : TestGribIndexThreads.listFiles(top, ".ncx4"))
+      if (!p.equals(topIndex)) Files.setLastModifiedTime(p, FileTime.fromMillis(INDEX_TIME));
+
+    Assert.assertFalse(update());  // the data files changed, so all leaves are checked, none rewritten
+    Assert.assertEquals(new HashSet<String>(), rewritten());
+  }
+
+  // the directories whose index was rewritten, not counting the top
+  private Set<String> rewritten() throws IOException {
+    Set<String> result = new HashSet<>();
+    for (Path p : TestGribIndexThreads.listFiles(top, ".ncx4")) {
+      Path dir = top.relativize(p.getParent());
+      if (dir.toString().isEmpty()) continue;
+      if (Files.getLastModifiedTime(p).toMillis() != INDEX_TIME)
+        result.add(dir.toString());
+    }
+    return result;
+  }
+
+  private Set<String> dirs(String... dirs) {
+    return new HashSet<>(Arrays.asList(dirs));
+  }
+
+  // the indexes must be the same as the ones a full update makes, except for the file times, which setBack() changed
+  private void compareWithFullUpdate() throws IOException {
+    Map<String, TestGribIndexThreads.Index> tracked = readIndexes();
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, null);
+    Map<String, TestGribIndexThreads.Index> full = readIndexes();
+
+    Assert.assertEquals(full.keySet(), tracked.keySet());
+    for (String name : full.keySet()) {
+      Assert.assertArrayEquals(name, full.get(name).records, tracked.get(name).records);
+      Assert.assertEquals(name, clearTimes(full.get(name).proto), clearTimes(tracked.get(name).proto));
+    }
+  }
+
+  private GribCollectionProto.GribCollection clearTimes(GribCollectionProto.GribCollection proto) {
+    GribCollectionProto.GribCollection.Builder builder = proto.toBuilder();
+    for (GribCollectionProto.MFile.Builder mfile : builder.getMfilesBuilderList())
+      mfile.clearLastModified();
+    return builder.build();
+  }
+
+  private Map<String, TestGribIndexThreads.Index> readIndexes() throws IOException {
+    Map<String, TestGribIndexThreads.Index> result = new TreeMap<>();
+    for (Path p : TestGribIndexThreads.listFiles(top, ".ncx4"))
+      result.put(top.relativize(p).toString(), new TestGribIndexThreads.Index(p));
+    return result;
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Indexes written with GribCdmIndex.setFixedWidthRecords(true) must give the same records and data as the protobuf
+ * encoding, read through VariableIndex.readRecords() and getRecordAt().
+ */
+public class TestFixedWidthRecords {
+  static private final String NAME = "TestFixedWidthRecords";
+  static private final int NDAYS = 2, NRUNS = 3;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribCdmIndex.setFixedWidthRecords(false);
+    GribCollectionImmutable.maxIndexMap = Integer.MAX_VALUE;
+  }
+
+  @Test
+  public void testCollection() throws IOException {
+    compare("none", false);
+  }
+
+  @Test
+  public void testDirectoryPartition() throws IOException {
+    compare("directory", false);
+  }
+
+  @Test
+  public void testMapEachSection() throws IOException {
+    compare("none", true);
+  }
+
+  private void compare(String partitionType, boolean mapEachSection) throws IOException {
+    Path top = makeData();
+    String spec = partitionType.equals("directory") ? top.toString() + "/**/.*grib2$" : top.resolve("day1").toString() + "/.*grib2$";
+    FeatureCollectionConfig config = new FeatureCollectionConfig(NAME, "test/" + NAME, FeatureCollectionType.GRIB2,
+            spec, null, null, null, partitionType, null);
+    Path topIndex = (partitionType.equals("directory") ? top : top.resolve("day1")).resolve(NAME + GribCdmIndex.NCX_SUFFIX);
+
+    GribCdmIndex.setFixedWidthRecords(false);
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, null);
+    Map<String, String> protoRecords = readRecords(top, config, false);
+    Map<String, Array> protoData = readData(topIndex);
+
+    if (mapEachSection) // as if the index were too big for one mapping
+      GribCollectionImmutable.maxIndexMap = 100;
+    GribCdmIndex.setFixedWidthRecords(true);
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, null);
+    Map<String, String> fixedRecords = readRecords(top, config, true);
+    Map<String, Array> fixedData = readData(topIndex);
+
+    Assert.assertTrue(protoRecords.size() > 0);
+    Assert.assertEquals(protoRecords, fixedRecords);
+
+    Assert.assertTrue(protoData.size() > 0);
+    Assert.assertEquals(protoData.keySet(), fixedData.keySet());
+    for (String name : protoData.keySet())
+      Assert.assertEquals(name, protoData.get(name).getDataAsByteBuffer(), fixedData.get(name).getDataAsByteBuffer());
+  }
+
+  // all the records of all the variables in the GribCollection indexes, by index and variable
+  private Map<String, String> readRecords(Path top, FeatureCollectionConfig config, boolean wantFixedWidth) throws IOException {
+    Map<String, String> result = new TreeMap<>();
+    for (Path p : TestGribIndexThreads.listFiles(top, GribCdmIndex.NCX_SUFFIX)) {
+      try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(p.toString(), config, false, null)) {
+        if (gc instanceof PartitionCollectionImmutable) continue; // no records
+
+        for (GribCollectionImmutable.Dataset ds : gc.getDatasets()) {
+          for (GribCollectionImmutable.GroupGC group : ds.getGroups()) {
+            for (GribCollectionImmutable.VariableIndex vi : group.getVariables()) {
+              Assert.assertEquals(wantFixedWidth, isFixedWidth(gc, vi));
+              vi.readRecords();
+              StringBuilder sb = new StringBuilder();
+              int n = vi.getSparseArray().getTotalSize();
+              for (int i = 0; i < n; i++) {
+                GribCollectionImmutable.Record r = vi.getRecordAt(i);
+                sb.append(r == null ? "missing" : r.fileno + " " + r.pos + " " + r.bmsOffset + " " + r.drsOffset).append(";");
+              }
+              result.put(top.relativize(p) + " " + ds.getType() + " " + vi.makeVariableName(), sb.toString());
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean isFixedWidth(GribCollectionImmutable gc, GribCollectionImmutable.VariableIndex vi) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(gc.indexFilename, "r")) {
+      byte[] b = new byte[RecordTable.getMagicLength()];
+      raf.seek(vi.recordsPos);
+      raf.readFully(b);
+      return RecordTable.isFixedWidth(b);
+    }
+  }
+
+  private Map<String, Array> readData(Path index) throws IOException {
+    Map<String, Array> result = new TreeMap<>();
+    try (NetcdfFile ncfile = NetcdfFile.open(index.toString())) {
+      for (Variable v : ncfile.getVariables())
+        result.put(v.getFullName(), v.read());
+    }
+    return result;
+  }
+
+  // a directory for each day, each with a file for each run, made from one GRIB2 message by changing its reference time
+  private Path makeData() throws IOException {
+    byte[] message = Files.readAllBytes(Paths.get("../grib/src/test/data/cosmo-eu.grib2"));
+    Path top = tempFolder.newFolder("top").toPath();
+    for (int day = 1; day <= NDAYS; day++) {
+      Path dir = Files.createDirectory(top.resolve("day" + day));
+      for (int run = 0; run < NRUNS; run++) {
+        message[31] = (byte) day;
+        message[32] = (byte) (6 * run);
+        Files.write(dir.resolve(String.format("cosmo_%02d_%02d.grib2", day, 6 * run)), message);
+      }
+    }
+    return top;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.nc2.stream.NcStream;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The ncx4 files made with several index threads must be the same as the ones made with one.
+ * They are compared byte for byte, except for the lastModified of the child indexes, which a partition index keeps.
+ */
+public class TestGribIndexThreads {
+  static private final int NDAYS = 3, NRUNS = 4;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribCdmIndex.setIndexThreads(1);
+  }
+
+  @Test
+  public void testCollection() throws IOException {
+    compare("none");
+  }
+
+  @Test
+  public void testFilePartition() throws IOException {
+    compare("file");
+  }
+
+  @Test
+  public void testDirectoryPartition() throws IOException {
+    compare("directory");
+  }
+
+  private void compare(String partitionType) throws IOException {
+    Path top = makeData();
+    String spec = top.toString() + "/**/.*grib2$";
+    if (!partitionType.equals("directory"))
+      spec = top.resolve("day1").toString() + "/.*grib2$";
+
+    GribCdmIndex.setIndexThreads(1);
+    Map<String, Index> serial = build(top, spec, partitionType);
+    Assert.assertTrue(serial.size() > 0);
+
+    GribCdmIndex.setIndexThreads(4);
+    Map<String, Index> parallel = build(top, spec, partitionType);
+
+    Assert.assertEquals(serial.keySet(), parallel.keySet());
+    for (String name : serial.keySet()) {
+      Assert.assertArrayEquals(name, serial.get(name).records, parallel.get(name).records);
+      Assert.assertEquals(name, serial.get(name).proto, parallel.get(name).proto);
+    }
+  }
+
+  // make each index from scratch, return the ncx4 files by path
+  private Map<String, Index> build(Path top, String spec, String partitionType) throws IOException {
+    for (Path p : listFiles(top, ".gbx9", ".ncx4"))
+      Files.delete(p);
+
+    FeatureCollectionConfig config = new FeatureCollectionConfig("TestGribIndexThreads", "test/TestGribIndexThreads",
+            FeatureCollectionType.GRIB2, spec, null, null, null, partitionType, null);
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, null);
+
+    Map<String, Index> result = new TreeMap<>();
+    for (Path p : listFiles(top, ".ncx4"))
+      result.put(top.relativize(p).toString(), new Index(p));
+    return result;
+  }
+
+  // an ncx4 file, read as in GribCollectionBuilderFromIndex
+  static class Index {
+    byte[] records; // magic, version and the variable records
+    GribCollectionProto.GribCollection proto;
+
+    Index(Path p) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(p.toString(), "r")) {
+        raf.order(RandomAccessFile.BIG_ENDIAN);
+        raf.seek(Grib2CollectionWriter.MAGIC_START.length() + 4);
+        long skip = raf.readLong();
+        records = new byte[(int) raf.getFilePointer() + (int) skip];
+        raf.seek(0);
+        raf.readFully(records);
+
+        byte[] m = new byte[NcStream.readVInt(raf)];
+        raf.readFully(m);
+        GribCollectionProto.GribCollection.Builder builder = GribCollectionProto.GribCollection.parseFrom(m).toBuilder();
+        for (GribCollectionProto.Partition.Builder partition : builder.getPartitionsBuilderList())
+          partition.clearLastModified(); // the child indexes are remade each time
+        for (GribCollectionProto.MFile.Builder mfile : builder.getMfilesBuilderList())
+          if (mfile.getFilename().endsWith(".ncx4")) mfile.clearLastModified();
+        proto = builder.build();
+      }
+    }
+  }
+
+  static Iterable<Path> listFiles(Path top, String... suffixes) throws IOException {
+    try (Stream<Path> paths = Files.walk(top)) {
+      return paths.filter(p -> Stream.of(suffixes).anyMatch(s -> p.toString().endsWith(s))).collect(Collectors.toList());
+    }
+  }
+
+  // a directory for each day, each with a file for each run, made from one GRIB2 message by changing its reference time
+  private Path makeData() throws IOException {
+    byte[] message = Files.readAllBytes(Paths.get("../grib/src/test/data/cosmo-eu.grib2"));
+    Path top = tempFolder.newFolder("top").toPath();
+    for (int day = 1; day <= NDAYS; day++) {
+      Path dir = Files.createDirectory(top.resolve("day" + day));
+      for (int run = 0; run < NRUNS; run++) {
+        message[31] = (byte) day;      // section 1 day
+        message[32] = (byte) (6 * run); // section 1 hour
+        Files.write(dir.resolve(String.format("cosmo_%02d_%02d.grib2", day, 6 * run)), message);
+      }
+    }
+    return top;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test GribRecordCache
+ */
+public class TestGribRecordCache {
+
+  @Test
+  public void testHitsAndKeys() throws IOException {
+    GribRecordCache cache = new GribRecordCache("test", 1000 * 1000);
+    AtomicInteger nreads = new AtomicInteger();
+
+    float[] data1 = cache.get("/data/file1", 10, 1000, 0, () -> { nreads.incrementAndGet(); return new float[100]; });
+    float[] data2 = cache.get("/data/file1", 10, 1000, 0, () -> { nreads.incrementAndGet(); return new float[100]; });
+    Assert.assertSame(data1, data2);
+    Assert.assertEquals(1, nreads.get());
+
+    // different position, bitmap, file or modification time is a different record
+    cache.get("/data/file1", 10, 2000, 0, () -> { nreads.incrementAndGet(); return new float[100]; });
+    cache.get("/data/file1", 10, 1000, 500, () -> { nreads.incrementAndGet(); return new float[100]; });
+    cache.get("/data/file2", 10, 1000, 0, () -> { nreads.incrementAndGet(); return new float[100]; });
+    cache.get("/data/file1", 11, 1000, 0, () -> { nreads.incrementAndGet(); return new float[100]; });
+    Assert.assertEquals(5, nreads.get());
+
+    Assert.assertEquals(1, cache.getStats().hitCount());
+    Assert.assertEquals(5, cache.getStats().missCount());
+
+    Formatter f = new Formatter();
+    cache.showStats(f);
+    Assert.assertTrue(f.toString().contains("hit ratio"));
+  }
+
+  @Test
+  public void testBudget() throws IOException {
+    GribRecordCache cache = new GribRecordCache("test", 40 * 1000);
+    for (int i = 0; i < 100; i++)
+      cache.get("/data/file", 1, i * 1000, 0, () -> new float[1000]);
+    Assert.assertTrue(cache.getSizeBytes() <= 40 * 1000);
+    Assert.assertTrue(cache.getStats().evictionCount() > 0);
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    GribRecordCache cache = new GribRecordCache("test", 1000 * 1000);
+    cache.get("/data/gfs/file1", 1, 0, 0, () -> new float[10]);
+    cache.get("/data/gfs/sub/file2", 1, 0, 0, () -> new float[10]);
+    cache.get("/data/gfs2/file3", 1, 0, 0, () -> new float[10]);
+
+    cache.invalidate("/data/gfs/file1");
+    AtomicInteger nreads = new AtomicInteger();
+    cache.get("/data/gfs/file1", 1, 0, 0, () -> { nreads.incrementAndGet(); return new float[10]; });
+    cache.get("/data/gfs/sub/file2", 1, 0, 0, () -> { nreads.incrementAndGet(); return new float[10]; });
+    Assert.assertEquals(1, nreads.get());
+
+    // only files in the directory and its subdirectories
+    cache.invalidateDirectory("/data/gfs");
+    cache.get("/data/gfs/file1", 1, 0, 0, () -> { nreads.incrementAndGet(); return new float[10]; });
+    cache.get("/data/gfs/sub/file2", 1, 0, 0, () -> { nreads.incrementAndGet(); return new float[10]; });
+    cache.get("/data/gfs2/file3", 1, 0, 0, () -> { nreads.incrementAndGet(); return new float[10]; });
+    Assert.assertEquals(3, nreads.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadFails() throws IOException {
+    GribRecordCache cache = new GribRecordCache("test", 1000 * 1000);
+    cache.get("/data/file", 1, 0, 0, () -> { throw new IOException("bad record"); });
+  }
+}
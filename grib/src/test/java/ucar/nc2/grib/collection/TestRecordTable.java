@@ -0,0 +1,136 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Test that the fixed-width record encoding finds the same records as the protobuf SparseArray.
+ */
+public class TestRecordTable {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // shape (2,3), 4 records, 2 missing
+  private GribCollectionProto.SparseArray makeProto() {
+    GribCollectionProto.SparseArray.Builder b = GribCollectionProto.SparseArray.newBuilder();
+    b.addSize(2);
+    b.addSize(3);
+    int[] track = {1, 0, 2, 3, 0, 4};
+    for (int t : track) b.addTrack(t);
+    for (int i = 0; i < 4; i++) {
+      GribCollectionProto.Record.Builder br = GribCollectionProto.Record.newBuilder();
+      br.setFileno(i % 2);
+      br.setStartPos(3000000000L + 1000 * i);  // past 2 GB
+      br.setBmsOffset(10 * i);
+      br.setDrsOffset(20 * i);
+      b.addRecords(br);
+    }
+    b.setNdups(7);
+    return b.build();
+  }
+
+  private void compare(RecordTable expect, RecordTable got) {
+    Assert.assertEquals(expect.getNrecords(), got.getNrecords());
+    Assert.assertEquals(expect.countNotMissing(), got.countNotMissing());
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 3; j++) {
+        GribCollectionImmutable.Record r1 = expect.getContent(new int[]{i, j});
+        GribCollectionImmutable.Record r2 = got.getContent(new int[]{i, j});
+        if (r1 == null) {
+          Assert.assertNull(r2);
+          continue;
+        }
+        Assert.assertEquals(r1.fileno, r2.fileno);
+        Assert.assertEquals(r1.pos, r2.pos);
+        Assert.assertEquals(r1.bmsOffset, r2.bmsOffset);
+        Assert.assertEquals(r1.drsOffset, r2.drsOffset);
+      }
+    }
+  }
+
+  @Test
+  public void testEncoding() throws IOException {
+    GribCollectionProto.SparseArray proto = makeProto();
+    Assert.assertFalse(RecordTable.isFixedWidth(proto.toByteArray()));
+
+    byte[] b = RecordTable.encodeFixedWidth(proto);
+    Assert.assertTrue(RecordTable.isFixedWidth(b));
+
+    RecordTable decoded = RecordTable.fromProto(proto);
+    Assert.assertEquals(4, decoded.countNotMissing());
+    Assert.assertNull(decoded.getContent(1));
+    Assert.assertEquals(3000002000L, decoded.getContent(3).pos);
+    compare(decoded, RecordTable.fromFixedWidth(ByteBuffer.wrap(b)));
+
+    // truncated
+    try {
+      RecordTable.fromFixedWidth(ByteBuffer.wrap(b, 0, b.length - 1).slice());
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMapped() throws IOException {
+    GribCollectionProto.SparseArray proto = makeProto();
+    byte[] b = RecordTable.encodeFixedWidth(proto);
+
+    // record section in the middle of a file
+    File file = tempFolder.newFile();
+    byte[] all = new byte[100 + b.length + 100];
+    System.arraycopy(b, 0, all, 100, b.length);
+    Files.write(file.toPath(), all);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      map.position(100);
+      map.limit(100 + b.length);
+      RecordTable mapped = RecordTable.fromFixedWidth(map.slice());
+      compare(RecordTable.fromProto(proto), mapped);
+      Assert.assertEquals(6, mapped.makeSparseArray().getTotalSize());
+    }
+  }
+}
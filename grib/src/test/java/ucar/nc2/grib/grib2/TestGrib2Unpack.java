@@ -0,0 +1,350 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.grib.grib2;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compare Grib2DataReader2 with the original one-value-at-a-time decoding in Grib2DataReader,
+ * on synthetic simple (5.0) and complex (5.2, 5.3) packed records.
+ */
+public class TestGrib2Unpack {
+  static private final int nx = 37;
+  static private final int ny = 23;
+  static private final int npoints = nx * ny;
+
+  @Test
+  public void testSimplePacking() throws IOException {
+    Random r = new Random(17);
+    for (int nb : new int[]{1, 7, 8, 12, 16, 21, 24, 31}) {
+      Record rec = new Record(0, nb);
+      for (int i = 0; i < npoints; i++)
+        rec.data.write(r.nextLong() & ((1L << nb) - 1), nb);
+      compare(rec, npoints, null, 0);
+      compare(rec, npoints, null, 128);
+    }
+  }
+
+  @Test
+  public void testSimplePackingBitmap() throws IOException {
+    Random r = new Random(19);
+    byte[] bitmap = new byte[(npoints + 7) / 8];
+    r.nextBytes(bitmap);
+    int count = 0;
+    for (int i = 0; i < npoints; i++)
+      if ((bitmap[i / 8] & (0x80 >> (i % 8))) != 0) count++;
+
+    for (int nb : new int[]{5, 8, 16}) {
+      Record rec = new Record(0, nb);
+      for (int i = 0; i < count; i++)
+        rec.data.write(r.nextInt(1 << nb), nb);
+      compare(rec, count, bitmap, 0);
+    }
+  }
+
+  @Test
+  public void testComplexPacking() throws IOException {
+    Random r = new Random(23);
+    for (int mvm = 0; mvm <= 1; mvm++) {
+      Record rec = new Record(2, 11);
+      writeGroups(rec, r, mvm, 0, 12);
+      compare(rec, npoints, null, 0);
+    }
+  }
+
+  @Test
+  public void testComplexPackingWideGroups() throws IOException {
+    Random r = new Random(31);
+    for (int mvm = 0; mvm <= 2; mvm++) {
+      Record rec = new Record(2, 11);
+      rec.bitsGroupWidths = 5;
+      writeGroups(rec, r, mvm, 22, 30);
+      compare(rec, npoints, null, 0);
+
+      rec = new Record(3, 11);
+      rec.orderSpatial = 1;
+      rec.descriptorSpatial = 2;
+      rec.bitsGroupWidths = 5;
+      writeSignMagnitude(rec.data, 1234, 16);
+      writeSignMagnitude(rec.data, -300, 16);
+      writeGroups(rec, r, mvm, 22, 30);
+      compare(rec, npoints, null, 0);
+    }
+  }
+
+  // with NB > 24, all ones is missing but all ones minus one is a value
+  @Test
+  public void testComplexPackingMissingNearAllOnes() throws IOException {
+    for (int nb = 25; nb <= 30; nb++) {
+      int allOnes = (1 << nb) - 1;
+      Record rec = new Record(2, 11);
+      rec.bitsGroupWidths = 5;
+      rec.missingValueManagement = 1;
+      rec.numberOfGroups = 1;
+      rec.lengthLastGroup = npoints;
+      BitWriter w = rec.data;
+      w.write(5, rec.numberOfBits);  // X1
+      w.align();
+      w.write(nb, 5);  // NB
+      w.align();
+      w.write(0, 8);  // L, the last group uses lengthLastGroup
+      w.align();
+      for (int i = 0; i < npoints; i++)
+        w.write((i % 3 == 0) ? allOnes : (i % 3 == 1) ? allOnes - 1 : i, nb);
+
+      float[] data = read(rec);
+      float R = -12.75f, EE = 0.25f, DD = 10.0f;
+      for (int i = 0; i < npoints; i++) {
+        if (i % 3 == 0) {
+          Assert.assertTrue("nb=" + nb + " i=" + i, Float.isNaN(data[i]));
+        } else {
+          int X2 = (i % 3 == 1) ? allOnes - 1 : i;
+          Assert.assertEquals("nb=" + nb + " i=" + i, (R + (5 + X2) * EE) / DD, data[i], 0.0f);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testComplexPackingSpatialDifferencing() throws IOException {
+    Random r = new Random(29);
+    for (int order = 1; order <= 2; order++) {
+      Record rec = new Record(3, 9);
+      rec.orderSpatial = order;
+      rec.descriptorSpatial = 2;
+      writeSignMagnitude(rec.data, 1234, 16);
+      if (order == 2) writeSignMagnitude(rec.data, -77, 16);
+      writeSignMagnitude(rec.data, -300, 16);
+      writeGroups(rec, r, 0, 0, 12);
+      compare(rec, npoints, null, 0);
+      compare(rec, npoints, null, 64);
+    }
+  }
+
+  // random groups covering npoints, with widths of 0 or minWidth to maxWidth;
+  // the data section already has any spatial differencing descriptors
+  private void writeGroups(Record rec, Random r, int mvm, int minWidth, int maxWidth) {
+    int ng = 0;
+    int total = 0;
+    int[] len = new int[npoints];
+    while (total < npoints) {
+      len[ng] = Math.min(1 + r.nextInt(40), npoints - total);
+      total += len[ng++];
+    }
+    int[] width = new int[ng];
+    for (int i = 0; i < ng; i++)
+      width[i] = (i % 5 == 0) ? 0 : minWidth + r.nextInt(maxWidth - minWidth + 1);
+
+    rec.missingValueManagement = mvm;
+    rec.numberOfGroups = ng;
+    rec.lengthLastGroup = len[ng - 1];
+
+    BitWriter w = rec.data;
+    w.align();
+    for (int i = 0; i < ng; i++) w.write(r.nextInt(1 << rec.numberOfBits), rec.numberOfBits);  // X1
+    w.align();
+    for (int i = 0; i < ng; i++) w.write(width[i], rec.bitsGroupWidths);  // NB
+    w.align();
+    for (int i = 0; i < ng; i++) w.write(len[i], 8);   // L
+    w.align();
+    for (int i = 0; i < ng; i++) {
+      int nb = width[i];
+      for (int j = 0; j < len[i]; j++) {
+        // all ones is missing when mvm != 0, all ones minus one too when mvm == 2.
+        // other values stay away from all ones, which Grib2DataReader compares as floats
+        long x2 = (mvm != 0 && j % 7 == 3) ? (1L << nb) - 1 : (mvm == 2 && j % 7 == 5) ? (1L << nb) - 2 :
+                r.nextInt(1 << (nb > 24 ? nb - 1 : nb));
+        w.write(x2, nb);
+      }
+    }
+  }
+
+  private void writeSignMagnitude(BitWriter w, int val, int nbits) {
+    w.write(val < 0 ? 1 : 0, 1);
+    w.write(Math.abs(val), nbits - 1);
+  }
+
+  private float[] read(Record rec) throws IOException {
+    byte[] bytes = rec.makeSections(npoints, null);
+    long dataStart = rec.drsLength() + 6;
+    try (RandomAccessFile raf = new InMemoryRandomAccessFile("TestGrib2Unpack", bytes)) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      raf.seek(11);
+      Grib2Drs gdrs = Grib2Drs.factory(rec.template, raf);
+      raf.seek(rec.drsLength());
+      Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
+      Grib2DataReader2 reader = new Grib2DataReader2(rec.template, npoints, npoints, 0, nx, dataStart, bytes.length - (int) dataStart);
+      return reader.getData(raf, bms, gdrs);
+    }
+  }
+
+  private void compare(Record rec, int dataPoints, byte[] bitmap, int scanMode) throws IOException {
+    byte[] bytes = rec.makeSections(dataPoints, bitmap);
+    int drsLength = rec.drsLength();
+    int bmsLength = 6 + (bitmap == null ? 0 : bitmap.length);
+    long dataStart = drsLength + bmsLength;
+    int dataLength = bytes.length - (int) dataStart;
+
+    try (RandomAccessFile raf = new InMemoryRandomAccessFile("TestGrib2Unpack", bytes)) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      raf.seek(11);
+      Grib2Drs gdrs = Grib2Drs.factory(rec.template, raf);
+      raf.seek(drsLength);
+      Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
+
+      Grib2DataReader old = new Grib2DataReader(rec.template, npoints, dataPoints, scanMode, nx, dataStart, dataLength);
+      float[] expect = old.getData(raf, bms.getBitmap(raf), gdrs);
+
+      Grib2DataReader2 reader = new Grib2DataReader2(rec.template, npoints, dataPoints, scanMode, nx, dataStart, dataLength);
+      float[] data = reader.getData(raf, bms, gdrs);
+      Assert.assertEquals(npoints, data.length);
+      for (int i = 0; i < npoints; i++)
+        Assert.assertEquals(rec + " i=" + i, Float.floatToIntBits(expect[i]), Float.floatToIntBits(data[i]));
+
+      // decode into the middle of a bigger array
+      float[] dst = new float[3 * npoints];
+      reader = new Grib2DataReader2(rec.template, npoints, dataPoints, scanMode, nx, dataStart, dataLength);
+      Assert.assertSame(dst, reader.getData(raf, bms, gdrs, dst, npoints));
+      for (int i = 0; i < npoints; i++) {
+        Assert.assertEquals(0.0f, dst[i], 0.0f);
+        Assert.assertEquals(rec + " i=" + i, Float.floatToIntBits(expect[i]), Float.floatToIntBits(dst[npoints + i]));
+        Assert.assertEquals(0.0f, dst[2 * npoints + i], 0.0f);
+      }
+    }
+  }
+
+  // the fields of the data representation section, and the packed data
+  private static class Record {
+    final int template, numberOfBits;
+    int missingValueManagement, numberOfGroups, lengthLastGroup;
+    int bitsGroupWidths = 4;
+    int orderSpatial, descriptorSpatial;
+    BitWriter data = new BitWriter();
+
+    Record(int template, int numberOfBits) {
+      this.template = template;
+      this.numberOfBits = numberOfBits;
+    }
+
+    int drsLength() {
+      return (template == 0) ? 21 : (template == 2) ? 47 : 49;
+    }
+
+    // sections 5, 6 and 7
+    byte[] makeSections(int dataPoints, byte[] bitmap) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BitWriter drs = new BitWriter();
+      drs.write(drsLength(), 32);
+      drs.write(5, 8);
+      drs.write(dataPoints, 32);
+      drs.write(template, 16);
+      drs.write(Float.floatToIntBits(-12.75f), 32); // R
+      drs.write(0x8002, 16); // E = -2
+      drs.write(1, 16);      // D = 1
+      drs.write(numberOfBits, 8);
+      drs.write(0, 8);
+      if (template != 0) {
+        drs.write(1, 8);    // group splitting method
+        drs.write(missingValueManagement, 8);
+        drs.write(Float.floatToIntBits(9999.0f), 32);
+        drs.write(Float.floatToIntBits(9998.0f), 32);
+        drs.write(numberOfGroups, 32);
+        drs.write(0, 8);    // reference for group widths
+        drs.write(bitsGroupWidths, 8);  // bits for group widths
+        drs.write(0, 32);   // reference for group lengths
+        drs.write(1, 8);    // length increment
+        drs.write(lengthLastGroup, 32);
+        drs.write(8, 8);    // bits for scaled group lengths
+      }
+      if (template == 3) {
+        drs.write(orderSpatial, 8);
+        drs.write(descriptorSpatial, 8);
+      }
+      out.write(drs.toByteArray(), 0, drsLength());
+
+      BitWriter bms = new BitWriter();
+      bms.write(6 + (bitmap == null ? 0 : bitmap.length), 32);
+      bms.write(6, 8);
+      bms.write(bitmap == null ? 255 : 0, 8);
+      out.write(bms.toByteArray(), 0, 6);
+      if (bitmap != null) out.write(bitmap, 0, bitmap.length);
+
+      byte[] packed = data.toByteArray();
+      BitWriter ds = new BitWriter();
+      ds.write(5 + packed.length, 32);
+      ds.write(7, 8);
+      out.write(ds.toByteArray(), 0, 5);
+      out.write(packed, 0, packed.length);
+      return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+      return "template=" + template + " nb=" + numberOfBits + " mvm=" + missingValueManagement + " order=" + orderSpatial +
+              " bitsGroupWidths=" + bitsGroupWidths;
+    }
+  }
+
+  // msb first
+  private static class BitWriter {
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int buf, nbits;
+
+    void write(long value, int nb) {
+      for (int i = nb - 1; i >= 0; i--) {
+        buf = (buf << 1) | (int) ((value >>> i) & 1);
+        if (++nbits == 8) {
+          out.write(buf);
+          buf = 0;
+          nbits = 0;
+        }
+      }
+    }
+
+    void align() {
+      if (nbits > 0) write(0, 8 - nbits);
+    }
+
+    byte[] toByteArray() {
+      align();
+      return out.toByteArray();
+    }
+  }
+}
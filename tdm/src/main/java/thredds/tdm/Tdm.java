@@ -455,6 +455,16 @@ public class Tdm {
     @Parameter(names = {"-nthreads"}, description = "number of threads", required = false)
     public int nthreads = 1;
 
+    @Parameter(names = {"-indexThreads"}, description = "number of threads used to index the files and partitions of one collection", required = false)
+    public int indexThreads = 1;
+
+    @Parameter(names = {"-trackChanges"}, description = "only update the directories of a partition that changed since the last update", required = false)
+    public boolean trackChanges;
+
+    @Parameter(names = {"-fixedWidthRecords"}, description = "write records in an encoding that is read in place from the memory-mapped index. " +
+            "The index version is unchanged, so older TDS/TDM versions fail to read these indexes", required = false)
+    public boolean fixedWidthRecords;
+
     @Parameter(names = {"-showOnly"}, description = "show collections and exit", required = false)
     public boolean showOnly;
 
@@ -525,6 +535,21 @@ public class Tdm {
         if (cmdLine.nthreads != 0)
           app.setNThreads(cmdLine.nthreads);
 
+        if (cmdLine.indexThreads > 1) {
+          GribCdmIndex.setIndexThreads(cmdLine.indexThreads);
+          tdmLogger.info(" TDM indexThreads= {}", cmdLine.indexThreads);
+        }
+
+        if (cmdLine.trackChanges) {
+          GribCdmIndex.setTrackDirectoryChanges(true);
+          tdmLogger.info(" TDM trackChanges= true");
+        }
+
+        if (cmdLine.fixedWidthRecords) {
+          GribCdmIndex.setFixedWidthRecords(true);
+          tdmLogger.info(" TDM fixedWidthRecords= true");
+        }
+
         if (cmdLine.showOnly)
           app.setShowOnly(true);
 
@@ -46,6 +46,7 @@ import thredds.server.catalog.builder.ConfigCatalogBuilder;
 import thredds.server.catalog.tracker.*;
 import thredds.server.config.TdsContext;
 import thredds.server.config.ThreddsConfig;
+import thredds.servlet.MetadataResponseCache;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.util.Counters;
 import ucar.util.prefs.PreferencesExt;
@@ -229,6 +230,11 @@ public class ConfigCatalogInitialization {
     if (datasetManager != null)
       datasetManager.setDatasetTracker(datasetTracker);
 
+    // a catalog may have changed a dataset without changing its file, eg an NcML wrapper
+    MetadataResponseCache responseCache = MetadataResponseCache.getResponseCache();
+    if (responseCache != null)
+      responseCache.clear();
+
     // cleanup old version of the database
     if (!isStartup && readMode == ReadMode.always) {
       DatasetTrackerChronicle.cleanupBefore(trackerDir, trackerNumber);
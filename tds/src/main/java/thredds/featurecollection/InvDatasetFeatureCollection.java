@@ -42,6 +42,7 @@ import thredds.core.AllowedServices;
 import thredds.core.StandardService;
 import thredds.inventory.*;
 import thredds.server.catalog.FeatureCollectionRef;
+import thredds.servlet.MetadataResponseCache;
 import ucar.nc2.dataset.DatasetUrl;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.dt.GridDataset;
@@ -330,6 +331,10 @@ public abstract class InvDatasetFeatureCollection implements Closeable {
     // makeDatasetTop(localState);
     localState.lastInvChange = System.currentTimeMillis();
 
+    MetadataResponseCache responseCache = MetadataResponseCache.getResponseCache();
+    if (responseCache != null)
+      responseCache.invalidatePath(getPath());  // cached DDS/DAS/DMR may be out of date
+
     // switch to live
     synchronized (lock) {
       state = localState;
@@ -37,6 +37,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import thredds.server.config.TdsContext;
+import thredds.servlet.MetadataResponseCache;
 import thredds.servlet.ServletUtil;
 import ucar.nc2.dataset.NetcdfDataset;
 
@@ -48,7 +49,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.grib.collection.GribDataReader;
+import ucar.nc2.grib.collection.GribRecordCache;
+import ucar.nc2.iosp.hdf5.H5chunkCache;
+import ucar.nc2.iosp.hdf5.H5iosp;
 import ucar.nc2.util.cache.FileCacheIF;
+import ucar.unidata.io.BlockCache;
 import ucar.unidata.io.RandomAccessFile;
 
 /**
@@ -149,6 +155,34 @@ public class DebugCommands {
           fc.showCache(f);
         }
 
+        BlockCache bc = RandomAccessFile.getGlobalBlockCache();
+        if (bc == null) f.format("%nRandomAccessFile BlockCache : turned off%n");
+        else {
+          f.format("%n");
+          bc.showStats(f);
+        }
+
+        H5chunkCache h5cc = H5iosp.getChunkCache();
+        if (h5cc == null) f.format("%nH5iosp chunk cache : turned off%n");
+        else {
+          f.format("%n");
+          h5cc.showStats(f);
+        }
+
+        GribRecordCache grc = GribDataReader.getRecordCache();
+        if (grc == null) f.format("%nGribDataReader record cache : turned off%n");
+        else {
+          f.format("%n");
+          grc.showStats(f);
+        }
+
+        MetadataResponseCache mrc = MetadataResponseCache.getResponseCache();
+        if (mrc == null) f.format("%nMetadataResponseCache : turned off%n");
+        else {
+          f.format("%n");
+          mrc.showStats(f);
+        }
+
         fc = NetcdfDataset.getNetcdfFileCache();
         if (fc == null) f.format("NetcdfDatasetFileCache : turned off%n");
         else {
@@ -172,6 +206,14 @@ public class DebugCommands {
        public void doAction(Event e) {
          NetcdfDataset.getNetcdfFileCache().clearCache(false);
          RandomAccessFile.getGlobalFileCache().clearCache(false);
+         BlockCache bc = RandomAccessFile.getGlobalBlockCache();
+         if (bc != null) bc.clear();
+         H5chunkCache h5cc = H5iosp.getChunkCache();
+         if (h5cc != null) h5cc.clear();
+         GribRecordCache grc = GribDataReader.getRecordCache();
+         if (grc != null) grc.clear();
+         MetadataResponseCache mrc = MetadataResponseCache.getResponseCache();
+         if (mrc != null) mrc.clear();
          FileCacheIF fc = GribCdmIndex.gribCollectionCache;
          if (fc != null) fc.clearCache(false);
          e.pw.println("  ClearCache ok");
@@ -66,6 +66,7 @@ import ucar.nc2.util.DebugFlagsImpl;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.util.DiskCache2;
 import ucar.nc2.util.cache.FileCache;
+import ucar.unidata.io.BlockCache;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.util.prefs.PreferencesExt;
 import ucar.util.prefs.XMLStore;
@@ -73,6 +74,7 @@ import ucar.util.prefs.XMLStore;
 import java.io.File;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -304,6 +306,14 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     Aggregation.setTypicalDatasetMode(typicalDataset);
     startupLog.info("TdsInit: Aggregation.setTypicalDatasetMode= " + typicalDataset);
 
+    // parallel reads of nested datasets: default is off
+    int aggThreads = ThreddsConfig.getInt("Aggregation.threads", 0);
+    if (aggThreads > 1) {
+      int aggThreadsPerRead = ThreddsConfig.getInt("Aggregation.maxThreadsPerRead", 0);
+      Aggregation.setParallelism(aggThreads, aggThreadsPerRead);
+      startupLog.info("TdsInit: Aggregation.setParallelism threads= " + aggThreads + " maxThreadsPerRead= " + aggThreadsPerRead);
+    }
+
     ////////////////////////////////////////////////////////////////
     // Disk Caching
     String dir;
@@ -399,6 +409,63 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.info("TdsInit: RandomAccessFile.initPartitionCache= [" + min + "," + max + "] scour = " + secs);
     }
 
+    // RandomAccessFile memory mapping: default is off
+    long mmapThreshold = ThreddsConfig.getBytes("RandomAccessFile.mmapThreshold", -1);
+    List<String> mmapLocations = ThreddsConfig.getElementList("RandomAccessFile", "mmapLocation");
+    if (mmapThreshold >= 0 || !mmapLocations.isEmpty()) {
+      RandomAccessFile.setMMapPolicy(mmapThreshold, mmapLocations);
+      startupLog.info("TdsInit: RandomAccessFile.setMMapPolicy threshold= " + mmapThreshold + " locations = " + mmapLocations);
+    }
+
+    // RandomAccessFile block cache: default is off
+    long blockCacheBytes = ThreddsConfig.getBytes("RandomAccessFile.blockCache.maxSize", 0);
+    if (blockCacheBytes > 0) {
+      int blockSize = ThreddsConfig.getInt("RandomAccessFile.blockCache.blockSize", BlockCache.defaultBlockSize);
+      boolean offHeap = ThreddsConfig.getBoolean("RandomAccessFile.blockCache.offHeap", false);
+      RandomAccessFile.setGlobalBlockCache(new BlockCache("RandomAccessFile", blockSize, blockCacheBytes, offHeap));
+      startupLog.info("TdsInit: RandomAccessFile.blockCache maxSize= " + blockCacheBytes + " blockSize = " + blockSize + " offHeap = " + offHeap);
+    }
+
+    // HDF5 / netCDF-4 decompressed chunk cache: default is off
+    long h5chunkCacheBytes = ThreddsConfig.getBytes("HDF5.chunkCache.maxSize", 0);
+    if (h5chunkCacheBytes > 0) {
+      ucar.nc2.iosp.hdf5.H5iosp.setChunkCache(new ucar.nc2.iosp.hdf5.H5chunkCache("HDF5", h5chunkCacheBytes));
+      startupLog.info("TdsInit: H5iosp.setChunkCache maxSize= " + h5chunkCacheBytes);
+    }
+
+    // HDF5 / netCDF-4 parallel chunk decompression: default is off
+    int h5threads = ThreddsConfig.getInt("HDF5.chunkThreads", 0);
+    if (h5threads > 1) {
+      int h5prefetch = ThreddsConfig.getInt("HDF5.chunkPrefetch", 0);
+      ucar.nc2.iosp.hdf5.H5iosp.setChunkParallelism(h5threads, h5prefetch);
+      startupLog.info("TdsInit: H5iosp.setChunkParallelism threads= " + h5threads + " prefetch = " + h5prefetch);
+    }
+
+    // DDS/DAS/DMR response cache: default is off
+    int metadataEntries = ThreddsConfig.getInt("MetadataResponseCache.maxEntries", 0);
+    if (metadataEntries > 0) {
+      long metadataBytes = ThreddsConfig.getBytes("MetadataResponseCache.maxSize", 20 * 1000 * 1000);
+      int metadataAge = ThreddsConfig.getSeconds("MetadataResponseCache.maxAge", 60);
+      thredds.servlet.MetadataResponseCache.setResponseCache(
+              new thredds.servlet.MetadataResponseCache("Metadata", metadataEntries, metadataBytes, metadataAge));
+      startupLog.info("TdsInit: MetadataResponseCache maxEntries= " + metadataEntries + " maxSize= " + metadataBytes + " maxAge= " + metadataAge);
+    }
+
+    // GRIB decoded record cache: default is off
+    long gribCacheBytes = ThreddsConfig.getBytes("GribRead.recordCache.maxSize", 0);
+    if (gribCacheBytes > 0) {
+      ucar.nc2.grib.collection.GribDataReader.setRecordCache(new ucar.nc2.grib.collection.GribRecordCache("GRIB", gribCacheBytes));
+      startupLog.info("TdsInit: GribDataReader.setRecordCache maxSize= " + gribCacheBytes);
+    }
+
+    // GRIB parallel record decoding: default is off
+    int gribThreads = ThreddsConfig.getInt("GribRead.threads", 0);
+    if (gribThreads > 1) {
+      int gribMaxPerRead = ThreddsConfig.getInt("GribRead.maxThreadsPerRead", 0);
+      ucar.nc2.grib.collection.GribDataReader.setParallelism(gribThreads, gribMaxPerRead);
+      startupLog.info("TdsInit: GribDataReader.setParallelism threads= " + gribThreads + " maxThreadsPerRead = " + gribMaxPerRead);
+    }
+
     // NetcdfFileCache : default is allow 100 - 150 open files, cleanup every 12 minutes
     min = ThreddsConfig.getInt("NetcdfFileCache.minFiles", 100);
     max = ThreddsConfig.getInt("NetcdfFileCache.maxFiles", 150);
@@ -33,11 +33,18 @@
 
 package thredds.server.dap4;
 
+import dap4.core.ce.CEConstraint;
+import dap4.core.data.DSP;
 import dap4.core.data.DSPRegistry;
+import dap4.core.dmr.DapDataset;
 import dap4.core.util.DapContext;
 import dap4.core.util.DapException;
 import dap4.core.util.DapUtil;
+import dap4.dap4lib.DMRPrinter;
 import dap4.dap4lib.DapCodes;
+import dap4.dap4lib.DapProtocol;
+import dap4.dap4lib.RequestMode;
+import dap4.servlet.ChunkWriter;
 import dap4.servlet.DSPFactory;
 import dap4.servlet.DapCache;
 import dap4.servlet.DapController;
@@ -45,6 +52,7 @@ import dap4.servlet.DapRequest;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import thredds.core.TdsRequestedDataset;
+import thredds.servlet.MetadataResponseCache;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -132,6 +140,50 @@ public class Dap4Controller extends DapController
         pw.flush();
     }
 
+    /**
+     * Same as DapController.doDMR, but keeps the DMR text in the
+     * MetadataResponseCache (if enabled) and handles conditional requests.
+     */
+    @Override
+    protected void
+    doDMR(DapRequest drq, DapContext cxt)
+            throws IOException
+    {
+        MetadataResponseCache cache = MetadataResponseCache.getResponseCache();
+        String realpath = getResourcePath(drq, drq.getDatasetPath()); // also checks authorization
+        long lastModified = new File(realpath).lastModified();
+        String sce = drq.queryLookup(DapProtocol.CONSTRAINTTAG);
+        String key = MetadataResponseCache.makeKey("dmr", drq.getDatasetPath(), sce);
+
+        MetadataResponseCache.Response resp = (cache == null) ? null : cache.get(key, realpath, lastModified);
+        if(resp == null) {
+            DSP dsp = DapCache.open(realpath, cxt);
+            DapDataset dmr = dsp.getDMR();
+            CEConstraint ce = CEConstraint.compile(sce, dmr);
+
+            // Get the DMR as a string
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            DMRPrinter dapprinter = new DMRPrinter(dmr, ce, pw);
+            dapprinter.print();
+            pw.close();
+
+            byte[] content = sw.toString().getBytes(DapUtil.UTF8);
+            resp = (cache == null) ? new MetadataResponseCache.Response(realpath, lastModified, content)
+                    : cache.put(key, realpath, lastModified, content);
+        }
+
+        addCommonHeaders(drq);// Add relevant headers
+        if(MetadataResponseCache.checkNotModified(drq.getRequest(), drq.getResponse(), resp))
+            return;
+
+        // Wrap the outputstream with a Chunk writer
+        OutputStream out = drq.getOutputStream();
+        ChunkWriter cw = new ChunkWriter(out, RequestMode.DMR, this.byteorder);
+        cw.writeDMR(new String(resp.getContent(), DapUtil.UTF8));
+        cw.close();
+    }
+
     @Override
     public long
     getBinaryWriteLimit()
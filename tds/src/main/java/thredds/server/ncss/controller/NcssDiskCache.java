@@ -52,6 +52,7 @@ public final class NcssDiskCache {
 
   private DiskCache2 diskCache;
   private String cachePath;
+  private NcssResultCache resultCache; // default is off
 
   public NcssDiskCache() {
   }
@@ -77,12 +78,29 @@ public final class NcssDiskCache {
     // LOOK: what happens if we are still downloading when the disk scour starts?
     diskCache = new DiskCache2(cachePath, false, maxAgeSecs / 60, scourSecs / 60);
     ServletUtil.logServerStartup.info(getClass().getName() + "Ncss.Cache= " + cachePath + " scour = " + scourSecs + " maxAgeSecs = " + maxAgeSecs);
+
+    // cache of grid responses, must not be under cachePath, which gets scoured
+    long resultBytes = ThreddsConfig.getBytes("NetcdfSubsetService.resultCache.maxSize", 0);
+    if (resultBytes > 0) {
+      String defaultResultPath = new File(tdsContext.getThreddsDirectory(), "/cache/ncssResults/").getPath();
+      String resultPath = ThreddsConfig.get("NetcdfSubsetService.resultCache.dir", defaultResultPath);
+      int resultAgeSecs = ThreddsConfig.getSeconds("NetcdfSubsetService.resultCache.maxAge", 60 * 5);
+      resultCache = new NcssResultCache("NCSS", new File(resultPath), resultBytes, resultAgeSecs);
+      ServletUtil.logServerStartup.info(getClass().getName() + "Ncss.ResultCache= " + resultPath + " maxSize = " + resultBytes + " maxAgeSecs = " + resultAgeSecs);
+    }
   }
 
   public DiskCache2 getDiskCache() {
     return this.diskCache;
   }
 
+  /**
+   * @return cache of grid responses, or null if turned off
+   */
+  public NcssResultCache getResultCache() {
+    return this.resultCache;
+  }
+
   public String getServletCachePath() {
     String contextPath = (tdsContext == null) ? "" : tdsContext.getContextPath();  // for unit tests until i can figure out how to get a mock TdsContext
     return contextPath + cachePath + "/";
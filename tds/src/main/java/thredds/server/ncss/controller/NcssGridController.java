@@ -51,6 +51,7 @@ import thredds.server.ncss.format.SupportedOperation;
 import thredds.server.ncss.params.NcssGridParamsBean;
 import thredds.server.ncss.view.dsg.DsgSubsetWriter;
 import thredds.server.ncss.view.dsg.DsgSubsetWriterFactory;
+import thredds.servlet.ServletUtil;
 import thredds.util.Constants;
 import thredds.util.ContentType;
 import thredds.util.TdsPathUtils;
@@ -72,7 +73,9 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 
 /**
  * Handles NCSS Grid Requests
@@ -119,13 +122,13 @@ public class NcssGridController extends AbstractNcssController {
       if (params.hasLatLonPoint()) {
         handleRequestGridAsPoint(res, params, datasetPath, gcd);
       } else {
-        handleRequestGrid(res, params, datasetPath, gcd);
+        handleRequestGrid(req, res, params, datasetPath, gcd);
       }
     }
   }
 
-  private void handleRequestGrid(HttpServletResponse res, NcssGridParamsBean params, String datasetPath, CoverageCollection gcd)
-          throws IOException, NcssException, ParseException, InvalidRangeException {
+  private void handleRequestGrid(HttpServletRequest req, HttpServletResponse res, NcssGridParamsBean params, String datasetPath, CoverageCollection gcd)
+          throws Exception {
 
     // Supported formats are netcdf3 (default) and netcdf4 (if available)
     SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
@@ -137,9 +140,6 @@ public class NcssGridController extends AbstractNcssController {
                 " have different vertical levels. Grid requests with vertCoord must have variables with same vertical levels.");
       }
 
-    String responseFile = getResponseFileName(datasetPath, version);
-    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
-
     // filename download attachment
     String suffix = version.getSuffix();
     int pos = datasetPath.lastIndexOf("/");
@@ -152,6 +152,22 @@ public class NcssGridController extends AbstractNcssController {
     HttpHeaders httpHeaders = new HttpHeaders();
     httpHeaders.set(ContentType.HEADER, sf.getMimeType());
     httpHeaders.set(Constants.Content_Disposition, Constants.setContentDispositionValue(filename));
+
+    NcssResultCache resultCache = ncssDiskCache.getResultCache();
+    if (resultCache != null) {
+      // identical requests on the same version of the dataset get the same file
+      long lastModified = TdsRequestedDataset.getLastModified(datasetPath);
+      String key = NcssResultCache.makeKey("grid", datasetPath, Long.toString(lastModified), String.valueOf(gcd.getCalendarDateRange()),
+              version.toString(), Boolean.toString(params.isAddLatLon()), makeCanonicalRequest(params.makeSubset(gcd)));
+      try (NcssResultCache.Result result = resultCache.get(key, lastModified, file -> makeCFNetcdfFile(gcd, file.getPath(), params, version))) {
+        setResponseHeaders(res, httpHeaders);
+        ServletUtil.returnFile(req, res, result.getFile(), sf.getMimeType()); // handles Range requests
+      }
+      return;
+    }
+
+    String responseFile = getResponseFileName(datasetPath, version);
+    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
     setResponseHeaders(res, httpHeaders);
 
     IO.copyFileB(netcdfResult, res.getOutputStream(), 60000);
@@ -160,6 +176,14 @@ public class NcssGridController extends AbstractNcssController {
     res.setStatus(HttpServletResponse.SC_OK);
   }
 
+  // the subset parameters in a fixed order
+  private String makeCanonicalRequest(SubsetParams subset) {
+    Map<String, Object> sorted = new TreeMap<>();
+    for (Map.Entry<String, Object> entry : subset.getEntries())
+      sorted.put(entry.getKey(), entry.getValue());
+    return sorted.toString();
+  }
+
   File makeCFNetcdfFile(CoverageCollection gcd, String responseFilename, NcssGridParamsBean params, NetcdfFileWriter.Version version)
           throws NcssException, InvalidRangeException, ParseException, IOException {
 
@@ -0,0 +1,328 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.ncss.controller;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps the output files of NCSS requests, so identical requests are answered from disk.
+ * The key is a hash of everything that determines the output: dataset path, dataset version and the normalized request.
+ * Concurrent identical requests are coalesced: the first one computes the file, the others wait for it.
+ * Bounded by total bytes, least recently used files are deleted first; a file is not deleted while it is being sent.
+ * An entry is valid as long as the dataset's last modified time is unchanged; when that is not known,
+ * the entry expires after maxAge.
+ */
+@ThreadSafe
+public class NcssResultCache {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NcssResultCache.class);
+
+  /**
+   * Make the cache key for a request, a SHA-256 hash of the parts.
+   *
+   * @param parts everything that determines the output, eg dataset path, version, normalized request parameters
+   * @return cache key, usable as a file name
+   */
+  static public String makeKey(String... parts) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      for (String part : parts) {
+        md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);  // separator, so ("ab", "c") != ("a", "bc")
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest())
+        sb.append(String.format("%02x", b));
+      return sb.toString();
+
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM has SHA-256
+    }
+  }
+
+  /**
+   * Writes the output of a request.
+   */
+  public interface Producer {
+    /**
+     * Write the output to this file.
+     * @param file write here, does not exist yet
+     */
+    void produce(File file) throws Exception;
+  }
+
+  /**
+   * A cached output file, which wont be deleted until closed.
+   */
+  public class Result implements Closeable {
+    private final Entry entry;
+    private boolean closed;
+
+    private Result(Entry entry) {
+      this.entry = entry;
+    }
+
+    public File getFile() {
+      return entry.file;
+    }
+
+    public long getLastModified() {
+      return entry.lastModified;
+    }
+
+    @Override
+    public void close() {
+      synchronized (NcssResultCache.this) {
+        if (closed) return;
+        closed = true;
+        entry.users--;
+        if (entry.users == 0 && entry.evicted)
+          delete(entry.file);
+      }
+    }
+  }
+
+  private static class Entry {
+    private final File file;
+    private final long size;
+    private final long lastModified; // <= 0 if unknown
+    private final long created;
+    private int users;               // number of open Results
+    private boolean evicted;         // no longer in the map, delete when users == 0
+
+    Entry(File file, long lastModified) {
+      this.file = file;
+      this.size = file.length();
+      this.lastModified = lastModified;
+      this.created = System.currentTimeMillis();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////
+
+  private final String name;
+  private final File dir;
+  private final long maxBytes;
+  private final long maxAgeMsecs;
+  private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(100, 0.75f, true); // access order
+  private final Map<String, FutureTask<Entry>> pending = new HashMap<>();
+  private long totalBytes, seqno;
+  private long hits, misses, coalesced, evictions;
+
+  /**
+   * Constructor. Any files already in dir are deleted.
+   *
+   * @param name       name of the cache, for showStats
+   * @param dir        keep the files in this directory, which is used only by this cache
+   * @param maxBytes   maximum total size of the files kept
+   * @param maxAgeSecs files whose dataset has no last modified time expire after this many seconds
+   */
+  public NcssResultCache(String name, File dir, long maxBytes, int maxAgeSecs) {
+    this.name = name;
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.maxAgeMsecs = 1000L * maxAgeSecs;
+
+    if (!dir.exists() && !dir.mkdirs())
+      throw new IllegalArgumentException("Cant make cache directory " + dir);
+    File[] old = dir.listFiles();
+    if (old != null) {
+      for (File f : old)
+        delete(f);
+    }
+  }
+
+  /**
+   * Get the output of a request, computing it if needed. Only one caller computes the output of a given key,
+   * others asking for the same key at the same time wait for it.
+   * The caller must close the Result after sending the file.
+   *
+   * @param key          from makeKey()
+   * @param lastModified current last modified time of the dataset, <= 0 if unknown
+   * @param producer     writes the output if its not cached
+   * @return the output file
+   * @throws Exception whatever producer throws
+   */
+  public Result get(String key, long lastModified, Producer producer) throws Exception {
+    while (true) {
+      FutureTask<Entry> task;
+      boolean mine = false;
+      synchronized (this) {
+        Entry entry = map.get(key);
+        if (entry != null) {
+          boolean valid = (entry.lastModified == lastModified) &&
+                  ((lastModified > 0) || (System.currentTimeMillis() - entry.created < maxAgeMsecs));
+          if (valid && entry.file.exists()) {
+            hits++;
+            entry.users++;
+            return new Result(entry);
+          }
+          remove(key);
+        }
+
+        task = pending.get(key);
+        if (task == null) {
+          misses++;
+          task = new FutureTask<>(() -> produce(key, lastModified, producer));
+          pending.put(key, task);
+          mine = true;
+        } else {
+          coalesced++;
+        }
+      }
+
+      if (mine) task.run(); // compute in this thread
+
+      Entry entry;
+      try {
+        entry = task.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) throw (Exception) cause;
+        throw (Error) cause;
+      }
+
+      if (mine) return new Result(entry); // produce() already counted this user
+      synchronized (this) {
+        if (!entry.evicted || entry.users > 0) { // still there
+          entry.users++;
+          return new Result(entry);
+        }
+      }
+      // evicted and deleted before we got to it, try again
+    }
+  }
+
+  private Entry produce(String key, long lastModified, Producer producer) throws Exception {
+    File file;
+    synchronized (this) {
+      file = new File(dir, key + "-" + (seqno++));  // unique, an evicted file of the same key may still be in use
+    }
+    File tmp = new File(dir, file.getName() + ".tmp");
+
+    boolean ok = false;
+    try {
+      producer.produce(tmp);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      ok = true;
+    } finally {
+      if (!ok) { // including an Error, so a failed request is never left pending
+        delete(tmp);
+        synchronized (this) {
+          pending.remove(key);
+        }
+      }
+    }
+
+    Entry entry = new Entry(file, lastModified);
+    synchronized (this) {
+      pending.remove(key);
+      entry.users = 1; // the producing request
+      if (entry.size > maxBytes) {
+        entry.evicted = true; // too big to keep, delete after its sent
+        return entry;
+      }
+
+      remove(key);
+      map.put(key, entry);
+      totalBytes += entry.size;
+
+      Iterator<Entry> iter = map.values().iterator();
+      while (totalBytes > maxBytes && iter.hasNext()) {
+        Entry eldest = iter.next();
+        if (eldest == entry) continue;
+        iter.remove();
+        evict(eldest);
+        evictions++;
+      }
+    }
+    return entry;
+  }
+
+  // call while synchronized
+  private void remove(String key) {
+    Entry old = map.remove(key);
+    if (old != null)
+      evict(old);
+  }
+
+  // call while synchronized, after removing from the map
+  private void evict(Entry entry) {
+    totalBytes -= entry.size;
+    entry.evicted = true;
+    if (entry.users == 0)
+      delete(entry.file);
+  }
+
+  private void delete(File f) {
+    if (f.exists() && !f.delete())
+      log.warn("NcssResultCache {} failed to delete {}", name, f.getPath());
+  }
+
+  public synchronized void clear() {
+    Iterator<Entry> iter = map.values().iterator();
+    while (iter.hasNext()) {
+      evict(iter.next());
+      iter.remove();
+    }
+  }
+
+  public synchronized long getSizeBytes() {
+    return totalBytes;
+  }
+
+  public synchronized int getNumEntries() {
+    return map.size();
+  }
+
+  public synchronized void showStats(Formatter f) {
+    long total = hits + misses + coalesced;
+    f.format("NcssResultCache %s: dir= %s entries= %d bytes= %d (max %d) maxAge= %d secs%n", name, dir, map.size(),
+            totalBytes, maxBytes, maxAgeMsecs / 1000);
+    f.format("  hits= %d misses= %d coalesced= %d evictions= %d hitRatio= %f%n", hits, misses, coalesced, evictions,
+            (total == 0) ? 0.0 : ((double) (hits + coalesced)) / total);
+  }
+}
@@ -34,8 +34,11 @@ package thredds.server.ncss.view.dsg.point;
 
 import thredds.server.ncss.exception.NcssException;
 import thredds.server.ncss.view.dsg.DsgSubsetWriter;
+import ucar.ma2.StructureData;
 import ucar.nc2.ft.*;
+import ucar.nc2.ft.point.PointFeatureImpl;
 import ucar.nc2.ft2.coverage.SubsetParams;
+import ucar.unidata.geoloc.EarthLocationImpl;
 
 import java.io.IOException;
 import java.util.List;
@@ -64,6 +67,23 @@ public abstract class AbstractPointSubsetWriter extends DsgSubsetWriter {
 
   public abstract void writeFooter() throws Exception;
 
+  /**
+   * Write the header, given the first batch of the subset.
+   * By default, calls writeHeader(PointFeature) with the batch's first observation.
+   */
+  public void writeHeader(PointFeatureBatch batch) throws Exception {
+    writeHeader(new BatchPointFeature(pointFeatureCollection, batch, 0));
+  }
+
+  /**
+   * Write a batch of observations.
+   * By default, calls writePoint(PointFeature) for each observation; override to write the columns directly.
+   */
+  public void writePoints(PointFeatureBatch batch) throws Exception {
+    for (int i = 0; i < batch.getSize(); i++)
+      writePoint(new BatchPointFeature(pointFeatureCollection, batch, i));
+  }
+
   @Override
   public void write() throws Exception {
 
@@ -74,14 +94,15 @@ public abstract class AbstractPointSubsetWriter extends DsgSubsetWriter {
       return;
 
     int count = 0;
-    boolean headerDone = false;
-    for (PointFeature pointFeat : subsettedPointFeatColl) {
-      if (!headerDone) {
-        writeHeader(pointFeat);
-        headerDone = true;
+    try (PointFeatureBatchIterator iter =
+            subsettedPointFeatColl.getPointFeatureBatchIterator(PointFeatureBatch.DEFAULT_SIZE)) {
+      while (iter.hasNext()) {
+        PointFeatureBatch batch = iter.next();
+        if (count == 0)
+          writeHeader(batch);
+        writePoints(batch);
+        count += batch.getSize();
       }
-      writePoint(pointFeat);
-      count++;
     }
 
     if (count == 0)
@@ -89,4 +110,25 @@ public abstract class AbstractPointSubsetWriter extends DsgSubsetWriter {
 
     writeFooter();
   }
+
+  // one observation of a batch, for the PointFeature methods
+  private static class BatchPointFeature extends PointFeatureImpl {
+    private final StructureData sdata;
+
+    BatchPointFeature(DsgFeatureCollection dsg, PointFeatureBatch batch, int index) {
+      super(dsg, new EarthLocationImpl(batch.getLatitude()[index], batch.getLongitude()[index], batch.getAltitude()[index]),
+              batch.getObservationTime()[index], batch.getNominalTime()[index], batch.getTimeUnit());
+      this.sdata = batch.getStructureData(index);
+    }
+
+    @Override
+    public StructureData getFeatureData() {
+      return sdata;
+    }
+
+    @Override
+    public StructureData getDataAll() {
+      return sdata;
+    }
+  }
 }
@@ -42,6 +42,7 @@ import ucar.nc2.VariableSimpleIF;
 import ucar.nc2.constants.CDM;
 import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureBatch;
 import ucar.nc2.ft2.coverage.SubsetParams;
 import ucar.nc2.time.CalendarDateFormatter;
 import ucar.unidata.geoloc.EarthLocation;
@@ -112,6 +113,33 @@ public class PointSubsetWriterCSV extends AbstractPointSubsetWriter {
         writer.println();
     }
 
+    @Override
+    public void writePoints(PointFeatureBatch batch) {
+        double[] lat = batch.getLatitude();
+        double[] lon = batch.getLongitude();
+
+        Array[] columns = new Array[wantedVariables.size()];
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = batch.getColumn(wantedVariables.get(j).getShortName());
+        }
+
+        for (int i = 0; i < batch.getSize(); i++) {
+            writer.print(CalendarDateFormatter.toDateTimeStringISO(batch.getObservationTimeAsCalendarDate(i)));
+            writer.print(',');
+            writer.print(Format.dfrac(lat[i], 3));
+            writer.print(',');
+            writer.print(Format.dfrac(lon[i], 3));
+
+            for (int j = 0; j < columns.length; j++) {
+                writer.print(',');
+                Array dataArray = (columns[j] != null) ? columns[j].slice(0, i) :  // not a column, eg a vlen
+                        batch.getStructureData(i).getArray(wantedVariables.get(j).getShortName());
+                writer.print(dataArray.toString().trim());
+            }
+            writer.println();
+        }
+    }
+
     @Override
     public void writeFooter() {
         writer.flush();
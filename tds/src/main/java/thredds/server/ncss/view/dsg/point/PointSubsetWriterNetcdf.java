@@ -43,6 +43,7 @@ import ucar.nc2.constants.CDM;
 import ucar.nc2.ft.DsgFeatureCollection;
 import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureBatch;
 import ucar.nc2.ft.point.writer.CFPointWriterConfig;
 import ucar.nc2.ft.point.writer.WriterCFPointCollection;
 import ucar.nc2.ft2.coverage.SubsetParams;
@@ -117,6 +118,16 @@ public class PointSubsetWriterNetcdf extends AbstractPointSubsetWriter {
         cfWriter.writeRecord(pointFeat, pointFeat.getDataAll());
     }
 
+    @Override
+    public void writeHeader(PointFeatureBatch batch) throws IOException {
+        cfWriter.writeHeader(batch);
+    }
+
+    @Override
+    public void writePoints(PointFeatureBatch batch) throws IOException {
+        cfWriter.writeRecords(batch);
+    }
+
     @Override
     public void writeFooter() throws IOException {
         cfWriter.finish();
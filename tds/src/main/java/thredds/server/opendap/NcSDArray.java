@@ -39,7 +39,9 @@ import ucar.nc2.*;
 
 import opendap.servers.*;
 import opendap.dap.BaseType;
+import opendap.dap.BytePrimitiveVector;
 import opendap.dap.DArrayDimension;
+import opendap.dap.NoSuchVariableException;
 import opendap.dap.PrimitiveVector;
 
 import java.io.IOException;
@@ -58,6 +60,19 @@ import java.util.List;
 public class NcSDArray extends SDArray implements HasNetcdfVariable {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NcSDArray.class);
 
+  // serialize() reads numeric arrays in slabs of at most this many bytes; <= 0 reads the whole array
+  static private long maxSlabBytes = 8 * 1000 * 1000;
+
+  /**
+   * Set the maximum number of bytes read from the netcdf variable at one time when writing a DAP2 data response.
+   * Larger requests are read and written in slabs along the outer dimension.
+   *
+   * @param maxBytes max slab size in bytes; 0 or negative means always read the entire constrained array
+   */
+  static public void setMaxSlabBytes(long maxBytes) {
+    maxSlabBytes = maxBytes;
+  }
+
   private static final boolean debug = false, debugRead = false;
   private Variable ncVar = null;
   //ignore protected BaseType elemType;
@@ -202,6 +217,98 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     setRead(true);
   }
 
+  /**
+   * Write the constrained data to the sink. Numeric arrays larger than maxSlabBytes are read in slabs
+   * along the outer dimension and each slab is XDR-encoded directly, so the whole array is never in memory.
+   * Otherwise defer to SDArray.serialize.
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+          throws NoSuchVariableException, DAP2ServerSideException, IOException {
+
+    if (isRead() || maxSlabBytes <= 0 || !ncVar.getDataType().isNumeric()) {
+      super.serialize(dataset, sink, ce, specialO);
+      return;
+    }
+
+    List<Range> ranges;
+    try {
+      int n = numDimensions();
+      ranges = new ArrayList<>(n);
+      for (int i = 0; i < n; i++)
+        ranges.add(new Range(getStart(i), getStop(i), getStride(i)));
+
+    } catch (InvalidDimensionException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidDimensionException=" + e.getMessage());
+
+    } catch (InvalidRangeException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidRangeException=" + e.getMessage());
+    }
+
+    long innerSize = 1;
+    for (int i = 1; i < ranges.size(); i++)
+      innerSize *= ranges.get(i).length();
+    Range outer = ranges.get(0);
+    long rowBytes = innerSize * ncVar.getElementSize();
+    int slabRows = (int) Math.max(1, Math.min(outer.length(), maxSlabBytes / Math.max(1, rowBytes)));
+    if (slabRows >= outer.length()) {  // fits in one slab
+      super.serialize(dataset, sink, ce, specialO);
+      return;
+    }
+
+    if (!ce.evalClauses(specialO))
+      return;
+
+    long tstart = System.currentTimeMillis();
+    long length = innerSize * outer.length();
+    if (length > Integer.MAX_VALUE)
+      throw new IllegalStateException("NcSDArray request too large= " + length + " for " + getRequestedRange());
+
+    // same layout as SDArray.serialize: length written twice, then the values
+    sink.writeInt((int) length);
+    sink.writeInt((int) length);
+
+    PrimitiveVector pv = getPrimitiveVector();
+    boolean isByte = (pv instanceof BytePrimitiveVector);
+    List<Range> section = new ArrayList<>(ranges);
+    int stride = outer.stride();
+    try {
+      for (int row = 0; row < outer.length(); row += slabRows) {
+        int first = outer.element(row);
+        int last = outer.element(Math.min(row + slabRows, outer.length()) - 1);
+        section.set(0, new Range(outer.getName(), first, last, stride));
+        Array slab = ncVar.read(section);
+
+        if (isByte) {  // bytes are padded once at the end, so they cant go through BytePrimitiveVector.externalize
+          IndexIterator ii = slab.getIndexIterator();
+          while (ii.hasNext())
+            sink.writeByte(ii.getByteNext());
+        } else {
+          pv.setInternalStorage(slab.get1DJavaArray(slab.getElementType()));
+          pv.externalize(sink);
+        }
+      }
+
+    } catch (InvalidRangeException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidRangeException=" + e.getMessage());
+    }
+
+    if (isByte) {
+      int modFour = (int) (length % 4);
+      int pad = (modFour != 0) ? (4 - modFour) : 0;
+      for (int i = 0; i < pad; i++)
+        sink.writeByte(0);
+    }
+
+    if (log.isDebugEnabled()) {
+      long tookTime = System.currentTimeMillis() - tstart;
+      log.debug("NcSDArray streamed " + length + " elems in slabs of " + slabRows + " rows: " + tookTime * .001 + " seconds");
+    }
+  }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     long tstart = System.currentTimeMillis();
 
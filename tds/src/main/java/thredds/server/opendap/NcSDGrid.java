@@ -41,6 +41,7 @@ import opendap.dap.BaseType;
 import opendap.dap.NoSuchVariableException;
 import ucar.nc2.Variable;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -76,4 +77,23 @@ public class NcSDGrid extends SDGrid {
     setRead(true);
     return(false);
   }
+
+  /**
+   * Let each projected component read itself as it is written, rather than reading the whole grid first,
+   * so that large data arrays can be streamed by NcSDArray.serialize.
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+          throws NoSuchVariableException, DAP2ServerSideException, IOException {
+
+    if (!ce.evalClauses(specialO))
+      return;
+
+    java.util.Enumeration vars = getVariables();
+    while (vars.hasMoreElements()) {
+      ServerMethods sm = (ServerMethods) vars.nextElement();
+      if (sm.isProject())
+        sm.serialize(dataset, sink, ce, specialO);
+    }
+  }
 }
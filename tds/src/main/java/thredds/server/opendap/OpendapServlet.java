@@ -106,6 +106,7 @@ public class OpendapServlet extends AbstractServlet {
     this.binLimit = ThreddsConfig.getInt("Opendap.binLimit", binLimit);
 
     this.odapVersionString = ThreddsConfig.get("Opendap.serverVersion", odapVersionString);
+    NcSDArray.setMaxSlabBytes(ThreddsConfig.getBytes("Opendap.maxSlabSize", 8 * 1000 * 1000));
     logServerStartup.info(getClass().getName() + " version= " + odapVersionString + " ascLimit = " + ascLimit + " binLimit = " + binLimit);
 
     if (tdsContext != null) // LOOK not set in mock testing enviro ?
@@ -299,97 +300,110 @@ public class OpendapServlet extends AbstractServlet {
   }
 
   public void doGetDAS(ReqState rs) throws Exception {
-    HttpServletResponse response = rs.getResponse();
-
-    GuardedDataset ds = null;
-    try {
-      ds = getDataset(rs);
-      if (ds == null) return;
-
-      response.setContentType("text/plain");
-      response.setHeader("XDODS-Server", getServerVersion());
-      response.setHeader("Content-Description", "dods-das");
-
-      OutputStream Out = new BufferedOutputStream(response.getOutputStream());
-
-      DAS myDAS = ds.getDAS();
-      myDAS.print(Out);
-
-    } finally { // release lock if needed
-      if (ds != null) ds.release();
-    }
-
+    sendMetadata(rs, "das");
   }
 
   public void doGetDDS(ReqState rs) throws Exception {
-    HttpServletResponse response = rs.getResponse();
-
-    GuardedDataset ds = null;
-    try {
-      ds = getDataset(rs);
-      if (null == ds) return;
-
-      response.setContentType("text/plain");
-      response.setHeader("XDODS-Server", getServerVersion());
-      response.setHeader("Content-Description", "dods-dds");
-
-      OutputStream out = new BufferedOutputStream(response.getOutputStream());
-      ServerDDS myDDS = ds.getDDS();
-
-      if (rs.getConstraintExpression().equals("")) { // No Constraint Expression?
-        // Send the whole DDS
-        myDDS.print(out);
-        out.flush();
+    sendMetadata(rs, "dds");
+  }
 
-      } else { // Otherwise, send the constrained DDS
-        // Instantiate the CEEvaluator and parse the constraint expression
-        CEEvaluator ce = new CEEvaluator(myDDS);
-        ce.parseConstraint(rs);
+  public void doGetDDX(ReqState rs) throws Exception {
+    sendMetadata(rs, "ddx");
+  }
 
-        // Send the constrained DDS back to the client
-        PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, CDM.utf8Charset));
-        myDDS.printConstrained(pw);
-        pw.flush();
-      }
+  // send a DAS, DDS or DDX, from the MetadataResponseCache if possible
+  private void sendMetadata(ReqState rs, String type) throws Exception {
+    HttpServletRequest request = rs.getRequest();
+    HttpServletResponse response = rs.getResponse();
+    String reqPath = rs.getDataSet();
 
-    } finally { // release lock if needed
-      if (ds != null) ds.release();
+    MetadataResponseCache cache = MetadataResponseCache.getResponseCache();
+    String key = MetadataResponseCache.makeKey(type, reqPath, rs.getConstraintExpression());
+    long lastModified = TdsRequestedDataset.getLastModified(reqPath);
+    String location = TdsRequestedDataset.getLocationFromRequestPath(reqPath);
+
+    MetadataResponseCache.Response resp = (cache == null) ? null : cache.get(key, location, lastModified);
+    if (resp != null) {
+      // getDataset() is skipped, so check authorization here
+      if (!TdsRequestedDataset.resourceControlOk(request, response, reqPath)) return;
+
+    } else {
+      byte[] content = makeMetadata(rs, type);
+      if (content == null) return; // error message already sent
+      resp = (cache == null) ? new MetadataResponseCache.Response(location, lastModified, content) :
+              cache.put(key, location, lastModified, content);
     }
 
+    response.setContentType("text/plain");
+    response.setHeader("XDODS-Server", getServerVersion());
+    response.setHeader("Content-Description", "dods-" + type);
+    if (MetadataResponseCache.checkNotModified(request, response, resp)) return;
+
+    byte[] content = resp.getContent();
+    response.setContentLength(content.length);
+    OutputStream out = response.getOutputStream();
+    out.write(content);
+    out.flush();
   }
 
-  public void doGetDDX(ReqState rs) throws Exception {
-    HttpServletResponse response = rs.getResponse();
-
+  private byte[] makeMetadata(ReqState rs, String type) throws Exception {
     GuardedDataset ds = null;
     try {
       ds = getDataset(rs);
-      if (null == ds) return;
-
-      response.setContentType("text/plain");
-      response.setHeader("XDODS-Server", getServerVersion());
-      response.setHeader("Content-Description", "dods-ddx");
+      if (null == ds) return null;
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(10 * 1000);
+      switch (type) {
+        case "das":
+          DAS myDAS = ds.getDAS();
+          myDAS.print(out);
+          break;
+
+        case "dds": {
+          ServerDDS myDDS = ds.getDDS();
+          if (rs.getConstraintExpression().equals("")) { // No Constraint Expression?
+            // Send the whole DDS
+            myDDS.print(out);
+
+          } else { // Otherwise, send the constrained DDS
+            // Instantiate the CEEvaluator and parse the constraint expression
+            CEEvaluator ce = new CEEvaluator(myDDS);
+            ce.parseConstraint(rs);
+
+            // Send the constrained DDS back to the client
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, CDM.utf8Charset));
+            myDDS.printConstrained(pw);
+            pw.flush();
+          }
+          break;
+        }
 
-      OutputStream out = new BufferedOutputStream(response.getOutputStream());
+        case "ddx": {
+          ServerDDS myDDS = ds.getDDS();
+          myDDS.ingestDAS(ds.getDAS());
+
+          if (rs.getConstraintExpression().equals("")) { // No Constraint Expression?
+            // Send the whole DDS
+            myDDS.printXML(out);
+
+          } else { // Otherwise, send the constrained DDS
+            // Instantiate the CEEvaluator and parse the constraint expression
+            CEEvaluator ce = new CEEvaluator(myDDS);
+            ce.parseConstraint(rs);
+
+            // Send the constrained DDS back to the client
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, CDM.utf8Charset));
+            myDDS.printConstrainedXML(pw);
+            pw.flush();
+          }
+          break;
+        }
 
-      ServerDDS myDDS = ds.getDDS();
-      myDDS.ingestDAS(ds.getDAS());
-
-      if (rs.getConstraintExpression().equals("")) { // No Constraint Expression?
-        // Send the whole DDS
-        myDDS.printXML(out);
-        out.flush();
-      } else { // Otherwise, send the constrained DDS
-
-        // Instantiate the CEEvaluator and parse the constraint expression
-        CEEvaluator ce = new CEEvaluator(myDDS);
-        ce.parseConstraint(rs);
-
-        // Send the constrained DDS back to the client
-        PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, CDM.utf8Charset));
-        myDDS.printConstrainedXML(pw);
-        pw.flush();
+        default:
+          throw new IllegalArgumentException(type);
       }
+      out.flush();
+      return out.toByteArray();
 
     } finally { // release lock if needed
       if (ds != null) ds.release();
@@ -969,4 +983,4 @@ public class OpendapServlet extends AbstractServlet {
     }
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
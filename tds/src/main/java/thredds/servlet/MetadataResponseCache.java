@@ -0,0 +1,314 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet;
+
+import ucar.nc2.util.cache.FileCache;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the serialized text of dataset metadata responses (OPeNDAP DDS, DAS, DDX and DAP4 DMR), so they can be sent
+ * without opening the dataset. An entry is valid as long as the dataset's last modified time is unchanged; when that
+ * is not known (eg collections and aggregations), the entry expires after maxAge.
+ * Bounded by number of entries and total bytes, least recently used entries are dropped first.
+ * Entries are removed when FileCache finds that their file has changed, when their collection is updated,
+ * or when the config catalogs are reread, which may change a dataset without changing its file (eg NcML).
+ * Also handles conditional requests (If-None-Match, If-Modified-Since) for these responses.
+ */
+@ThreadSafe
+public class MetadataResponseCache {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MetadataResponseCache.class);
+
+  static private volatile MetadataResponseCache responseCache;  // default is off
+  static private boolean listening = false;
+
+  /**
+   * Set the process-wide metadata response cache.
+   *
+   * @param cache use this cache, or null to turn off caching
+   */
+  static public synchronized void setResponseCache(MetadataResponseCache cache) {
+    if (responseCache != null) responseCache.clear();
+    responseCache = cache;
+    if (cache != null && !listening) {
+      FileCache.addChangeListener(location -> {
+        MetadataResponseCache rc = responseCache;
+        if (rc != null) rc.invalidate(location);
+      });
+      listening = true;
+    }
+  }
+
+  static public MetadataResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * Make the cache key for a response.
+   *
+   * @param type       response type, eg "dds"
+   * @param reqPath    dataset request path
+   * @param constraint constraint expression, may be null
+   * @return cache key
+   */
+  static public String makeKey(String type, String reqPath, String constraint) {
+    return (constraint == null || constraint.isEmpty()) ? type + ":" + reqPath : type + ":" + reqPath + "?" + constraint;
+  }
+
+  /**
+   * Set the ETag and Last-Modified headers for this response, and send 304 (Not Modified) if the client already has it.
+   *
+   * @param req  the request
+   * @param res  the response
+   * @param resp the metadata response
+   * @return true if 304 was sent, in which case the caller is done
+   */
+  static public boolean checkNotModified(HttpServletRequest req, HttpServletResponse res, Response resp) {
+    res.setHeader("ETag", resp.getETag());
+    if (resp.getLastModified() > 0)
+      res.setDateHeader("Last-Modified", resp.getLastModified());
+
+    boolean notModified;
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {  // takes precedence over If-Modified-Since
+      notModified = false;
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.equals("*") || tag.equals(resp.getETag()) || tag.equals("W/" + resp.getETag())) {
+          notModified = true;
+          break;
+        }
+      }
+
+    } else {
+      long ifModifiedSince;
+      try {
+        ifModifiedSince = req.getDateHeader("If-Modified-Since");
+      } catch (IllegalArgumentException e) {
+        ifModifiedSince = -1; // malformed, ignore
+      }
+      // http dates have second resolution
+      notModified = (ifModifiedSince > 0) && (resp.getLastModified() > 0) && (resp.getLastModified() / 1000 <= ifModifiedSince / 1000);
+    }
+
+    if (notModified)
+      res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    return notModified;
+  }
+
+  /**
+   * A serialized metadata response.
+   */
+  @javax.annotation.concurrent.Immutable
+  static public class Response {
+    private final String location;   // file location, may be null
+    private final long lastModified; // <= 0 if unknown
+    private final long created;
+    private final byte[] content;
+    private final String etag;
+
+    public Response(String location, long lastModified, byte[] content) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.content = content;
+      this.created = System.currentTimeMillis();
+
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+    }
+
+    public String getLocation() {
+      return location;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////
+
+  private final String name;
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long maxAgeMsecs;
+  private final LinkedHashMap<String, Response> map = new LinkedHashMap<>(100, 0.75f, true); // access order
+  private long totalBytes;
+  private long hits, misses, evictions;
+
+  /**
+   * Constructor.
+   *
+   * @param name       name of the cache, for showStats
+   * @param maxEntries maximum number of responses kept
+   * @param maxBytes   maximum total size of the responses kept
+   * @param maxAgeSecs responses whose dataset has no last modified time expire after this many seconds
+   */
+  public MetadataResponseCache(String name, int maxEntries, long maxBytes, int maxAgeSecs) {
+    this.name = name;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.maxAgeMsecs = 1000L * maxAgeSecs;
+  }
+
+  /**
+   * Get a cached response.
+   *
+   * @param key          from makeKey()
+   * @param location     current file location of the dataset, or null if not known
+   * @param lastModified current last modified time of the dataset, <= 0 if unknown
+   * @return the response, or null if not cached or out of date
+   */
+  public synchronized Response get(String key, String location, long lastModified) {
+    Response resp = map.get(key);
+    if (resp != null) {
+      boolean valid = Objects.equals(resp.location, location) && (resp.lastModified == lastModified) &&
+              ((lastModified > 0) || (System.currentTimeMillis() - resp.created < maxAgeMsecs));
+      if (valid) {
+        hits++;
+        return resp;
+      }
+      remove(key);
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Add a response to the cache.
+   *
+   * @param key          from makeKey()
+   * @param location     file location of the dataset, or null if not known
+   * @param lastModified last modified time of the dataset, <= 0 if unknown
+   * @param content      serialized response
+   * @return the cached response
+   */
+  public Response put(String key, String location, long lastModified, byte[] content) {
+    Response resp = new Response(location, lastModified, content);
+    if (content.length > maxBytes) return resp;  // too big to keep
+
+    synchronized (this) {
+      remove(key);
+      map.put(key, resp);
+      totalBytes += content.length;
+
+      Iterator<Map.Entry<String, Response>> iter = map.entrySet().iterator();
+      while ((map.size() > maxEntries || totalBytes > maxBytes) && iter.hasNext()) {
+        Map.Entry<String, Response> eldest = iter.next();
+        totalBytes -= eldest.getValue().content.length;
+        iter.remove();
+        evictions++;
+      }
+    }
+    return resp;
+  }
+
+  private void remove(String key) {
+    Response old = map.remove(key);
+    if (old != null)
+      totalBytes -= old.content.length;
+  }
+
+  /**
+   * Remove the responses for this file, eg when it has changed on disk.
+   *
+   * @param location file location
+   */
+  public synchronized void invalidate(String location) {
+    Iterator<Response> iter = map.values().iterator();
+    while (iter.hasNext()) {
+      Response resp = iter.next();
+      if (location.equals(resp.location)) {
+        totalBytes -= resp.content.length;
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Remove the responses for all datasets under this request path, eg when a collection has been updated.
+   *
+   * @param pathPrefix dataset request path prefix
+   */
+  public synchronized void invalidatePath(String pathPrefix) {
+    if (pathPrefix.startsWith("/")) pathPrefix = pathPrefix.substring(1);
+    Iterator<Map.Entry<String, Response>> iter = map.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<String, Response> entry = iter.next();
+      String key = entry.getKey();
+      String path = key.substring(key.indexOf(':') + 1);
+      if (path.startsWith("/")) path = path.substring(1);
+      if (path.startsWith(pathPrefix)) {
+        totalBytes -= entry.getValue().content.length;
+        iter.remove();
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    map.clear();
+    totalBytes = 0;
+  }
+
+  public synchronized long getSizeBytes() {
+    return totalBytes;
+  }
+
+  public synchronized int getNumEntries() {
+    return map.size();
+  }
+
+  public synchronized void showStats(Formatter f) {
+    long total = hits + misses;
+    f.format("MetadataResponseCache %s: entries= %d (max %d) bytes= %d (max %d) maxAge= %d secs%n", name, map.size(), maxEntries,
+            totalBytes, maxBytes, maxAgeMsecs / 1000);
+    f.format("  hits= %d misses= %d evictions= %d hitRatio= %f%n", hits, misses, evictions, (total == 0) ? 0.0 : ((double) hits) / total);
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.ncss.controller;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test NcssResultCache hits, invalidation, eviction and coalescing of identical requests.
+ */
+public class TestNcssResultCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private NcssResultCache.Producer writeBytes(int n, AtomicInteger count) {
+    return file -> {
+      count.incrementAndGet();
+      Files.write(file.toPath(), new byte[n]);
+    };
+  }
+
+  @Test
+  public void testKey() {
+    String key = NcssResultCache.makeKey("grid", "test/file.nc", "100", "{var=[Temperature]}");
+    Assert.assertEquals(64, key.length());
+    Assert.assertEquals(key, NcssResultCache.makeKey("grid", "test/file.nc", "100", "{var=[Temperature]}"));
+    Assert.assertNotEquals(key, NcssResultCache.makeKey("grid", "test/file.nc", "200", "{var=[Temperature]}"));
+    Assert.assertNotEquals(NcssResultCache.makeKey("ab", "c"), NcssResultCache.makeKey("a", "bc"));
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    NcssResultCache cache = new NcssResultCache("test", tempFolder.newFolder(), 1000, 60);
+    AtomicInteger count = new AtomicInteger();
+    String key = NcssResultCache.makeKey("grid", "test/file.nc");
+
+    try (NcssResultCache.Result result = cache.get(key, 100, writeBytes(10, count))) {
+      Assert.assertEquals(10, result.getFile().length());
+    }
+    try (NcssResultCache.Result result = cache.get(key, 100, writeBytes(10, count))) {
+      Assert.assertEquals(10, result.getFile().length());
+    }
+    Assert.assertEquals(1, count.get());
+    Assert.assertEquals(1, cache.getNumEntries());
+    Assert.assertEquals(10, cache.getSizeBytes());
+
+    // dataset has changed
+    File old;
+    try (NcssResultCache.Result result = cache.get(key, 200, writeBytes(20, count))) {
+      Assert.assertEquals(20, result.getFile().length());
+      old = result.getFile();
+    }
+    Assert.assertEquals(2, count.get());
+    Assert.assertEquals(20, cache.getSizeBytes());
+
+    cache.clear();
+    Assert.assertEquals(0, cache.getNumEntries());
+    Assert.assertFalse(old.exists());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    NcssResultCache cache = new NcssResultCache("test", tempFolder.newFolder(), 100, 60);
+    AtomicInteger count = new AtomicInteger();
+
+    NcssResultCache.Result first = cache.get(NcssResultCache.makeKey("1"), 100, writeBytes(60, count));
+    try (NcssResultCache.Result second = cache.get(NcssResultCache.makeKey("2"), 100, writeBytes(60, count))) {
+      Assert.assertTrue(second.getFile().exists());
+    }
+    Assert.assertEquals(1, cache.getNumEntries());
+    Assert.assertEquals(60, cache.getSizeBytes());
+
+    // evicted, but not deleted while in use
+    Assert.assertTrue(first.getFile().exists());
+    first.close();
+    Assert.assertFalse(first.getFile().exists());
+
+    // too big to keep
+    File big;
+    try (NcssResultCache.Result result = cache.get(NcssResultCache.makeKey("3"), 100, writeBytes(200, count))) {
+      big = result.getFile();
+      Assert.assertEquals(200, big.length());
+    }
+    Assert.assertFalse(big.exists());
+    Assert.assertEquals(1, cache.getNumEntries());
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    NcssResultCache cache = new NcssResultCache("test", tempFolder.newFolder(), 1000, 60);
+    String key = NcssResultCache.makeKey("fails");
+    try {
+      cache.get(key, 100, file -> {
+        throw new IOException("no data");
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("no data", e.getMessage());
+    }
+    Assert.assertEquals(0, cache.getNumEntries());
+
+    // not remembered
+    AtomicInteger count = new AtomicInteger();
+    try (NcssResultCache.Result result = cache.get(key, 100, writeBytes(10, count))) {
+      Assert.assertEquals(10, result.getFile().length());
+    }
+    Assert.assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testError() throws Exception {
+    File dir = tempFolder.newFolder();
+    NcssResultCache cache = new NcssResultCache("test", dir, 1000, 60);
+    String key = NcssResultCache.makeKey("error");
+    try {
+      cache.get(key, 100, file -> {
+        Files.write(file.toPath(), new byte[10]);
+        throw new NoClassDefFoundError("no iosp");
+      });
+      Assert.fail();
+    } catch (NoClassDefFoundError e) {
+      Assert.assertEquals("no iosp", e.getMessage());
+    }
+    Assert.assertEquals(0, dir.list().length); // tmp file deleted
+
+    // not pending, so computed again
+    AtomicInteger count = new AtomicInteger();
+    try (NcssResultCache.Result result = cache.get(key, 100, writeBytes(10, count))) {
+      Assert.assertEquals(10, result.getFile().length());
+    }
+    Assert.assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testCoalesce() throws Exception {
+    NcssResultCache cache = new NcssResultCache("test", tempFolder.newFolder(), 1000, 60);
+    String key = NcssResultCache.makeKey("grid", "latest");
+    AtomicInteger count = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    NcssResultCache.Producer slow = file -> {
+      count.incrementAndGet();
+      started.countDown();
+      release.await(10, TimeUnit.SECONDS);
+      Files.write(file.toPath(), new byte[10]);
+    };
+
+    int n = 8;
+    ExecutorService exec = Executors.newFixedThreadPool(n);
+    try {
+      List<Future<Long>> results = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        results.add(exec.submit(() -> {
+          try (NcssResultCache.Result result = cache.get(key, 100, slow)) {
+            return result.getFile().length();
+          }
+        }));
+      }
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      Thread.sleep(100); // let the others find the pending request
+      release.countDown();
+
+      for (Future<Long> result : results)
+        Assert.assertEquals(10, (long) result.get());
+    } finally {
+      exec.shutdownNow();
+    }
+    Assert.assertEquals(1, count.get());
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.opendap;
+
+import opendap.servers.CEEvaluator;
+import opendap.servers.ServerDDS;
+import opendap.servlet.GuardedDataset;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Check that NcSDArray.serialize writes the same bytes when it streams an array in slabs
+ * as when it reads the whole array first.
+ */
+public class TestNcSDArraySlabs {
+  static private final String testdir = "src/test/data/testdata2";
+
+  static private final String[][] testsets = new String[][]{
+          new String[]{"ref_nctest_classic.nc",
+                  "bytevar",
+                  "bytevar[0:6][0:4][0:2:5][1:3]",  // not a multiple of 4 bytes, so padded
+                  "shortvar[1:2:6][0:4][0:5][0:3]",
+                  "longvar",
+                  "floatvar[0:6][2][0:5][0:3]",
+                  "doublevar[2:6][0:4][0:5][0:3]",
+                  "bytevar,shortvar,doublevar",
+          },
+          new String[]{"temp_air_01082000.nc",
+                  "t",
+                  "t[0:2:3][3:4][4:5][0:2:6]",
+                  "t.t[0:2:3][0:4][0:5][0:6]",
+          },
+  };
+
+  @After
+  public void resetSlabSize() {
+    NcSDArray.setMaxSlabBytes(8 * 1000 * 1000);
+  }
+
+  @Test
+  public void testSlabsMatchWholeArray() throws Exception {
+    for (String[] testset : testsets) {
+      String path = findTestDir() + "/" + testset[0];
+      try (NetcdfFile ncfile = NetcdfDataset.openFile(path, null)) {
+        GuardedDataset ds = new GuardedDatasetCacheAndClone(path, ncfile, false);
+
+        for (int i = 1; i < testset.length; i++) {
+          String constraint = testset[i];
+          NcSDArray.setMaxSlabBytes(0);
+          byte[] whole = send(ds, constraint);
+          Assert.assertTrue(constraint, whole.length > 0);
+
+          for (long slabBytes : new long[]{1, 40, 100, 1000}) {
+            NcSDArray.setMaxSlabBytes(slabBytes);
+            Assert.assertArrayEquals(path + "?" + constraint + " slabBytes=" + slabBytes, whole, send(ds, constraint));
+          }
+        }
+      }
+    }
+  }
+
+  private byte[] send(GuardedDataset ds, String constraint) throws Exception {
+    ServerDDS dds = ds.getDDS();
+    CEEvaluator ce = new CEEvaluator(dds);
+    ce.parseConstraint(constraint, null);
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream sink = new DataOutputStream(bout)) {
+      ce.send(dds.getEncodedName(), sink, ds);
+    }
+    return bout.toByteArray();
+  }
+
+  // the opendap test data, from the tds or opendap module directory
+  private String findTestDir() throws IOException {
+    File dir = new File(testdir + "/ref_nctest_classic.nc").exists() ? new File(testdir) : new File("../opendap/" + testdir);
+    if (!dir.exists()) throw new IOException("cant find " + dir.getAbsolutePath());
+    return dir.getPath();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 1998-2016 University Corporation for Atmospheric Research/Unidata
+ *
+ *   Portions of this software were developed by the Unidata Program at the
+ *   University Corporation for Atmospheric Research.
+ *
+ *   Access and use of this software shall impose the following obligations
+ *   and understandings on the user. The user is granted the right, without
+ *   any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *   this software, and any derivative works thereof, and its supporting
+ *   documentation for any purpose whatsoever, provided that this entire
+ *   notice appears in all copies of the software, derivative works and
+ *   supporting documentation.  Further, UCAR requests that the user credit
+ *   UCAR/Unidata in any publications that result from the use of this
+ *   software or in any product that includes this software. The names UCAR
+ *   and/or Unidata, however, may not be used in any advertising or publicity
+ *   to endorse or promote any products or commercial entity unless specific
+ *   written permission is obtained from UCAR/Unidata. The user also
+ *   understands that UCAR/Unidata is not obligated to provide the user with
+ *   any support, consulting, training or assistance of any kind with regard
+ *   to the use, operation and performance of this software nor to provide
+ *   the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *   THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *   IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *   WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *   DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *   INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *   FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *   NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *   WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test MetadataResponseCache bounds, invalidation and conditional requests.
+ */
+public class TestMetadataResponseCache {
+
+  private byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testGetPut() {
+    MetadataResponseCache cache = new MetadataResponseCache("test", 10, 1000, 60);
+    String key = MetadataResponseCache.makeKey("dds", "/test/file.nc", "");
+    Assert.assertNull(cache.get(key, "/data/test/file.nc", 100));
+
+    cache.put(key, "/data/test/file.nc", 100, bytes("Dataset {}"));
+    MetadataResponseCache.Response resp = cache.get(key, "/data/test/file.nc", 100);
+    Assert.assertNotNull(resp);
+    Assert.assertEquals("Dataset {}", new String(resp.getContent(), StandardCharsets.UTF_8));
+
+    // dataset now points to another file, eg its catalog changed
+    Assert.assertNull(cache.get(key, "/data/other/file.nc", 100));
+    Assert.assertEquals(0, cache.getNumEntries());
+
+    // file has changed
+    cache.put(key, "/data/test/file.nc", 100, bytes("Dataset {}"));
+    Assert.assertNull(cache.get(key, "/data/test/file.nc", 200));
+    Assert.assertEquals(0, cache.getNumEntries());
+
+    // constraint is part of the key
+    Assert.assertNotEquals(key, MetadataResponseCache.makeKey("dds", "/test/file.nc", "time"));
+    Assert.assertNotEquals(key, MetadataResponseCache.makeKey("das", "/test/file.nc", null));
+  }
+
+  @Test
+  public void testUnknownLastModified() {
+    MetadataResponseCache cache = new MetadataResponseCache("test", 10, 1000, 0);
+    String key = MetadataResponseCache.makeKey("das", "/grib/coll/Best", null);
+    cache.put(key, null, -1, bytes("Attributes {}"));
+    Assert.assertNull(cache.get(key, null, -1)); // maxAge 0 expires immediately
+
+    cache = new MetadataResponseCache("test", 10, 1000, 60);
+    cache.put(key, null, -1, bytes("Attributes {}"));
+    Assert.assertNotNull(cache.get(key, null, -1));
+  }
+
+  @Test
+  public void testBounds() {
+    MetadataResponseCache cache = new MetadataResponseCache("test", 3, 100, 60);
+    for (int i = 0; i < 5; i++)
+      cache.put("dds:/f" + i, null, 1, bytes("0123456789"));
+    Assert.assertEquals(3, cache.getNumEntries());
+    Assert.assertEquals(30, cache.getSizeBytes());
+    Assert.assertNull(cache.get("dds:/f0", null, 1));
+    Assert.assertNotNull(cache.get("dds:/f4", null, 1));
+
+    // least recently used goes first
+    Assert.assertNotNull(cache.get("dds:/f2", null, 1));
+    cache.put("dds:/big", null, 1, new byte[80]);
+    Assert.assertNotNull(cache.get("dds:/f2", null, 1));
+    Assert.assertNull(cache.get("dds:/f3", null, 1));
+    Assert.assertNotNull(cache.get("dds:/f4", null, 1));
+    Assert.assertEquals(100, cache.getSizeBytes());
+
+    // too big to keep
+    cache.put("dds:/huge", null, 1, new byte[101]);
+    Assert.assertNull(cache.get("dds:/huge", null, 1));
+    Assert.assertEquals(100, cache.getSizeBytes());
+  }
+
+  @Test
+  public void testInvalidate() {
+    MetadataResponseCache cache = new MetadataResponseCache("test", 10, 1000, 60);
+    cache.put(MetadataResponseCache.makeKey("dds", "/test/a.nc", null), "/data/a.nc", 1, bytes("a"));
+    cache.put(MetadataResponseCache.makeKey("das", "/test/a.nc", null), "/data/a.nc", 1, bytes("a"));
+    cache.put(MetadataResponseCache.makeKey("dds", "/test/b.nc", null), "/data/b.nc", 1, bytes("b"));
+    cache.put(MetadataResponseCache.makeKey("dds", "grib/coll/Best", null), null, -1, bytes("c"));
+    cache.put(MetadataResponseCache.makeKey("dds", "/grib/coll/TwoD", "time"), null, -1, bytes("d"));
+
+    cache.invalidate("/data/a.nc");
+    Assert.assertEquals(3, cache.getNumEntries());
+    Assert.assertEquals(3, cache.getSizeBytes());
+
+    cache.invalidatePath("grib/coll");
+    Assert.assertEquals(1, cache.getNumEntries());
+    Assert.assertNotNull(cache.get(MetadataResponseCache.makeKey("dds", "/test/b.nc", null), "/data/b.nc", 1));
+  }
+
+  @Test
+  public void testConditional() {
+    MetadataResponseCache.Response resp = new MetadataResponseCache.Response(null, 1000000000000L, bytes("Dataset {}"));
+
+    MockHttpServletRequest req = new MockHttpServletRequest();
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    Assert.assertFalse(MetadataResponseCache.checkNotModified(req, res, resp));
+    Assert.assertEquals(resp.getETag(), res.getHeader("ETag"));
+
+    req = new MockHttpServletRequest();
+    req.addHeader("If-None-Match", "\"other\", " + resp.getETag());
+    res = new MockHttpServletResponse();
+    Assert.assertTrue(MetadataResponseCache.checkNotModified(req, res, resp));
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+
+    req = new MockHttpServletRequest();
+    req.addHeader("If-None-Match", "\"other\"");
+    req.addHeader("If-Modified-Since", 1000000000000L); // ignored when If-None-Match is present
+    Assert.assertFalse(MetadataResponseCache.checkNotModified(req, new MockHttpServletResponse(), resp));
+
+    req = new MockHttpServletRequest();
+    req.addHeader("If-Modified-Since", 1000000000000L);
+    Assert.assertTrue(MetadataResponseCache.checkNotModified(req, new MockHttpServletResponse(), resp));
+
+    req = new MockHttpServletRequest();
+    req.addHeader("If-Modified-Since", 999999990000L);
+    Assert.assertFalse(MetadataResponseCache.checkNotModified(req, new MockHttpServletResponse(), resp));
+  }
+}
@@ -41,6 +41,7 @@ import ucar.nc2.*;
 import ucar.nc2.iosp.grid.GridIndexToNC;
 import ucar.nc2.iosp.grid.GridServiceProvider;
 
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
 import java.io.IOException;
@@ -63,6 +64,12 @@ public class GempakGridServiceProvider extends GridServiceProvider {
    */
   public static boolean extendIndex = true;  // check if index needs to be extended
 
+  /**
+   * magic numbers for isValidFile
+   */
+  private static final MagicNumber[] magic = new MagicNumber[] {
+          new MagicNumber(0, GempakFileReader.DMLabel.DMLABEL)};
+
   /**
    * Is this a valid file?
    *
@@ -79,6 +86,16 @@ public class GempakGridServiceProvider extends GridServiceProvider {
     }
   }
 
+  /**
+   * All GEMPAK files start with the DM label
+   *
+   * @return the magic numbers
+   */
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
   public String getFileTypeId() {
     return "GempakGrid";
   }
@@ -40,6 +40,7 @@ import ucar.nc2.*;
 import ucar.nc2.constants.CDM;
 import ucar.nc2.constants.CF;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
 
@@ -120,6 +121,12 @@ public abstract class GempakStationFileIOSP extends AbstractIOServiceProvider {
           8, 4, 4, 4, 4, 2, 2, 4, 4, 4, 4
   };
 
+  /**
+   * magic numbers for isValidFile
+   */
+  private static final MagicNumber[] magic = new MagicNumber[] {
+          new MagicNumber(0, GempakFileReader.DMLabel.DMLABEL)};
+
 
   /**
    * Is this a valid file?
@@ -138,6 +145,16 @@ public abstract class GempakStationFileIOSP extends AbstractIOServiceProvider {
     }
   }
 
+  /**
+   * All GEMPAK files start with the DM label
+   *
+   * @return the magic numbers
+   */
+  @Override
+  public MagicNumber[] getMagicNumbers() {
+    return magic;
+  }
+
   /**
    * Make the appropriate station file reader, subclasses need to implement
    * this